@@ -0,0 +1,557 @@
+package org.javafp.javapickling.cbor;
+
+import org.javafp.javapickling.core.FieldPath;
+import org.javafp.javapickling.core.Pickler;
+import org.javafp.javapickling.core.PicklerException;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * CborIO wraps either a DataInput or a DataOutput, and reads or writes CBOR (RFC 8949) data items.
+ * <p>
+ * When unpickling, one byte of lookahead is held so that a pickler can inspect
+ * the type of the next data item before reading it.
+ * An object's map may be left part-read by its FieldUnpickler -
+ * read() takes care of skipping whatever remains of it.
+ */
+public class CborIO {
+
+    public static final int MAJOR_UINT = 0;
+    public static final int MAJOR_NINT = 1;
+    public static final int MAJOR_BYTES = 2;
+    public static final int MAJOR_TEXT = 3;
+    public static final int MAJOR_ARRAY = 4;
+    public static final int MAJOR_MAP = 5;
+    public static final int MAJOR_TAG = 6;
+    public static final int MAJOR_SIMPLE = 7;
+
+    public static final int FALSE = 0xF4;
+    public static final int TRUE = 0xF5;
+    public static final int NULL = 0xF6;
+    public static final int HALF = 0xF9;
+    public static final int FLOAT = 0xFA;
+    public static final int DOUBLE = 0xFB;
+    public static final int BREAK = 0xFF;
+
+    // Additional information value for indefinite-length items.
+    private static final int INDEFINITE = 31;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public final DataInput input;
+    public final DataOutput output;
+
+    // The next initial byte, if it has been peeked, otherwise -1.
+    private int peeked = -1;
+
+    // The entries left to read in each object map being unpickled, innermost last, or -1 if indefinite-length.
+    private long[] openMaps = new long[8];
+    private int openMapCount = 0;
+
+    public CborIO(DataInput input) {
+        this.input = input;
+        this.output = null;
+    }
+
+    public CborIO(DataOutput output) {
+        this.input = null;
+        this.output = output;
+    }
+
+    /**
+     * @return a CborIO positioned on a null, used for absent fields.
+     */
+    public static CborIO nullValue() {
+        return new CborIO(new DataInputStream(new ByteArrayInputStream(new byte[]{(byte)NULL})));
+    }
+
+    // Writing.
+
+    /**
+     * Write the head of a data item, using the shortest encoding of the argument.
+     * @param major the major type.
+     * @param arg the argument, treated as unsigned.
+     * @throws IOException
+     */
+    public void writeHead(int major, long arg) throws IOException {
+        final int mt = major << 5;
+        if (arg >= 0 && arg < 24) {
+            output.write(mt | (int)arg);
+        } else if (arg >= 0 && arg <= 0xFFL) {
+            output.write(mt | 24);
+            output.write((int)arg);
+        } else if (arg >= 0 && arg <= 0xFFFFL) {
+            output.write(mt | 25);
+            output.writeShort((int)arg);
+        } else if (arg >= 0 && arg <= 0xFFFFFFFFL) {
+            output.write(mt | 26);
+            output.writeInt((int)arg);
+        } else {
+            output.write(mt | 27);
+            output.writeLong(arg);
+        }
+    }
+
+    public void writeIndefinite(int major) throws IOException {
+        output.write((major << 5) | INDEFINITE);
+    }
+
+    public void writeBreak() throws IOException {
+        output.write(BREAK);
+    }
+
+    public void writeInteger(long l) throws IOException {
+        if (l >= 0) {
+            writeHead(MAJOR_UINT, l);
+        } else {
+            writeHead(MAJOR_NINT, ~l);
+        }
+    }
+
+    public void writeBoolean(boolean b) throws IOException {
+        output.write(b ? TRUE : FALSE);
+    }
+
+    public void writeNull() throws IOException {
+        output.write(NULL);
+    }
+
+    public void writeFloat(float f) throws IOException {
+        output.write(FLOAT);
+        output.writeFloat(f);
+    }
+
+    public void writeDouble(double d) throws IOException {
+        output.write(DOUBLE);
+        output.writeDouble(d);
+    }
+
+    public void writeString(String s) throws IOException {
+        final byte[] bytes = s.getBytes(UTF8);
+        writeHead(MAJOR_TEXT, bytes.length);
+        output.write(bytes);
+    }
+
+    public void writeBytes(byte[] bytes) throws IOException {
+        writeHead(MAJOR_BYTES, bytes.length);
+        output.write(bytes);
+    }
+
+    // Reading.
+
+    /**
+     * @return the initial byte of the next data item, without consuming it.
+     * @throws IOException
+     */
+    public int peek() throws IOException {
+        if (peeked < 0) {
+            peeked = input.readUnsignedByte();
+        }
+        return peeked;
+    }
+
+    /**
+     * @return the major type of the next data item, without consuming it.
+     * @throws IOException
+     */
+    public int peekMajor() throws IOException {
+        return peek() >> 5;
+    }
+
+    private int readInitial() throws IOException {
+        final int ib = peek();
+        peeked = -1;
+        return ib;
+    }
+
+    /**
+     * Consume the next byte if it is the given simple value or break code.
+     * @param ib the initial byte.
+     * @return true if it was consumed.
+     * @throws IOException
+     */
+    public boolean skipIf(int ib) throws IOException {
+        if (peek() == ib) {
+            peeked = -1;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    private long readArgument(int ib) throws IOException {
+        final int ai = ib & 0x1F;
+        if (ai < 24) {
+            return ai;
+        }
+        switch (ai) {
+            case 24:
+                return input.readUnsignedByte();
+            case 25:
+                return input.readUnsignedShort();
+            case 26:
+                return input.readInt() & 0xFFFFFFFFL;
+            case 27:
+                return input.readLong();
+            case INDEFINITE:
+                return -1;
+            default:
+                throw new PicklerException("Invalid CBOR additional information " + ai);
+        }
+    }
+
+    /**
+     * Read the head of a data item of the expected major type.
+     * @param major the expected major type.
+     * @return the argument, or -1 for an indefinite-length item.
+     * @throws IOException
+     */
+    public long readHead(int major) throws IOException {
+        final int ib = readInitial();
+        if (ib >> 5 != major) {
+            throw new PicklerException("Expected CBOR major type " + major + " but got " + (ib >> 5));
+        }
+        return readArgument(ib);
+    }
+
+    /**
+     * Read the length of a definite-length array or map.
+     * @param major the expected major type.
+     * @return the number of elements or entries.
+     * @throws IOException
+     */
+    public int readLength(int major) throws IOException {
+        final long len = readHead(major);
+        if (len < 0 || len > Integer.MAX_VALUE) {
+            throw new PicklerException("Unsupported CBOR container length " + len);
+        }
+        return (int)len;
+    }
+
+    public long readInteger() throws IOException {
+        final int ib = readInitial();
+        final long arg = readArgument(ib);
+        switch (ib >> 5) {
+            case MAJOR_UINT:
+                return arg;
+            case MAJOR_NINT:
+                return ~arg;
+            default:
+                throw new PicklerException("Expected a CBOR integer but got major type " + (ib >> 5));
+        }
+    }
+
+    public boolean readBoolean() throws IOException {
+        final int ib = readInitial();
+        switch (ib) {
+            case TRUE:
+                return true;
+            case FALSE:
+                return false;
+            default:
+                throw new PicklerException("Expected a CBOR boolean but got " + ib);
+        }
+    }
+
+    /**
+     * Read a floating-point value of any precision, or an integer.
+     * @return the value.
+     * @throws IOException
+     */
+    public double readDouble() throws IOException {
+        switch (peek()) {
+            case HALF:
+                readInitial();
+                return halfToFloat(input.readUnsignedShort());
+            case FLOAT:
+                readInitial();
+                return input.readFloat();
+            case DOUBLE:
+                readInitial();
+                return input.readDouble();
+            default:
+                return readInteger();
+        }
+    }
+
+    public String readString() throws IOException {
+        return new String(readByteString(MAJOR_TEXT), UTF8);
+    }
+
+    public byte[] readBytes() throws IOException {
+        return readByteString(MAJOR_BYTES);
+    }
+
+    private byte[] readByteString(int major) throws IOException {
+        final long len = readHead(major);
+        if (len >= 0) {
+            if (len > Integer.MAX_VALUE) {
+                throw new PicklerException("Unsupported CBOR string length " + len);
+            }
+            final byte[] bytes = new byte[(int)len];
+            input.readFully(bytes);
+            return bytes;
+        }
+
+        // An indefinite-length string is a sequence of definite-length chunks.
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        while (!skipIf(BREAK)) {
+            final byte[] chunk = readByteString(major);
+            baos.write(chunk, 0, chunk.length);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Unpickle the next data item, and skip any part of it which the pickler left unread.
+     * @param pickler the pickler for the value.
+     * @param <T> the value type.
+     * @return the value.
+     * @throws Exception
+     */
+    public <T> T read(Pickler<T, CborIO> pickler) throws Exception {
+        final int depth = openMapCount;
+
+        final T value = pickler.unpickle(this);
+
+        while (openMapCount > depth) {
+            while (nextEntry()) {
+                skip();
+                skip();
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Start reading the entries of an object's map.
+     * @throws IOException
+     */
+    public void startMap() throws IOException {
+        final long size = readHead(MAJOR_MAP);
+        if (openMapCount == openMaps.length) {
+            openMaps = Arrays.copyOf(openMaps, 2 * openMaps.length);
+        }
+        openMaps[openMapCount++] = size;
+    }
+
+    /**
+     * Advance to the next entry of the innermost object map, or to its end.
+     * @return true if positioned on an entry's key, or false if the map has ended.
+     * @throws IOException
+     */
+    public boolean nextEntry() throws IOException {
+        final long remaining = openMaps[openMapCount - 1];
+        if (remaining == 0 || (remaining < 0 && skipIf(BREAK))) {
+            --openMapCount;
+            return false;
+        }
+        if (remaining > 0) {
+            openMaps[openMapCount - 1] = remaining - 1;
+        }
+        return true;
+    }
+
+    /**
+     * Move to a value nested within the next data item, skipping over everything else.
+     * A name selects a map entry by its key - a string, or an integer in decimal -
+     * and an index selects an array element.
+     * @param path the path to the value.
+     * @return true if positioned on the value, or false if the path does not exist.
+     * @throws IOException
+     */
+    public boolean seek(FieldPath path) throws IOException {
+        for (int i = 0; i < path.size(); ++i) {
+            final boolean found;
+            if (path.isIndex(i)) {
+                found = peekMajor() == MAJOR_ARRAY && seekElement(path.index(i));
+            } else {
+                found = peekMajor() == MAJOR_MAP && seekEntry(path.name(i));
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean seekElement(int index) throws IOException {
+        final long size = readHead(MAJOR_ARRAY);
+        for (int i = 0; size < 0 || i < size; ++i) {
+            if (size < 0 && peek() == BREAK) {
+                return false;
+            } else if (i == index) {
+                return true;
+            }
+            skip();
+        }
+        return false;
+    }
+
+    private boolean seekEntry(String key) throws IOException {
+        final long size = readHead(MAJOR_MAP);
+        for (long i = 0; size < 0 || i < size; ++i) {
+            if (size < 0 && skipIf(BREAK)) {
+                return false;
+            }
+            final boolean matched;
+            switch (peekMajor()) {
+                case MAJOR_TEXT:
+                    matched = key.equals(readString());
+                    break;
+                case MAJOR_UINT:
+                case MAJOR_NINT:
+                    matched = key.equals(Long.toString(readInteger()));
+                    break;
+                default:
+                    skip();
+                    matched = false;
+            }
+            if (matched) {
+                return true;
+            }
+            skip();
+        }
+        return false;
+    }
+
+    /**
+     * Copy the next data item into a buffer.
+     * @return a CborIO which reads from the buffered copy.
+     * @throws IOException
+     */
+    public CborIO buffer() throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        copyItem(new DataOutputStream(baos));
+        return new CborIO(new DataInputStream(new ByteArrayInputStream(baos.toByteArray())));
+    }
+
+    /**
+     * Skip the next data item.
+     * @throws IOException
+     */
+    public void skip() throws IOException {
+        copyItem(null);
+    }
+
+    // Read the next data item, writing it to out if it isn't null.
+    private void copyItem(DataOutput out) throws IOException {
+        final int ib = readInitial();
+        final int major = ib >> 5;
+        final int ai = ib & 0x1F;
+
+        if (out != null) {
+            out.write(ib);
+        }
+
+        final long arg;
+        switch (ai) {
+            case 24:
+                arg = copyBytes(out, 1);
+                break;
+            case 25:
+                arg = copyBytes(out, 2);
+                break;
+            case 26:
+                arg = copyBytes(out, 4);
+                break;
+            case 27:
+                arg = copyBytes(out, 8);
+                break;
+            default:
+                arg = ai == INDEFINITE ? -1 : ai;
+        }
+
+        switch (major) {
+            case MAJOR_BYTES:
+            case MAJOR_TEXT:
+                if (arg >= 0) {
+                    copyString(out, arg);
+                } else {
+                    copyUntilBreak(out);
+                }
+                break;
+            case MAJOR_ARRAY:
+            case MAJOR_MAP: {
+                final long items = major == MAJOR_MAP ? 2 * arg : arg;
+                if (arg >= 0) {
+                    for (long i = 0; i < items; ++i) {
+                        copyItem(out);
+                    }
+                } else {
+                    copyUntilBreak(out);
+                }
+                break;
+            }
+            case MAJOR_TAG:
+                copyItem(out);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void copyUntilBreak(DataOutput out) throws IOException {
+        while (!skipIf(BREAK)) {
+            copyItem(out);
+        }
+        if (out != null) {
+            out.write(BREAK);
+        }
+    }
+
+    private static final int COPY_CHUNK_SIZE = 8192;
+
+    // Skip or copy the content of a definite-length string, in bulk.
+    private void copyString(DataOutput out, long length) throws IOException {
+        if (out == null) {
+            while (length > 0) {
+                final int skipped = input.skipBytes((int)Math.min(length, Integer.MAX_VALUE));
+                if (skipped > 0) {
+                    length -= skipped;
+                } else {
+                    // skipBytes() may skip nothing without being at the end, so read a byte to make progress.
+                    input.readByte();
+                    --length;
+                }
+            }
+        } else {
+            final byte[] chunk = new byte[(int)Math.min(length, COPY_CHUNK_SIZE)];
+            while (length > 0) {
+                final int n = (int)Math.min(length, chunk.length);
+                input.readFully(chunk, 0, n);
+                out.write(chunk, 0, n);
+                length -= n;
+            }
+        }
+    }
+
+    private long copyBytes(DataOutput out, int n) throws IOException {
+        long value = 0;
+        for (int i = 0; i < n; ++i) {
+            final int b = input.readUnsignedByte();
+            if (out != null) {
+                out.write(b);
+            }
+            value = (value << 8) | b;
+        }
+        return value;
+    }
+
+    private static float halfToFloat(int half) {
+        final int exp = (half >> 10) & 0x1F;
+        final int mant = half & 0x3FF;
+        final float value;
+        if (exp == 0) {
+            value = (float)Math.scalb(mant, -24);
+        } else if (exp != 31) {
+            value = (float)Math.scalb(mant + 1024, exp - 25);
+        } else {
+            value = mant == 0 ? Float.POSITIVE_INFINITY : Float.NaN;
+        }
+        return (half & 0x8000) != 0 ? -value : value;
+    }
+}
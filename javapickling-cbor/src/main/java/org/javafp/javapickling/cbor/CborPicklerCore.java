@@ -0,0 +1,905 @@
+package org.javafp.javapickling.cbor;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import org.javafp.javapickling.core.*;
+
+import java.io.*;
+import java.lang.reflect.Array;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * PicklerCore implementation which pickles objects to CBOR (RFC 8949), via the CborIO wrapper.
+ * <p>
+ * The layout follows JsonNodePicklerCore - objects are maps keyed by field name,
+ * and dynamic values use the same plain and tagged forms - but integers use the shortest encoding,
+ * byte arrays are byte strings, floats and doubles keep their precision,
+ * and collections are definite-length.
+ * Objects are written as indefinite-length maps, as their field count isn't known in advance.
+ * Object fields are expected in the order they are pickled,
+ * though fields which arrive out of order are buffered so they can still be unpickled.
+ */
+public class CborPicklerCore extends PicklerCoreBase<CborIO> {
+
+    public static CborPicklerCore create() {
+        final CborPicklerCore core = new CborPicklerCore();
+        core.initialise();
+        return core;
+    }
+
+    /**
+     * Create a new core which shares this core's registrations and picklers.
+     * Registrations made on the fork are not visible to this core.
+     * The fork creates its own picklers once it diverges from this core,
+     * i.e. on its first registration or change of setting.
+     * @return the forked core.
+     */
+    public CborPicklerCore fork() {
+        return new CborPicklerCore(this);
+    }
+
+    /**
+     * Utility function to pickle a value as CBOR to an OutputStream.
+     * The stream is not closed.
+     * @param pickler
+     * @param value
+     * @param os
+     * @param <T>
+     * @throws Exception
+     */
+    public static <T> void pickle(Pickler<T, CborIO> pickler, T value, OutputStream os) throws Exception {
+        final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os));
+        pickler.pickle(value, new CborIO(dos));
+        dos.flush();
+    }
+
+    /**
+     * Utility function to pickle a value as CBOR.
+     * @param pickler
+     * @param value
+     * @param <T>
+     * @return the CBOR data.
+     * @throws Exception
+     */
+    public static <T> byte[] pickle(Pickler<T, CborIO> pickler, T value) throws Exception {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        pickler.pickle(value, new CborIO(new DataOutputStream(baos)));
+        return baos.toByteArray();
+    }
+
+    /**
+     * Utility function to unpickle a value from CBOR read from an InputStream.
+     * The stream is not closed.
+     * @param pickler
+     * @param is
+     * @param <T>
+     * @return
+     * @throws Exception
+     */
+    public static <T> T unpickle(Pickler<T, CborIO> pickler, InputStream is) throws Exception {
+        return new CborIO(new DataInputStream(is)).read(pickler);
+    }
+
+    /**
+     * Utility function to unpickle a value from CBOR data.
+     * @param pickler
+     * @param bytes
+     * @param <T>
+     * @return
+     * @throws Exception
+     */
+    public static <T> T unpickle(Pickler<T, CborIO> pickler, byte[] bytes) throws Exception {
+        return unpickle(pickler, new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Utility function to extract a value nested within CBOR read from an InputStream,
+     * such as "members.DEVELOPER[0].name".
+     * Everything outside the path is skipped over without being unpickled.
+     * The stream is not closed.
+     * @param is
+     * @param pickler the pickler for the value.
+     * @param path the path to the value - see CborIO.seek().
+     * @param <T>
+     * @return the value, or null if the path does not exist.
+     * @throws Exception
+     */
+    public static <T> T extract(InputStream is, Pickler<T, CborIO> pickler, String path) throws Exception {
+        final CborIO source = new CborIO(new DataInputStream(is));
+        return source.seek(FieldPath.parse(path)) ? source.read(pickler) : null;
+    }
+
+    /**
+     * Utility function to extract a value nested within CBOR data.
+     * @param bytes
+     * @param pickler the pickler for the value.
+     * @param path the path to the value - see CborIO.seek().
+     * @param <T>
+     * @return the value, or null if the path does not exist.
+     * @throws Exception
+     */
+    public static <T> T extract(byte[] bytes, Pickler<T, CborIO> pickler, String path) throws Exception {
+        return extract(new ByteArrayInputStream(bytes), pickler, path);
+    }
+
+    protected void initialise() {
+        super.initialise();
+        registerGeneric(Optional.class, OptionalPickler.class);
+    }
+
+    protected final Pickler<Object, CborIO> nullP = new Pickler<Object, CborIO>() {
+
+        @Override
+        public CborIO pickle(Object obj, CborIO target) throws Exception {
+            target.writeNull();
+            return target;
+        }
+
+        @Override
+        public Object unpickle(CborIO source) throws Exception {
+            source.skip();
+            return null;
+        }
+    };
+
+    protected final Pickler<Boolean, CborIO> booleanP = new Pickler<Boolean, CborIO>() {
+
+        @Override
+        public CborIO pickle(Boolean b, CborIO target) throws Exception {
+            target.writeBoolean(b);
+            return target;
+        }
+
+        @Override
+        public Boolean unpickle(CborIO source) throws Exception {
+            return source.readBoolean();
+        }
+    };
+
+    protected final Pickler<Byte, CborIO> byteP = new Pickler<Byte, CborIO>() {
+
+        @Override
+        public CborIO pickle(Byte b, CborIO target) throws Exception {
+            target.writeInteger(b);
+            return target;
+        }
+
+        @Override
+        public Byte unpickle(CborIO source) throws Exception {
+            return (byte)source.readInteger();
+        }
+    };
+
+    protected final Pickler<Character, CborIO> charP = new Pickler<Character, CborIO>() {
+
+        @Override
+        public CborIO pickle(Character c, CborIO target) throws Exception {
+            target.writeString(String.valueOf(c));
+            return target;
+        }
+
+        @Override
+        public Character unpickle(CborIO source) throws Exception {
+            return source.readString().charAt(0);
+        }
+    };
+
+    protected final Pickler<String, CborIO> stringP = new Pickler<String, CborIO>() {
+
+        @Override
+        public CborIO pickle(String s, CborIO target) throws Exception {
+            target.writeString(s);
+            return target;
+        }
+
+        @Override
+        public String unpickle(CborIO source) throws Exception {
+            return source.readString();
+        }
+    };
+
+    protected final Pickler<Integer, CborIO> integerP = new Pickler<Integer, CborIO>() {
+
+        @Override
+        public CborIO pickle(Integer i, CborIO target) throws Exception {
+            target.writeInteger(i);
+            return target;
+        }
+
+        @Override
+        public Integer unpickle(CborIO source) throws Exception {
+            return (int)source.readInteger();
+        }
+    };
+
+    protected final Pickler<Short, CborIO> shortP = new Pickler<Short, CborIO>() {
+
+        @Override
+        public CborIO pickle(Short s, CborIO target) throws Exception {
+            target.writeInteger(s);
+            return target;
+        }
+
+        @Override
+        public Short unpickle(CborIO source) throws Exception {
+            return (short)source.readInteger();
+        }
+    };
+
+    protected final Pickler<Long, CborIO> longP = new Pickler<Long, CborIO>() {
+
+        @Override
+        public CborIO pickle(Long l, CborIO target) throws Exception {
+            target.writeInteger(l);
+            return target;
+        }
+
+        @Override
+        public Long unpickle(CborIO source) throws Exception {
+            return source.readInteger();
+        }
+    };
+
+    protected final Pickler<Float, CborIO> floatP = new Pickler<Float, CborIO>() {
+
+        @Override
+        public CborIO pickle(Float f, CborIO target) throws Exception {
+            target.writeFloat(f);
+            return target;
+        }
+
+        @Override
+        public Float unpickle(CborIO source) throws Exception {
+            return (float)source.readDouble();
+        }
+    };
+
+    protected final Pickler<Double, CborIO> doubleP = new Pickler<Double, CborIO>() {
+
+        @Override
+        public CborIO pickle(Double d, CborIO target) throws Exception {
+            target.writeDouble(d);
+            return target;
+        }
+
+        @Override
+        public Double unpickle(CborIO source) throws Exception {
+            return source.readDouble();
+        }
+    };
+
+    protected final Pickler<byte[], CborIO> byteArrayP = new Pickler<byte[], CborIO>() {
+
+        @Override
+        public CborIO pickle(byte[] arr, CborIO target) throws Exception {
+            target.writeBytes(arr);
+            return target;
+        }
+
+        @Override
+        public byte[] unpickle(CborIO source) throws Exception {
+            return source.readBytes();
+        }
+    };
+
+    protected final Pickler<boolean[], CborIO> booleanArrayP = new Pickler<boolean[], CborIO>() {
+
+        final Pickler<Boolean, CborIO> elemPickler = boolean_p();
+
+        @Override
+        public CborIO pickle(boolean[] arr, CborIO target) throws Exception {
+
+            target.writeHead(CborIO.MAJOR_ARRAY, arr.length);
+
+            for (boolean elem : arr) {
+                elemPickler.pickle(elem, target);
+            }
+
+            return target;
+        }
+
+        @Override
+        public boolean[] unpickle(CborIO source) throws Exception {
+
+            final int size = source.readLength(CborIO.MAJOR_ARRAY);
+            final boolean[] result = new boolean[size];
+
+            for (int i = 0; i < size; ++i) {
+                result[i] = source.read(elemPickler);
+            }
+
+            return result;
+        }
+    };
+
+    protected final Pickler<char[], CborIO> charArrayP = new Pickler<char[], CborIO>() {
+
+        final Pickler<Character, CborIO> elemPickler = char_p();
+
+        @Override
+        public CborIO pickle(char[] arr, CborIO target) throws Exception {
+
+            target.writeHead(CborIO.MAJOR_ARRAY, arr.length);
+
+            for (char elem : arr) {
+                elemPickler.pickle(elem, target);
+            }
+
+            return target;
+        }
+
+        @Override
+        public char[] unpickle(CborIO source) throws Exception {
+
+            final int size = source.readLength(CborIO.MAJOR_ARRAY);
+            final char[] result = new char[size];
+
+            for (int i = 0; i < size; ++i) {
+                result[i] = source.read(elemPickler);
+            }
+
+            return result;
+        }
+    };
+
+    protected final Pickler<int[], CborIO> integerArrayP = new Pickler<int[], CborIO>() {
+
+        final Pickler<Integer, CborIO> elemPickler = integer_p();
+
+        @Override
+        public CborIO pickle(int[] arr, CborIO target) throws Exception {
+
+            target.writeHead(CborIO.MAJOR_ARRAY, arr.length);
+
+            for (int elem : arr) {
+                elemPickler.pickle(elem, target);
+            }
+
+            return target;
+        }
+
+        @Override
+        public int[] unpickle(CborIO source) throws Exception {
+
+            final int size = source.readLength(CborIO.MAJOR_ARRAY);
+            final int[] result = new int[size];
+
+            for (int i = 0; i < size; ++i) {
+                result[i] = source.read(elemPickler);
+            }
+
+            return result;
+        }
+    };
+
+    protected final Pickler<short[], CborIO> shortArrayP = new Pickler<short[], CborIO>() {
+
+        final Pickler<Short, CborIO> elemPickler = short_p();
+
+        @Override
+        public CborIO pickle(short[] arr, CborIO target) throws Exception {
+
+            target.writeHead(CborIO.MAJOR_ARRAY, arr.length);
+
+            for (short elem : arr) {
+                elemPickler.pickle(elem, target);
+            }
+
+            return target;
+        }
+
+        @Override
+        public short[] unpickle(CborIO source) throws Exception {
+
+            final int size = source.readLength(CborIO.MAJOR_ARRAY);
+            final short[] result = new short[size];
+
+            for (int i = 0; i < size; ++i) {
+                result[i] = source.read(elemPickler);
+            }
+
+            return result;
+        }
+    };
+
+    protected final Pickler<long[], CborIO> longArrayP = new Pickler<long[], CborIO>() {
+
+        final Pickler<Long, CborIO> elemPickler = long_p();
+
+        @Override
+        public CborIO pickle(long[] arr, CborIO target) throws Exception {
+
+            target.writeHead(CborIO.MAJOR_ARRAY, arr.length);
+
+            for (long elem : arr) {
+                elemPickler.pickle(elem, target);
+            }
+
+            return target;
+        }
+
+        @Override
+        public long[] unpickle(CborIO source) throws Exception {
+
+            final int size = source.readLength(CborIO.MAJOR_ARRAY);
+            final long[] result = new long[size];
+
+            for (int i = 0; i < size; ++i) {
+                result[i] = source.read(elemPickler);
+            }
+
+            return result;
+        }
+    };
+
+    protected final Pickler<float[], CborIO> floatArrayP = new Pickler<float[], CborIO>() {
+
+        final Pickler<Float, CborIO> elemPickler = float_p();
+
+        @Override
+        public CborIO pickle(float[] arr, CborIO target) throws Exception {
+
+            target.writeHead(CborIO.MAJOR_ARRAY, arr.length);
+
+            for (float elem : arr) {
+                elemPickler.pickle(elem, target);
+            }
+
+            return target;
+        }
+
+        @Override
+        public float[] unpickle(CborIO source) throws Exception {
+
+            final int size = source.readLength(CborIO.MAJOR_ARRAY);
+            final float[] result = new float[size];
+
+            for (int i = 0; i < size; ++i) {
+                result[i] = source.read(elemPickler);
+            }
+
+            return result;
+        }
+    };
+
+    protected final Pickler<double[], CborIO> doubleArrayP = new Pickler<double[], CborIO>() {
+
+        final Pickler<Double, CborIO> elemPickler = double_p();
+
+        @Override
+        public CborIO pickle(double[] arr, CborIO target) throws Exception {
+
+            target.writeHead(CborIO.MAJOR_ARRAY, arr.length);
+
+            for (double elem : arr) {
+                elemPickler.pickle(elem, target);
+            }
+
+            return target;
+        }
+
+        @Override
+        public double[] unpickle(CborIO source) throws Exception {
+
+            final int size = source.readLength(CborIO.MAJOR_ARRAY);
+            final double[] result = new double[size];
+
+            for (int i = 0; i < size; ++i) {
+                result[i] = source.read(elemPickler);
+            }
+
+            return result;
+        }
+    };
+
+    protected final ObjectPickler<CborIO> objectMapP = new ObjectPickler<CborIO>() {
+
+        @Override
+        public FieldPickler<CborIO> pickler(final CborIO target) {
+
+            try {
+                target.writeIndefinite(CborIO.MAJOR_MAP);
+            } catch (IOException ex) {
+                throw new PicklerException("Failed to start CBOR map", ex);
+            }
+
+            return new AbstractFieldPickler(target) {
+
+                @Override
+                public <T> void field(String name, T value, Pickler<T, CborIO> pickler) throws Exception {
+                    target.writeString(name);
+                    pickler.pickle(value, target);
+                }
+
+                @Override
+                public CborIO pickle(CborIO target) throws Exception {
+                    target.writeBreak();
+                    return target;
+                }
+            };
+        }
+
+        @Override
+        public FieldUnpickler<CborIO> unpickler(final CborIO source) {
+
+            try {
+                source.startMap();
+            } catch (IOException ex) {
+                throw new PicklerException("Failed to read CBOR map", ex);
+            }
+
+            return new AbstractFieldUnpickler(source) {
+
+                // Fields which were encountered before they were asked for.
+                private Map<String, CborIO> stash;
+
+                private boolean ended = false;
+
+                @Override
+                public <T> T field(String name, Pickler<T, CborIO> pickler) throws Exception {
+
+                    if (stash != null) {
+                        final CborIO stashed = stash.remove(name);
+                        if (stashed != null) {
+                            return stashed.read(pickler);
+                        }
+                    }
+
+                    while (!ended) {
+                        if (!source.nextEntry()) {
+                            ended = true;
+                        } else {
+                            final String fieldName = source.readString();
+                            if (fieldName.equals(name)) {
+                                return source.read(pickler);
+                            } else {
+                                if (stash == null) {
+                                    stash = Maps.newHashMap();
+                                }
+                                stash.put(fieldName, source.buffer());
+                            }
+                        }
+                    }
+
+                    // The field is absent.
+                    return pickler.unpickle(CborIO.nullValue());
+                }
+            };
+        }
+    };
+
+    protected final Pickler<Object, CborIO> dynObjectP = new DynamicObjectCborPickler<Object>(this, Object.class);
+
+    private CborPicklerCore() {
+    }
+
+    private CborPicklerCore(CborPicklerCore base) {
+        super(base);
+    }
+
+    @Override
+    public Pickler<Object, CborIO> null_p() {
+        return nullP;
+    }
+
+    @Override
+    public Pickler<Boolean, CborIO> boolean_p() {
+        return booleanP;
+    }
+
+    @Override
+    public Pickler<Byte, CborIO> byte_p() {
+        return byteP;
+    }
+
+    @Override
+    public Pickler<Character, CborIO> char_p() {
+        return charP;
+    }
+
+    @Override
+    public Pickler<String, CborIO> string_p() {
+        return stringP;
+    }
+
+    @Override
+    public Pickler<Integer, CborIO> integer_p() {
+        return integerP;
+    }
+
+    @Override
+    public Pickler<Short, CborIO> short_p() {
+        return shortP;
+    }
+
+    @Override
+    public Pickler<Long, CborIO> long_p() {
+        return longP;
+    }
+
+    @Override
+    public Pickler<Float, CborIO> float_p() {
+        return floatP;
+    }
+
+    @Override
+    public Pickler<Double, CborIO> double_p() {
+        return doubleP;
+    }
+
+    @Override
+    public Pickler<boolean[], CborIO> boolean_array_p() {
+        return booleanArrayP;
+    }
+
+    @Override
+    public Pickler<byte[], CborIO> byte_array_p() {
+        return byteArrayP;
+    }
+
+    @Override
+    public Pickler<char[], CborIO> char_array_p() {
+        return charArrayP;
+    }
+
+    @Override
+    public Pickler<int[], CborIO> integer_array_p() {
+        return integerArrayP;
+    }
+
+    @Override
+    public Pickler<short[], CborIO> short_array_p() {
+        return shortArrayP;
+    }
+
+    @Override
+    public Pickler<long[], CborIO> long_array_p() {
+        return longArrayP;
+    }
+
+    @Override
+    public Pickler<float[], CborIO> float_array_p() {
+        return floatArrayP;
+    }
+
+    @Override
+    public Pickler<double[], CborIO> double_array_p() {
+        return doubleArrayP;
+    }
+
+    @Override
+    public <T extends Enum<T>> Pickler<T, CborIO> enum_p(final Class<T> enumClass) {
+
+        return new Pickler<T, CborIO>() {
+
+            @Override
+            public CborIO pickle(T t, CborIO target) throws Exception {
+                target.writeString(t.name());
+                return target;
+            }
+
+            @Override
+            public T unpickle(CborIO source) throws Exception {
+                return T.valueOf(enumClass, source.readString());
+            }
+        };
+    }
+
+    @Override
+    public <T> Pickler<T[], CborIO> array_p(final Pickler<T, CborIO> elemPickler, final Class<T> elemClass) {
+
+        return new Pickler<T[], CborIO>() {
+
+            @Override
+            public CborIO pickle(T[] arr, CborIO target) throws Exception {
+
+                target.writeHead(CborIO.MAJOR_ARRAY, arr.length);
+
+                for (T elem : arr) {
+                    elemPickler.pickle(elem, target);
+                }
+
+                return target;
+            }
+
+            @Override
+            public T[] unpickle(CborIO source) throws Exception {
+
+                final int size = source.readLength(CborIO.MAJOR_ARRAY);
+                final T[] result = (T[])Array.newInstance(elemClass, size);
+
+                for (int i = 0; i < size; ++i) {
+                    result[i] = source.read(elemPickler);
+                }
+
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public <T> Pickler<List<T>, CborIO> list_p(
+            final Pickler<T, CborIO> elemPickler,
+            final Class<? extends List> listClass) {
+
+        return new Pickler<List<T>, CborIO>() {
+
+            @Override
+            public CborIO pickle(List<T> list, CborIO target) throws Exception {
+
+                target.writeHead(CborIO.MAJOR_ARRAY, list.size());
+
+                for (T elem : list) {
+                    elemPickler.pickle(elem, target);
+                }
+
+                return target;
+            }
+
+            @Override
+            public List<T> unpickle(CborIO source) throws Exception {
+
+                final int size = source.readLength(CborIO.MAJOR_ARRAY);
+                final List<T> result = newInstance(listClass);
+
+                for (int i = 0; i < size; ++i) {
+                    result.add(source.read(elemPickler));
+                }
+
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public <T> Pickler<Map<String, T>, CborIO> map_p(
+            final Pickler<T, CborIO> valuePickler,
+            final Class<? extends Map> mapClass) {
+
+        return new Pickler<Map<String, T>, CborIO>() {
+
+            @Override
+            public CborIO pickle(Map<String, T> map, CborIO target) throws Exception {
+
+                target.writeHead(CborIO.MAJOR_MAP, map.size());
+
+                for (Map.Entry<String, T> entry : map.entrySet()) {
+                    target.writeString(entry.getKey());
+                    valuePickler.pickle(entry.getValue(), target);
+                }
+
+                return target;
+            }
+
+            @Override
+            public Map<String, T> unpickle(CborIO source) throws Exception {
+
+                final int size = source.readLength(CborIO.MAJOR_MAP);
+                final Map<String, T> result = newInstance(mapClass);
+
+                for (int i = 0; i < size; ++i) {
+                    final String key = source.readString();
+                    result.put(key, source.read(valuePickler));
+                }
+
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public <K, V> Pickler<Map<K, V>, CborIO> map_p(
+            final Pickler<K, CborIO> keyPickler,
+            final Pickler<V, CborIO> valuePickler,
+            final Class<?  extends Map> mapClass) {
+
+        // CBOR map keys may be of any type, so these maps are also written as CBOR maps.
+        return new Pickler<Map<K, V>, CborIO>() {
+
+            @Override
+            public CborIO pickle(Map<K, V> map, CborIO target) throws Exception {
+
+                target.writeHead(CborIO.MAJOR_MAP, map.size());
+
+                for (Map.Entry<K, V> entry : map.entrySet()) {
+                    keyPickler.pickle(entry.getKey(), target);
+                    valuePickler.pickle(entry.getValue(), target);
+                }
+
+                return target;
+            }
+
+            @Override
+            public Map<K, V> unpickle(CborIO source) throws Exception {
+
+                final int size = source.readLength(CborIO.MAJOR_MAP);
+                final Map<K, V> result = newInstance(mapClass);
+
+                for (int i = 0; i < size; ++i) {
+                    final K key = source.read(keyPickler);
+                    final V value = source.read(valuePickler);
+                    result.put(key, value);
+                }
+
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public <T> Pickler<Set<T>, CborIO> set_p(
+            final Pickler<T, CborIO> elemPickler,
+            final Class<? extends Set> setClass) {
+
+        return new Pickler<Set<T>, CborIO>() {
+
+            @Override
+            public CborIO pickle(Set<T> set, CborIO target) throws Exception {
+
+                target.writeHead(CborIO.MAJOR_ARRAY, set.size());
+
+                for (T elem : set) {
+                    elemPickler.pickle(elem, target);
+                }
+
+                return target;
+            }
+
+            @Override
+            public Set<T> unpickle(CborIO source) throws Exception {
+
+                final int size = source.readLength(CborIO.MAJOR_ARRAY);
+                final Set<T> result = newInstance(setClass);
+
+                for (int i = 0; i < size; ++i) {
+                    result.add(source.read(elemPickler));
+                }
+
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public Pickler<Object, CborIO> d_object_p() {
+        return dynObjectP;
+    }
+
+    @Override
+    protected <T, S extends T> Pickler<S, CborIO> createDynamicPickler(Class<T> clazz) {
+        return new DynamicObjectCborPickler<S>(this, clazz);
+    }
+
+    @Override
+    public ObjectPickler<CborIO> object_map() {
+        return objectMapP;
+    }
+
+    @Override
+    public <T> Pickler<T, CborIO> nullable(final Pickler<T, CborIO> pickler) {
+
+        return new Pickler<T, CborIO>() {
+
+            @Override
+            public CborIO pickle(T t, CborIO target) throws Exception {
+                if (t == null) {
+                    target.writeNull();
+                    return target;
+                } else {
+                    return pickler.pickle(t, target);
+                }
+            }
+
+            @Override
+            public T unpickle(CborIO source) throws Exception {
+                if (source.skipIf(CborIO.NULL)) {
+                    return null;
+                } else {
+                    return pickler.unpickle(source);
+                }
+            }
+        };
+    }
+}
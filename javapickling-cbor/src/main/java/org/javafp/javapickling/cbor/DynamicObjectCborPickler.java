@@ -0,0 +1,113 @@
+package org.javafp.javapickling.cbor;
+
+import org.javafp.javapickling.core.DynamicObjectPickler;
+import org.javafp.javapickling.core.MetaType;
+import org.javafp.javapickling.core.PicklerCore;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dynamic object pickler which uses plain CBOR values wherever the type can be recovered from the value:
+ * <ul>
+ *     <li>null, booleans and strings;</li>
+ *     <li>ints, and longs outside the range of an int, as integers;</li>
+ *     <li>floats and doubles as single and double precision floats;</li>
+ *     <li>byte arrays as byte strings;</li>
+ *     <li>lists as arrays;</li>
+ *     <li>maps with string keys as definite-length maps.</li>
+ * </ul>
+ * Other values are tagged with their type, in an indefinite-length map,
+ * so the two kinds of map can be told apart without looking at the keys.
+ */
+public class DynamicObjectCborPickler<T> extends DynamicObjectPickler<T, CborIO> {
+
+    public DynamicObjectCborPickler(PicklerCore<CborIO> core, Class<? super T> clazz) {
+        super(core, clazz);
+    }
+
+    @Override
+    protected OptimalResult<CborIO> optimalPickle(MetaType metaType, T obj, CborIO target) throws Exception {
+        if (obj instanceof byte[]) {
+            return OptimalResult.success(byte_array_p().pickle((byte[])obj, target));
+        } else if (metaType.arrayDepth > 0) {
+            return OptimalResult.failure();
+        }
+
+        switch(metaType.typeKind) {
+            case NULL:
+                return OptimalResult.success(null_p().pickle(obj, target));
+            case BOOLEAN:
+                return OptimalResult.success(boolean_p().pickle((Boolean)obj, target));
+            case STRING:
+                return OptimalResult.success(string_p().pickle((String)obj, target));
+            case INT:
+                return OptimalResult.success(integer_p().pickle((Integer)obj, target));
+            case LONG: {
+                final long l = (Long)obj;
+                if (l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE) {
+                    return OptimalResult.failure();
+                }
+                return OptimalResult.success(long_p().pickle(l, target));
+            }
+            case FLOAT:
+                return OptimalResult.success(float_p().pickle((Float)obj, target));
+            case DOUBLE:
+                return OptimalResult.success(double_p().pickle((Double)obj, target));
+            case LIST:
+                return OptimalResult.success(list_p(d_object_p()).pickle((List)obj, target));
+            case MAP: {
+                final Map<?, ?> map = (Map<?, ?>)obj;
+                if (!isPlainStringMap(map)) {
+                    return OptimalResult.failure();
+                }
+                return OptimalResult.success(map_p(d_object_p()).pickle((Map)map, target));
+            }
+            default:
+                return OptimalResult.failure();
+        }
+    }
+
+    @Override
+    protected OptimalResult<T> optimalUnpickle(CborIO source) throws Exception {
+        final int ib = source.peek();
+        switch (ib >> 5) {
+            case CborIO.MAJOR_UINT:
+            case CborIO.MAJOR_NINT: {
+                final long l = source.readInteger();
+                if (l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE) {
+                    return OptimalResult.success((int)l);
+                } else {
+                    return OptimalResult.success(l);
+                }
+            }
+            case CborIO.MAJOR_BYTES:
+                return OptimalResult.success(byte_array_p().unpickle(source));
+            case CborIO.MAJOR_TEXT:
+                return OptimalResult.success(string_p().unpickle(source));
+            case CborIO.MAJOR_ARRAY:
+                return OptimalResult.success(list_p(d_object_p()).unpickle(source));
+            case CborIO.MAJOR_MAP:
+                if ((ib & 0x1F) == 0x1F) {
+                    // An indefinite-length map is a tagged value.
+                    return OptimalResult.failure();
+                }
+                return OptimalResult.success(map_p(d_object_p()).unpickle(source));
+            default:
+                switch (ib) {
+                    case CborIO.NULL:
+                        return OptimalResult.success(null_p().unpickle(source));
+                    case CborIO.TRUE:
+                    case CborIO.FALSE:
+                        return OptimalResult.success(boolean_p().unpickle(source));
+                    case CborIO.HALF:
+                    case CborIO.FLOAT:
+                        return OptimalResult.success(float_p().unpickle(source));
+                    case CborIO.DOUBLE:
+                        return OptimalResult.success(double_p().unpickle(source));
+                    default:
+                        return OptimalResult.failure();
+                }
+        }
+    }
+}
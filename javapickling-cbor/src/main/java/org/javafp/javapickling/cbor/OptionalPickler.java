@@ -0,0 +1,35 @@
+package org.javafp.javapickling.cbor;
+
+import com.google.common.base.Optional;
+import org.javafp.javapickling.core.Pickler;
+import org.javafp.javapickling.core.PicklerBase;
+import org.javafp.javapickling.core.PicklerCore;
+
+public class OptionalPickler<T> extends PicklerBase<Optional<T>, CborIO> {
+
+    private final Pickler<T, CborIO> valuePickler;
+
+    public OptionalPickler(PicklerCore<CborIO> core, Pickler<T, CborIO> valuePickler) {
+        super(core, Optional.class);
+        this.valuePickler = valuePickler;
+    }
+
+    @Override
+    public CborIO pickle(Optional<T> optional, CborIO target) throws Exception {
+        if (optional.isPresent()) {
+            return valuePickler.pickle(optional.get(), target);
+        } else {
+            target.writeNull();
+            return target;
+        }
+    }
+
+    @Override
+    public Optional<T> unpickle(CborIO source) throws Exception {
+        if (source.skipIf(CborIO.NULL)) {
+            return Optional.absent();
+        } else {
+            return Optional.of(valuePickler.unpickle(source));
+        }
+    }
+}
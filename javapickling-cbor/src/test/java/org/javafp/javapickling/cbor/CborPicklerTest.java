@@ -0,0 +1,136 @@
+package org.javafp.javapickling.cbor;
+
+import org.javafp.javapickling.common.*;
+import org.javafp.javapickling.core.Pickler;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class CborPicklerTest {
+
+    private static final CborPicklerCore picklerCore = CborPicklerCore.create();
+
+    static {
+        picklerCore.registerClassShortName(Colour.class);
+        picklerCore.registerClassShortName(ComplexClass.class);
+        picklerCore.registerClassShortName(Generic.class);
+        picklerCore.registerClassShortName(IdWrapper.class);
+    }
+
+    @Test
+    public void testPickle() throws Exception {
+
+        final ComplexClass simple = ComplexClass.createInstance(true);
+
+        final RoundTrip cborTimeMs = roundTripViaCbor(simple);
+        System.out.println(cborTimeMs);
+
+        Utils.roundTripViaJavaSer(simple);
+        final RoundTrip javaSerTimeMs = Utils.roundTripViaJavaSer(simple);
+        System.out.println(javaSerTimeMs);
+    }
+
+    @Test
+    public void testEncoding() throws Exception {
+
+        // Examples from RFC 8949 Appendix A.
+        assertEncoding("00", picklerCore.integer_p(), 0);
+        assertEncoding("17", picklerCore.integer_p(), 23);
+        assertEncoding("1818", picklerCore.integer_p(), 24);
+        assertEncoding("1903e8", picklerCore.integer_p(), 1000);
+        assertEncoding("3863", picklerCore.integer_p(), -100);
+        assertEncoding("1b000000e8d4a51000", picklerCore.long_p(), 1000000000000L);
+        assertEncoding("fb3ff199999999999a", picklerCore.double_p(), 1.1);
+        assertEncoding("fa47c35000", picklerCore.float_p(), 100000.0f);
+        assertEncoding("f5", picklerCore.boolean_p(), true);
+        assertEncoding("6449455446", picklerCore.string_p(), "IETF");
+        assertEncoding("4401020304", picklerCore.byte_array_p(), new byte[]{1, 2, 3, 4});
+        assertEncoding("83010203", picklerCore.list_p(picklerCore.integer_p()), Arrays.asList(1, 2, 3));
+
+        final Map<String, String> map = new TreeMap<String, String>();
+        map.put("a", "A");
+        map.put("b", "B");
+        assertEncoding("a26161614161626142", picklerCore.map_p(picklerCore.string_p()), map);
+    }
+
+    @Test
+    public void testDynamicValues() throws Exception {
+
+        final List<Object> values = Utils.createDynamicValues();
+
+        final Pickler<List<Object>, CborIO> pickler = picklerCore.list_p(picklerCore.d_object_p());
+
+        Assert.assertEquals(values, CborPicklerCore.unpickle(pickler, CborPicklerCore.pickle(pickler, values)));
+
+        // Plain values carry no type tag.
+        Assert.assertEquals("f6", hex(CborPicklerCore.pickle(picklerCore.d_object_p(), null)));
+        Assert.assertEquals("1903e8", hex(CborPicklerCore.pickle(picklerCore.d_object_p(), 1000)));
+        Assert.assertEquals("fa3fc00000", hex(CborPicklerCore.pickle(picklerCore.d_object_p(), 1.5f)));
+    }
+
+    @Test
+    public void testExtract() throws Exception {
+
+        final ComplexClass complex = ComplexClass.createInstance(true);
+        final byte[] bytes = CborPicklerCore.pickle(picklerCore.object_p(ComplexClass.class), complex);
+
+        Assert.assertEquals("first", CborPicklerCore.extract(bytes, picklerCore.string_p(), "stringF"));
+        Assert.assertEquals(34.56, CborPicklerCore.extract(bytes, picklerCore.double_p(), "strDblMapF.Bcd"), 0.0);
+        Assert.assertEquals(Colour.BLUE, CborPicklerCore.extract(bytes, picklerCore.enum_p(Colour.class), "intEnumMapF.45"));
+        Assert.assertEquals("Aristotle", CborPicklerCore.extract(bytes, picklerCore.string_p(), "strArrF[2]"));
+        Assert.assertEquals(
+                new IdWrapper("Constantine"),
+                CborPicklerCore.extract(bytes, picklerCore.object_p(IdWrapper.class), "idWrapArrF[0]"));
+        Assert.assertNull(CborPicklerCore.extract(bytes, picklerCore.string_p(), "strListF[5]"));
+
+        // Skip a string which is longer than the copy chunk.
+        final char[] chars = new char[20000];
+        Arrays.fill(chars, 'x');
+        final List<String> strings = Arrays.asList(new String(chars), "last");
+        final byte[] listBytes = CborPicklerCore.pickle(picklerCore.list_p(picklerCore.string_p()), strings);
+        Assert.assertEquals("last", CborPicklerCore.extract(listBytes, picklerCore.string_p(), "[1]"));
+    }
+
+    private static <T> void assertEncoding(String expected, Pickler<T, CborIO> pickler, T value) throws Exception {
+        final byte[] bytes = CborPicklerCore.pickle(pickler, value);
+        Assert.assertEquals(expected, hex(bytes));
+
+        final T value2 = CborPicklerCore.unpickle(pickler, bytes);
+        if (value instanceof byte[]) {
+            Assert.assertArrayEquals((byte[])value, (byte[])value2);
+        } else {
+            Assert.assertEquals(value, value2);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        final StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b & 0xFF));
+        }
+        return sb.toString();
+    }
+
+    private static RoundTrip roundTripViaCbor(ComplexClass complex) throws Exception {
+
+        final Pickler<ComplexClass, CborIO> pickler = picklerCore.object_p(ComplexClass.class);
+
+        final long startTime1 = System.nanoTime();
+        final byte[] ba = CborPicklerCore.pickle(pickler, complex);
+        final long endTime1 = System.nanoTime();
+
+        final int size = ba.length;
+
+        final long startTime2 = System.nanoTime();
+        final ComplexClass complex2 = CborPicklerCore.unpickle(pickler, ba);
+        final long endTime2 = System.nanoTime();
+
+        Assert.assertEquals(complex, complex2);
+
+        return new RoundTrip("CborPickler", endTime1 - startTime1, endTime2 - startTime2, size);
+    }
+}
@@ -0,0 +1,213 @@
+package org.javafp.javapickling.byteio;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * ByteBufferData adapts a ByteBuffer to the DataInput and DataOutput interfaces,
+ * so that a ByteIO can read and write directly to a buffer, including a memory-mapped one.
+ * Values are read and written at the buffer's position, which must be big-endian to match DataOutput.
+ * Reading past the buffer's limit throws an EOFException, as for any other DataInput,
+ * and so does skipBytes() - a skip which runs off the end of a buffer means the data is truncated.
+ */
+public class ByteBufferData implements DataInput, DataOutput {
+
+    public final ByteBuffer buffer;
+
+    public ByteBufferData(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    // DataInput.
+
+    private void require(int n) throws EOFException {
+        if (buffer.remaining() < n) {
+            throw new EOFException("Expected " + n + " bytes but only " + buffer.remaining() + " remain");
+        }
+    }
+
+    @Override
+    public void readFully(byte[] b) throws IOException {
+        readFully(b, 0, b.length);
+    }
+
+    @Override
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        require(len);
+        buffer.get(b, off, len);
+    }
+
+    @Override
+    public int skipBytes(int n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        require(n);
+        buffer.position(buffer.position() + n);
+        return n;
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException {
+        require(1);
+        return buffer.get() != 0;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        require(1);
+        return buffer.get();
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException {
+        require(1);
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        require(2);
+        return buffer.getShort();
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException {
+        require(2);
+        return buffer.getShort() & 0xFFFF;
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        require(2);
+        return buffer.getChar();
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        require(4);
+        return buffer.getInt();
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        require(8);
+        return buffer.getLong();
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        require(4);
+        return buffer.getFloat();
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+        require(8);
+        return buffer.getDouble();
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        if (!buffer.hasRemaining()) {
+            return null;
+        }
+        final StringBuilder sb = new StringBuilder();
+        while (buffer.hasRemaining()) {
+            final int c = buffer.get() & 0xFF;
+            if (c == '\n') {
+                break;
+            } else if (c == '\r') {
+                if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n') {
+                    buffer.get();
+                }
+                break;
+            }
+            sb.append((char)c);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+
+    // DataOutput.
+
+    @Override
+    public void write(int b) throws IOException {
+        buffer.put((byte)b);
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException {
+        buffer.put(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        buffer.put(b, off, len);
+    }
+
+    @Override
+    public void writeBoolean(boolean v) throws IOException {
+        buffer.put(v ? (byte)1 : (byte)0);
+    }
+
+    @Override
+    public void writeByte(int v) throws IOException {
+        buffer.put((byte)v);
+    }
+
+    @Override
+    public void writeShort(int v) throws IOException {
+        buffer.putShort((short)v);
+    }
+
+    @Override
+    public void writeChar(int v) throws IOException {
+        buffer.putChar((char)v);
+    }
+
+    @Override
+    public void writeInt(int v) throws IOException {
+        buffer.putInt(v);
+    }
+
+    @Override
+    public void writeLong(long v) throws IOException {
+        buffer.putLong(v);
+    }
+
+    @Override
+    public void writeFloat(float v) throws IOException {
+        buffer.putFloat(v);
+    }
+
+    @Override
+    public void writeDouble(double v) throws IOException {
+        buffer.putDouble(v);
+    }
+
+    @Override
+    public void writeBytes(String s) throws IOException {
+        for (int i = 0; i < s.length(); ++i) {
+            buffer.put((byte)s.charAt(i));
+        }
+    }
+
+    @Override
+    public void writeChars(String s) throws IOException {
+        for (int i = 0; i < s.length(); ++i) {
+            buffer.putChar(s.charAt(i));
+        }
+    }
+
+    @Override
+    public void writeUTF(String s) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new DataOutputStream(baos).writeUTF(s);
+        buffer.put(baos.toByteArray());
+    }
+}
@@ -1,5 +1,7 @@
 package org.javafp.javapickling.byteio;
 
+import org.javafp.javapickling.core.ObjectPickler;
+
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
@@ -11,13 +13,25 @@ public class ByteIO {
     public final DataInput input;
     public final DataOutput output;
 
+    // Takes over from the core's object map, for a target or source which handles the fields itself.
+    final ObjectPickler<ByteIO> objectMap;
+
     public ByteIO(DataInput input) {
-        this.input = input;
-        this.output = null;
+        this(null, input, null);
     }
 
     public ByteIO(DataOutput output) {
-        this.input = null;
+        this(null, null, output);
+    }
+
+    /**
+     * @param objectMap the object map which object picklers given this ByteIO use in place of the core's.
+     * @param input the input, or null.
+     * @param output the output, or null.
+     */
+    ByteIO(ObjectPickler<ByteIO> objectMap, DataInput input, DataOutput output) {
+        this.objectMap = objectMap;
+        this.input = input;
         this.output = output;
     }
 
@@ -26,6 +40,49 @@ public class ByteIO {
         output.writeChars(s);
     }
 
+    /**
+     * Write an unsigned value as a varint - seven bits per byte, least significant first.
+     * @param v the value.
+     * @throws IOException
+     */
+    public void writeVarint(long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            output.writeByte((int)((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        output.writeByte((int)v);
+    }
+
+    public long readVarint() throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = input.readByte();
+            result |= (long)(b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Skip over bytes of the input, without reading them into a buffer.
+     * @param n the number of bytes to skip.
+     * @throws IOException if the input ends before n bytes have been skipped.
+     */
+    public void skipFully(int n) throws IOException {
+        while (n > 0) {
+            final int skipped = input.skipBytes(n);
+            if (skipped > 0) {
+                n -= skipped;
+            } else {
+                // skipBytes() may skip nothing without being at the end, so read a byte to make progress.
+                input.readByte();
+                --n;
+            }
+        }
+    }
+
     public String readString() throws IOException {
         final int len = input.readInt();
         final char[] charArray = new char[len];
@@ -3,13 +3,28 @@ package org.javafp.javapickling.byteio;
 import com.google.common.base.Optional;
 import org.javafp.javapickling.core.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 /**
  * PicklerCore implementation which pickles objects to byte[] data, via the ByteIO wrapper.
+ * <p>
+ * In tabled mode each object is preceded by a table of its field offsets,
+ * so that it can be read lazily through an ObjectView - see setTabled().
  */
 public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
 
@@ -19,12 +34,125 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
         return core;
     }
 
+    /**
+     * Create a new core which shares this core's registrations and picklers.
+     * Registrations made on the fork are not visible to this core.
+     * The fork creates its own picklers once it diverges from this core,
+     * i.e. on its first registration or change of setting.
+     * @return the forked core.
+     */
+    public ByteIOPicklerCore fork() {
+        return new ByteIOPicklerCore(this);
+    }
+
     protected void initialise() {
         super.initialise();
         registerGeneric(Optional.class, OptionalPickler.class);
     }
 
-    protected final Pickler<Object, ByteIO> nullP = new Pickler<Object, ByteIO>() {
+    /**
+     * Utility function to extract a value nested within ByteIO data read from an InputStream,
+     * such as "members.DEVELOPER[0].name".
+     * <p>
+     * ByteIO data isn't self-describing, so unlike the other cores the pickler is the one the whole value
+     * was pickled with, and the path is navigated through its pickler tree.
+     * Everything ahead of the value is skipped over without being unpickled, wherever the picklers allow -
+     * objects must pickle each of their fields once, in the order their pickler created them.
+     * The value is unpickled with the pickler the tree holds for it.
+     * The stream is not closed.
+     * @param is
+     * @param pickler the pickler for the whole value.
+     * @param path the path to the nested value.
+     * @param <T> the type of the nested value.
+     * @return the nested value, or null if the path does not exist.
+     * @throws Exception
+     */
+    public static <T> T extract(InputStream is, Pickler<?, ByteIO> pickler, String path) throws Exception {
+        return extract(new ByteIO(new DataInputStream(is)), pickler, path);
+    }
+
+    /**
+     * Utility function to extract a value nested within ByteIO data - see extract(InputStream, Pickler, String).
+     * @param bytes
+     * @param pickler the pickler for the whole value.
+     * @param path the path to the nested value.
+     * @param <T> the type of the nested value.
+     * @return the nested value, or null if the path does not exist.
+     * @throws Exception
+     */
+    public static <T> T extract(byte[] bytes, Pickler<?, ByteIO> pickler, String path) throws Exception {
+        return extract(new ByteIO((DataInput)new ByteBufferData(ByteBuffer.wrap(bytes))), pickler, path);
+    }
+
+    private static <T> T extract(ByteIO source, Pickler<?, ByteIO> pickler, String path) throws Exception {
+        final FieldPath fieldPath = FieldPath.parse(path);
+        Pickler<?, ByteIO> valuePickler = pickler;
+        for (int i = 0; i < fieldPath.size() && valuePickler != null; ++i) {
+            valuePickler = NavigablePickler.seek(valuePickler, source, fieldPath, i);
+        }
+        return valuePickler != null ? (T)valuePickler.unpickle(source) : null;
+    }
+
+    // Skip over the elements of a collection.
+    private static void skipElements(int size, Pickler<?, ByteIO> elemPickler, ByteIO source) throws Exception {
+        for (int i = 0; i < size; ++i) {
+            NavigablePickler.skip(elemPickler, source);
+        }
+    }
+
+    // Seek to an element of a collection pickled as its size followed by its elements.
+    private static Pickler<?, ByteIO> seekElement(ByteIO source, FieldPath path, int i, Pickler<?, ByteIO> elemPickler)
+            throws Exception {
+        if (!path.isIndex(i)) {
+            return null;
+        }
+
+        final int size = source.input.readInt();
+        final int index = path.index(i);
+        if (index >= size) {
+            return null;
+        }
+
+        skipElements(index, elemPickler, source);
+        return elemPickler;
+    }
+
+    // Seek to an element of a primitive array, whose elements are all the same width.
+    private static Pickler<?, ByteIO> seekPacked(ByteIO source, FieldPath path, int i, int width, Pickler<?, ByteIO> elemPickler)
+            throws IOException {
+        if (!path.isIndex(i)) {
+            return null;
+        }
+
+        final int size = source.input.readInt();
+        final int index = path.index(i);
+        if (index >= size) {
+            return null;
+        }
+
+        source.skipFully(width * index);
+        return elemPickler;
+    }
+
+    // Read past a pickled string, and return whether it equals the name, without allocating a String.
+    private static boolean readKey(ByteIO source, String name) throws IOException {
+        final int len = source.input.readInt();
+        if (len != name.length()) {
+            source.skipFully(2 * len);
+            return false;
+        }
+
+        for (int i = 0; i < len; ++i) {
+            if (source.input.readChar() != name.charAt(i)) {
+                source.skipFully(2 * (len - i - 1));
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    protected final Pickler<Object, ByteIO> nullP = new NavigablePickler<Object>() {
 
         @Override
         public ByteIO pickle(Object obj, ByteIO target) throws Exception {
@@ -35,9 +163,13 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
         public Object unpickle(ByteIO source) throws Exception {
             return null;
         }
+
+        @Override
+        void skip(ByteIO source) throws Exception {
+        }
     };
 
-    protected final Pickler<Boolean, ByteIO> boolP = new Pickler<Boolean, ByteIO>() {
+    protected final Pickler<Boolean, ByteIO> boolP = new NavigablePickler<Boolean>() {
 
         @Override
         public ByteIO pickle(Boolean b, ByteIO target) throws Exception {
@@ -49,9 +181,14 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
         public Boolean unpickle(ByteIO source) throws Exception {
             return source.input.readBoolean();
         }
+
+        @Override
+        void skip(ByteIO source) throws Exception {
+            source.skipFully(1);
+        }
     };
 
-    protected final Pickler<Byte, ByteIO> byteP = new Pickler<Byte, ByteIO>() {
+    protected final Pickler<Byte, ByteIO> byteP = new NavigablePickler<Byte>() {
 
         @Override
         public ByteIO pickle(Byte b, ByteIO target) throws Exception {
@@ -63,9 +200,14 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
         public Byte unpickle(ByteIO source) throws Exception {
             return source.input.readByte();
         }
+
+        @Override
+        void skip(ByteIO source) throws Exception {
+            source.skipFully(1);
+        }
     };
 
-    protected final Pickler<Character, ByteIO> charP = new Pickler<Character, ByteIO>() {
+    protected final Pickler<Character, ByteIO> charP = new NavigablePickler<Character>() {
 
         @Override
         public ByteIO pickle(Character c, ByteIO target) throws Exception {
@@ -77,9 +219,14 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
         public Character unpickle(ByteIO source) throws Exception {
             return source.input.readChar();
         }
+
+        @Override
+        void skip(ByteIO source) throws Exception {
+            source.skipFully(2);
+        }
     };
 
-    protected final Pickler<String, ByteIO> stringP = new Pickler<String, ByteIO>() {
+    protected final Pickler<String, ByteIO> stringP = new NavigablePickler<String>() {
 
         @Override
         public ByteIO pickle(String s, ByteIO target) throws Exception {
@@ -91,9 +238,14 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
         public String unpickle(ByteIO source) throws Exception {
             return source.readString();
         }
+
+        @Override
+        void skip(ByteIO source) throws Exception {
+            source.skipFully(2 * source.input.readInt());
+        }
     };
 
-    protected final Pickler<Integer, ByteIO> integerP = new Pickler<Integer, ByteIO>() {
+    protected final Pickler<Integer, ByteIO> integerP = new NavigablePickler<Integer>() {
 
         @Override
         public ByteIO pickle(Integer i, ByteIO target) throws Exception {
@@ -105,9 +257,14 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
         public Integer unpickle(ByteIO source) throws Exception {
             return source.input.readInt();
         }
+
+        @Override
+        void skip(ByteIO source) throws Exception {
+            source.skipFully(4);
+        }
     };
 
-    protected final Pickler<Short, ByteIO> shortP = new Pickler<Short, ByteIO>() {
+    protected final Pickler<Short, ByteIO> shortP = new NavigablePickler<Short>() {
 
         @Override
         public ByteIO pickle(Short s, ByteIO target) throws Exception {
@@ -119,9 +276,14 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
         public Short unpickle(ByteIO source) throws Exception {
             return source.input.readShort();
         }
+
+        @Override
+        void skip(ByteIO source) throws Exception {
+            source.skipFully(2);
+        }
     };
 
-    protected final Pickler<Long, ByteIO> longP = new Pickler<Long, ByteIO>() {
+    protected final Pickler<Long, ByteIO> longP = new NavigablePickler<Long>() {
 
         @Override
         public ByteIO pickle(Long l, ByteIO target) throws Exception {
@@ -133,9 +295,14 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
         public Long unpickle(ByteIO source) throws Exception {
             return source.input.readLong();
         }
+
+        @Override
+        void skip(ByteIO source) throws Exception {
+            source.skipFully(8);
+        }
     };
 
-    protected final Pickler<Float, ByteIO> floatP = new Pickler<Float, ByteIO>() {
+    protected final Pickler<Float, ByteIO> floatP = new NavigablePickler<Float>() {
 
         @Override
         public ByteIO pickle(Float f, ByteIO target) throws Exception {
@@ -147,9 +314,14 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
         public Float unpickle(ByteIO source) throws Exception {
             return source.input.readFloat();
         }
+
+        @Override
+        void skip(ByteIO source) throws Exception {
+            source.skipFully(4);
+        }
     };
 
-    protected final Pickler<Double, ByteIO> doubleP = new Pickler<Double, ByteIO>() {
+    protected final Pickler<Double, ByteIO> doubleP = new NavigablePickler<Double>() {
 
         @Override
         public ByteIO pickle(Double d, ByteIO target) throws Exception {
@@ -161,9 +333,14 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
         public Double unpickle(ByteIO source) throws Exception {
             return source.input.readDouble();
         }
+
+        @Override
+        void skip(ByteIO source) throws Exception {
+            source.skipFully(8);
+        }
     };
 
-    protected final Pickler<boolean[], ByteIO> booleanArrayP = new Pickler<boolean[], ByteIO>() {
+    protected final Pickler<boolean[], ByteIO> booleanArrayP = new NavigablePickler<boolean[]>() {
 
         final Pickler<Boolean, ByteIO> elemPickler = boolean_p();
 
@@ -191,9 +368,19 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
 
             return result;
         }
+
+        @Override
+        void skip(ByteIO source) throws Exception {
+            source.skipFully(source.input.readInt());
+        }
+
+        @Override
+        Pickler<?, ByteIO> seek(ByteIO source, FieldPath path, int i) throws Exception {
+            return seekPacked(source, path, i, 1, elemPickler);
+        }
     };
 
-    protected final Pickler<byte[], ByteIO> byteArrayP = new Pickler<byte[], ByteIO>() {
+    protected final Pickler<byte[], ByteIO> byteArrayP = new NavigablePickler<byte[]>() {
 
         final Pickler<Byte, ByteIO> elemPickler = byte_p();
 
@@ -221,9 +408,19 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
 
             return result;
         }
+
+        @Override
+        void skip(ByteIO source) throws Exception {
+            source.skipFully(source.input.readInt());
+        }
+
+        @Override
+        Pickler<?, ByteIO> seek(ByteIO source, FieldPath path, int i) throws Exception {
+            return seekPacked(source, path, i, 1, elemPickler);
+        }
     };
 
-    protected final Pickler<char[], ByteIO> charArrayP = new Pickler<char[], ByteIO>() {
+    protected final Pickler<char[], ByteIO> charArrayP = new NavigablePickler<char[]>() {
 
         final Pickler<Character, ByteIO> elemPickler = char_p();
 
@@ -251,9 +448,19 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
 
             return result;
         }
+
+        @Override
+        void skip(ByteIO source) throws Exception {
+            source.skipFully(2 * source.input.readInt());
+        }
+
+        @Override
+        Pickler<?, ByteIO> seek(ByteIO source, FieldPath path, int i) throws Exception {
+            return seekPacked(source, path, i, 2, elemPickler);
+        }
     };
 
-    protected final Pickler<int[], ByteIO> integerArrayP = new Pickler<int[], ByteIO>() {
+    protected final Pickler<int[], ByteIO> integerArrayP = new NavigablePickler<int[]>() {
 
         final Pickler<Integer, ByteIO> elemPickler = integer_p();
 
@@ -281,9 +488,19 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
 
             return result;
         }
+
+        @Override
+        void skip(ByteIO source) throws Exception {
+            source.skipFully(4 * source.input.readInt());
+        }
+
+        @Override
+        Pickler<?, ByteIO> seek(ByteIO source, FieldPath path, int i) throws Exception {
+            return seekPacked(source, path, i, 4, elemPickler);
+        }
     };
 
-    protected final Pickler<short[], ByteIO> shortArrayP = new Pickler<short[], ByteIO>() {
+    protected final Pickler<short[], ByteIO> shortArrayP = new NavigablePickler<short[]>() {
 
         final Pickler<Short, ByteIO> elemPickler = short_p();
 
@@ -311,9 +528,19 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
 
             return result;
         }
+
+        @Override
+        void skip(ByteIO source) throws Exception {
+            source.skipFully(2 * source.input.readInt());
+        }
+
+        @Override
+        Pickler<?, ByteIO> seek(ByteIO source, FieldPath path, int i) throws Exception {
+            return seekPacked(source, path, i, 2, elemPickler);
+        }
     };
 
-    protected final Pickler<long[], ByteIO> longArrayP = new Pickler<long[], ByteIO>() {
+    protected final Pickler<long[], ByteIO> longArrayP = new NavigablePickler<long[]>() {
 
         final Pickler<Long, ByteIO> elemPickler = long_p();
 
@@ -341,9 +568,19 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
 
             return result;
         }
+
+        @Override
+        void skip(ByteIO source) throws Exception {
+            source.skipFully(8 * source.input.readInt());
+        }
+
+        @Override
+        Pickler<?, ByteIO> seek(ByteIO source, FieldPath path, int i) throws Exception {
+            return seekPacked(source, path, i, 8, elemPickler);
+        }
     };
 
-    protected final Pickler<float[], ByteIO> floatArrayP = new Pickler<float[], ByteIO>() {
+    protected final Pickler<float[], ByteIO> floatArrayP = new NavigablePickler<float[]>() {
 
         final Pickler<Float, ByteIO> elemPickler = float_p();
 
@@ -371,9 +608,19 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
 
             return result;
         }
+
+        @Override
+        void skip(ByteIO source) throws Exception {
+            source.skipFully(4 * source.input.readInt());
+        }
+
+        @Override
+        Pickler<?, ByteIO> seek(ByteIO source, FieldPath path, int i) throws Exception {
+            return seekPacked(source, path, i, 4, elemPickler);
+        }
     };
 
-    protected final Pickler<double[], ByteIO> doubleArrayP = new Pickler<double[], ByteIO>() {
+    protected final Pickler<double[], ByteIO> doubleArrayP = new NavigablePickler<double[]>() {
 
         final Pickler<Double, ByteIO> elemPickler = double_p();
 
@@ -401,13 +648,27 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
 
             return result;
         }
+
+        @Override
+        void skip(ByteIO source) throws Exception {
+            source.skipFully(8 * source.input.readInt());
+        }
+
+        @Override
+        Pickler<?, ByteIO> seek(ByteIO source, FieldPath path, int i) throws Exception {
+            return seekPacked(source, path, i, 8, elemPickler);
+        }
     };
 
-    protected final ObjectPickler<ByteIO> objectMapP = new ObjectPickler<ByteIO>() {
+    protected final ObjectPickler<ByteIO> objectMapP = new NavigablePickler.ObjectMap() {
 
         @Override
         public FieldPickler<ByteIO> pickler(final ByteIO target) {
 
+            if (target.objectMap != null) {
+                return target.objectMap.pickler(target);
+            }
+
             return new AbstractFieldPickler(target) {
 
                 @Override
@@ -430,6 +691,10 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
         @Override
         public FieldUnpickler<ByteIO> unpickler(final ByteIO source) {
 
+            if (source.objectMap != null) {
+                return source.objectMap.unpickler(source);
+            }
+
             return new AbstractFieldUnpickler(source) {
 
                 @Override
@@ -443,11 +708,226 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
                 }
             };
         }
+
+        @Override
+        void skip(List<Field<?, ByteIO>> fields, ByteIO source) throws Exception {
+            for (Field<?, ByteIO> field : fields) {
+                NavigablePickler.skip(field.resolve(), source);
+            }
+        }
+
+        @Override
+        Pickler<?, ByteIO> seek(List<Field<?, ByteIO>> fields, ByteIO source, String name) throws Exception {
+            for (Field<?, ByteIO> field : fields) {
+                if (field.name.equals(name)) {
+                    return field.resolve();
+                }
+                NavigablePickler.skip(field.resolve(), source);
+            }
+            return null;
+        }
     };
 
+    protected final ObjectPickler<ByteIO> tabledObjectMapP = new NavigablePickler.ObjectMap() {
+
+        @Override
+        public FieldPickler<ByteIO> pickler(final ByteIO target) {
+
+            if (target.objectMap != null) {
+                return target.objectMap.pickler(target);
+            }
+
+            // The field data is buffered, as the table has to be written ahead of it.
+            final ByteArrayOutputStream data = new ByteArrayOutputStream();
+            final ByteIO dataTarget = new ByteIO(new DataOutputStream(data));
+
+            return new AbstractFieldPickler(target) {
+
+                // The end offset of each field written so far.
+                private int[] ends = new int[16];
+                private int count = 0;
+
+                private void end(int number) {
+                    if (number <= count) {
+                        throw new PicklerException("Field " + number + " was pickled out of order");
+                    }
+                    if (number > ends.length) {
+                        ends = Arrays.copyOf(ends, Math.max(number, 2 * ends.length));
+                    }
+                    // Any fields which were skipped are left empty.
+                    while (count < number) {
+                        ends[count++] = data.size();
+                    }
+                }
+
+                @Override
+                public <T> void field(final String name, final T value, final Pickler<T, ByteIO> pickler) throws Exception {
+                    pickler.pickle(value, dataTarget);
+                    end(count + 1);
+                }
+
+                @Override
+                public <T> void field(Field<T, ByteIO> field, T value) throws Exception {
+                    final int number = field.number > 0 ? field.number : count + 1;
+                    if (number > count + 1) {
+                        end(number - 1);
+                    }
+                    field.pickler.pickle(value, dataTarget);
+                    end(number);
+                }
+
+                @Override
+                public ByteIO pickle(ByteIO target) throws Exception {
+                    target.output.writeInt(count);
+                    for (int i = 0; i < count; ++i) {
+                        target.output.writeInt(ends[i]);
+                    }
+                    target.output.write(data.toByteArray());
+                    return target;
+                }
+            };
+        }
+
+        @Override
+        public FieldUnpickler<ByteIO> unpickler(final ByteIO source) {
+
+            if (source.objectMap != null) {
+                return source.objectMap.unpickler(source);
+            }
+
+            final ObjectView view;
+            try {
+                view = ObjectView.read(source);
+            } catch (IOException ex) {
+                throw new PicklerException("Failed to read tabled object", ex);
+            }
+
+            return new AbstractFieldUnpickler(source) {
+
+                // The number of the last field asked for.
+                private int number = 0;
+
+                @Override
+                public <T> T field(String name, Pickler<T, ByteIO> pickler) throws Exception {
+                    return view.get(++number, pickler);
+                }
+
+                @Override
+                public <T> T field(Field<T, ByteIO> field) throws Exception {
+                    number = field.number > 0 ? field.number : number + 1;
+                    return view.get(number, field.pickler);
+                }
+            };
+        }
+
+        @Override
+        void skip(List<Field<?, ByteIO>> fields, ByteIO source) throws Exception {
+            final int count = source.input.readInt();
+            int end = 0;
+            for (int i = 0; i < count; ++i) {
+                end = source.input.readInt();
+            }
+            source.skipFully(end);
+        }
+
+        @Override
+        Pickler<?, ByteIO> seek(List<Field<?, ByteIO>> fields, ByteIO source, String name) throws Exception {
+            for (Field<?, ByteIO> field : fields) {
+                if (field.name.equals(name)) {
+                    // The field starts where the previous one ends.
+                    final int count = source.input.readInt();
+                    if (field.number > count) {
+                        return null;
+                    }
+                    int start = 0;
+                    for (int i = 1; i <= count; ++i) {
+                        final int end = source.input.readInt();
+                        if (i == field.number - 1) {
+                            start = end;
+                        }
+                    }
+                    source.skipFully(start);
+                    return field.resolve();
+                }
+            }
+            return null;
+        }
+    };
+
+    protected final Pickler<ObjectView, ByteIO> viewP = new Pickler<ObjectView, ByteIO>() {
+
+        @Override
+        public ByteIO pickle(ObjectView view, ByteIO target) throws Exception {
+            view.write(target);
+            return target;
+        }
+
+        @Override
+        public ObjectView unpickle(ByteIO source) throws Exception {
+            return ObjectView.read(source);
+        }
+    };
+
+    protected final Pickler<ListView, ByteIO> listViewP = new Pickler<ListView, ByteIO>() {
+
+        @Override
+        public ByteIO pickle(ListView view, ByteIO target) throws Exception {
+            view.write(target);
+            return target;
+        }
+
+        @Override
+        public ListView unpickle(ByteIO source) throws Exception {
+            return ListView.read(source);
+        }
+    };
+
+    private boolean tabled = false;
+
     private ByteIOPicklerCore() {
     }
 
+    private ByteIOPicklerCore(ByteIOPicklerCore base) {
+        super(base);
+        this.tabled = base.tabled;
+    }
+
+    public boolean isTabled() {
+        return tabled;
+    }
+
+    /**
+     * Select tabled mode, in which each object is written as its field count,
+     * a table of the end offsets of its fields, and then the field data.
+     * Fields are placed by their number, so a pickler must write its fields in increasing order of number.
+     * Tabled objects can be read lazily with view_p() and list_view_p(),
+     * and are unpickled by field number, so a pickler may read a subset of the fields.
+     * <p>
+     * Tabled and untabled data are not interchangeable.
+     * @param tabled true for tabled mode.
+     */
+    public void setTabled(boolean tabled) {
+        if (tabled != this.tabled) {
+            unsharePicklers();
+            this.tabled = tabled;
+        }
+    }
+
+    /**
+     * @return a pickler which reads a tabled object as an ObjectView, and writes it back without decoding it.
+     */
+    public Pickler<ObjectView, ByteIO> view_p() {
+        return viewP;
+    }
+
+    /**
+     * @return a pickler which reads a list or array of tabled objects as a ListView,
+     * and writes it back without decoding it.
+     */
+    public Pickler<ListView, ByteIO> list_view_p() {
+        return listViewP;
+    }
+
     @Override
     public Pickler<Object, ByteIO> null_p() {
         return nullP;
@@ -542,7 +1022,7 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
     @Override
     public <T extends Enum<T>> Pickler<T, ByteIO> enum_p(final Class<T> enumClass) {
 
-        return new Pickler<T, ByteIO>() {
+        return new NavigablePickler<T>() {
 
             @Override
             public ByteIO pickle(T t, ByteIO target) throws Exception {
@@ -554,13 +1034,18 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
             public T unpickle(ByteIO source) throws Exception {
                 return T.valueOf(enumClass, source.readString());
             }
+
+            @Override
+            void skip(ByteIO source) throws Exception {
+                source.skipFully(2 * source.input.readInt());
+            }
         };
     }
 
     @Override
     public <T> Pickler<T[], ByteIO> array_p(final Pickler<T, ByteIO> elemPickler, final Class<T> elemClass) {
 
-        return new Pickler<T[], ByteIO>() {
+        return new NavigablePickler<T[]>() {
 
             @Override
             public ByteIO pickle(T[] arr, ByteIO target) throws Exception {
@@ -586,15 +1071,346 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
 
                 return result;
             }
+
+            @Override
+            void skip(ByteIO source) throws Exception {
+                skipElements(source.input.readInt(), elemPickler, source);
+            }
+
+            @Override
+            Pickler<?, ByteIO> seek(ByteIO source, FieldPath path, int i) throws Exception {
+                return seekElement(source, path, i, elemPickler);
+            }
+        };
+    }
+
+    /**
+     * Counts the bytes written through it to a DataOutput.
+     */
+    private static final class CountingOutputStream extends OutputStream {
+
+        private final DataOutput output;
+
+        long count = 0;
+
+        CountingOutputStream(DataOutput output) {
+            this.output = output;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            output.write(b);
+            ++count;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            output.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * Create a pickler for lists which writes an offset index after the elements,
+     * so that the pickled list can be read lazily, with constant-time access to any element,
+     * through an IndexedListView.
+     * The list can also be unpickled in full, from any source, by this pickler.
+     * @param elemPickler the pickler for the elements.
+     * @param <T> the element type.
+     * @return the pickler.
+     */
+    public <T> Pickler<List<T>, ByteIO> indexed_list_p(final Pickler<T, ByteIO> elemPickler) {
+
+        return new NavigablePickler<List<T>>() {
+
+            @Override
+            public ByteIO pickle(List<T> list, ByteIO target) throws Exception {
+
+                target.output.writeInt(list.size());
+
+                final CountingOutputStream counter = new CountingOutputStream(target.output);
+                final ByteIO elemTarget = new ByteIO(new DataOutputStream(counter));
+
+                final ByteArrayOutputStream lengths = new ByteArrayOutputStream();
+                final ByteIO lengthsTarget = new ByteIO(new DataOutputStream(lengths));
+
+                final ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+                final DataOutputStream blocksOutput = new DataOutputStream(blocks);
+
+                int i = 0;
+                for (T elem : list) {
+                    if (i++ % IndexedListView.BLOCK_SIZE == 0) {
+                        blocksOutput.writeLong(counter.count);
+                        blocksOutput.writeInt(lengths.size());
+                    }
+
+                    final long start = counter.count;
+                    elemPickler.pickle(elem, elemTarget);
+                    lengthsTarget.writeVarint(counter.count - start);
+                }
+
+                target.output.write(lengths.toByteArray());
+                target.output.write(blocks.toByteArray());
+                target.output.writeLong(counter.count);
+                target.output.writeInt(lengths.size());
+
+                return target;
+            }
+
+            @Override
+            public List<T> unpickle(ByteIO source) throws Exception {
+
+                final int size = source.input.readInt();
+                final List<T> result = new ArrayList<T>(size);
+
+                for (int i = 0; i < size; ++i) {
+                    result.add(elemPickler.unpickle(source));
+                }
+
+                skipIndex(size, source);
+
+                return result;
+            }
+
+            @Override
+            void skip(ByteIO source) throws Exception {
+                final int size = source.input.readInt();
+                skipElements(size, elemPickler, source);
+                skipIndex(size, source);
+            }
+
+            @Override
+            Pickler<?, ByteIO> seek(ByteIO source, FieldPath path, int i) throws Exception {
+                return seekElement(source, path, i, elemPickler);
+            }
+
+            private void skipIndex(int size, ByteIO source) throws Exception {
+                for (int i = 0; i < size; ++i) {
+                    source.readVarint();
+                }
+                source.skipFully(
+                        IndexedListView.CHECKPOINT_SIZE * IndexedListView.blockCount(size) +
+                        IndexedListView.TRAILER_SIZE);
+            }
+        };
+    }
+
+    /**
+     * Create a pickler for arrays which uses the same encoding as indexed_list_p(),
+     * so that the pickled array can also be read lazily through an IndexedListView.
+     * @param elemPickler the pickler for the elements.
+     * @param elemClass the element class.
+     * @param <T> the element type.
+     * @return the pickler.
+     */
+    public <T> Pickler<T[], ByteIO> indexed_array_p(final Pickler<T, ByteIO> elemPickler, final Class<T> elemClass) {
+
+        final NavigablePickler<List<T>> listPickler = (NavigablePickler<List<T>>)indexed_list_p(elemPickler);
+
+        return new NavigablePickler<T[]>() {
+
+            @Override
+            public ByteIO pickle(T[] arr, ByteIO target) throws Exception {
+                return listPickler.pickle(Arrays.asList(arr), target);
+            }
+
+            @Override
+            public T[] unpickle(ByteIO source) throws Exception {
+                final List<T> list = listPickler.unpickle(source);
+                return list.toArray((T[])Array.newInstance(elemClass, list.size()));
+            }
+
+            @Override
+            void skip(ByteIO source) throws Exception {
+                listPickler.skip(source);
+            }
+
+            @Override
+            Pickler<?, ByteIO> seek(ByteIO source, FieldPath path, int i) throws Exception {
+                return listPickler.seek(source, path, i);
+            }
         };
     }
 
+    /**
+     * Create a pickler for lists of objects which writes the objects column by column,
+     * one column per field of the object pickler, rather than row by row.
+     * <p>
+     * The list is written as the row count and the column count, followed by each column as its length
+     * in bytes and its values. ByteIO's primitive picklers are fixed-width,
+     * so a primitive column is a packed array, while a string column is dictionary-encoded,
+     * as its distinct values followed by a varint index for each row.
+     * Other columns hold the values as pickled by the field's pickler.
+     * A single column can be read with unpickleColumn(), skipping over the others.
+     * <p>
+     * The object pickler must pickle every one of its fields, through the Field objects it created.
+     * @param pickler the pickler for the objects.
+     * @param <T> the object type.
+     * @return the pickler.
+     */
+    public <T> Pickler<List<T>, ByteIO> columnar_list_p(final PicklerBase<T, ByteIO> pickler) {
+
+        return new NavigablePickler<List<T>>() {
+
+            @Override
+            public ByteIO pickle(List<T> list, ByteIO target) throws Exception {
+
+                final ColumnarRows rows = new ColumnarRows(pickler.fields());
+                for (T elem : list) {
+                    rows.add(pickler, elem);
+                }
+
+                target.output.writeInt(list.size());
+                target.output.writeInt(rows.fields.size());
+
+                for (int i = 0; i < rows.fields.size(); ++i) {
+                    final Field<?, ByteIO> field = rows.fields.get(i);
+                    final List<Object> column = rows.columns.get(i);
+                    if (column.size() != list.size()) {
+                        throw new PicklerException("Field " + field.name + " was not pickled once for each row");
+                    }
+
+                    final ByteArrayOutputStream data = new ByteArrayOutputStream();
+                    pickleColumn(field, column, new ByteIO(new DataOutputStream(data)));
+
+                    target.output.writeInt(data.size());
+                    target.output.write(data.toByteArray());
+                }
+
+                return target;
+            }
+
+            @Override
+            public List<T> unpickle(ByteIO source) throws Exception {
+
+                final int size = source.input.readInt();
+                final ColumnarRows rows = new ColumnarRows(pickler.fields());
+                checkColumnCount(rows.fields, source.input.readInt());
+
+                for (int i = 0; i < rows.fields.size(); ++i) {
+                    source.input.readInt();
+                    rows.columns.set(i, unpickleColumn(rows.fields.get(i), size, source));
+                }
+
+                final List<T> result = new ArrayList<T>(size);
+                for (rows.row = 0; rows.row < size; ++rows.row) {
+                    result.add(rows.get(pickler));
+                }
+
+                return result;
+            }
+
+            @Override
+            void skip(ByteIO source) throws Exception {
+                source.input.readInt();
+                final int count = source.input.readInt();
+                for (int i = 0; i < count; ++i) {
+                    source.skipFully(source.input.readInt());
+                }
+            }
+
+            @Override
+            Pickler<?, ByteIO> seek(ByteIO source, FieldPath path, int i) throws Exception {
+                throw new PicklerException("Can not navigate path '" + path + "' into a columnar list - " +
+                        "use unpickleColumn() instead");
+            }
+        };
+    }
+
+    /**
+     * Unpickle a single column of a list pickled by columnar_list_p(), skipping the other columns.
+     * @param pickler the pickler for the objects.
+     * @param field the field whose column is to be read.
+     * @param source the source, positioned at the start of the list.
+     * @param <T> the field type.
+     * @return the values of the field, one per row.
+     * @throws Exception
+     */
+    public <T> List<T> unpickleColumn(PicklerBase<?, ByteIO> pickler, Field<T, ByteIO> field, ByteIO source)
+            throws Exception {
+
+        final List<Field<?, ByteIO>> fields = pickler.fields();
+        final int index = ColumnarRows.columnIndex(fields, field);
+        if (index < 0) {
+            throw new PicklerException("Field " + field.name + " is not a field of " + pickler.getClass().getName());
+        }
+
+        final int size = source.input.readInt();
+        final int count = source.input.readInt();
+        checkColumnCount(fields, count);
+
+        List<Object> result = null;
+        for (int i = 0; i < count; ++i) {
+            final int length = source.input.readInt();
+            if (i == index) {
+                result = unpickleColumn(field, size, source);
+            } else {
+                source.skipFully(length);
+            }
+        }
+
+        return (List<T>)result;
+    }
+
+    private static void checkColumnCount(List<Field<?, ByteIO>> fields, int count) {
+        if (count != fields.size()) {
+            throw new PicklerException("Expected " + fields.size() + " columns but got " + count);
+        }
+    }
+
+    private void pickleColumn(Field<?, ByteIO> field, List<Object> column, ByteIO target) throws Exception {
+
+        if (field.resolve() == stringP) {
+            final Map<Object, Integer> dictionary = new LinkedHashMap<Object, Integer>();
+            for (Object value : column) {
+                if (!dictionary.containsKey(value)) {
+                    dictionary.put(value, dictionary.size());
+                }
+            }
+
+            target.writeVarint(dictionary.size());
+            for (Object value : dictionary.keySet()) {
+                target.writeString((String)value);
+            }
+            for (Object value : column) {
+                target.writeVarint(dictionary.get(value));
+            }
+        } else {
+            final Pickler<Object, ByteIO> valuePickler = (Pickler<Object, ByteIO>)field.pickler;
+            for (Object value : column) {
+                valuePickler.pickle(value, target);
+            }
+        }
+    }
+
+    private List<Object> unpickleColumn(Field<?, ByteIO> field, int size, ByteIO source) throws Exception {
+
+        final List<Object> column = new ArrayList<Object>(size);
+
+        if (field.resolve() == stringP) {
+            final String[] dictionary = new String[(int)source.readVarint()];
+            for (int i = 0; i < dictionary.length; ++i) {
+                dictionary[i] = source.readString();
+            }
+            for (int i = 0; i < size; ++i) {
+                column.add(dictionary[(int)source.readVarint()]);
+            }
+        } else {
+            final Pickler<?, ByteIO> valuePickler = field.pickler;
+            for (int i = 0; i < size; ++i) {
+                column.add(valuePickler.unpickle(source));
+            }
+        }
+
+        return column;
+    }
+
     @Override
     public <T> Pickler<List<T>, ByteIO> list_p(
             final Pickler<T, ByteIO> elemPickler,
             final Class<? extends List> listClass) {
 
-        return new Pickler<List<T>, ByteIO>() {
+        return new NavigablePickler<List<T>>() {
 
             @Override
             public ByteIO pickle(List<T> list, ByteIO target) throws Exception {
@@ -620,6 +1436,16 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
 
                 return result;
             }
+
+            @Override
+            void skip(ByteIO source) throws Exception {
+                skipElements(source.input.readInt(), elemPickler, source);
+            }
+
+            @Override
+            Pickler<?, ByteIO> seek(ByteIO source, FieldPath path, int i) throws Exception {
+                return seekElement(source, path, i, elemPickler);
+            }
         };
     }
 
@@ -628,7 +1454,7 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
             final Pickler<T, ByteIO> valuePickler,
             final Class<? extends Map> mapClass) {
 
-        return new Pickler<Map<String, T>, ByteIO>() {
+        return new NavigablePickler<Map<String, T>>() {
 
             @Override
             public ByteIO pickle(Map<String, T> map, ByteIO target) throws Exception {
@@ -657,6 +1483,32 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
 
                 return result;
             }
+
+            @Override
+            void skip(ByteIO source) throws Exception {
+                final int size = source.input.readInt();
+                for (int i = 0; i < size; ++i) {
+                    NavigablePickler.skip(stringP, source);
+                    NavigablePickler.skip(valuePickler, source);
+                }
+            }
+
+            @Override
+            Pickler<?, ByteIO> seek(ByteIO source, FieldPath path, int i) throws Exception {
+                if (path.isIndex(i)) {
+                    return null;
+                }
+
+                final int size = source.input.readInt();
+                for (int j = 0; j < size; ++j) {
+                    if (readKey(source, path.name(i))) {
+                        return valuePickler;
+                    }
+                    NavigablePickler.skip(valuePickler, source);
+                }
+
+                return null;
+            }
         };
     }
 
@@ -666,7 +1518,7 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
             final Pickler<V, ByteIO> valuePickler,
             final Class<?  extends Map> mapClass) {
 
-        return new Pickler<Map<K, V>, ByteIO>() {
+        return new NavigablePickler<Map<K, V>>() {
 
             @Override
             public ByteIO pickle(Map<K, V> map, ByteIO target) throws Exception {
@@ -695,6 +1547,33 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
 
                 return result;
             }
+
+            @Override
+            void skip(ByteIO source) throws Exception {
+                final int size = source.input.readInt();
+                for (int i = 0; i < size; ++i) {
+                    NavigablePickler.skip(keyPickler, source);
+                    NavigablePickler.skip(valuePickler, source);
+                }
+            }
+
+            @Override
+            Pickler<?, ByteIO> seek(ByteIO source, FieldPath path, int i) throws Exception {
+                if (path.isIndex(i)) {
+                    return null;
+                }
+
+                // Keys are matched by their string form, so they have to be unpickled.
+                final int size = source.input.readInt();
+                for (int j = 0; j < size; ++j) {
+                    if (String.valueOf(keyPickler.unpickle(source)).equals(path.name(i))) {
+                        return valuePickler;
+                    }
+                    NavigablePickler.skip(valuePickler, source);
+                }
+
+                return null;
+            }
         };
     }
 
@@ -703,7 +1582,7 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
             final Pickler<T, ByteIO> elemPickler,
             final Class<? extends Set> setClass) {
 
-        return new Pickler<Set<T>, ByteIO>() {
+        return new NavigablePickler<Set<T>>() {
 
             @Override
             public ByteIO pickle(Set<T> set, ByteIO target) throws Exception {
@@ -729,18 +1608,28 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
 
                 return result;
             }
+
+            @Override
+            void skip(ByteIO source) throws Exception {
+                skipElements(source.input.readInt(), elemPickler, source);
+            }
+
+            @Override
+            Pickler<?, ByteIO> seek(ByteIO source, FieldPath path, int i) throws Exception {
+                return seekElement(source, path, i, elemPickler);
+            }
         };
     }
 
     @Override
     public ObjectPickler<ByteIO> object_map() {
-        return objectMapP;
+        return tabled ? tabledObjectMapP : objectMapP;
     }
 
     @Override
     public <T> Pickler<T, ByteIO> nullable(final Pickler<T, ByteIO> pickler) {
 
-        return new Pickler<T, ByteIO>() {
+        return new NavigablePickler<T>() {
 
             @Override
             public ByteIO pickle(T t, ByteIO target) throws Exception {
@@ -760,6 +1649,18 @@ public class ByteIOPicklerCore extends PicklerCoreBase<ByteIO> {
                     return null;
                 }
             }
+
+            @Override
+            void skip(ByteIO source) throws Exception {
+                if (source.input.readBoolean()) {
+                    NavigablePickler.skip(pickler, source);
+                }
+            }
+
+            @Override
+            Pickler<?, ByteIO> seek(ByteIO source, FieldPath path, int i) throws Exception {
+                return source.input.readBoolean() ? NavigablePickler.seek(pickler, source, path, i) : null;
+            }
         };
     }
 }
@@ -0,0 +1,156 @@
+package org.javafp.javapickling.byteio;
+
+import org.javafp.javapickling.core.Field;
+import org.javafp.javapickling.core.FieldPickler;
+import org.javafp.javapickling.core.FieldUnpickler;
+import org.javafp.javapickling.core.ObjectPickler;
+import org.javafp.javapickling.core.Pickler;
+import org.javafp.javapickling.core.PicklerException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The object map for the rows of a columnar list.
+ * <p>
+ * Rows are pickled to, and unpickled from, a ByteIO which hands its object pickler this object map
+ * in place of the core's. It records each field value in the field's column, rather than writing it,
+ * and reads each field value back from the column for the current row.
+ * Fields are matched to columns by number, so the object's pickler must create the fields it pickles.
+ * The ByteIO has an output which must be left empty, and an input which is empty,
+ * as an object pickler which reads or writes them directly can't be stored in columns.
+ */
+final class ColumnarRows implements ObjectPickler<ByteIO> {
+
+    final List<Field<?, ByteIO>> fields;
+    final List<List<Object>> columns;
+
+    // The column index of each field, by field number.
+    private final int[] indices;
+
+    // Receives anything an object pickler writes to the output directly.
+    private final ByteArrayOutputStream stray = new ByteArrayOutputStream();
+
+    private final ByteIO target;
+    private final ByteIO source;
+
+    // The row being read.
+    int row = 0;
+
+    ColumnarRows(List<Field<?, ByteIO>> fields) {
+        this.fields = fields;
+        this.columns = new ArrayList<List<Object>>(fields.size());
+        int maxNumber = 0;
+        for (Field<?, ByteIO> field : fields) {
+            columns.add(new ArrayList<Object>());
+            maxNumber = Math.max(maxNumber, field.number);
+        }
+        this.indices = new int[maxNumber + 1];
+        Arrays.fill(indices, -1);
+        for (int i = 0; i < fields.size(); ++i) {
+            indices[fields.get(i).number] = i;
+        }
+        this.target = new ByteIO(this, null, new DataOutputStream(stray));
+        this.source = new ByteIO(this, new DataInputStream(new ByteArrayInputStream(new byte[0])), null);
+    }
+
+    /**
+     * @param fields the fields of an object pickler.
+     * @param field the field.
+     * @return the index of the field's column, or -1 if it isn't one of the fields.
+     */
+    static int columnIndex(List<Field<?, ByteIO>> fields, Field<?, ByteIO> field) {
+        for (int i = 0; i < fields.size(); ++i) {
+            if (fields.get(i).number == field.number) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Pickle an object as the next row, adding its field values to the columns.
+     * @param pickler the object pickler.
+     * @param value the object.
+     * @param <T> the object type.
+     * @throws PicklerException if the pickler writes to the ByteIO output directly.
+     * @throws Exception
+     */
+    <T> void add(Pickler<T, ByteIO> pickler, T value) throws Exception {
+        pickler.pickle(value, target);
+        if (stray.size() != 0) {
+            throw new PicklerException("A columnar list's object pickler must pickle its fields " +
+                    "through object_map(), not the ByteIO output");
+        }
+    }
+
+    /**
+     * Unpickle the current row from the columns.
+     * @param pickler the object pickler.
+     * @param <T> the object type.
+     * @return the object.
+     * @throws PicklerException if the pickler reads from the ByteIO input directly.
+     * @throws Exception
+     */
+    <T> T get(Pickler<T, ByteIO> pickler) throws Exception {
+        try {
+            return pickler.unpickle(source);
+        } catch (EOFException ex) {
+            throw new PicklerException("A columnar list's object pickler must unpickle its fields " +
+                    "through object_map(), not the ByteIO input", ex);
+        }
+    }
+
+    private List<Object> column(Field<?, ByteIO> field) {
+        final int index = field.number > 0 && field.number < indices.length ? indices[field.number] : -1;
+        if (index < 0) {
+            throw new PicklerException("Field " + field.name + " is not a field of the columnar list's pickler");
+        }
+        return columns.get(index);
+    }
+
+    @Override
+    public FieldPickler<ByteIO> pickler(ByteIO target) {
+
+        return new FieldPickler<ByteIO>() {
+
+            @Override
+            public <T> void field(String name, T value, Pickler<T, ByteIO> pickler) throws Exception {
+                throw new PicklerException("Field " + name + " must be pickled through a Field to be stored in a column");
+            }
+
+            @Override
+            public <T> void field(Field<T, ByteIO> field, T value) throws Exception {
+                column(field).add(value);
+            }
+
+            @Override
+            public ByteIO pickle(ByteIO target) throws Exception {
+                return target;
+            }
+        };
+    }
+
+    @Override
+    public FieldUnpickler<ByteIO> unpickler(ByteIO source) {
+
+        return new FieldUnpickler<ByteIO>() {
+
+            @Override
+            public <T> T field(String name, Pickler<T, ByteIO> pickler) throws Exception {
+                throw new PicklerException("Field " + name + " must be unpickled through a Field to be read from a column");
+            }
+
+            @Override
+            public <T> T field(Field<T, ByteIO> field) throws Exception {
+                return (T)column(field).get(row);
+            }
+        };
+    }
+}
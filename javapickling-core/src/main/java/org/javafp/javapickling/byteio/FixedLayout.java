@@ -0,0 +1,118 @@
+package org.javafp.javapickling.byteio;
+
+import com.google.common.collect.Maps;
+import org.javafp.javapickling.core.Field;
+import org.javafp.javapickling.core.Pickler;
+import org.javafp.javapickling.core.PicklerBase;
+import org.javafp.javapickling.core.PicklerException;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The layout of a class whose fields are all fixed-width primitives, as pickled by ByteIOPicklerCore.
+ * <p>
+ * ByteIO writes object fields back-to-back with no framing, so such a class always pickles to a record
+ * of the same size, the stride, and each field is found at a constant offset within the record.
+ * The layout is computed from the fields created by the class's pickler,
+ * which must pickle each of its fields once, in the order they were created.
+ * FixedRecordArray.write() checks this against the first record, with check().
+ * @param <T> the record type.
+ */
+public final class FixedLayout<T> {
+
+    /**
+     * Compute the layout of the records pickled by a pickler.
+     * @param core the core the pickler was created by.
+     * @param pickler the pickler.
+     * @param <T> the record type.
+     * @return the layout.
+     * @throws PicklerException if a field isn't a fixed-width primitive.
+     */
+    public static <T> FixedLayout<T> of(ByteIOPicklerCore core, PicklerBase<T, ByteIO> pickler) {
+
+        final Map<Pickler<?, ByteIO>, Integer> widths = new IdentityHashMap<Pickler<?, ByteIO>, Integer>();
+        widths.put(core.boolean_p(), 1);
+        widths.put(core.byte_p(), 1);
+        widths.put(core.char_p(), 2);
+        widths.put(core.short_p(), 2);
+        widths.put(core.integer_p(), 4);
+        widths.put(core.long_p(), 8);
+        widths.put(core.float_p(), 4);
+        widths.put(core.double_p(), 8);
+
+        final List<Field<?, ByteIO>> fields = pickler.fields();
+        final Map<String, Integer> offsets = Maps.newHashMap();
+
+        int offset = 0;
+        for (Field<?, ByteIO> field : fields) {
+            final Integer width = widths.get(field.resolve());
+            if (width == null) {
+                throw new PicklerException("Field " + field.name + " of " + pickler.getClass().getName() +
+                        " is not a fixed-width primitive");
+            }
+            offsets.put(field.name, offset);
+            offset += width;
+        }
+
+        return new FixedLayout<T>(pickler, offsets, offset);
+    }
+
+    public final Pickler<T, ByteIO> pickler;
+
+    private final Map<String, Integer> offsets;
+    private final int stride;
+
+    private FixedLayout(Pickler<T, ByteIO> pickler, Map<String, Integer> offsets, int stride) {
+        this.pickler = pickler;
+        this.offsets = offsets;
+        this.stride = stride;
+    }
+
+    /**
+     * @return the size in bytes of each record.
+     */
+    public int stride() {
+        return stride;
+    }
+
+    /**
+     * @return the number of fields in each record.
+     */
+    public int fieldCount() {
+        return offsets.size();
+    }
+
+    /**
+     * Pickle a record and check that each of its fields is written at the offset this layout gives it.
+     * The layout is computed from the order the fields were created in,
+     * so this catches a pickler which writes them in a different order.
+     * @param record the record.
+     * @throws PicklerException if a field is written at the wrong offset.
+     * @throws Exception
+     */
+    public void check(T record) throws Exception {
+        FixedLayoutProbe.check(this, record);
+    }
+
+    /**
+     * @param field a field of the record's pickler.
+     * @return the offset of the field within the record.
+     */
+    public int offset(Field<?, ByteIO> field) {
+        return offset(field.name);
+    }
+
+    /**
+     * @param name the name of a field of the record's pickler.
+     * @return the offset of the field within the record.
+     */
+    public int offset(String name) {
+        final Integer offset = offsets.get(name);
+        if (offset == null) {
+            throw new PicklerException("No field called " + name);
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,97 @@
+package org.javafp.javapickling.byteio;
+
+import org.javafp.javapickling.core.Field;
+import org.javafp.javapickling.core.FieldPickler;
+import org.javafp.javapickling.core.FieldUnpickler;
+import org.javafp.javapickling.core.ObjectPickler;
+import org.javafp.javapickling.core.Pickler;
+import org.javafp.javapickling.core.PicklerException;
+
+import java.io.DataOutput;
+import java.nio.ByteBuffer;
+
+/**
+ * An object map which checks that a record is pickled with the offsets of its FixedLayout.
+ * <p>
+ * The record is pickled to a ByteIO which hands its object pickler this object map in place of the core's.
+ * It checks that each field starts at the offset the layout gives it, before writing the field's value
+ * through a plain ByteIO over the same buffer.
+ */
+final class FixedLayoutProbe implements ObjectPickler<ByteIO> {
+
+    private final FixedLayout<?> layout;
+    private final ByteBuffer buffer;
+
+    // The record is pickled to the target, and its fields are written to the fieldTarget.
+    private final ByteIO target;
+    private final ByteIO fieldTarget;
+
+    // The number of fields written so far.
+    private int count = 0;
+
+    private FixedLayoutProbe(FixedLayout<?> layout, ByteBuffer buffer) {
+        final ByteBufferData data = new ByteBufferData(buffer);
+        this.layout = layout;
+        this.buffer = buffer;
+        this.target = new ByteIO(this, null, data);
+        this.fieldTarget = new ByteIO((DataOutput)data);
+    }
+
+    /**
+     * Pickle a record and check that its fields are written at the layout's offsets.
+     * @param layout the layout.
+     * @param record the record.
+     * @param <T> the record type.
+     * @throws PicklerException if a field is written at the wrong offset, or the layout has fields which aren't written.
+     */
+    static <T> void check(FixedLayout<T> layout, T record) throws Exception {
+
+        // Allow for a record which is larger than the stride, so the offsets of its fields can still be reported.
+        final FixedLayoutProbe probe = new FixedLayoutProbe(layout, ByteBuffer.allocate(2 * layout.stride() + 16));
+        layout.pickler.pickle(record, probe.target);
+
+        if (probe.count != layout.fieldCount()) {
+            throw new PicklerException("Record pickled " + probe.count + " fields, but the layout has " +
+                    layout.fieldCount());
+        }
+    }
+
+    private void check(String name) {
+        final int offset = layout.offset(name);
+        if (offset != buffer.position()) {
+            throw new PicklerException("Field " + name + " was pickled at offset " + buffer.position() +
+                    ", but the layout expects it at " + offset +
+                    " - the pickler must pickle its fields in the order it created them");
+        }
+        ++count;
+    }
+
+    @Override
+    public FieldPickler<ByteIO> pickler(ByteIO target) {
+
+        return new FieldPickler<ByteIO>() {
+
+            @Override
+            public <T> void field(String name, T value, Pickler<T, ByteIO> pickler) throws Exception {
+                check(name);
+                pickler.pickle(value, fieldTarget);
+            }
+
+            @Override
+            public <T> void field(Field<T, ByteIO> field, T value) throws Exception {
+                check(field.name);
+                field.pickler.pickle(value, fieldTarget);
+            }
+
+            @Override
+            public ByteIO pickle(ByteIO target) throws Exception {
+                return target;
+            }
+        };
+    }
+
+    @Override
+    public FieldUnpickler<ByteIO> unpickler(ByteIO source) {
+        throw new PicklerException("A FixedLayoutProbe only checks pickling");
+    }
+}
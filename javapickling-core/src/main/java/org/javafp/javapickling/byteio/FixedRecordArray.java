@@ -0,0 +1,217 @@
+package org.javafp.javapickling.byteio;
+
+import org.javafp.javapickling.core.PicklerException;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only, memory-mapped file of fixed-layout records, which can be accessed by index.
+ * <p>
+ * A whole record can be unpickled with get(),
+ * or a single field read in place with one of the typed getters, given its offset from the FixedLayout.
+ * The file is mapped in windows of up to 1GB, each holding a whole number of records,
+ * so files larger than a single mapping are supported.
+ * @param <T> the record type.
+ */
+public final class FixedRecordArray<T> implements Closeable {
+
+    private static final int WINDOW_SIZE = 1 << 30;
+
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Write records to a file, replacing any existing content.
+     * The first record is checked against the layout's field offsets, and every record against its stride.
+     * @param path the file.
+     * @param layout the record layout.
+     * @param records the records.
+     * @param <T> the record type.
+     * @throws Exception
+     */
+    public static <T> void write(Path path, FixedLayout<T> layout, Iterable<? extends T> records) throws Exception {
+
+        final int stride = layout.stride();
+        final ByteBuffer buffer = ByteBuffer.allocate(stride * Math.max(1, WRITE_BUFFER_SIZE / stride));
+        final ByteIO target = new ByteIO((DataOutput)new ByteBufferData(buffer));
+
+        final FileChannel channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        try {
+            boolean first = true;
+            for (T record : records) {
+                if (first) {
+                    layout.check(record);
+                    first = false;
+                }
+
+                if (buffer.remaining() < stride) {
+                    flush(buffer, channel);
+                }
+
+                final int start = buffer.position();
+                layout.pickler.pickle(record, target);
+                if (buffer.position() - start != stride) {
+                    throw new PicklerException("Record pickled to " + (buffer.position() - start) +
+                            " bytes, but the layout stride is " + stride);
+                }
+            }
+
+            flush(buffer, channel);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static void flush(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Map a file of records.
+     * @param path the file.
+     * @param layout the record layout.
+     * @param <T> the record type.
+     * @return the record array, which should be closed once finished with.
+     * @throws IOException
+     */
+    public static <T> FixedRecordArray<T> open(Path path, FixedLayout<T> layout) throws IOException {
+
+        final int stride = layout.stride();
+        if (stride == 0) {
+            throw new PicklerException("Can not map records with no fields");
+        }
+
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            final long fileSize = channel.size();
+            if (fileSize % stride != 0) {
+                throw new PicklerException("File size " + fileSize + " is not a multiple of the stride " + stride);
+            }
+
+            final long size = fileSize / stride;
+            final int recordsPerWindow = Math.max(1, WINDOW_SIZE / stride);
+            final int windowCount = (int)((size + recordsPerWindow - 1) / recordsPerWindow);
+
+            final MappedByteBuffer[] windows = new MappedByteBuffer[windowCount];
+            for (int i = 0; i < windowCount; ++i) {
+                final long start = (long)i * recordsPerWindow * stride;
+                windows[i] = channel.map(
+                        FileChannel.MapMode.READ_ONLY,
+                        start,
+                        Math.min((long)recordsPerWindow * stride, fileSize - start));
+            }
+
+            return new FixedRecordArray<T>(layout, channel, windows, size, recordsPerWindow);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        } catch (RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    public final FixedLayout<T> layout;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] windows;
+    private final long size;
+    private final int recordsPerWindow;
+    private final int stride;
+
+    private FixedRecordArray(
+            FixedLayout<T> layout,
+            FileChannel channel,
+            MappedByteBuffer[] windows,
+            long size,
+            int recordsPerWindow) {
+        this.layout = layout;
+        this.channel = channel;
+        this.windows = windows;
+        this.size = size;
+        this.recordsPerWindow = recordsPerWindow;
+        this.stride = layout.stride();
+    }
+
+    /**
+     * @return the number of records.
+     */
+    public long size() {
+        return size;
+    }
+
+    private ByteBuffer window(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of range for size " + size);
+        }
+        return windows[(int)(index / recordsPerWindow)];
+    }
+
+    private int position(long index, int offset) {
+        return (int)(index % recordsPerWindow) * stride + offset;
+    }
+
+    /**
+     * Unpickle a whole record.
+     * @param index the record index.
+     * @return the record.
+     * @throws Exception
+     */
+    public T get(long index) throws Exception {
+        final ByteBuffer buffer = window(index).duplicate();
+        buffer.position(position(index, 0));
+        return layout.pickler.unpickle(new ByteIO((DataInput)new ByteBufferData(buffer)));
+    }
+
+    public boolean getBoolean(long index, int offset) {
+        return window(index).get(position(index, offset)) != 0;
+    }
+
+    public byte getByte(long index, int offset) {
+        return window(index).get(position(index, offset));
+    }
+
+    public char getChar(long index, int offset) {
+        return window(index).getChar(position(index, offset));
+    }
+
+    public short getShort(long index, int offset) {
+        return window(index).getShort(position(index, offset));
+    }
+
+    public int getInt(long index, int offset) {
+        return window(index).getInt(position(index, offset));
+    }
+
+    public long getLong(long index, int offset) {
+        return window(index).getLong(position(index, offset));
+    }
+
+    public float getFloat(long index, int offset) {
+        return window(index).getFloat(position(index, offset));
+    }
+
+    public double getDouble(long index, int offset) {
+        return window(index).getDouble(position(index, offset));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,148 @@
+package org.javafp.javapickling.byteio;
+
+import org.javafp.javapickling.core.Pickler;
+import org.javafp.javapickling.core.PicklerException;
+
+import java.io.DataInput;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A lazy, read-only view over a list pickled by ByteIOPicklerCore.indexed_list_p().
+ * <p>
+ * The indexed encoding is the element count, the elements, and then an offset index:
+ * the length of each element as a varint, followed by a checkpoint for every block of 64 elements
+ * holding the block's element offset and the position of its first length,
+ * and finally the total length of the elements and of the lengths.
+ * Locating an element therefore takes at most 63 varint reads, regardless of the list size.
+ * <p>
+ * As the index comes after the elements, the view must be given a buffer which ends where the list ends,
+ * such as the whole of a pickled list, or a field of an ObjectView.
+ * Elements are unpickled on each call to get(), and the view may be read from many threads at once,
+ * so sub-ranges can be unpickled in parallel with range().
+ * @param <T> the element type.
+ */
+public final class IndexedListView<T> extends AbstractList<T> implements RandomAccess {
+
+    static final int BLOCK_SIZE = 64;
+
+    // The size of each block checkpoint, and of the trailer.
+    static final int CHECKPOINT_SIZE = 12;
+    static final int TRAILER_SIZE = 12;
+
+    static int blockCount(int size) {
+        return (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    /**
+     * Create a view over the indexed list between the buffer's position and limit.
+     * @param buffer the buffer.
+     * @param elemPickler the pickler for the elements.
+     * @param <T> the element type.
+     * @return the view.
+     */
+    public static <T> IndexedListView<T> of(ByteBuffer buffer, Pickler<T, ByteIO> elemPickler) {
+
+        final ByteBuffer data = ObjectView.slice(buffer, buffer.position(), buffer.remaining());
+        final int end = data.limit();
+        if (end < 4 + TRAILER_SIZE) {
+            throw new PicklerException("Buffer is too short to hold an indexed list");
+        }
+
+        final int size = data.getInt(0);
+        final long elementsLength = data.getLong(end - TRAILER_SIZE);
+        final int lengthsLength = data.getInt(end - 4);
+        final int blocksStart = end - TRAILER_SIZE - CHECKPOINT_SIZE * blockCount(size);
+        if (size < 0 || blocksStart - lengthsLength != 4 + elementsLength) {
+            throw new PicklerException("Buffer does not hold an indexed list");
+        }
+
+        return new IndexedListView<T>(data, elemPickler, size, blocksStart - lengthsLength, blocksStart);
+    }
+
+    public static <T> IndexedListView<T> of(byte[] bytes, Pickler<T, ByteIO> elemPickler) {
+        return of(ByteBuffer.wrap(bytes), elemPickler);
+    }
+
+    private final ByteBuffer data;
+    private final Pickler<T, ByteIO> elemPickler;
+    private final int size;
+    private final int lengthsStart;
+    private final int blocksStart;
+
+    private IndexedListView(ByteBuffer data, Pickler<T, ByteIO> elemPickler, int size, int lengthsStart, int blocksStart) {
+        this.data = data;
+        this.elemPickler = elemPickler;
+        this.size = size;
+        this.lengthsStart = lengthsStart;
+        this.blocksStart = blocksStart;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // Return the position of an element within the data.
+    private int position(int index) {
+        final int checkpoint = blocksStart + CHECKPOINT_SIZE * (index / BLOCK_SIZE);
+        long offset = data.getLong(checkpoint);
+        int pos = lengthsStart + data.getInt(checkpoint + 8);
+
+        for (int i = index - index % BLOCK_SIZE; i < index; ++i) {
+            long len = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data.get(pos++);
+                len |= (long)(b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            offset += len;
+        }
+
+        return 4 + (int)offset;
+    }
+
+    private ByteIO source(int pos) {
+        return new ByteIO((DataInput)new ByteBufferData(ObjectView.slice(data, pos, lengthsStart - pos)));
+    }
+
+    @Override
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of range for size " + size);
+        }
+        try {
+            return elemPickler.unpickle(source(position(index)));
+        } catch (Exception ex) {
+            throw new PicklerException("Failed to unpickle element " + index, ex);
+        }
+    }
+
+    /**
+     * Unpickle a range of elements, reading them in sequence after locating the first.
+     * @param from the index of the first element.
+     * @param to the index after the last element.
+     * @return the elements.
+     * @throws Exception
+     */
+    public List<T> range(int from, int to) throws Exception {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Range " + from + " to " + to + " is out of range for size " + size);
+        }
+
+        final List<T> result = new ArrayList<T>(to - from);
+        if (from < to) {
+            final ByteIO source = source(position(from));
+            for (int i = from; i < to; ++i) {
+                result.add(elemPickler.unpickle(source));
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,106 @@
+package org.javafp.javapickling.byteio;
+
+import org.javafp.javapickling.core.Pickler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A lazy view over a list or array of objects pickled by ByteIOPicklerCore in tabled mode.
+ * <p>
+ * Each element's table gives its length, so the elements are located by hopping from one header to the next,
+ * without decoding them, and each is then viewed or decoded only when asked for.
+ * The elements must be non-null tabled objects.
+ */
+public final class ListView {
+
+    /**
+     * Read a view of the next list.
+     * @param source the source.
+     * @return the view.
+     * @throws IOException
+     */
+    public static ListView read(ByteIO source) throws IOException {
+
+        final int size = source.input.readInt();
+        final int[] starts = new int[size + 1];
+
+        if (source.input instanceof ByteBufferData) {
+            final ByteBuffer buffer = ((ByteBufferData)source.input).buffer;
+            final int base = buffer.position();
+            int pos = base;
+            for (int i = 0; i < size; ++i) {
+                starts[i] = pos - base;
+                pos += ObjectView.length(buffer, pos);
+            }
+            starts[size] = pos - base;
+            buffer.position(pos);
+            return new ListView(starts, ObjectView.slice(buffer, base, pos - base));
+        } else {
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            final ByteIO copy = new ByteIO(new DataOutputStream(baos));
+            for (int i = 0; i < size; ++i) {
+                starts[i] = baos.size();
+                ObjectView.read(source).write(copy);
+            }
+            starts[size] = baos.size();
+            return new ListView(starts, ByteBuffer.wrap(baos.toByteArray()));
+        }
+    }
+
+    private final int[] starts;
+    private final ByteBuffer data;
+
+    private ListView(int[] starts, ByteBuffer data) {
+        this.starts = starts;
+        this.data = data;
+    }
+
+    /**
+     * @return the number of elements.
+     */
+    public int size() {
+        return starts.length - 1;
+    }
+
+    private ByteIO element(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of range for size " + size());
+        }
+        return new ByteIO((DataInput)new ByteBufferData(ObjectView.slice(data, starts[index], starts[index + 1] - starts[index])));
+    }
+
+    /**
+     * @param index the element index.
+     * @return a view of the element.
+     * @throws IOException
+     */
+    public ObjectView get(int index) throws IOException {
+        return ObjectView.read(element(index));
+    }
+
+    /**
+     * Decode an element.
+     * @param index the element index.
+     * @param pickler the pickler for the element.
+     * @param <T> the element type.
+     * @return the element.
+     * @throws Exception
+     */
+    public <T> T get(int index, Pickler<T, ByteIO> pickler) throws Exception {
+        return pickler.unpickle(element(index));
+    }
+
+    /**
+     * Write the list, as it was read, without decoding it.
+     * @param target the target.
+     * @throws IOException
+     */
+    public void write(ByteIO target) throws IOException {
+        target.output.writeInt(size());
+        ObjectView.write(data, target);
+    }
+}
@@ -0,0 +1,120 @@
+package org.javafp.javapickling.byteio;
+
+import org.javafp.javapickling.core.DynamicObjectPickler;
+import org.javafp.javapickling.core.Field;
+import org.javafp.javapickling.core.FieldPath;
+import org.javafp.javapickling.core.ObjectPickler;
+import org.javafp.javapickling.core.Pickler;
+import org.javafp.javapickling.core.PicklerBase;
+import org.javafp.javapickling.core.PicklerException;
+
+import java.util.List;
+
+/**
+ * A ByteIO pickler whose pickled form can be skipped over, and navigated into, without unpickling it.
+ * <p>
+ * ByteIO data isn't self-describing, so ByteIOPicklerCore.extract() is driven by the pickler tree instead.
+ * Fixed-width values are skipped with skipBytes(), strings and primitive arrays by their length prefix,
+ * and collections element by element.
+ * Objects are navigated through the fields created by their PicklerBase, in the order they were created,
+ * so the object's pickler must pickle each of its fields once, in that order, through object_map().
+ * A value whose pickler isn't navigable, such as a dynamic value, is skipped by unpickling it.
+ * @param <T> the value type.
+ */
+abstract class NavigablePickler<T> implements Pickler<T, ByteIO> {
+
+    /**
+     * Skip over a pickled value.
+     * @param source the source, positioned at the start of the value.
+     * @throws Exception
+     */
+    abstract void skip(ByteIO source) throws Exception;
+
+    /**
+     * Move the source from the start of a pickled value to the start of the element selected by a path segment.
+     * @param source the source, positioned at the start of the value.
+     * @param path the path.
+     * @param i the number of the segment which selects the element.
+     * @return the pickler for the element, or null if the value has no such element.
+     * @throws Exception
+     */
+    Pickler<?, ByteIO> seek(ByteIO source, FieldPath path, int i) throws Exception {
+        return null;
+    }
+
+    /**
+     * The object maps of ByteIOPicklerCore, which know how the fields of an object are laid out.
+     */
+    abstract static class ObjectMap implements ObjectPickler<ByteIO> {
+
+        /**
+         * Skip over a pickled object.
+         * @param fields the fields of the object's pickler.
+         * @param source the source, positioned at the start of the object.
+         * @throws Exception
+         */
+        abstract void skip(List<Field<?, ByteIO>> fields, ByteIO source) throws Exception;
+
+        /**
+         * Move the source from the start of a pickled object to the start of one of its fields.
+         * @param fields the fields of the object's pickler.
+         * @param source the source, positioned at the start of the object.
+         * @param name the name of the field.
+         * @return the pickler for the field, or null if the object has no such field.
+         * @throws Exception
+         */
+        abstract Pickler<?, ByteIO> seek(List<Field<?, ByteIO>> fields, ByteIO source, String name) throws Exception;
+    }
+
+    /**
+     * Skip over a value pickled by any pickler.
+     * @param pickler the pickler for the value.
+     * @param source the source, positioned at the start of the value.
+     * @throws Exception
+     */
+    static void skip(Pickler<?, ByteIO> pickler, ByteIO source) throws Exception {
+        if (pickler instanceof NavigablePickler) {
+            ((NavigablePickler<?>)pickler).skip(source);
+        } else if (isObject(pickler)) {
+            final PicklerBase<?, ByteIO> objPickler = (PicklerBase<?, ByteIO>)pickler;
+            ((ObjectMap)objPickler.object_map()).skip(objPickler.fields(), source);
+        } else {
+            // The pickled form is unknown, so fall back to unpickling the value.
+            pickler.unpickle(source);
+        }
+    }
+
+    /**
+     * Move the source from the start of a value pickled by any pickler to the start of the element
+     * selected by a path segment.
+     * @param pickler the pickler for the value.
+     * @param source the source, positioned at the start of the value.
+     * @param path the path.
+     * @param i the number of the segment which selects the element.
+     * @return the pickler for the element, or null if the value has no such element.
+     * @throws PicklerException if the pickler's form can't be navigated.
+     * @throws Exception
+     */
+    static Pickler<?, ByteIO> seek(Pickler<?, ByteIO> pickler, ByteIO source, FieldPath path, int i) throws Exception {
+        if (pickler instanceof NavigablePickler) {
+            return ((NavigablePickler<?>)pickler).seek(source, path, i);
+        } else if (isObject(pickler)) {
+            if (path.isIndex(i)) {
+                return null;
+            }
+            final PicklerBase<?, ByteIO> objPickler = (PicklerBase<?, ByteIO>)pickler;
+            return ((ObjectMap)objPickler.object_map()).seek(objPickler.fields(), source, path.name(i));
+        } else {
+            throw new PicklerException("Can not navigate path '" + path + "' through values pickled by " +
+                    pickler.getClass().getName());
+        }
+    }
+
+    // An object pickled field by field, through the fields its pickler created.
+    private static boolean isObject(Pickler<?, ByteIO> pickler) {
+        return pickler instanceof PicklerBase &&
+                !(pickler instanceof DynamicObjectPickler) &&
+                !((PicklerBase<?, ByteIO>)pickler).fields().isEmpty() &&
+                ((PicklerBase<?, ByteIO>)pickler).object_map() instanceof ObjectMap;
+    }
+}
@@ -0,0 +1,187 @@
+package org.javafp.javapickling.byteio;
+
+import org.javafp.javapickling.core.Field;
+import org.javafp.javapickling.core.Pickler;
+import org.javafp.javapickling.core.PicklerException;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A lazy view over an object pickled by ByteIOPicklerCore in tabled mode.
+ * <p>
+ * A tabled object is its field count, then a table of the end offsets of its fields, then the field data,
+ * so any field can be located without decoding the others.
+ * Fields are decoded only when asked for, and nested objects and lists can be viewed in turn.
+ * When read from a ByteBufferData the view shares the underlying buffer, otherwise the object's bytes are copied once.
+ */
+public final class ObjectView {
+
+    /**
+     * Read a view of the next object.
+     * @param source the source.
+     * @return the view.
+     * @throws IOException
+     */
+    public static ObjectView read(ByteIO source) throws IOException {
+
+        final int count = source.input.readInt();
+
+        if (source.input instanceof ByteBufferData) {
+            final ByteBuffer buffer = ((ByteBufferData)source.input).buffer;
+            final int start = buffer.position() - 4;
+            final int length = length(buffer, start);
+            buffer.position(start + length);
+            final int dataStart = start + 4 + 4 * count;
+            return new ObjectView(
+                    count,
+                    slice(buffer, start + 4, 4 * count),
+                    slice(buffer, dataStart, start + length - dataStart));
+        } else {
+            final byte[] table = new byte[4 * count];
+            source.input.readFully(table);
+            final ByteBuffer tableBuffer = ByteBuffer.wrap(table);
+            final byte[] data = new byte[count == 0 ? 0 : tableBuffer.getInt(4 * (count - 1))];
+            source.input.readFully(data);
+            return new ObjectView(count, tableBuffer, ByteBuffer.wrap(data));
+        }
+    }
+
+    /**
+     * @param bytes a pickled tabled object.
+     * @return a view of the object.
+     * @throws IOException
+     */
+    public static ObjectView of(byte[] bytes) throws IOException {
+        return read(new ByteIO((DataInput)new ByteBufferData(ByteBuffer.wrap(bytes))));
+    }
+
+    // The total length of the tabled object starting at the given position.
+    static int length(ByteBuffer buffer, int start) {
+        final int count = buffer.getInt(start);
+        return 4 + 4 * count + (count == 0 ? 0 : buffer.getInt(start + 4 * count));
+    }
+
+    static ByteBuffer slice(ByteBuffer buffer, int start, int length) {
+        final ByteBuffer dup = buffer.duplicate();
+        dup.limit(start + length);
+        dup.position(start);
+        return dup.slice();
+    }
+
+    private final int count;
+    private final ByteBuffer table;
+    private final ByteBuffer data;
+
+    private ObjectView(int count, ByteBuffer table, ByteBuffer data) {
+        this.count = count;
+        this.table = table;
+        this.data = data;
+    }
+
+    /**
+     * @return the number of fields.
+     */
+    public int fieldCount() {
+        return count;
+    }
+
+    /**
+     * @param number the field number, starting at 1.
+     * @return a ByteIO positioned on the field's value.
+     */
+    public ByteIO field(int number) {
+        if (number < 1 || number > count) {
+            throw new PicklerException("Field " + number + " is absent - the object has " + count + " fields");
+        }
+        final int start = number == 1 ? 0 : table.getInt(4 * (number - 2));
+        final int end = table.getInt(4 * (number - 1));
+        return new ByteIO((DataInput)new ByteBufferData(slice(data, start, end - start)));
+    }
+
+    private static int number(Field<?, ByteIO> field) {
+        if (field.number < 1) {
+            throw new PicklerException("Field " + field.name + " has no number");
+        }
+        return field.number;
+    }
+
+    /**
+     * Decode a field.
+     * @param number the field number, starting at 1.
+     * @param pickler the pickler for the field.
+     * @param <T> the field type.
+     * @return the field value.
+     * @throws Exception
+     */
+    public <T> T get(int number, Pickler<T, ByteIO> pickler) throws Exception {
+        return pickler.unpickle(field(number));
+    }
+
+    /**
+     * Decode a field.
+     * @param field a numbered field, as created by a PicklerBase.
+     * @param <T> the field type.
+     * @return the field value.
+     * @throws Exception
+     */
+    public <T> T get(Field<T, ByteIO> field) throws Exception {
+        return get(number(field), field.pickler);
+    }
+
+    /**
+     * @param number the number of a field holding a tabled object.
+     * @return a view of the field's object.
+     * @throws IOException
+     */
+    public ObjectView object(int number) throws IOException {
+        return read(field(number));
+    }
+
+    public ObjectView object(Field<?, ByteIO> field) throws IOException {
+        return object(number(field));
+    }
+
+    /**
+     * @param number the number of a field holding a list or array of tabled objects.
+     * @return a view of the field's list.
+     * @throws IOException
+     */
+    public ListView list(int number) throws IOException {
+        return ListView.read(field(number));
+    }
+
+    public ListView list(Field<?, ByteIO> field) throws IOException {
+        return list(number(field));
+    }
+
+    /**
+     * @param number the number of a field holding a list pickled by indexed_list_p().
+     * @param elemPickler the pickler for the elements.
+     * @param <T> the element type.
+     * @return a lazy view of the field's list.
+     */
+    public <T> IndexedListView<T> indexedList(int number, Pickler<T, ByteIO> elemPickler) {
+        return IndexedListView.of(((ByteBufferData)field(number).input).buffer, elemPickler);
+    }
+
+    /**
+     * Write the object, as it was read, without decoding it.
+     * @param target the target.
+     * @throws IOException
+     */
+    public void write(ByteIO target) throws IOException {
+        target.output.writeInt(count);
+        write(table, target);
+        write(data, target);
+    }
+
+    static void write(ByteBuffer buffer, ByteIO target) throws IOException {
+        final byte[] bytes = new byte[buffer.capacity()];
+        final ByteBuffer dup = buffer.duplicate();
+        dup.clear();
+        dup.get(bytes);
+        target.output.write(bytes);
+    }
+}
@@ -0,0 +1,44 @@
+package org.javafp.javapickling.core;
+
+import com.google.common.base.Supplier;
+
+/**
+ * A Pickler which resolves the pickler it delegates to on first use.
+ * <p>
+ * The resolved pickler is cached in a volatile field, so that it's safely published to other threads.
+ * The resolver is expected to be idempotent, so a racing thread at worst resolves it again.
+ * @param <T> the type of object to be pickled.
+ * @param <PF> the pickle format.
+ */
+final class DeferredPickler<T, PF> implements Pickler<T, PF> {
+
+    private final Supplier<Pickler<T, PF>> resolver;
+
+    private volatile Pickler<T, PF> pickler;
+
+    DeferredPickler(Supplier<Pickler<T, PF>> resolver) {
+        this.resolver = resolver;
+    }
+
+    Pickler<T, PF> resolve() {
+        Pickler<T, PF> p = pickler;
+        if (p == null) {
+            p = resolver.get();
+            if (p == null) {
+                throw new PicklerException("Deferred pickler resolved to null");
+            }
+            pickler = p;
+        }
+        return p;
+    }
+
+    @Override
+    public PF pickle(T t, PF target) throws Exception {
+        return resolve().pickle(t, target);
+    }
+
+    @Override
+    public T unpickle(PF source) throws Exception {
+        return resolve().unpickle(source);
+    }
+}
@@ -1,5 +1,7 @@
 package org.javafp.javapickling.core;
 
+import java.util.Map;
+
 /**
  * A pickler for objects where the static type is unknown.
  * In this case the pickler must encode the objects type along with the value.
@@ -28,9 +30,10 @@ public class DynamicObjectPickler<T, PF> extends PicklerBase<T, PF> {
         }
     }
 
+    protected static final String TYPE_NAME = "@type";
     protected static final String VALUE_NAME = "@value";
 
-    protected Field<String, PF> typeField = field("@type", string_p());
+    protected Field<String, PF> typeField = field(TYPE_NAME, string_p());
     protected Field<String, PF> clazzField = field("@class", string_p());
 
     public DynamicObjectPickler(PicklerCore<PF> core, Class<? super T> clazz) {
@@ -68,6 +71,17 @@ public class DynamicObjectPickler<T, PF> extends PicklerBase<T, PF> {
             return optimalResult.value;
         }
 
+        return unpickleTagged(source);
+    }
+
+    /**
+     * Unpickle an object which was pickled along with its type, i.e. not via optimalPickle.
+     * @param source the pickled object.
+     * @return the object.
+     * @throws Exception
+     */
+    protected T unpickleTagged(PF source) throws Exception {
+
         final FieldUnpickler<PF> fu = object_map().unpickler(source);
 
         MetaType metaType = MetaType.ofName(fu.field(typeField));
@@ -88,6 +102,20 @@ public class DynamicObjectPickler<T, PF> extends PicklerBase<T, PF> {
         }
     }
 
+    /**
+     * @param map the map.
+     * @return true if the map can be pickled as a plain string-keyed map,
+     *      without being mistaken for a tagged object when unpickled.
+     */
+    protected static boolean isPlainStringMap(Map<?, ?> map) {
+        for (Object key : map.keySet()) {
+            if (!(key instanceof String) || key.equals(TYPE_NAME)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     protected OptimalResult<PF> optimalPickle(MetaType metaType, T obj, PF target) throws Exception {
         return OptimalResult.failure();
     }
@@ -1,5 +1,7 @@
 package org.javafp.javapickling.core;
 
+import com.google.common.base.Supplier;
+
 /**
  * A field name and pickler wrapper.
  * @param <T> the type of object to be pickled.
@@ -17,8 +19,51 @@ public class Field<T, PF> {
      */
     public final Pickler<T, PF> pickler;
 
+    /**
+     * The number of the field within its object, starting at 1, or 0 if it hasn't been numbered.
+     * Only used by formats which identify fields by number rather than name.
+     */
+    public final int number;
+
     public Field(String name, Pickler<T, PF> pickler) {
+        this(name, 0, pickler);
+    }
+
+    public Field(String name, int number, Pickler<T, PF> pickler) {
         this.name = name;
+        this.number = number;
         this.pickler = pickler;
     }
+
+    /**
+     * @param number the field number.
+     * @return a copy of this Field with the given number.
+     */
+    public Field<T, PF> withNumber(int number) {
+        return new Field<T, PF>(name, number, pickler);
+    }
+
+    /**
+     * Create a Field whose pickler is resolved on first use, rather than up-front.
+     * @param name the name of the field.
+     * @param resolver supplies the pickler - should return the same pickler each time it is called.
+     * @param <T> the type of object to be pickled.
+     * @param <PF> the pickle format.
+     * @return the Field.
+     */
+    public static <T, PF> Field<T, PF> deferred(String name, Supplier<Pickler<T, PF>> resolver) {
+        return new Field<T, PF>(name, new DeferredPickler<T, PF>(resolver));
+    }
+
+    /**
+     * Resolve the pickler for this field, if it was deferred.
+     * @return the resolved pickler.
+     */
+    public Pickler<T, PF> resolve() {
+        if (pickler instanceof DeferredPickler) {
+            return ((DeferredPickler<T, PF>)pickler).resolve();
+        } else {
+            return pickler;
+        }
+    }
 }
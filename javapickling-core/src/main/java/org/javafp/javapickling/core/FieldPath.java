@@ -0,0 +1,111 @@
+package org.javafp.javapickling.core;
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+/**
+ * A path to a value nested within a pickled object, such as "members.DEVELOPER[0].name".
+ * <p>
+ * Each segment is either a name - an object field or a map key -
+ * or a bracketed index into a list or array.
+ * Used by the extract methods of the cores whose pickled form can be navigated without unpickling.
+ */
+public final class FieldPath {
+
+    /**
+     * Parse a path.
+     * @param path the path.
+     * @return the parsed path.
+     * @throws PicklerException if the path is malformed.
+     */
+    public static FieldPath parse(String path) {
+
+        final List<String> names = Lists.newArrayList();
+        final List<Integer> indices = Lists.newArrayList();
+
+        int pos = 0;
+        final int len = path.length();
+        while (pos < len) {
+            final char c = path.charAt(pos);
+            if (c == '[') {
+                final int end = path.indexOf(']', pos);
+                if (end < 0) {
+                    throw new PicklerException("Unterminated index in path '" + path + "'");
+                }
+                try {
+                    indices.add(Integer.parseInt(path.substring(pos + 1, end)));
+                } catch (NumberFormatException ex) {
+                    throw new PicklerException("Invalid index in path '" + path + "'", ex);
+                }
+                names.add(null);
+                pos = end + 1;
+            } else {
+                if (c == '.') {
+                    if (pos == 0) {
+                        throw new PicklerException("Empty name in path '" + path + "'");
+                    }
+                    ++pos;
+                }
+                int end = pos;
+                while (end < len && path.charAt(end) != '.' && path.charAt(end) != '[') {
+                    ++end;
+                }
+                if (end == pos) {
+                    throw new PicklerException("Empty name in path '" + path + "'");
+                }
+                names.add(path.substring(pos, end));
+                indices.add(-1);
+                pos = end;
+            }
+        }
+
+        return new FieldPath(path, names, indices);
+    }
+
+    private final String path;
+    private final List<String> names;
+    private final List<Integer> indices;
+
+    private FieldPath(String path, List<String> names, List<Integer> indices) {
+        this.path = path;
+        this.names = names;
+        this.indices = indices;
+    }
+
+    /**
+     * @return the number of segments.
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * @param i the segment number.
+     * @return true if the segment is an index, false if it is a name.
+     */
+    public boolean isIndex(int i) {
+        return names.get(i) == null;
+    }
+
+    /**
+     * @param i the segment number.
+     * @return the segment's name, or null if it is an index.
+     */
+    public String name(int i) {
+        return names.get(i);
+    }
+
+    /**
+     * @param i the segment number.
+     * @return the segment's index, or -1 if it is a name.
+     */
+    public int index(int i) {
+        return indices.get(i);
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+}
@@ -1,12 +1,19 @@
 package org.javafp.javapickling.core;
 
+import com.google.common.collect.Maps;
+
+import java.lang.reflect.Array;
 import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * FieldReflector encapsulates methods to infer the Pickler for a Field (java.lang.reflect.Field),
@@ -27,9 +34,38 @@ public class FieldReflector<PF> {
         throw new PicklerException("Could not find an interface matching " + clazz);
     }
 
-    private final PicklerCore<PF> core;
+    /**
+     * Erase a Type to the Class it corresponds to at runtime.
+     */
+    private static Class<?> rawClassOf(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>)type;
+        } else if (type instanceof ParameterizedType) {
+            return rawClassOf(((ParameterizedType)type).getRawType());
+        } else if (type instanceof GenericArrayType) {
+            final Class<?> compClass = rawClassOf(((GenericArrayType)type).getGenericComponentType());
+            return Array.newInstance(compClass, 0).getClass();
+        } else if (type instanceof TypeVariable) {
+            return rawClassOf(((TypeVariable<?>)type).getBounds()[0]);
+        } else if (type instanceof WildcardType) {
+            return rawClassOf(((WildcardType)type).getUpperBounds()[0]);
+        } else {
+            return Object.class;
+        }
+    }
+
+    private final PicklerCoreBase<PF> core;
+
+    /**
+     * Memo of inferred picklers by generic Type.
+     * The JDK Type implementations have structural equality, so identical generic types,
+     * e.g. Map&lt;String, Double&gt; on different fields, share a single pickler.
+     * Plain classes aren't memoised, as the core already caches their picklers,
+     * and the memo is cleared by the core whenever a pickler class is registered.
+     */
+    private final ConcurrentMap<Type, Pickler<?, PF>> typePicklerCache = Maps.newConcurrentMap();
 
-    public FieldReflector(PicklerCore<PF> core) {
+    public FieldReflector(PicklerCoreBase<PF> core) {
         this.core = core;
     }
 
@@ -50,13 +86,57 @@ public class FieldReflector<PF> {
      * @return
      */
     public <T> Pickler<T, PF> inferPickler(Type type) {
+
         if (type instanceof Class) {
             return inferPickler((Class)type);
-        } else if (type instanceof ParameterizedType) {
-            return inferPickler((ParameterizedType)type);
-        } else {
+        } else if (!(type instanceof ParameterizedType || type instanceof GenericArrayType)) {
             return (Pickler<T, PF>)core.d_object_p();
         }
+
+        final Pickler<?, PF> cached = typePicklerCache.get(type);
+        if (cached != null) {
+            return (Pickler<T, PF>)cached;
+        }
+
+        final int generation = core.registrationGeneration();
+
+        // Inference is recursive, so can't use computeIfAbsent here.
+        final Pickler<?, PF> pickler;
+        if (type instanceof ParameterizedType) {
+            pickler = inferPickler((ParameterizedType)type);
+        } else {
+            pickler = inferPickler((GenericArrayType)type);
+        }
+
+        final Pickler<?, PF> existing = typePicklerCache.putIfAbsent(type, pickler);
+        if (existing != null) {
+            return (Pickler<T, PF>)existing;
+        }
+
+        // Don't leave the pickler in the memo if a registration cleared it whilst it was being inferred.
+        if (core.registrationGeneration() != generation) {
+            typePicklerCache.remove(type, pickler);
+        }
+
+        return (Pickler<T, PF>)pickler;
+    }
+
+    /**
+     * Discard the memoised picklers, so that later inferences see any new registrations.
+     */
+    void clearCache() {
+        typePicklerCache.clear();
+    }
+
+    /**
+     * Infer the Pickler for a GenericArrayType, i.e. an array of a generic type.
+     * @param type
+     * @param <T>
+     * @return
+     */
+    public <T> Pickler<T, PF> inferPickler(GenericArrayType type) {
+        final Type compType = type.getGenericComponentType();
+        return this.array_p(inferPickler(compType), rawClassOf(compType));
     }
 
     /**
@@ -96,10 +176,10 @@ public class FieldReflector<PF> {
                 picklers[i] = inferPickler(typeArgs[i]);
             }
 
-            try {
-                // Do we have a registered pickler for this class.
-                return generic_p(clazz, picklers);
-            } catch (PicklerException ex) {
+            // Do we have a registered pickler for this class.
+            final Pickler<T, PF> pickler = core.findGenericPickler(clazz, picklers);
+            if (pickler != null) {
+                return pickler;
             }
 
             // Must be a generic base class for a derived type.
@@ -177,7 +257,7 @@ public class FieldReflector<PF> {
                         throw new PicklerException("Unxpected class for primitive type " + compClass);
                     }
                 } else {
-                    return this.array_p(inferPickler((compClass)), compClass);
+                    return this.array_p(inferPickler((Type)compClass), compClass);
                 }
             }
         }
@@ -236,10 +316,6 @@ public class FieldReflector<PF> {
         return core.set_p(elemPickler);
     }
 
-    private Pickler generic_p(final Class clazz, Pickler... picklers) {
-        return core.generic_p(clazz, picklers);
-    }
-
     private Pickler d_object_p(final Class clazz) {
         return core.d_object_p(clazz);
     }
@@ -105,11 +105,20 @@ public class MetaType {
                     return core.enum_p(MetaType.<TypeKind>castEnumClass(clazz));
                 case FLOAT:     return core.float_p();
                 case INT:       return core.integer_p();
-                case LIST:      return core.list_p(core.d_object_p(), (Class<List<Object>>)clazz);
+                case LIST:
+                    return clazz == null ?
+                            core.list_p(core.d_object_p()) :
+                            core.list_p(core.d_object_p(), (Class<List<Object>>)clazz);
                 case LONG:      return core.long_p();
-                case MAP:       return core.map_p(core.d_object_p(), core.d_object_p(), (Class<Map<Object, Object>>)clazz);
+                case MAP:
+                    return clazz == null ?
+                            core.map_p(core.d_object_p(), core.d_object_p()) :
+                            core.map_p(core.d_object_p(), core.d_object_p(), (Class<Map<Object, Object>>)clazz);
                 case OBJECT:    return core.object_p(clazz);
-                case SET:       return core.set_p(core.d_object_p(), (Class<Set<Object>>)clazz);
+                case SET:
+                    return clazz == null ?
+                            core.set_p(core.d_object_p()) :
+                            core.set_p(core.d_object_p(), (Class<Set<Object>>)clazz);
                 case SHORT:     return core.short_p();
                 case STRING:    return core.string_p();
                 default:        throw new PicklerException("Unexpected TypeKind value - " + name());
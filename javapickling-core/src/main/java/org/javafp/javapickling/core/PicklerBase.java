@@ -1,5 +1,8 @@
 package org.javafp.javapickling.core;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -15,6 +18,16 @@ public abstract class PicklerBase<T, PF> implements Pickler<T, PF>, PicklerCore<
     protected final PicklerCore<PF> core;
     protected final Class<? super T> clazz;
 
+    // The fields created through this pickler by name, in the order they were first created.
+    // Guarded by this pickler's lock, as is fieldNames.
+    private final Map<String, Field<?, PF>> fieldsByName = Maps.newLinkedHashMap();
+
+    // The names of the fields created through this pickler, by number.
+    private final Map<Integer, String> fieldNames = Maps.newHashMap();
+
+    // An immutable copy of fieldsByName's values, republished whenever a field is added.
+    private volatile List<Field<?, PF>> fields = ImmutableList.of();
+
     protected PicklerBase(PicklerCore<PF> core, Class<? super T> clazz) {
         this.core = core;
         this.clazz = clazz;
@@ -195,32 +208,119 @@ public abstract class PicklerBase<T, PF> implements Pickler<T, PF>, PicklerCore<
         return core.object_map();
     }
 
+    /**
+     * Fields created through a pickler without an explicit number are numbered one more than
+     * the previous field's number, starting at 1.
+     * Such numbers depend on the order in which the fields are created,
+     * so they change if a field is inserted, removed or reordered.
+     * Picklers for formats which persist field numbers should give each field an explicit number,
+     * if the pickled data has to be read by a later version of the pickler.
+     * <p>
+     * A field created again with the same name, e.g. by a pickler which creates its fields lazily,
+     * keeps the number it was first given.
+     * @param field the field.
+     * @param <U> the field type.
+     * @return the numbered field.
+     */
+    private synchronized <U> Field<U, PF> numbered(Field<U, PF> field) {
+        final Field<?, PF> existing = fieldsByName.get(field.name);
+        if (existing != null) {
+            return field.withNumber(existing.number);
+        }
+
+        final List<Field<?, PF>> current = fields;
+        final int number = current.isEmpty() ? 1 : current.get(current.size() - 1).number + 1;
+        return numbered(field, number);
+    }
+
+    /**
+     * @param field the field.
+     * @param number the field number, which must be positive and unique within this pickler.
+     * @param <U> the field type.
+     * @return the numbered field.
+     */
+    private synchronized <U> Field<U, PF> numbered(Field<U, PF> field, int number) {
+        if (number < 1) {
+            throw new PicklerException("Field " + field.name + " has an invalid number " + number);
+        }
+
+        final Field<?, PF> existing = fieldsByName.get(field.name);
+        if (existing != null) {
+            if (existing.number != number) {
+                throw new PicklerException("Field " + field.name + " already has the number " + existing.number);
+            }
+            return field.withNumber(number);
+        }
+
+        final String other = fieldNames.get(number);
+        if (other != null) {
+            throw new PicklerException("Fields " + other + " and " + field.name + " have the same number " + number);
+        }
+
+        final Field<U, PF> numbered = field.withNumber(number);
+        fieldsByName.put(field.name, numbered);
+        fieldNames.put(number, field.name);
+        fields = ImmutableList.copyOf(fieldsByName.values());
+        return numbered;
+    }
+
+    /**
+     * @return the fields created through this pickler, in the order they were first created.
+     */
+    public List<Field<?, PF>> fields() {
+        return fields;
+    }
+
     @Override
     public <U> Field<U, PF> field(String name, Pickler<U, PF> pickler) {
-        return core.field(name, pickler);
+        return numbered(core.field(name, pickler));
+    }
+
+    /**
+     * Create a field with an explicit number, which stays the same if the other fields change.
+     * @param name the field name.
+     * @param number the field number.
+     * @param pickler the field pickler.
+     * @param <U> the field type.
+     * @return the field.
+     */
+    public <U> Field<U, PF> field(String name, int number, Pickler<U, PF> pickler) {
+        return numbered(core.field(name, pickler), number);
     }
 
     @Override
     public <T> Field<T, PF> field(Class<?> clazz, String name) {
-        return core.field(clazz, name);
+        return numbered(core.<T>field(clazz, name));
     }
 
     public <T> Field<T, PF> field(String name) {
-        return core.field(clazz, name);
+        return numbered(core.<T>field(clazz, name));
+    }
+
+    public <T> Field<T, PF> field(String name, int number) {
+        return numbered(core.<T>field(clazz, name), number);
     }
 
     @Override
     public <U> Field<U, PF> null_field(String name, Pickler<U, PF> pickler) {
-        return core.null_field(name, pickler);
+        return numbered(core.null_field(name, pickler));
+    }
+
+    public <U> Field<U, PF> null_field(String name, int number, Pickler<U, PF> pickler) {
+        return numbered(core.null_field(name, pickler), number);
     }
 
     @Override
     public <U> Field<U, PF> null_field(Class<?> clazz, String name) {
-        return core.null_field(clazz, name);
+        return numbered(core.<U>null_field(clazz, name));
     }
 
     public <U> Field<U, PF> null_field(String name) {
-        return core.null_field(clazz, name);
+        return numbered(core.<U>null_field(clazz, name));
+    }
+
+    public <U> Field<U, PF> null_field(String name, int number) {
+        return numbered(core.<U>null_field(clazz, name), number);
     }
 
     @Override
@@ -1,15 +1,33 @@
 package org.javafp.javapickling.core;
 
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
+import com.google.common.base.Supplier;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Base class for PicklerCore implementations.
@@ -17,6 +35,10 @@ import java.util.*;
  */
 public abstract class PicklerCoreBase<PF> implements PicklerCore<PF> {
 
+    private static final String REGISTRY_HEADER = "#javapickling-registry 1";
+    private static final String REGISTRY_SHORT_NAME = "shortName";
+    private static final String REGISTRY_PICKLER = "pickler";
+
     /**
      * Utility function to call Class.newInstance and rethrow exceptions.
      */
@@ -43,7 +65,7 @@ public abstract class PicklerCoreBase<PF> implements PicklerCore<PF> {
 
         @Override
         public <T> void field(Field<T, PF> field, T value) throws Exception {
-            field(field.name, value, field.pickler);
+            field(field.name, value, field.resolve());
         }
     }
 
@@ -60,33 +82,109 @@ public abstract class PicklerCoreBase<PF> implements PicklerCore<PF> {
 
         @Override
         public <T> T field(Field<T, PF> field) throws Exception {
-            return field(field.name, field.pickler);
+            return field(field.name, field.resolve());
         }
     }
 
     /**
-     * A cache of picklers by class name.
+     * A registry of pickler classes by class name.
      */
-    protected final Map<String, Class<Pickler<?, PF>>> picklerClassRegistry = Maps.newConcurrentMap();
+    protected final RegistryMap<String, Class<Pickler<?, PF>>> picklerClassRegistry;
 
     /**
      * A cache of picklers by class name.
+     * A fork starts out sharing the picklers of its base, until it is unshared.
+     */
+    protected volatile RegistryMap<String, Pickler<?, PF>> picklerCache;
+
+    /**
+     * True whilst this core is a fork which shares the picklers of its base.
      */
-    protected final Map<String, Pickler<?, PF>> picklerCache = Maps.newConcurrentMap();
+    private volatile boolean sharingPicklers = false;
 
     /**
      * A registry of constructors for PicklerClasses.
      */
-    protected final Map<String, List<GenericPicklerCtor<?, PF>>> genericPicklerClassRegistry = Maps.newConcurrentMap();
+    protected final RegistryMap<String, List<GenericPicklerCtor<?, PF>>> genericPicklerClassRegistry;
+
+    /**
+     * A cache of generic picklers by registered constructors and argument picklers.
+     * Values are weakly held, so entries last only as long as the pickler is in use.
+     */
+    private final Cache<GenericPicklerKey, Pickler<?, PF>> genericPicklerCache =
+            CacheBuilder.newBuilder().weakValues().build();
+
+    /**
+     * A cache of dynamic picklers by class.
+     * Dynamic picklers are often the arguments to generic picklers,
+     * so they have to be reused for the generic pickler cache, which is keyed by pickler identity, to be hit.
+     */
+    private final Map<Class<?>, Pickler<?, PF>> dynamicPicklerCache = Maps.newConcurrentMap();
 
     /**
      * A map of class names to short names.
      */
-    protected final BiMap<String, String> classShortNameMap = HashBiMap.create();
+    protected final RegistryMap<String, String> classShortNameMap;
+
+    /**
+     * A map of short names to class names - the inverse of classShortNameMap.
+     */
+    protected final RegistryMap<String, String> shortNameClassMap;
+
+    /**
+     * A cache of pickled class names to the classes they resolve to.
+     */
+    protected final Map<String, Class<?>> nameClassCache = Maps.newConcurrentMap();
+
+    /**
+     * A cache of classes to their pickled class names.
+     */
+    protected final Map<Class<?>, String> classNameCache = Maps.newConcurrentMap();
+
+    /**
+     * Incremented whenever a registration clears the caches derived from the registries,
+     * i.e. the class name caches and the FieldReflector's inferred picklers,
+     * so that a value resolved against the old registrations isn't cached after the clear.
+     */
+    private final AtomicInteger registrationGeneration = new AtomicInteger();
+
+    /**
+     * The ClassLoader used to resolve pickled class names.
+     */
+    protected volatile ClassLoader classLoader = PicklerCoreBase.class.getClassLoader();
 
     protected final FieldReflector fieldReflector = new FieldReflector(this);
 
     public PicklerCoreBase() {
+        picklerClassRegistry = new RegistryMap<String, Class<Pickler<?, PF>>>();
+        picklerCache = new RegistryMap<String, Pickler<?, PF>>();
+        genericPicklerClassRegistry = new RegistryMap<String, List<GenericPicklerCtor<?, PF>>>();
+        classShortNameMap = new RegistryMap<String, String>();
+        shortNameClassMap = new RegistryMap<String, String>();
+    }
+
+    /**
+     * Construct a core which is a fork of a base core.
+     * <p>
+     * The fork's registries are overlays on those of the base,
+     * so the base's registrations are shared rather than copied,
+     * while registrations made on the fork are not visible to the base.
+     * <p>
+     * The fork also shares the base's picklers, through an overlay on the base's pickler cache.
+     * A pickler is bound to the core which created it though, and so wouldn't see the fork's registrations,
+     * so the fork stops sharing when it first diverges from the base (see unsharePicklers),
+     * after which it creates its own picklers.
+     * A fork doesn't need to be initialised until then.
+     * @param base the core to fork from.
+     */
+    protected PicklerCoreBase(PicklerCoreBase<PF> base) {
+        picklerClassRegistry = base.picklerClassRegistry.overlay();
+        picklerCache = base.picklerCache.overlay();
+        sharingPicklers = true;
+        genericPicklerClassRegistry = base.genericPicklerClassRegistry.overlay();
+        classShortNameMap = base.classShortNameMap.overlay();
+        shortNameClassMap = base.shortNameClassMap.overlay();
+        classLoader = base.classLoader;
     }
 
     /**
@@ -147,30 +245,235 @@ public abstract class PicklerCoreBase<PF> implements PicklerCore<PF> {
      */
     public <T, P extends Pickler<T, PF>> void register(Class<T> valueClass, Class<P> picklerClass, boolean lazy) {
 
-        final TypeVariable<Class<P>>[] tps = picklerClass.getTypeParameters();
-        if (tps.length > 0) {
-            if (!tps[0].getName().equals("PF") || tps.length > 1) {
-                registerGeneric(valueClass, picklerClass);
-            }
-        }
+        unsharePicklers();
 
         registerPicklerClass(valueClass, picklerClass);
+        clearInferredPicklers();
 
         if (!lazy) {
             getPickler(valueClass);
         }
     }
 
-    public void registerClassShortName(Class<?> clazz, String shortName) {
+    /**
+     * Stop sharing the picklers of the base core, if this core is a fork which still shares them.
+     * <p>
+     * Called before any change which would make the base's picklers wrong for this core,
+     * i.e. a registration or a change to a setting which the picklers depend on.
+     * The fork then re-initialises itself, and creates its own picklers on first use.
+     * As per the registrations on a new core, this should happen before the fork is used concurrently.
+     */
+    protected final synchronized void unsharePicklers() {
+        if (sharingPicklers) {
+            sharingPicklers = false;
+
+            final RegistryMap<String, Pickler<?, PF>> ownPicklers = new RegistryMap<String, Pickler<?, PF>>();
+            if (picklerClassRegistry.isFrozen()) {
+                ownPicklers.freeze();
+            }
+            picklerCache = ownPicklers;
+
+            // Discard anything built from the base's picklers.
+            genericPicklerCache.invalidateAll();
+            dynamicPicklerCache.clear();
+            clearInferredPicklers();
+
+            initialise();
+        }
+    }
+
+    /**
+     * @return true if this core is a fork which still shares the picklers of its base.
+     */
+    public boolean isSharingPicklers() {
+        return sharingPicklers;
+    }
+
+    /**
+     * Freeze the registries.
+     * <p>
+     * Once all the up-front registrations have been made, freezing the core publishes
+     * the registries as immutable snapshots, so that lookups from concurrent threads
+     * are lock-free reads. Registrations made after this point (including picklers
+     * created lazily on first use) are still allowed, and are applied copy-on-write.
+     */
+    public void freeze() {
+        picklerClassRegistry.freeze();
+        picklerCache.freeze();
+        genericPicklerClassRegistry.freeze();
+        classShortNameMap.freeze();
+        shortNameClassMap.freeze();
+    }
+
+    /**
+     * Eagerly resolve the picklers for the given classes, and for all classes reachable from them
+     * through the fields of classes which have picklers, so that first use doesn't pay for discovery.
+     * @param roots the classes to start from.
+     */
+    public void warmUp(Class<?>... roots) {
+        final Set<Class<?>> visited = Sets.newConcurrentHashSet();
+        for (Class<?> root : roots) {
+            warmUp(visited, root);
+        }
+    }
+
+    /**
+     * Eagerly resolve picklers, as per warmUp(Class...), walking each root in parallel.
+     * @param executor the executor used to walk the roots.
+     * @param roots the classes to start from.
+     * @throws InterruptedException if interrupted whilst waiting for the executor.
+     */
+    public void warmUp(ExecutorService executor, Class<?>... roots) throws InterruptedException {
+        final Set<Class<?>> visited = Sets.newConcurrentHashSet();
+        final List<Future<?>> futures = Lists.newArrayList();
+        for (final Class<?> root : roots) {
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    warmUp(visited, root);
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException ex) {
+                throw new PicklerException("Failed to warm up picklers", ex.getCause());
+            }
+        }
+    }
+
+    private void warmUp(Set<Class<?>> visited, Type type) {
+        if (type instanceof ParameterizedType) {
+            final ParameterizedType paramType = (ParameterizedType)type;
+            warmUp(visited, paramType.getRawType());
+            for (Type typeArg : paramType.getActualTypeArguments()) {
+                warmUp(visited, typeArg);
+            }
+        } else if (type instanceof GenericArrayType) {
+            warmUp(visited, ((GenericArrayType)type).getGenericComponentType());
+        } else if (type instanceof WildcardType) {
+            for (Type bound : ((WildcardType)type).getUpperBounds()) {
+                warmUp(visited, bound);
+            }
+        } else if (type instanceof Class) {
+            final Class<?> clazz = (Class<?>)type;
+            if (clazz.isArray()) {
+                warmUp(visited, clazz.getComponentType());
+            } else if (!clazz.isPrimitive() && visited.add(clazz) && hasPicklerClass(clazz)) {
+                classToName(clazz);
+                getPickler(clazz);
+
+                // Only descend into classes with pickler classes, as their fields are what the picklers traverse.
+                for (Class<?> cls = clazz; cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+                    for (java.lang.reflect.Field field : cls.getDeclaredFields()) {
+                        if (!Modifier.isStatic(field.getModifiers())) {
+                            warmUp(visited, field.getGenericType());
+
+                            // Populate the inference cache used by deferred fields.
+                            if (Modifier.isPublic(field.getModifiers())) {
+                                fieldReflector.inferPickler(field);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean hasPicklerClass(Class<?> clazz) {
+        return picklerClassRegistry.get(clazz.getName()) != null ||
+                clazz.isAnnotationPresent(DefaultPickler.class);
+    }
+
+    /**
+     * Write the class short names and pickler class registrations to a Writer,
+     * in a form which can be replayed by loadRegistry.
+     * @param writer the destination.
+     * @throws IOException
+     */
+    public void saveRegistry(Writer writer) throws IOException {
+        writer.write(REGISTRY_HEADER);
+        writer.write('\n');
+
+        for (Map.Entry<String, String> entry : classShortNameMap.asMap().entrySet()) {
+            writer.write(REGISTRY_SHORT_NAME + ' ' + entry.getKey() + ' ' + entry.getValue() + '\n');
+        }
+
+        for (Map.Entry<String, Class<Pickler<?, PF>>> entry : picklerClassRegistry.asMap().entrySet()) {
+            writer.write(REGISTRY_PICKLER + ' ' + entry.getKey() + ' ' + entry.getValue().getName() + '\n');
+        }
+
+        writer.flush();
+    }
+
+    /**
+     * Replay a registry written by saveRegistry, then resolve each of the registered picklers.
+     * Registrations already present in this core are left as they are.
+     * @param reader the source.
+     * @throws IOException
+     */
+    public void loadRegistry(Reader reader) throws IOException {
+        final BufferedReader bufReader = new BufferedReader(reader);
+
+        final String header = bufReader.readLine();
+        if (!REGISTRY_HEADER.equals(header)) {
+            throw new PicklerException("Unrecognised registry header: " + header);
+        }
+
+        final List<Class<?>> valueClasses = Lists.newArrayList();
+
+        String line;
+        while ((line = bufReader.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            final String[] parts = line.split(" ");
+            if (parts.length != 3) {
+                throw new PicklerException("Malformed registry line: " + line);
+            }
+
+            final Class<?> clazz = loadClass(parts[1]);
+            if (parts[0].equals(REGISTRY_SHORT_NAME)) {
+                registerClassShortName(clazz, parts[2]);
+            } else if (parts[0].equals(REGISTRY_PICKLER)) {
+                if (picklerClassRegistry.get(clazz.getName()) == null) {
+                    register((Class<Object>)clazz, (Class<Pickler<Object, PF>>)loadClass(parts[2]), true);
+                }
+                valueClasses.add(clazz);
+            } else {
+                throw new PicklerException("Unrecognised registry entry: " + line);
+            }
+        }
+
+        for (Class<?> clazz : valueClasses) {
+            getPickler(clazz);
+        }
+    }
+
+    private Class<?> loadClass(String clazzName) {
+        try {
+            return Class.forName(clazzName, true, classLoader);
+        } catch (ClassNotFoundException ex) {
+            throw new PicklerException("Class " + clazzName + " in registry could not be loaded", ex);
+        }
+    }
+
+    public synchronized void registerClassShortName(Class<?> clazz, String shortName) {
         final String clazzName = clazz.getName();
-        if (classShortNameMap.containsValue(shortName)) {
-            final String existClazzName = classShortNameMap.inverse().get(shortName);
+        final String existClazzName = shortNameClassMap.get(shortName);
+        if (existClazzName != null) {
             if (!clazzName.equals(existClazzName)) {
-                throw new PicklerException("Can not register short name '" + shortName + "' for " + clazz.getName() +
-                        " as it has already been registered to " + clazzName);
+                throw new PicklerException("Can not register short name '" + shortName + "' for " + clazzName +
+                        " as it has already been registered to " + existClazzName);
             }
         } else {
-            classShortNameMap.put(clazz.getName(), shortName);
+            unsharePicklers();
+            classShortNameMap.put(clazzName, shortName);
+            shortNameClassMap.put(shortName, clazzName);
+            clearClassNameCaches();
         }
     }
 
@@ -178,29 +481,106 @@ public abstract class PicklerCoreBase<PF> implements PicklerCore<PF> {
         registerClassShortName(clazz, clazz.getSimpleName());
     }
 
-    public String classToName(Class<?> clazz) {
+    /**
+     * Set the ClassLoader used to resolve pickled class names.
+     * Any loader hierarchy is expressed through the parent delegation of the supplied loader.
+     * @param classLoader the ClassLoader.
+     */
+    public void setClassLoader(ClassLoader classLoader) {
+        if (classLoader != this.classLoader) {
+            unsharePicklers();
+        }
+        this.classLoader = classLoader;
+        clearClassNameCaches();
+    }
 
-        final String clazzName = clazz.getName();
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    public String classToName(Class<?> clazz) {
 
-        String name = classShortNameMap.get(clazzName);
+        String name = classNameCache.get(clazz);
         if (name != null) {
             return name;
-        } else {
-            return clazzName;
         }
+
+        final int generation = registrationGeneration.get();
+        final String clazzName = clazz.getName();
+
+        name = classShortNameMap.get(clazzName);
+        if (name == null) {
+            name = clazzName;
+        }
+
+        cacheClassName(classNameCache, clazz, name, generation);
+
+        return name;
     }
 
     public Class<?> nameToClass(String name) throws ClassNotFoundException {
 
-        String clazzName = classShortNameMap.inverse().get(name);
+        Class<?> clazz = nameClassCache.get(name);
+        if (clazz != null) {
+            return clazz;
+        }
+
+        final int generation = registrationGeneration.get();
+        String clazzName = shortNameClassMap.get(name);
         if (clazzName == null) {
             clazzName = name;
         }
 
-        return Class.forName(clazzName);
+        clazz = Class.forName(clazzName, true, classLoader);
+
+        cacheClassName(nameClassCache, name, clazz, generation);
+
+        return clazz;
     }
 
-    private <P> void registerPicklerClass(Class<?> valueClass, Class<P> picklerClass) {
+    /**
+     * Cache a resolved class name, unless the caches were cleared whilst it was being resolved.
+     * The generation is re-checked after the put, as a clear may have slipped in between the two.
+     */
+    private <K, V> void cacheClassName(Map<K, V> cache, K key, V value, int generation) {
+        cache.put(key, value);
+        if (registrationGeneration.get() != generation) {
+            cache.remove(key, value);
+        }
+    }
+
+    private void clearClassNameCaches() {
+        registrationGeneration.incrementAndGet();
+        nameClassCache.clear();
+        classNameCache.clear();
+    }
+
+    /**
+     * Clear the FieldReflector's inferred picklers, after a registration which may change them.
+     * Picklers created lazily on first use (e.g. for a @DefaultPickler) don't change an inference,
+     * as inferring a type resolves its picklers first, so they don't clear them.
+     */
+    private void clearInferredPicklers() {
+        registrationGeneration.incrementAndGet();
+        fieldReflector.clearCache();
+    }
+
+    /**
+     * @return the current registration generation, which changes whenever the derived caches are cleared.
+     */
+    int registrationGeneration() {
+        return registrationGeneration.get();
+    }
+
+    private <T, P extends Pickler<T, PF>> void registerPicklerClass(Class<T> valueClass, Class<P> picklerClass) {
+
+        final TypeVariable<Class<P>>[] tps = picklerClass.getTypeParameters();
+        if (tps.length > 0) {
+            if (!tps[0].getName().equals("PF") || tps.length > 1) {
+                registerGeneric(valueClass, picklerClass);
+            }
+        }
+
         picklerClassRegistry.put(valueClass.getName(), this.<Pickler<?, PF>>castPicklerClass(picklerClass));
     }
 
@@ -214,7 +594,7 @@ public abstract class PicklerCoreBase<PF> implements PicklerCore<PF> {
 
     interface GenericPicklerCtor<T, PF> {
         int picklerCount();
-        Pickler<T, PF> create(Pickler<?, PF>[] picklerArgs);
+        Pickler<T, PF> create(PicklerCoreBase<PF> core, Pickler<?, PF>[] picklerArgs);
     }
 
     protected <T, P extends Pickler<T, PF>> void registerGeneric(final Class<T> valueClass, final Class<P> picklerClass) {
@@ -241,6 +621,9 @@ public abstract class PicklerCoreBase<PF> implements PicklerCore<PF> {
             // The first pickler ctor args is always PicklerCore.
             final int ctorPicklerCount = ctor.getParameterTypes().length - 1;
 
+            // Bind the constructor once, rather than reflecting on each instantiation.
+            final MethodHandle ctorHandle = bindConstructor(picklerClass.getName(), ctor);
+
             // Register a generic pickler constructor.
             genPicklerCtors.add(new GenericPicklerCtor<T, PF>() {
                 @Override public int picklerCount() {
@@ -248,13 +631,13 @@ public abstract class PicklerCoreBase<PF> implements PicklerCore<PF> {
                 }
 
                 @Override
-                public Pickler<T, PF> create(Pickler<?, PF>[] picklerArgs) {
+                public Pickler<T, PF> create(PicklerCoreBase<PF> core, Pickler<?, PF>[] picklerArgs) {
                     if (picklerArgs.length != picklerCount) {
                         throw new PicklerException("The constructor for " + picklerClass.getName() +
                                 " expects " + picklerCount + " pickler arguments");
                     }
 
-                    return createPickler(picklerClass.getName(), ctor, picklerArgs);
+                    return createPickler(core, picklerClass.getName(), ctorHandle, picklerArgs);
                 }
             });
 
@@ -264,32 +647,45 @@ public abstract class PicklerCoreBase<PF> implements PicklerCore<PF> {
                 args[i] = d_object_p();
             }
 
-            register(valueClass, createPickler(picklerClass.getName(), ctor, args));
+            register(valueClass, PicklerCoreBase.<T, PF>createPickler(this, picklerClass.getName(), ctorHandle, args));
         }
 
-        genericPicklerClassRegistry.put(valueClass.getName(), genPicklerCtors);
+        genericPicklerClassRegistry.put(valueClass.getName(), ImmutableList.copyOf(genPicklerCtors));
     }
 
-    private <T> Pickler<T, PF> createPickler(String name, Constructor ctor, Object[] args) {
-
+    /**
+     * Bind a pickler constructor as a MethodHandle which accepts its arguments as an Object array.
+     */
+    private static MethodHandle bindConstructor(String name, Constructor<?> ctor) {
         final int ctorParamCount = ctor.getParameterTypes().length;
-        final Class<?>[] ctorParamTypes = ctor.getParameterTypes();
-
-        final Object[] ctorArgs = new Object[ctorParamCount];
-        ctorArgs[0] = ctorParamTypes[0].cast(this);
-        for (int i = 1; i < ctorParamCount; ++i) {
-            ctorArgs[i] = ctorParamTypes[i].cast(args[i - 1]);
+        try {
+            return MethodHandles.lookup()
+                    .unreflectConstructor(ctor)
+                    .asType(MethodType.genericMethodType(ctorParamCount))
+                    .asSpreader(Object[].class, ctorParamCount);
+        } catch (IllegalAccessException ex) {
+            throw new PicklerException("Failed to access constructor for Pickler class " + name, ex);
         }
+    }
+
+    private static <T, PF> Pickler<T, PF> createPickler(PicklerCoreBase<PF> core, String name, MethodHandle ctorHandle, Object[] args) {
 
+        final Object[] ctorArgs = new Object[args.length + 1];
+        ctorArgs[0] = core;
+        System.arraycopy(args, 0, ctorArgs, 1, args.length);
+
+        final Object pickler;
         try {
-            return (Pickler<T, PF>)ctor.newInstance(ctorArgs);
-        } catch (InvocationTargetException ex) {
-            throw new PicklerException("Failed to call constructor for Pickler class " + name, ex);
-        } catch (InstantiationException ex) {
-            throw new PicklerException("Failed to call constructor for Pickler class " + name, ex);
-        } catch (IllegalAccessException ex) {
+            pickler = ctorHandle.invokeExact(ctorArgs);
+        } catch (PicklerException ex) {
+            throw ex;
+        } catch (Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
             throw new PicklerException("Failed to call constructor for Pickler class " + name, ex);
         }
+
+        return (Pickler<T, PF>)pickler;
     }
 
     protected <T, P extends Pickler<T, PF>> P getPickler(Class<T> valueClass) {
@@ -301,11 +697,25 @@ public abstract class PicklerCoreBase<PF> implements PicklerCore<PF> {
             return pickler;
 
         Class<P> picklerClass = (Class<P>)getPicklerClass(valueClass);
+        if (picklerClass != null && genericPicklerClassRegistry.get(key) != null) {
+            // A generic pickler registered with the core this one was forked from,
+            // so register it again to create its instances against this core.
+            registerGeneric(valueClass, picklerClass);
+            pickler = (P)picklerCache.get(key);
+            if (pickler != null)
+                return pickler;
+        }
+
         if (picklerClass == null) {
             if (valueClass.isAnnotationPresent(DefaultPickler.class)) {
                 final DefaultPickler defPickAnn = valueClass.getAnnotation(DefaultPickler.class);
                 picklerClass = (Class<P>)defPickAnn.value();
-                register(valueClass, picklerClass, true);
+                registerPicklerClass(valueClass, picklerClass);
+
+                // Generic picklers are registered as instances by the above.
+                pickler = (P)picklerCache.get(key);
+                if (pickler != null)
+                    return pickler;
             } else {
                 final Class<?> superClass = valueClass.getSuperclass();
                 if (superClass != null) {
@@ -323,10 +733,8 @@ public abstract class PicklerCoreBase<PF> implements PicklerCore<PF> {
             // Invoke the constructor to get a new instance of the Pickler.
             pickler = ctor.newInstance(this);
 
-            // Register the Pickler.
-            register(valueClass, pickler);
-
-            return pickler;
+            // Register the Pickler, deferring to any pickler registered concurrently.
+            return (P)picklerCache.putIfAbsent(key, pickler);
         } catch (NoSuchMethodException ex) {
             throw new PicklerException(
                     "Pickler class " + picklerClass.getName() +
@@ -342,27 +750,107 @@ public abstract class PicklerCoreBase<PF> implements PicklerCore<PF> {
 
     protected <T, P extends Pickler<T, PF>> Pickler<T, PF> getGenericPickler(final Class<T> valueClass, Pickler<?, PF>... picklers) {
 
+        final Pickler<T, PF> pickler = findGenericPickler(valueClass, picklers);
+        if (pickler != null) {
+            return pickler;
+        }
+
+        if (genericPicklerClassRegistry.get(valueClass.getName()) == null) {
+            throw new PicklerException("No Generic Pickler registered for " + valueClass.getName());
+        } else {
+            throw new PicklerException("No Generic Pickler found for " + valueClass.getName() + " which accepts " + picklers.length + " picklers");
+        }
+    }
+
+    /**
+     * Lookup the generic pickler for a class, given picklers for its type arguments.
+     * Picklers are memoised by the class's registered constructors and the argument picklers,
+     * for as long as they remain in use.
+     * @param valueClass the raw value class.
+     * @param picklers the picklers for the type arguments.
+     * @param <T> value type.
+     * @return the pickler, or null if no generic pickler accepting the arguments is registered.
+     */
+    protected <T> Pickler<T, PF> findGenericPickler(final Class<T> valueClass, Pickler<?, PF>... picklers) {
+
+        final List<GenericPicklerCtor<?, PF>> picklerCtors = findGenericPicklerCtors(valueClass);
+        if (picklerCtors == null) {
+            return null;
+        }
+
+        final GenericPicklerKey key = new GenericPicklerKey(picklerCtors, picklers);
+
+        final Pickler<?, PF> cached = genericPicklerCache.getIfPresent(key);
+        if (cached != null) {
+            return (Pickler<T, PF>)cached;
+        }
+
+        GenericPicklerCtor<?, PF> picklerCtor = null;
+        for (GenericPicklerCtor<?, PF> ctor : picklerCtors) {
+            if (ctor.picklerCount() == picklers.length) {
+                picklerCtor = ctor;
+                break;
+            }
+        }
+
+        if (picklerCtor == null) {
+            return null;
+        }
+
+        final Pickler<?, PF> pickler = picklerCtor.create(this, picklers);
+
+        // Defer to any pickler created concurrently.
+        final Pickler<?, PF> existing = genericPicklerCache.asMap().putIfAbsent(key, pickler);
+        return (Pickler<T, PF>)(existing != null ? existing : pickler);
+    }
+
+    private <T, P extends Pickler<T, PF>> List<GenericPicklerCtor<?, PF>> findGenericPicklerCtors(Class<T> valueClass) {
+
         List<GenericPicklerCtor<?, PF>> picklerCtors = genericPicklerClassRegistry.get(valueClass.getName());
         if (picklerCtors == null) {
             if (valueClass.isAnnotationPresent(DefaultPickler.class)) {
                 final DefaultPickler defPickAnn = valueClass.getAnnotation(DefaultPickler.class);
                 final Class<P> picklerClass = (Class<P>)defPickAnn.value();
-                register(valueClass, picklerClass, true);
+                registerPicklerClass(valueClass, picklerClass);
                 picklerCtors = genericPicklerClassRegistry.get(valueClass.getName());
             }
         }
 
-        if (picklerCtors == null) {
-            throw new PicklerException("No Generic Pickler registered for " + valueClass.getName());
+        return picklerCtors;
+    }
+
+    /**
+     * Memo key for generic picklers - the identities of the registered constructor list and of the argument picklers.
+     * Re-registering a generic pickler class creates a new constructor list,
+     * so picklers created by the old constructors are no longer found, and are left to be collected.
+     */
+    private static final class GenericPicklerKey {
+        private final List<?> picklerCtors;
+        private final Pickler<?, ?>[] picklers;
+        private final int hashCode;
+
+        GenericPicklerKey(List<?> picklerCtors, Pickler<?, ?>[] picklers) {
+            this.picklerCtors = picklerCtors;
+            this.picklers = picklers.clone();
+            this.hashCode = 31 * System.identityHashCode(picklerCtors) + Arrays.hashCode(this.picklers);
         }
 
-        for (GenericPicklerCtor<?, PF> picklerCtor : picklerCtors) {
-            if (picklerCtor.picklerCount() == picklers.length) {
-                return (P)picklerCtor.create(picklers);
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            } else if (!(obj instanceof GenericPicklerKey)) {
+                return false;
+            } else {
+                final GenericPicklerKey rhs = (GenericPicklerKey)obj;
+                return picklerCtors == rhs.picklerCtors && Arrays.equals(picklers, rhs.picklers);
             }
         }
 
-        throw new PicklerException("No Generic Pickler found for " + valueClass.getName() + " which accepts " + picklers.length + " picklers");
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
     }
 
     @Override
@@ -427,6 +915,25 @@ public abstract class PicklerCoreBase<PF> implements PicklerCore<PF> {
 
     @Override
     public <T, S extends T> Pickler<S, PF> d_object_p(Class<T> clazz) {
+        Pickler<?, PF> pickler = dynamicPicklerCache.get(clazz);
+        if (pickler == null) {
+            pickler = createDynamicPickler(clazz);
+            final Pickler<?, PF> existing = dynamicPicklerCache.putIfAbsent(clazz, pickler);
+            if (existing != null) {
+                pickler = existing;
+            }
+        }
+        return (Pickler<S, PF>)pickler;
+    }
+
+    /**
+     * Create a dynamic pickler for a class. Called by d_object_p(Class), which caches the result.
+     * @param clazz the static type of the values.
+     * @param <T> the static type.
+     * @param <S> the value type.
+     * @return the pickler.
+     */
+    protected <T, S extends T> Pickler<S, PF> createDynamicPickler(Class<T> clazz) {
         return new DynamicObjectPickler<S, PF>(this, clazz);
     }
 
@@ -435,15 +942,21 @@ public abstract class PicklerCoreBase<PF> implements PicklerCore<PF> {
         return new Field<T, PF>(name, pickler);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The field is looked up immediately, but inferring its pickler is deferred until first use,
+     * so that constructing a pickler doesn't cascade through the whole type graph.
+     */
     @Override
     public <T> Field<T, PF> field(Class<?> clazz, String name) {
-        final java.lang.reflect.Field field;
-        try {
-            field = clazz.getField(name);
-        } catch (NoSuchFieldException ex) {
-            throw new PicklerException(clazz.getName() + " has no field called " + name);
-        }
-        return new Field<T, PF>(field.getName(), fieldReflector.inferPickler(field));
+        final java.lang.reflect.Field field = getField(clazz, name);
+        return Field.deferred(field.getName(), new Supplier<Pickler<T, PF>>() {
+            @Override
+            public Pickler<T, PF> get() {
+                return fieldReflector.inferPickler(field);
+            }
+        });
     }
 
     @Override
@@ -453,12 +966,20 @@ public abstract class PicklerCoreBase<PF> implements PicklerCore<PF> {
 
     @Override
     public <T> Field<T, PF> null_field(Class<?> clazz, String name) {
-        final java.lang.reflect.Field field;
+        final java.lang.reflect.Field field = getField(clazz, name);
+        return Field.deferred(field.getName(), new Supplier<Pickler<T, PF>>() {
+            @Override
+            public Pickler<T, PF> get() {
+                return nullable(fieldReflector.<T>inferPickler(field));
+            }
+        });
+    }
+
+    private static java.lang.reflect.Field getField(Class<?> clazz, String name) {
         try {
-            field = clazz.getField(name);
+            return clazz.getField(name);
         } catch (NoSuchFieldException ex) {
             throw new PicklerException(clazz.getName() + " has no field called " + name);
         }
-        return new Field<T, PF>(field.getName(), nullable(fieldReflector.inferPickler(field)));
     }
 }
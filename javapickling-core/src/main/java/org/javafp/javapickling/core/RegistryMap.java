@@ -0,0 +1,175 @@
+package org.javafp.javapickling.core;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+
+/**
+ * A map used to hold the PicklerCore registries.
+ * <p>
+ * A RegistryMap starts out in a mutable builder phase, during which entries are held in a concurrent map.
+ * Calling freeze() publishes the entries as an immutable snapshot.
+ * Any registrations made after that point (e.g. picklers created lazily on first use)
+ * are added to a small concurrent delta over the snapshot,
+ * which is folded into a new snapshot once it has grown in proportion to the snapshot,
+ * so that the cost of copying is spread across many registrations.
+ * <p>
+ * Reads never block, in either phase.
+ * <p>
+ * A RegistryMap may also be created as an overlay on a parent map,
+ * in which case lookups fall through to the parent for keys not held by the overlay.
+ * The parent is shared rather than copied, so creating an overlay is O(1).
+ * @param <K> the key type.
+ * @param <V> the value type.
+ */
+public class RegistryMap<K, V> {
+
+    // The minimum size of delta which is folded into the snapshot.
+    private static final int MIN_FOLD_SIZE = 16;
+
+    /**
+     * The snapshot and the delta are published together, so that a reader never sees an entry
+     * missing from both, whilst the delta is being folded into the snapshot.
+     * A key is held in at most one of the two.
+     */
+    private static final class State<K, V> {
+        final ImmutableMap<K, V> snapshot;
+        final Map<K, V> delta;
+
+        State(ImmutableMap<K, V> snapshot) {
+            this.snapshot = snapshot;
+            this.delta = Maps.newConcurrentMap();
+        }
+    }
+
+    private final RegistryMap<K, V> parent;
+
+    private volatile State<K, V> state = new State<K, V>(ImmutableMap.<K, V>of());
+
+    private volatile boolean frozen = false;
+
+    public RegistryMap() {
+        this(null);
+    }
+
+    private RegistryMap(RegistryMap<K, V> parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Create an overlay on this map.
+     * @return a new, empty, RegistryMap which falls through to this one.
+     */
+    public RegistryMap<K, V> overlay() {
+        return new RegistryMap<K, V>(this);
+    }
+
+    /**
+     * Lookup the value for a key.
+     * @param key the key.
+     * @return the value, or null if there isn't one.
+     */
+    public V get(K key) {
+        final V value = getLocal(key);
+        if (value != null || parent == null) {
+            return value;
+        } else {
+            return parent.get(key);
+        }
+    }
+
+    private V getLocal(K key) {
+        final State<K, V> st = state;
+        final V value = st.snapshot.get(key);
+        if (value != null) {
+            return value;
+        } else {
+            return st.delta.get(key);
+        }
+    }
+
+    /**
+     * Add or replace the value for a key.
+     * @param key the key.
+     * @param value the value.
+     */
+    public synchronized void put(K key, V value) {
+        final State<K, V> st = state;
+        if (st.snapshot.containsKey(key)) {
+            // Replacing a snapshot entry is rare, so fold the delta in with it.
+            final Map<K, V> merged = Maps.newHashMap(st.snapshot);
+            merged.putAll(st.delta);
+            merged.put(key, value);
+            state = new State<K, V>(ImmutableMap.copyOf(merged));
+        } else {
+            st.delta.put(key, value);
+            if (frozen && st.delta.size() >= Math.max(MIN_FOLD_SIZE, st.snapshot.size() / 4)) {
+                fold();
+            }
+        }
+    }
+
+    /**
+     * Add the value for a key, unless a value is already present.
+     * @param key the key.
+     * @param value the value.
+     * @return the value now held for the key.
+     */
+    public synchronized V putIfAbsent(K key, V value) {
+        final V existing = get(key);
+        if (existing != null) {
+            return existing;
+        } else {
+            put(key, value);
+            return value;
+        }
+    }
+
+    /**
+     * End the builder phase and publish the current entries as an immutable snapshot.
+     * The parent map, if any, is unaffected.
+     */
+    public synchronized void freeze() {
+        if (!frozen) {
+            fold();
+            frozen = true;
+        }
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    // Publish a new snapshot holding the current snapshot and delta, with an empty delta.
+    private void fold() {
+        final State<K, V> st = state;
+        if (st.snapshot.isEmpty()) {
+            state = new State<K, V>(ImmutableMap.copyOf(st.delta));
+        } else if (!st.delta.isEmpty()) {
+            state = new State<K, V>(ImmutableMap.<K, V>builder().putAll(st.snapshot).putAll(st.delta).build());
+        }
+    }
+
+    /**
+     * @return an immutable copy of the current entries, including those inherited from the parent.
+     */
+    public ImmutableMap<K, V> asMap() {
+        if (parent == null) {
+            return localMap();
+        } else {
+            final Map<K, V> merged = Maps.newHashMap(parent.asMap());
+            merged.putAll(localMap());
+            return ImmutableMap.copyOf(merged);
+        }
+    }
+
+    private ImmutableMap<K, V> localMap() {
+        final State<K, V> st = state;
+        if (st.delta.isEmpty()) {
+            return st.snapshot;
+        } else {
+            return ImmutableMap.<K, V>builder().putAll(st.snapshot).putAll(st.delta).build();
+        }
+    }
+}
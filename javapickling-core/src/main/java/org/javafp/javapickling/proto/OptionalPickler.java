@@ -0,0 +1,34 @@
+package org.javafp.javapickling.proto;
+
+import com.google.common.base.Optional;
+import org.javafp.javapickling.core.Pickler;
+import org.javafp.javapickling.core.PicklerBase;
+import org.javafp.javapickling.core.PicklerCore;
+
+public class OptionalPickler<T> extends PicklerBase<Optional<T>, ProtoIO> {
+
+    private final Pickler<T, ProtoIO> valuePickler;
+
+    public OptionalPickler(PicklerCore<ProtoIO> core, Pickler<T, ProtoIO> valuePickler) {
+        super(core, Optional.class);
+        this.valuePickler = valuePickler;
+    }
+
+    @Override
+    public ProtoIO pickle(Optional<T> optional, ProtoIO target) throws Exception {
+        if (optional.isPresent()) {
+            return valuePickler.pickle(optional.get(), target);
+        } else {
+            return target;
+        }
+    }
+
+    @Override
+    public Optional<T> unpickle(ProtoIO source) throws Exception {
+        if (source.isAbsent()) {
+            return Optional.absent();
+        } else {
+            return Optional.of(valuePickler.unpickle(source));
+        }
+    }
+}
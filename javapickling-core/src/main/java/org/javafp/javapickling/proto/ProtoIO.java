@@ -0,0 +1,452 @@
+package org.javafp.javapickling.proto;
+
+import org.javafp.javapickling.core.Pickler;
+import org.javafp.javapickling.core.PicklerException;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * ProtoIO reads or writes data in the protocol buffers wire format.
+ * <p>
+ * Every value is a field of the enclosing message, and is written under the field number set by field().
+ * Length-delimited values are written with a one byte length, which is widened afterwards if necessary.
+ * <p>
+ * When unpickling, the field's tag has been read and the reader is positioned on its value.
+ * A value may also be absent, in which case it reads as zero, or as empty if length-delimited.
+ * A pickler may leave a length-delimited value part-read -
+ * read() takes care of moving the reader to the end of the value.
+ */
+public class ProtoIO {
+
+    public static final int VARINT = 0;
+    public static final int I64 = 1;
+    public static final int LEN = 2;
+    public static final int I32 = 5;
+
+    // The wire type of an absent value.
+    private static final int ABSENT = -1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private byte[] buf;
+    private int pos;
+
+    // Writing - the number of the field the next value is written to.
+    private int fieldNumber = 1;
+
+    // Reading - the end of the enclosing message.
+    private int limit;
+
+    // Reading - the current value.
+    private int wireType = ABSENT;
+    private int valueEnd;
+
+    /**
+     * Create a ProtoIO for writing.
+     */
+    public ProtoIO() {
+        this.buf = new byte[256];
+    }
+
+    /**
+     * Create a ProtoIO for reading a message.
+     * @param bytes the message.
+     */
+    public ProtoIO(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Create a ProtoIO for reading a message.
+     * @param bytes the buffer containing the message.
+     * @param offset the start of the message.
+     * @param length the length of the message.
+     */
+    public ProtoIO(byte[] bytes, int offset, int length) {
+        this.buf = bytes;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    // Writing.
+
+    /**
+     * @return the bytes written so far.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, pos);
+    }
+
+    /**
+     * Set the number of the field to which the next value is written.
+     * @param number the field number.
+     */
+    public void field(int number) {
+        this.fieldNumber = number;
+    }
+
+    private void ensure(int n) {
+        if (pos + n > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(pos + n, 2 * buf.length));
+        }
+    }
+
+    private void tag(int wireType) {
+        rawVarint(((long)fieldNumber << 3) | wireType);
+    }
+
+    private void rawVarint(long v) {
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buf[pos++] = (byte)((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[pos++] = (byte)v;
+    }
+
+    private void rawFixed32(int v) {
+        ensure(4);
+        buf[pos++] = (byte)v;
+        buf[pos++] = (byte)(v >> 8);
+        buf[pos++] = (byte)(v >> 16);
+        buf[pos++] = (byte)(v >> 24);
+    }
+
+    private void rawFixed64(long v) {
+        rawFixed32((int)v);
+        rawFixed32((int)(v >> 32));
+    }
+
+    private static long zigZag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    public void writeVarint(long v) {
+        tag(VARINT);
+        rawVarint(v);
+    }
+
+    /**
+     * Write a signed integer as a zig-zag encoded varint, as used by sint32 and sint64.
+     * @param v the value.
+     */
+    public void writeSignedVarint(long v) {
+        writeVarint(zigZag(v));
+    }
+
+    public void writeFixed32(int v) {
+        tag(I32);
+        rawFixed32(v);
+    }
+
+    public void writeFixed64(long v) {
+        tag(I64);
+        rawFixed64(v);
+    }
+
+    public void writeBytes(byte[] bytes) {
+        tag(LEN);
+        rawVarint(bytes.length);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    public void writeString(String s) {
+        writeBytes(s.getBytes(UTF8));
+    }
+
+    /**
+     * Start a length-delimited value - an embedded message or a packed array.
+     * @return a mark to be passed to endLength().
+     */
+    public int startLength() {
+        tag(LEN);
+        ensure(1);
+        return pos++;
+    }
+
+    /**
+     * End a length-delimited value.
+     * @param mark the mark returned by startLength().
+     */
+    public void endLength(int mark) {
+        final int len = pos - mark - 1;
+        int size = 1;
+        for (int v = len >>> 7; v != 0; v >>>= 7) {
+            ++size;
+        }
+
+        if (size > 1) {
+            ensure(size - 1);
+            System.arraycopy(buf, mark + 1, buf, mark + size, len);
+        }
+
+        final int end = pos + size - 1;
+        pos = mark;
+        rawVarint(len);
+        pos = end;
+    }
+
+    public void packVarint(long v) {
+        rawVarint(v);
+    }
+
+    public void packSignedVarint(long v) {
+        rawVarint(zigZag(v));
+    }
+
+    public void packFixed32(int v) {
+        rawFixed32(v);
+    }
+
+    public void packFixed64(long v) {
+        rawFixed64(v);
+    }
+
+    // Reading.
+
+    /**
+     * Read the tag of the next field in the current message.
+     * @return the field number, or 0 at the end of the message.
+     */
+    public int nextField() {
+        if (pos >= limit) {
+            wireType = ABSENT;
+            return 0;
+        }
+
+        final long tag = rawReadVarint();
+        wireType = (int)tag & 7;
+        if (wireType == LEN) {
+            final int len = (int)rawReadVarint();
+            valueEnd = pos + len;
+            if (len < 0 || valueEnd > limit) {
+                throw new PicklerException("Invalid length-delimited field length " + len);
+            }
+        }
+
+        return (int)(tag >>> 3);
+    }
+
+    /**
+     * Return the number of the next field in the current message, without reading it.
+     * @return the field number, or 0 at the end of the message.
+     */
+    public int peekField() {
+        if (pos >= limit) {
+            return 0;
+        }
+        final int start = pos;
+        final long tag = rawReadVarint();
+        pos = start;
+        return (int)(tag >>> 3);
+    }
+
+    /**
+     * @return the read position, e.g. of the tag of the next field.
+     */
+    int position() {
+        return pos;
+    }
+
+    /**
+     * Move the read position, within the current message.
+     * @param position a position previously returned by position().
+     */
+    void position(int position) {
+        pos = position;
+    }
+
+    /**
+     * Position the reader on an absent value.
+     */
+    public void absent() {
+        wireType = ABSENT;
+    }
+
+    /**
+     * @return true if the current value is absent.
+     */
+    public boolean isAbsent() {
+        return wireType == ABSENT;
+    }
+
+    /**
+     * Skip the current value, which takes constant time unless it's a varint.
+     */
+    public void skipValue() {
+        switch (wireType) {
+            case VARINT:
+                rawReadVarint();
+                break;
+            case I64:
+                pos += 8;
+                break;
+            case LEN:
+                pos = valueEnd;
+                break;
+            case I32:
+                pos += 4;
+                break;
+            case ABSENT:
+                break;
+            default:
+                throw new PicklerException("Unsupported wire type " + wireType);
+        }
+    }
+
+    /**
+     * Unpickle the current value, and leave the reader at the end of it.
+     * @param pickler the pickler for the value.
+     * @param <T> the value type.
+     * @return the value.
+     * @throws Exception
+     */
+    public <T> T read(Pickler<T, ProtoIO> pickler) throws Exception {
+        final int type = wireType;
+        final int end = valueEnd;
+        final int savedLimit = limit;
+
+        final T value = pickler.unpickle(this);
+
+        if (type == LEN) {
+            pos = end;
+        }
+        limit = savedLimit;
+
+        return value;
+    }
+
+    /**
+     * Enter the current length-delimited value, so that its fields can be read with nextField(),
+     * or its packed elements with hasPacked() and the unpack methods.
+     * An absent value is entered as an empty message.
+     * The enclosing message is restored by read().
+     */
+    public void enter() {
+        if (wireType == LEN) {
+            limit = valueEnd;
+        } else if (wireType == ABSENT) {
+            limit = pos;
+        } else {
+            throw new PicklerException("Expected a length-delimited value but got wire type " + wireType);
+        }
+    }
+
+    /**
+     * @return true if there are more packed elements in the entered value.
+     */
+    public boolean hasPacked() {
+        return pos < limit;
+    }
+
+    /**
+     * @return the number of bytes left in the entered value.
+     */
+    public int remaining() {
+        return limit - pos;
+    }
+
+    private void checkWireType(int expected) {
+        if (wireType != expected) {
+            throw new PicklerException("Expected wire type " + expected + " but got " + wireType);
+        }
+    }
+
+    private long rawReadVarint() {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = buf[pos++];
+            result |= (long)(b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new PicklerException("Malformed varint");
+    }
+
+    private int rawReadFixed32() {
+        final int v = (buf[pos] & 0xFF)
+                | (buf[pos + 1] & 0xFF) << 8
+                | (buf[pos + 2] & 0xFF) << 16
+                | (buf[pos + 3] & 0xFF) << 24;
+        pos += 4;
+        return v;
+    }
+
+    private long rawReadFixed64() {
+        final long lo = rawReadFixed32() & 0xFFFFFFFFL;
+        final long hi = rawReadFixed32() & 0xFFFFFFFFL;
+        return lo | (hi << 32);
+    }
+
+    private static long unZigZag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    public long readVarint() {
+        if (wireType == ABSENT) {
+            return 0;
+        }
+        checkWireType(VARINT);
+        return rawReadVarint();
+    }
+
+    public long readSignedVarint() {
+        return unZigZag(readVarint());
+    }
+
+    public int readFixed32() {
+        if (wireType == ABSENT) {
+            return 0;
+        }
+        checkWireType(I32);
+        return rawReadFixed32();
+    }
+
+    public long readFixed64() {
+        if (wireType == ABSENT) {
+            return 0;
+        }
+        checkWireType(I64);
+        return rawReadFixed64();
+    }
+
+    public byte[] readBytes() {
+        if (wireType == ABSENT) {
+            return new byte[0];
+        }
+        checkWireType(LEN);
+        final byte[] bytes = Arrays.copyOfRange(buf, pos, valueEnd);
+        pos = valueEnd;
+        return bytes;
+    }
+
+    public String readString() {
+        if (wireType == ABSENT) {
+            return "";
+        }
+        checkWireType(LEN);
+        final String s = new String(buf, pos, valueEnd - pos, UTF8);
+        pos = valueEnd;
+        return s;
+    }
+
+    public long unpackVarint() {
+        return rawReadVarint();
+    }
+
+    public long unpackSignedVarint() {
+        return unZigZag(rawReadVarint());
+    }
+
+    public int unpackFixed32() {
+        return rawReadFixed32();
+    }
+
+    public long unpackFixed64() {
+        return rawReadFixed64();
+    }
+}
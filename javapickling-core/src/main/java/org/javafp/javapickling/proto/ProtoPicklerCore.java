@@ -0,0 +1,878 @@
+package org.javafp.javapickling.proto;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import org.javafp.javapickling.core.*;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * PicklerCore implementation which pickles objects to the protocol buffers wire format, via the ProtoIO wrapper.
+ * <p>
+ * Objects are embedded messages, and each field is written under its field number -
+ * the number given to it by the pickler which created it, or else one more than the previous field's.
+ * Integers are zig-zag varints, floats and doubles are fixed-width,
+ * and strings, enums and byte arrays are length-delimited.
+ * Other primitive arrays are packed, collections are repeated fields numbered 1,
+ * and maps are repeated entry messages with the key as field 1 and the value as field 2.
+ * <p>
+ * Null values are written as absent fields, which means null collection elements can't be represented,
+ * other than by d_object_p().
+ * Fields are located by number, so unpickling skips over any fields which weren't asked for.
+ * Fields are cheapest to unpickle in increasing order of number, which is the order they're pickled in,
+ * but may be asked for in any order, as the position of each field skipped over is noted.
+ * Picklers whose data has to be read by later versions should give their fields explicit numbers.
+ */
+public class ProtoPicklerCore extends PicklerCoreBase<ProtoIO> {
+
+    public static ProtoPicklerCore create() {
+        final ProtoPicklerCore core = new ProtoPicklerCore();
+        core.initialise();
+        return core;
+    }
+
+    /**
+     * Create a new core which shares this core's registrations and picklers.
+     * Registrations made on the fork are not visible to this core.
+     * The fork creates its own picklers once it diverges from this core,
+     * i.e. on its first registration or change of setting.
+     * @return the forked core.
+     */
+    public ProtoPicklerCore fork() {
+        return new ProtoPicklerCore(this);
+    }
+
+    /**
+     * Utility function to pickle a value as a message with the value as field 1.
+     * @param pickler
+     * @param value
+     * @param <T>
+     * @return the message.
+     * @throws Exception
+     */
+    public static <T> byte[] pickle(Pickler<T, ProtoIO> pickler, T value) throws Exception {
+        final ProtoIO io = new ProtoIO();
+        io.field(1);
+        pickler.pickle(value, io);
+        return io.toByteArray();
+    }
+
+    /**
+     * Utility function to unpickle a value from field 1 of a message.
+     * @param pickler
+     * @param bytes
+     * @param <T>
+     * @return
+     * @throws Exception
+     */
+    public static <T> T unpickle(Pickler<T, ProtoIO> pickler, byte[] bytes) throws Exception {
+        final ProtoIO io = new ProtoIO(bytes);
+        if (io.nextField() != 1) {
+            io.absent();
+        }
+        return io.read(pickler);
+    }
+
+    protected void initialise() {
+        super.initialise();
+        registerGeneric(Optional.class, OptionalPickler.class);
+    }
+
+    protected final Pickler<Object, ProtoIO> nullP = new Pickler<Object, ProtoIO>() {
+
+        @Override
+        public ProtoIO pickle(Object obj, ProtoIO target) throws Exception {
+            return target;
+        }
+
+        @Override
+        public Object unpickle(ProtoIO source) throws Exception {
+            source.skipValue();
+            return null;
+        }
+    };
+
+    protected final Pickler<Boolean, ProtoIO> booleanP = new Pickler<Boolean, ProtoIO>() {
+
+        @Override
+        public ProtoIO pickle(Boolean b, ProtoIO target) throws Exception {
+            target.writeVarint(b ? 1 : 0);
+            return target;
+        }
+
+        @Override
+        public Boolean unpickle(ProtoIO source) throws Exception {
+            return source.readVarint() != 0;
+        }
+    };
+
+    protected final Pickler<Byte, ProtoIO> byteP = new Pickler<Byte, ProtoIO>() {
+
+        @Override
+        public ProtoIO pickle(Byte b, ProtoIO target) throws Exception {
+            target.writeSignedVarint(b);
+            return target;
+        }
+
+        @Override
+        public Byte unpickle(ProtoIO source) throws Exception {
+            return (byte)source.readSignedVarint();
+        }
+    };
+
+    protected final Pickler<Character, ProtoIO> charP = new Pickler<Character, ProtoIO>() {
+
+        @Override
+        public ProtoIO pickle(Character c, ProtoIO target) throws Exception {
+            target.writeVarint(c);
+            return target;
+        }
+
+        @Override
+        public Character unpickle(ProtoIO source) throws Exception {
+            return (char)source.readVarint();
+        }
+    };
+
+    protected final Pickler<String, ProtoIO> stringP = new Pickler<String, ProtoIO>() {
+
+        @Override
+        public ProtoIO pickle(String s, ProtoIO target) throws Exception {
+            target.writeString(s);
+            return target;
+        }
+
+        @Override
+        public String unpickle(ProtoIO source) throws Exception {
+            return source.readString();
+        }
+    };
+
+    protected final Pickler<Integer, ProtoIO> integerP = new Pickler<Integer, ProtoIO>() {
+
+        @Override
+        public ProtoIO pickle(Integer i, ProtoIO target) throws Exception {
+            target.writeSignedVarint(i);
+            return target;
+        }
+
+        @Override
+        public Integer unpickle(ProtoIO source) throws Exception {
+            return (int)source.readSignedVarint();
+        }
+    };
+
+    protected final Pickler<Short, ProtoIO> shortP = new Pickler<Short, ProtoIO>() {
+
+        @Override
+        public ProtoIO pickle(Short s, ProtoIO target) throws Exception {
+            target.writeSignedVarint(s);
+            return target;
+        }
+
+        @Override
+        public Short unpickle(ProtoIO source) throws Exception {
+            return (short)source.readSignedVarint();
+        }
+    };
+
+    protected final Pickler<Long, ProtoIO> longP = new Pickler<Long, ProtoIO>() {
+
+        @Override
+        public ProtoIO pickle(Long l, ProtoIO target) throws Exception {
+            target.writeSignedVarint(l);
+            return target;
+        }
+
+        @Override
+        public Long unpickle(ProtoIO source) throws Exception {
+            return source.readSignedVarint();
+        }
+    };
+
+    protected final Pickler<Float, ProtoIO> floatP = new Pickler<Float, ProtoIO>() {
+
+        @Override
+        public ProtoIO pickle(Float f, ProtoIO target) throws Exception {
+            target.writeFixed32(Float.floatToRawIntBits(f));
+            return target;
+        }
+
+        @Override
+        public Float unpickle(ProtoIO source) throws Exception {
+            return Float.intBitsToFloat(source.readFixed32());
+        }
+    };
+
+    protected final Pickler<Double, ProtoIO> doubleP = new Pickler<Double, ProtoIO>() {
+
+        @Override
+        public ProtoIO pickle(Double d, ProtoIO target) throws Exception {
+            target.writeFixed64(Double.doubleToRawLongBits(d));
+            return target;
+        }
+
+        @Override
+        public Double unpickle(ProtoIO source) throws Exception {
+            return Double.longBitsToDouble(source.readFixed64());
+        }
+    };
+
+    protected final Pickler<byte[], ProtoIO> byteArrayP = new Pickler<byte[], ProtoIO>() {
+
+        @Override
+        public ProtoIO pickle(byte[] arr, ProtoIO target) throws Exception {
+            target.writeBytes(arr);
+            return target;
+        }
+
+        @Override
+        public byte[] unpickle(ProtoIO source) throws Exception {
+            return source.readBytes();
+        }
+    };
+
+    protected final Pickler<boolean[], ProtoIO> booleanArrayP = new Pickler<boolean[], ProtoIO>() {
+
+        @Override
+        public ProtoIO pickle(boolean[] arr, ProtoIO target) throws Exception {
+
+            final int mark = target.startLength();
+
+            for (boolean elem : arr) {
+                target.packVarint(elem ? 1 : 0);
+            }
+
+            target.endLength(mark);
+
+            return target;
+        }
+
+        @Override
+        public boolean[] unpickle(ProtoIO source) throws Exception {
+
+            source.enter();
+
+            // Each varint is at least one byte, so the remaining length bounds the element count.
+            final boolean[] result = new boolean[source.remaining()];
+
+            int size = 0;
+            while (source.hasPacked()) {
+                result[size++] = source.unpackVarint() != 0;
+            }
+
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        }
+    };
+
+    protected final Pickler<char[], ProtoIO> charArrayP = new Pickler<char[], ProtoIO>() {
+
+        @Override
+        public ProtoIO pickle(char[] arr, ProtoIO target) throws Exception {
+
+            final int mark = target.startLength();
+
+            for (char elem : arr) {
+                target.packVarint(elem);
+            }
+
+            target.endLength(mark);
+
+            return target;
+        }
+
+        @Override
+        public char[] unpickle(ProtoIO source) throws Exception {
+
+            source.enter();
+
+            // Each varint is at least one byte, so the remaining length bounds the element count.
+            final char[] result = new char[source.remaining()];
+
+            int size = 0;
+            while (source.hasPacked()) {
+                result[size++] = (char)source.unpackVarint();
+            }
+
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        }
+    };
+
+    protected final Pickler<int[], ProtoIO> integerArrayP = new Pickler<int[], ProtoIO>() {
+
+        @Override
+        public ProtoIO pickle(int[] arr, ProtoIO target) throws Exception {
+
+            final int mark = target.startLength();
+
+            for (int elem : arr) {
+                target.packSignedVarint(elem);
+            }
+
+            target.endLength(mark);
+
+            return target;
+        }
+
+        @Override
+        public int[] unpickle(ProtoIO source) throws Exception {
+
+            source.enter();
+
+            // Each varint is at least one byte, so the remaining length bounds the element count.
+            final int[] result = new int[source.remaining()];
+
+            int size = 0;
+            while (source.hasPacked()) {
+                result[size++] = (int)source.unpackSignedVarint();
+            }
+
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        }
+    };
+
+    protected final Pickler<short[], ProtoIO> shortArrayP = new Pickler<short[], ProtoIO>() {
+
+        @Override
+        public ProtoIO pickle(short[] arr, ProtoIO target) throws Exception {
+
+            final int mark = target.startLength();
+
+            for (short elem : arr) {
+                target.packSignedVarint(elem);
+            }
+
+            target.endLength(mark);
+
+            return target;
+        }
+
+        @Override
+        public short[] unpickle(ProtoIO source) throws Exception {
+
+            source.enter();
+
+            // Each varint is at least one byte, so the remaining length bounds the element count.
+            final short[] result = new short[source.remaining()];
+
+            int size = 0;
+            while (source.hasPacked()) {
+                result[size++] = (short)source.unpackSignedVarint();
+            }
+
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        }
+    };
+
+    protected final Pickler<long[], ProtoIO> longArrayP = new Pickler<long[], ProtoIO>() {
+
+        @Override
+        public ProtoIO pickle(long[] arr, ProtoIO target) throws Exception {
+
+            final int mark = target.startLength();
+
+            for (long elem : arr) {
+                target.packSignedVarint(elem);
+            }
+
+            target.endLength(mark);
+
+            return target;
+        }
+
+        @Override
+        public long[] unpickle(ProtoIO source) throws Exception {
+
+            source.enter();
+
+            // Each varint is at least one byte, so the remaining length bounds the element count.
+            final long[] result = new long[source.remaining()];
+
+            int size = 0;
+            while (source.hasPacked()) {
+                result[size++] = source.unpackSignedVarint();
+            }
+
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        }
+    };
+
+    protected final Pickler<float[], ProtoIO> floatArrayP = new Pickler<float[], ProtoIO>() {
+
+        @Override
+        public ProtoIO pickle(float[] arr, ProtoIO target) throws Exception {
+
+            final int mark = target.startLength();
+
+            for (float elem : arr) {
+                target.packFixed32(Float.floatToRawIntBits(elem));
+            }
+
+            target.endLength(mark);
+
+            return target;
+        }
+
+        @Override
+        public float[] unpickle(ProtoIO source) throws Exception {
+
+            source.enter();
+
+            final float[] result = new float[source.remaining() / 4];
+
+            for (int i = 0; i < result.length; ++i) {
+                result[i] = Float.intBitsToFloat(source.unpackFixed32());
+            }
+
+            return result;
+        }
+    };
+
+    protected final Pickler<double[], ProtoIO> doubleArrayP = new Pickler<double[], ProtoIO>() {
+
+        @Override
+        public ProtoIO pickle(double[] arr, ProtoIO target) throws Exception {
+
+            final int mark = target.startLength();
+
+            for (double elem : arr) {
+                target.packFixed64(Double.doubleToRawLongBits(elem));
+            }
+
+            target.endLength(mark);
+
+            return target;
+        }
+
+        @Override
+        public double[] unpickle(ProtoIO source) throws Exception {
+
+            source.enter();
+
+            final double[] result = new double[source.remaining() / 8];
+
+            for (int i = 0; i < result.length; ++i) {
+                result[i] = Double.longBitsToDouble(source.unpackFixed64());
+            }
+
+            return result;
+        }
+    };
+
+    protected final ObjectPickler<ProtoIO> objectMapP = new ObjectPickler<ProtoIO>() {
+
+        @Override
+        public FieldPickler<ProtoIO> pickler(final ProtoIO target) {
+
+            final int mark = target.startLength();
+
+            return new AbstractFieldPickler(target) {
+
+                // The number of the last field written.
+                private int number = 0;
+
+                @Override
+                public <T> void field(Field<T, ProtoIO> field, T value) throws Exception {
+                    number = field.number > 0 ? field.number : number + 1;
+                    target.field(number);
+                    field.resolve().pickle(value, target);
+                }
+
+                @Override
+                public <T> void field(String name, T value, Pickler<T, ProtoIO> pickler) throws Exception {
+                    target.field(++number);
+                    pickler.pickle(value, target);
+                }
+
+                @Override
+                public ProtoIO pickle(ProtoIO target) throws Exception {
+                    target.endLength(mark);
+                    return target;
+                }
+            };
+        }
+
+        @Override
+        public FieldUnpickler<ProtoIO> unpickler(final ProtoIO source) {
+
+            source.enter();
+
+            return new AbstractFieldUnpickler(source) {
+
+                // The number of the last field asked for.
+                private int number = 0;
+
+                // The numbers and tag positions of the fields skipped over, as pairs - allocated on first use.
+                private int[] skipped;
+                private int skippedCount = 0;
+
+                @Override
+                public <T> T field(Field<T, ProtoIO> field) throws Exception {
+                    number = field.number > 0 ? field.number : number + 1;
+                    return read(number, field.resolve());
+                }
+
+                @Override
+                public <T> T field(String name, Pickler<T, ProtoIO> pickler) throws Exception {
+                    return read(++number, pickler);
+                }
+
+                private <T> T read(int n, Pickler<T, ProtoIO> pickler) throws Exception {
+
+                    // A field passed over earlier, when reading the fields out of order.
+                    for (int i = 0; i < skippedCount; i += 2) {
+                        if (skipped[i] == n) {
+                            final int resume = source.position();
+                            source.position(skipped[i + 1]);
+                            source.nextField();
+                            final T value = source.read(pickler);
+                            source.position(resume);
+                            return value;
+                        }
+                    }
+
+                    // Skip any fields which weren't asked for, noting where they are.
+                    int next = source.peekField();
+                    while (next != 0 && next != n) {
+                        skip(next, source.position());
+                        source.nextField();
+                        source.skipValue();
+                        next = source.peekField();
+                    }
+
+                    if (next == n) {
+                        source.nextField();
+                    } else {
+                        // The field is absent.
+                        source.absent();
+                    }
+
+                    return source.read(pickler);
+                }
+
+                private void skip(int n, int position) {
+                    if (skipped == null) {
+                        skipped = new int[8];
+                    } else if (skippedCount == skipped.length) {
+                        skipped = Arrays.copyOf(skipped, skippedCount * 2);
+                    }
+                    skipped[skippedCount++] = n;
+                    skipped[skippedCount++] = position;
+                }
+            };
+        }
+    };
+
+    private ProtoPicklerCore() {
+    }
+
+    private ProtoPicklerCore(ProtoPicklerCore base) {
+        super(base);
+    }
+
+    @Override
+    public Pickler<Object, ProtoIO> null_p() {
+        return nullP;
+    }
+
+    @Override
+    public Pickler<Boolean, ProtoIO> boolean_p() {
+        return booleanP;
+    }
+
+    @Override
+    public Pickler<Byte, ProtoIO> byte_p() {
+        return byteP;
+    }
+
+    @Override
+    public Pickler<Character, ProtoIO> char_p() {
+        return charP;
+    }
+
+    @Override
+    public Pickler<String, ProtoIO> string_p() {
+        return stringP;
+    }
+
+    @Override
+    public Pickler<Integer, ProtoIO> integer_p() {
+        return integerP;
+    }
+
+    @Override
+    public Pickler<Short, ProtoIO> short_p() {
+        return shortP;
+    }
+
+    @Override
+    public Pickler<Long, ProtoIO> long_p() {
+        return longP;
+    }
+
+    @Override
+    public Pickler<Float, ProtoIO> float_p() {
+        return floatP;
+    }
+
+    @Override
+    public Pickler<Double, ProtoIO> double_p() {
+        return doubleP;
+    }
+
+    @Override
+    public Pickler<boolean[], ProtoIO> boolean_array_p() {
+        return booleanArrayP;
+    }
+
+    @Override
+    public Pickler<byte[], ProtoIO> byte_array_p() {
+        return byteArrayP;
+    }
+
+    @Override
+    public Pickler<char[], ProtoIO> char_array_p() {
+        return charArrayP;
+    }
+
+    @Override
+    public Pickler<int[], ProtoIO> integer_array_p() {
+        return integerArrayP;
+    }
+
+    @Override
+    public Pickler<short[], ProtoIO> short_array_p() {
+        return shortArrayP;
+    }
+
+    @Override
+    public Pickler<long[], ProtoIO> long_array_p() {
+        return longArrayP;
+    }
+
+    @Override
+    public Pickler<float[], ProtoIO> float_array_p() {
+        return floatArrayP;
+    }
+
+    @Override
+    public Pickler<double[], ProtoIO> double_array_p() {
+        return doubleArrayP;
+    }
+
+    @Override
+    public <T extends Enum<T>> Pickler<T, ProtoIO> enum_p(final Class<T> enumClass) {
+
+        return new Pickler<T, ProtoIO>() {
+
+            @Override
+            public ProtoIO pickle(T t, ProtoIO target) throws Exception {
+                target.writeString(t.name());
+                return target;
+            }
+
+            @Override
+            public T unpickle(ProtoIO source) throws Exception {
+                return T.valueOf(enumClass, source.readString());
+            }
+        };
+    }
+
+    @Override
+    public <T> Pickler<T[], ProtoIO> array_p(final Pickler<T, ProtoIO> elemPickler, final Class<T> elemClass) {
+
+        final Pickler<List<T>, ProtoIO> listPickler = list_p(elemPickler);
+
+        return new Pickler<T[], ProtoIO>() {
+
+            @Override
+            public ProtoIO pickle(T[] arr, ProtoIO target) throws Exception {
+                return listPickler.pickle(Arrays.asList(arr), target);
+            }
+
+            @Override
+            public T[] unpickle(ProtoIO source) throws Exception {
+                final List<T> list = listPickler.unpickle(source);
+                return list.toArray((T[])Array.newInstance(elemClass, list.size()));
+            }
+        };
+    }
+
+    @Override
+    public <T> Pickler<List<T>, ProtoIO> list_p(
+            final Pickler<T, ProtoIO> elemPickler,
+            final Class<? extends List> listClass) {
+
+        return new Pickler<List<T>, ProtoIO>() {
+
+            @Override
+            public ProtoIO pickle(List<T> list, ProtoIO target) throws Exception {
+
+                final int mark = target.startLength();
+
+                for (T elem : list) {
+                    target.field(1);
+                    elemPickler.pickle(elem, target);
+                }
+
+                target.endLength(mark);
+
+                return target;
+            }
+
+            @Override
+            public List<T> unpickle(ProtoIO source) throws Exception {
+
+                source.enter();
+
+                final List<T> result = newInstance(listClass);
+
+                while (source.nextField() != 0) {
+                    result.add(source.read(elemPickler));
+                }
+
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public <T> Pickler<Map<String, T>, ProtoIO> map_p(
+            final Pickler<T, ProtoIO> valuePickler,
+            final Class<? extends Map> mapClass) {
+
+        return map_p(string_p(), valuePickler, mapClass);
+    }
+
+    @Override
+    public <K, V> Pickler<Map<K, V>, ProtoIO> map_p(
+            final Pickler<K, ProtoIO> keyPickler,
+            final Pickler<V, ProtoIO> valuePickler,
+            final Class<?  extends Map> mapClass) {
+
+        // Maps are written as protobuf maps - a repeated message field with the key and value as fields 1 and 2.
+        final Pickler<Map.Entry<K, V>, ProtoIO> entryPickler = new Pickler<Map.Entry<K, V>, ProtoIO>() {
+
+            @Override
+            public ProtoIO pickle(Map.Entry<K, V> entry, ProtoIO target) throws Exception {
+                final FieldPickler<ProtoIO> fp = object_map().pickler(target);
+                fp.field("key", entry.getKey(), keyPickler);
+                fp.field("value", entry.getValue(), valuePickler);
+                return fp.pickle(target);
+            }
+
+            @Override
+            public Map.Entry<K, V> unpickle(ProtoIO source) throws Exception {
+                final FieldUnpickler<ProtoIO> fu = object_map().unpickler(source);
+                final K key = fu.field("key", keyPickler);
+                final V value = fu.field("value", valuePickler);
+                return Maps.immutableEntry(key, value);
+            }
+        };
+
+        return new Pickler<Map<K, V>, ProtoIO>() {
+
+            @Override
+            public ProtoIO pickle(Map<K, V> map, ProtoIO target) throws Exception {
+
+                final int mark = target.startLength();
+
+                for (Map.Entry<K, V> entry : map.entrySet()) {
+                    target.field(1);
+                    entryPickler.pickle(entry, target);
+                }
+
+                target.endLength(mark);
+
+                return target;
+            }
+
+            @Override
+            public Map<K, V> unpickle(ProtoIO source) throws Exception {
+
+                source.enter();
+
+                final Map<K, V> result = newInstance(mapClass);
+
+                while (source.nextField() != 0) {
+                    final Map.Entry<K, V> entry = source.read(entryPickler);
+                    result.put(entry.getKey(), entry.getValue());
+                }
+
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public <T> Pickler<Set<T>, ProtoIO> set_p(
+            final Pickler<T, ProtoIO> elemPickler,
+            final Class<? extends Set> setClass) {
+
+        return new Pickler<Set<T>, ProtoIO>() {
+
+            @Override
+            public ProtoIO pickle(Set<T> set, ProtoIO target) throws Exception {
+
+                final int mark = target.startLength();
+
+                for (T elem : set) {
+                    target.field(1);
+                    elemPickler.pickle(elem, target);
+                }
+
+                target.endLength(mark);
+
+                return target;
+            }
+
+            @Override
+            public Set<T> unpickle(ProtoIO source) throws Exception {
+
+                source.enter();
+
+                final Set<T> result = newInstance(setClass);
+
+                while (source.nextField() != 0) {
+                    result.add(source.read(elemPickler));
+                }
+
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public ObjectPickler<ProtoIO> object_map() {
+        return objectMapP;
+    }
+
+    @Override
+    public <T> Pickler<T, ProtoIO> nullable(final Pickler<T, ProtoIO> pickler) {
+
+        return new Pickler<T, ProtoIO>() {
+
+            @Override
+            public ProtoIO pickle(T t, ProtoIO target) throws Exception {
+                if (t == null) {
+                    return target;
+                } else {
+                    return pickler.pickle(t, target);
+                }
+            }
+
+            @Override
+            public T unpickle(ProtoIO source) throws Exception {
+                if (source.isAbsent()) {
+                    return null;
+                } else {
+                    return pickler.unpickle(source);
+                }
+            }
+        };
+    }
+}
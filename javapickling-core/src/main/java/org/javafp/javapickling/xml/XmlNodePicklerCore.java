@@ -1,6 +1,8 @@
 package org.javafp.javapickling.xml;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import org.javafp.javapickling.core.FieldPath;
 import org.javafp.javapickling.core.FieldPickler;
 import org.javafp.javapickling.core.Pickler;
 import org.javafp.javapickling.core.PicklerCoreBase;
@@ -12,13 +14,8 @@ import org.w3c.dom.*;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import java.io.StringWriter;
-import java.io.Writer;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Array;
 import java.util.List;
 import java.util.Map;
@@ -41,18 +38,123 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
         return core;
     }
 
+    /**
+     * Create a new core which shares this core's registrations and picklers.
+     * Registrations made on the fork are not visible to this core.
+     * The fork creates its own picklers once it diverges from this core,
+     * i.e. on its first registration or change of setting.
+     * @return the forked core.
+     */
+    public XmlNodePicklerCore fork() {
+        return new XmlNodePicklerCore(this);
+    }
+
     public static String nodeToString(Document xml, boolean pretty) throws Exception {
+        return XmlNodeSerialiser.toString(xml, pretty);
+    }
+
+    /**
+     * Write a document as UTF-8 encoded XML directly to an OutputStream.
+     * @param xml
+     * @param os
+     * @param pretty
+     * @throws Exception
+     */
+    public static void writeNode(Document xml, OutputStream os, boolean pretty) throws Exception {
+        XmlNodeSerialiser.write(xml, os, pretty);
+    }
+
+    /**
+     * Parse a document from an InputStream, using a DocumentBuilder cached for the current thread.
+     * @param is
+     * @return
+     * @throws Exception
+     */
+    public static Document readNode(InputStream is) throws Exception {
+        return XmlNodeSerialiser.parse(is);
+    }
+
+    /**
+     * Create a new, empty Document, using a DocumentBuilder cached for the current thread.
+     * @return the document.
+     */
+    public static Document newDocument() {
+        return XmlNodeSerialiser.newDocument();
+    }
 
-        final Transformer tf = TransformerFactory.newInstance().newTransformer();
-        tf.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-        if (pretty) {
-            tf.setOutputProperty(OutputKeys.INDENT, "yes");
-            tf.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
+    /**
+     * Utility function to pickle a value into the document element of a new Document.
+     * @param pickler
+     * @param value
+     * @param rootName name of the document element.
+     * @param <T>
+     * @return
+     * @throws Exception
+     */
+    public static <T> Document pickle(Pickler<T, Node> pickler, T value, String rootName) throws Exception {
+        final Document doc = newDocument();
+        final Element root = doc.createElement(rootName);
+        doc.appendChild(root);
+        pickler.pickle(value, root);
+        return doc;
+    }
+
+    /**
+     * Extract a value nested within a pickled object, such as "members.DEVELOPER[0].name",
+     * by navigating the document, without unpickling anything else.
+     * A name selects an object field or a map entry by its key, and an index selects a list or array element.
+     * @param source the pickled object.
+     * @param pickler the pickler for the value.
+     * @param path the path to the value.
+     * @param <T> the value type.
+     * @return the value, or null if the path does not exist.
+     * @throws Exception
+     */
+    public static <T> T extract(Node source, Pickler<T, Node> pickler, String path) throws Exception {
+
+        final FieldPath fieldPath = FieldPath.parse(path);
+        final int last = fieldPath.size() - 1;
+
+        Node node = source instanceof Document ? ((Document)source).getDocumentElement() : source;
+        for (int i = 0; i <= last && node != null; ++i) {
+            if (fieldPath.isIndex(i)) {
+                node = getChildElement(node, "_" + fieldPath.index(i));
+            } else {
+                final String name = fieldPath.name(i);
+                final Element child = getChildElement(node, name);
+                if (child != null) {
+                    node = child;
+                } else if (i == last && isAttributeField(name, pickler) && ((Element)node).hasAttribute(name)) {
+                    // A compact scalar field.
+                    return ((ScalarPickler<T>)pickler).fromText(((Element)node).getAttribute(name));
+                } else {
+                    node = mapValue(node, name);
+                }
+            }
         }
 
-        final Writer out = new StringWriter();
-        tf.transform(new DOMSource(xml), new StreamResult(out));
-        return out.toString();
+        return node == null ? null : pickler.unpickle(node);
+    }
+
+    // Find the value of the map entry with the given key, in a map with non-string keys.
+    private static Element mapValue(Node map, String key) {
+        for (Element entry = firstChildElement(map); entry != null; entry = nextSiblingElement(entry)) {
+            final Element keyNode = getChildElement(entry, "key");
+            if (keyNode != null && key.equals(keyNode.getTextContent())) {
+                return getChildElement(entry, "value");
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Picklers create nodes with the document which owns the target node,
+     * so a single core may pickle into many documents concurrently.
+     * @param node the target node.
+     * @return the document which owns the node.
+     */
+    protected static Document documentOf(Node node) {
+        return node instanceof Document ? (Document)node : node.getOwnerDocument();
     }
 
     private static DocumentBuilder createDocumentBuilder() {
@@ -71,6 +173,34 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
         return null;
     }
 
+    protected static Element firstChildElement(Node parent) {
+        Node child = parent.getFirstChild();
+        while (child != null && !(child instanceof Element)) {
+            child = child.getNextSibling();
+        }
+        return (Element)child;
+    }
+
+    protected static Element nextSiblingElement(Node node) {
+        Node sibling = node.getNextSibling();
+        while (sibling != null && !(sibling instanceof Element)) {
+            sibling = sibling.getNextSibling();
+        }
+        return (Element)sibling;
+    }
+
+    protected static int countChildElements(Node parent) {
+        int n = 0;
+        for (Element child = firstChildElement(parent); child != null; child = nextSiblingElement(child)) {
+            ++n;
+        }
+        return n;
+    }
+
+    private static String nodeName(Node node) {
+        return node == null ? null : node.getNodeName();
+    }
+
     protected static Text getChildText(Node parent) {
         for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
             if (child instanceof Text)
@@ -87,10 +217,112 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
         parent.setAttribute(name, value);
     }
 
+    /**
+     * Base class for picklers of values held as a single text node.
+     * In the compact dialect such values are held in an attribute when they are object fields.
+     */
+    protected abstract class ScalarPickler<T> implements Pickler<T, Node> {
+
+        protected String toText(T t) {
+            return t.toString();
+        }
+
+        protected abstract T fromText(String s);
+
+        @Override
+        public Node pickle(T t, Node target) throws Exception {
+            return target.appendChild(documentOf(target).createTextNode(toText(t)));
+        }
+
+        @Override
+        public T unpickle(Node source) throws Exception {
+            final Text text = getChildText(source);
+            return fromText(text.getWholeText());
+        }
+    }
+
+    /**
+     * Iterates over the whitespace-separated tokens of a compact primitive array.
+     */
+    private static final class TextTokens {
+
+        private final String text;
+        private int pos;
+
+        TextTokens(String text) {
+            this.text = text;
+        }
+
+        int count() {
+            int n = 0;
+            boolean inToken = false;
+            for (int i = 0, l = text.length(); i < l; ++i) {
+                final boolean ws = Character.isWhitespace(text.charAt(i));
+                if (!ws && !inToken) {
+                    ++n;
+                }
+                inToken = !ws;
+            }
+            return n;
+        }
+
+        String next() {
+            final int l = text.length();
+            while (pos < l && Character.isWhitespace(text.charAt(pos))) {
+                ++pos;
+            }
+            final int start = pos;
+            while (pos < l && !Character.isWhitespace(text.charAt(pos))) {
+                ++pos;
+            }
+            return text.substring(start, pos);
+        }
+    }
+
+    /**
+     * Appends the i'th element of a primitive array to a StringBuilder.
+     */
+    private interface TokenFormatter {
+        void append(StringBuilder sb, int i);
+    }
+
+    /**
+     * Append the elements of a primitive array to a node, as whitespace-separated text.
+     */
+    private static void appendTokens(Node target, int length, TokenFormatter formatter) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; ++i) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            formatter.append(sb, i);
+        }
+        target.appendChild(documentOf(target).createTextNode(sb.toString()));
+    }
+
+    // Attributes set by DynamicObjectXmlNodePickler, which fields therefore can not use.
+    private static final Set<String> reservedAttrs = ImmutableSet.of("type", "class");
+
+    private static boolean isAttributeField(String name, Pickler<?, Node> pickler) {
+        return pickler instanceof ScalarPickler && !reservedAttrs.contains(name);
+    }
+
+    /**
+     * @deprecated use {@link #newDocument()}, which is safe to call from multiple threads.
+     */
+    @Deprecated
     public DocumentBuilder docBuilder;
 
+    /**
+     * @deprecated picklers create nodes with the document which owns the target node,
+     * so this document is only needed by callers which pickle into it.
+     * Use {@link #newDocument()} to create a document per pickling operation instead.
+     */
+    @Deprecated
     public Document doc;
 
+    private boolean compact = false;
+
     private XmlNodePicklerCore() {
         this(createDocumentBuilder());
     }
@@ -100,15 +332,45 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
         this.doc = docBuilder.newDocument();
     }
 
+    private XmlNodePicklerCore(XmlNodePicklerCore base) {
+        super(base);
+        this.docBuilder = base.docBuilder;
+        this.doc = base.doc;
+        this.compact = base.compact;
+    }
+
     protected void initialise() {
         super.initialise();
         registerGeneric(Optional.class, OptionalPickler.class);
     }
 
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * Select the compact XML dialect for pickling,
+     * in which primitive arrays are held as whitespace-separated text,
+     * and scalar object fields are held as attributes of the object's element.
+     * Both dialects are always accepted when unpickling.
+     * <p>
+     * A fork stops sharing this core's picklers when this is changed,
+     * so it may select a different dialect to this core.
+     * @param compact true to select the compact dialect.
+     */
+    public void setCompact(boolean compact) {
+        if (compact != this.compact) {
+            unsharePicklers();
+            this.compact = compact;
+        }
+    }
+
+    @Deprecated
     public void setDocumentBuilder(DocumentBuilder docBuilder) {
         this.docBuilder = docBuilder;
     }
 
+    @Deprecated
     public void setDocument(Document doc) {
         this.doc = doc;
     }
@@ -117,7 +379,7 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
 
         @Override
         public Node pickle(Object obj, Node target) throws Exception {
-            return target.appendChild(doc.createTextNode(""));
+            return target.appendChild(documentOf(target).createTextNode(""));
         }
 
         @Override
@@ -126,129 +388,75 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
         }
     };
 
-    protected final Pickler<Boolean, Node> booleanP = new Pickler<Boolean, Node>() {
+    protected final Pickler<Boolean, Node> booleanP = new ScalarPickler<Boolean>() {
 
         @Override
-        public Node pickle(Boolean b, Node target) throws Exception {
-            return target.appendChild(doc.createTextNode(b.toString()));
-        }
-
-        @Override
-        public Boolean unpickle(Node source) throws Exception {
-            final Text text = getChildText(source);
-            return Boolean.parseBoolean(text.getWholeText());
+        protected Boolean fromText(String s) {
+            return Boolean.parseBoolean(s);
         }
     };
 
-    protected final Pickler<Byte, Node> byteP = new Pickler<Byte, Node>() {
-
-        @Override
-        public Node pickle(Byte b, Node target) throws Exception {
-            return target.appendChild(doc.createTextNode(b.toString()));
-        }
+    protected final Pickler<Byte, Node> byteP = new ScalarPickler<Byte>() {
 
         @Override
-        public Byte unpickle(Node source) throws Exception {
-            final Text text = getChildText(source);
-            return Byte.valueOf(text.getWholeText());
+        protected Byte fromText(String s) {
+            return Byte.valueOf(s);
         }
     };
 
-    protected final Pickler<Character, Node> charP = new Pickler<Character, Node>() {
-
-        @Override
-        public Node pickle(Character c, Node target) throws Exception {
-            return target.appendChild(doc.createTextNode(c.toString()));
-        }
+    protected final Pickler<Character, Node> charP = new ScalarPickler<Character>() {
 
         @Override
-        public Character unpickle(Node source) throws Exception {
-            final Text text = getChildText(source);
-            return Character.valueOf(text.getWholeText().charAt(0));
+        protected Character fromText(String s) {
+            return Character.valueOf(s.charAt(0));
         }
     };
 
-    protected final Pickler<String, Node> stringP = new Pickler<String, Node>() {
+    protected final Pickler<String, Node> stringP = new ScalarPickler<String>() {
 
         @Override
-        public Node pickle(String s, Node target) throws Exception {
-            return target.appendChild(doc.createTextNode(s));
-        }
-
-        @Override
-        public String unpickle(Node source) throws Exception {
-            final Text text = getChildText(source);
-            return text.getWholeText();
+        protected String fromText(String s) {
+            return s;
         }
     };
 
-    protected final Pickler<Integer, Node> integerP = new Pickler<Integer, Node>() {
-
-        @Override
-        public Node pickle(Integer i, Node target) throws Exception {
-            return target.appendChild(doc.createTextNode(i.toString()));
-        }
+    protected final Pickler<Integer, Node> integerP = new ScalarPickler<Integer>() {
 
         @Override
-        public Integer unpickle(Node source) throws Exception {
-            final Text text = getChildText(source);
-            return Integer.valueOf(text.getWholeText());
+        protected Integer fromText(String s) {
+            return Integer.valueOf(s);
         }
     };
 
-    protected final Pickler<Short, Node> shortP = new Pickler<Short, Node>() {
-
-        @Override
-        public Node pickle(Short s, Node target) throws Exception {
-            return target.appendChild(doc.createTextNode(s.toString()));
-        }
+    protected final Pickler<Short, Node> shortP = new ScalarPickler<Short>() {
 
         @Override
-        public Short unpickle(Node source) throws Exception {
-            final Text text = getChildText(source);
-            return Short.valueOf(text.getWholeText());
+        protected Short fromText(String s) {
+            return Short.valueOf(s);
         }
     };
 
-    protected final Pickler<Long, Node> longP = new Pickler<Long, Node>() {
-
-        @Override
-        public Node pickle(Long l, Node target) throws Exception {
-            return target.appendChild(doc.createTextNode(l.toString()));
-        }
+    protected final Pickler<Long, Node> longP = new ScalarPickler<Long>() {
 
         @Override
-        public Long unpickle(Node source) throws Exception {
-            final Text text = getChildText(source);
-            return Long.valueOf(text.getWholeText());
+        protected Long fromText(String s) {
+            return Long.valueOf(s);
         }
     };
 
-    protected final Pickler<Float, Node> floatP = new Pickler<Float, Node>() {
+    protected final Pickler<Float, Node> floatP = new ScalarPickler<Float>() {
 
         @Override
-        public Node pickle(Float f, Node target) throws Exception {
-            return target.appendChild(doc.createTextNode(f.toString()));
-        }
-
-        @Override
-        public Float unpickle(Node source) throws Exception {
-            final Text text = getChildText(source);
-            return Float.valueOf(text.getWholeText());
+        protected Float fromText(String s) {
+            return Float.valueOf(s);
         }
     };
 
-    protected final Pickler<Double, Node> doubleP = new Pickler<Double, Node>() {
+    protected final Pickler<Double, Node> doubleP = new ScalarPickler<Double>() {
 
         @Override
-        public Node pickle(Double d, Node target) throws Exception {
-            return target.appendChild(doc.createTextNode(d.toString()));
-        }
-
-        @Override
-        public Double unpickle(Node source) throws Exception {
-            final Text text = getChildText(source);
-            return Double.valueOf(text.getWholeText());
+        protected Double fromText(String s) {
+            return Double.valueOf(s);
         }
     };
 
@@ -257,10 +465,20 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
         final Pickler<Boolean, Node> elemPickler = boolean_p();
 
         @Override
-        public Node pickle(boolean[] arr, Node target) throws Exception {
+        public Node pickle(final boolean[] arr, Node target) throws Exception {
+
+            if (compact) {
+                appendTokens(target, arr.length, new TokenFormatter() {
+                    @Override
+                    public void append(StringBuilder sb, int i) {
+                        sb.append(arr[i]);
+                    }
+                });
+                return target;
+            }
 
             for (int i = 0; i < arr.length; ++i) {
-                final Node node = doc.createElement("_" + Integer.toString(i));
+                final Node node = documentOf(target).createElement("_" + Integer.toString(i));
                 elemPickler.pickle(arr[i], node);
                 target.appendChild(node);
             }
@@ -271,12 +489,21 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
         @Override
         public boolean[] unpickle(Node source) throws Exception {
 
-            final NodeList nodes = source.getChildNodes();
-            final int l = nodes.getLength();
+            if (firstChildElement(source) == null) {
+                final TextTokens tokens = new TextTokens(source.getTextContent());
+                final boolean[] result = new boolean[tokens.count()];
+                for (int i = 0; i < result.length; ++i) {
+                    result[i] = Boolean.parseBoolean(tokens.next());
+                }
+                return result;
+            }
+
+            final int l = countChildElements(source);
             final boolean[] result = new boolean[l];
 
-            for (int i = 0; i < l; ++i) {
-                result[i] = elemPickler.unpickle(nodes.item(i));
+            int i = 0;
+            for (Element node = firstChildElement(source); node != null; node = nextSiblingElement(node)) {
+                result[i++] = elemPickler.unpickle(node);
             }
 
             return result;
@@ -288,10 +515,20 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
         final Pickler<Byte, Node> elemPickler = byte_p();
 
         @Override
-        public Node pickle(byte[] arr, Node target) throws Exception {
+        public Node pickle(final byte[] arr, Node target) throws Exception {
+
+            if (compact) {
+                appendTokens(target, arr.length, new TokenFormatter() {
+                    @Override
+                    public void append(StringBuilder sb, int i) {
+                        sb.append(arr[i]);
+                    }
+                });
+                return target;
+            }
 
             for (int i = 0; i < arr.length; ++i) {
-                final Node node = doc.createElement("_" + Integer.toString(i));
+                final Node node = documentOf(target).createElement("_" + Integer.toString(i));
                 elemPickler.pickle(arr[i], node);
                 target.appendChild(node);
             }
@@ -302,12 +539,21 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
         @Override
         public byte[] unpickle(Node source) throws Exception {
 
-            final NodeList nodes = source.getChildNodes();
-            final int l = nodes.getLength();
+            if (firstChildElement(source) == null) {
+                final TextTokens tokens = new TextTokens(source.getTextContent());
+                final byte[] result = new byte[tokens.count()];
+                for (int i = 0; i < result.length; ++i) {
+                    result[i] = Byte.parseByte(tokens.next());
+                }
+                return result;
+            }
+
+            final int l = countChildElements(source);
             final byte[] result = new byte[l];
 
-            for (int i = 0; i < l; ++i) {
-                result[i] = elemPickler.unpickle(nodes.item(i));
+            int i = 0;
+            for (Element node = firstChildElement(source); node != null; node = nextSiblingElement(node)) {
+                result[i++] = elemPickler.unpickle(node);
             }
 
             return result;
@@ -321,8 +567,13 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
         @Override
         public Node pickle(char[] arr, Node target) throws Exception {
 
+            if (compact) {
+                target.appendChild(documentOf(target).createTextNode(new String(arr)));
+                return target;
+            }
+
             for (int i = 0; i < arr.length; ++i) {
-                final Node node = doc.createElement("_" + Integer.toString(i));
+                final Node node = documentOf(target).createElement("_" + Integer.toString(i));
                 elemPickler.pickle(arr[i], node);
                 target.appendChild(node);
             }
@@ -333,12 +584,16 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
         @Override
         public char[] unpickle(Node source) throws Exception {
 
-            final NodeList nodes = source.getChildNodes();
-            final int l = nodes.getLength();
+            if (firstChildElement(source) == null) {
+                return source.getTextContent().toCharArray();
+            }
+
+            final int l = countChildElements(source);
             final char[] result = new char[l];
 
-            for (int i = 0; i < l; ++i) {
-                result[i] = elemPickler.unpickle(nodes.item(i));
+            int i = 0;
+            for (Element node = firstChildElement(source); node != null; node = nextSiblingElement(node)) {
+                result[i++] = elemPickler.unpickle(node);
             }
 
             return result;
@@ -350,10 +605,20 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
         final Pickler<Integer, Node> elemPickler = integer_p();
 
         @Override
-        public Node pickle(int[] arr, Node target) throws Exception {
+        public Node pickle(final int[] arr, Node target) throws Exception {
+
+            if (compact) {
+                appendTokens(target, arr.length, new TokenFormatter() {
+                    @Override
+                    public void append(StringBuilder sb, int i) {
+                        sb.append(arr[i]);
+                    }
+                });
+                return target;
+            }
 
             for (int i = 0; i < arr.length; ++i) {
-                final Node node = doc.createElement("_" + Integer.toString(i));
+                final Node node = documentOf(target).createElement("_" + Integer.toString(i));
                 elemPickler.pickle(arr[i], node);
                 target.appendChild(node);
             }
@@ -364,12 +629,21 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
         @Override
         public int[] unpickle(Node source) throws Exception {
 
-            final NodeList nodes = source.getChildNodes();
-            final int l = nodes.getLength();
+            if (firstChildElement(source) == null) {
+                final TextTokens tokens = new TextTokens(source.getTextContent());
+                final int[] result = new int[tokens.count()];
+                for (int i = 0; i < result.length; ++i) {
+                    result[i] = Integer.parseInt(tokens.next());
+                }
+                return result;
+            }
+
+            final int l = countChildElements(source);
             final int[] result = new int[l];
 
-            for (int i = 0; i < l; ++i) {
-                result[i] = elemPickler.unpickle(nodes.item(i));
+            int i = 0;
+            for (Element node = firstChildElement(source); node != null; node = nextSiblingElement(node)) {
+                result[i++] = elemPickler.unpickle(node);
             }
 
             return result;
@@ -381,10 +655,20 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
         final Pickler<Short, Node> elemPickler = short_p();
 
         @Override
-        public Node pickle(short[] arr, Node target) throws Exception {
+        public Node pickle(final short[] arr, Node target) throws Exception {
+
+            if (compact) {
+                appendTokens(target, arr.length, new TokenFormatter() {
+                    @Override
+                    public void append(StringBuilder sb, int i) {
+                        sb.append(arr[i]);
+                    }
+                });
+                return target;
+            }
 
             for (int i = 0; i < arr.length; ++i) {
-                final Node node = doc.createElement("_" + Integer.toString(i));
+                final Node node = documentOf(target).createElement("_" + Integer.toString(i));
                 elemPickler.pickle(arr[i], node);
                 target.appendChild(node);
             }
@@ -395,12 +679,21 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
         @Override
         public short[] unpickle(Node source) throws Exception {
 
-            final NodeList nodes = source.getChildNodes();
-            final int l = nodes.getLength();
+            if (firstChildElement(source) == null) {
+                final TextTokens tokens = new TextTokens(source.getTextContent());
+                final short[] result = new short[tokens.count()];
+                for (int i = 0; i < result.length; ++i) {
+                    result[i] = Short.parseShort(tokens.next());
+                }
+                return result;
+            }
+
+            final int l = countChildElements(source);
             final short[] result = new short[l];
 
-            for (int i = 0; i < l; ++i) {
-                result[i] = elemPickler.unpickle(nodes.item(i));
+            int i = 0;
+            for (Element node = firstChildElement(source); node != null; node = nextSiblingElement(node)) {
+                result[i++] = elemPickler.unpickle(node);
             }
 
             return result;
@@ -412,10 +705,20 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
         final Pickler<Long, Node> elemPickler = long_p();
 
         @Override
-        public Node pickle(long[] arr, Node target) throws Exception {
+        public Node pickle(final long[] arr, Node target) throws Exception {
+
+            if (compact) {
+                appendTokens(target, arr.length, new TokenFormatter() {
+                    @Override
+                    public void append(StringBuilder sb, int i) {
+                        sb.append(arr[i]);
+                    }
+                });
+                return target;
+            }
 
             for (int i = 0; i < arr.length; ++i) {
-                final Node node = doc.createElement("_" + Integer.toString(i));
+                final Node node = documentOf(target).createElement("_" + Integer.toString(i));
                 elemPickler.pickle(arr[i], node);
                 target.appendChild(node);
             }
@@ -426,12 +729,21 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
         @Override
         public long[] unpickle(Node source) throws Exception {
 
-            final NodeList nodes = source.getChildNodes();
-            final int l = nodes.getLength();
+            if (firstChildElement(source) == null) {
+                final TextTokens tokens = new TextTokens(source.getTextContent());
+                final long[] result = new long[tokens.count()];
+                for (int i = 0; i < result.length; ++i) {
+                    result[i] = Long.parseLong(tokens.next());
+                }
+                return result;
+            }
+
+            final int l = countChildElements(source);
             final long[] result = new long[l];
 
-            for (int i = 0; i < l; ++i) {
-                result[i] = elemPickler.unpickle(nodes.item(i));
+            int i = 0;
+            for (Element node = firstChildElement(source); node != null; node = nextSiblingElement(node)) {
+                result[i++] = elemPickler.unpickle(node);
             }
 
             return result;
@@ -443,10 +755,20 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
         final Pickler<Float, Node> elemPickler = float_p();
 
         @Override
-        public Node pickle(float[] arr, Node target) throws Exception {
+        public Node pickle(final float[] arr, Node target) throws Exception {
+
+            if (compact) {
+                appendTokens(target, arr.length, new TokenFormatter() {
+                    @Override
+                    public void append(StringBuilder sb, int i) {
+                        sb.append(arr[i]);
+                    }
+                });
+                return target;
+            }
 
             for (int i = 0; i < arr.length; ++i) {
-                final Node node = doc.createElement("_" + Integer.toString(i));
+                final Node node = documentOf(target).createElement("_" + Integer.toString(i));
                 elemPickler.pickle(arr[i], node);
                 target.appendChild(node);
             }
@@ -457,12 +779,21 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
         @Override
         public float[] unpickle(Node source) throws Exception {
 
-            final NodeList nodes = source.getChildNodes();
-            final int l = nodes.getLength();
+            if (firstChildElement(source) == null) {
+                final TextTokens tokens = new TextTokens(source.getTextContent());
+                final float[] result = new float[tokens.count()];
+                for (int i = 0; i < result.length; ++i) {
+                    result[i] = Float.parseFloat(tokens.next());
+                }
+                return result;
+            }
+
+            final int l = countChildElements(source);
             final float[] result = new float[l];
 
-            for (int i = 0; i < l; ++i) {
-                result[i] = elemPickler.unpickle(nodes.item(i));
+            int i = 0;
+            for (Element node = firstChildElement(source); node != null; node = nextSiblingElement(node)) {
+                result[i++] = elemPickler.unpickle(node);
             }
 
             return result;
@@ -471,13 +802,23 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
 
     protected final Pickler<double[], Node> doubleArrayP = new Pickler<double[], Node>() {
 
-        final Pickler<Double, Node> elemPickler =double_p();
+        final Pickler<Double, Node> elemPickler = double_p();
 
         @Override
-        public Node pickle(double[] arr, Node target) throws Exception {
+        public Node pickle(final double[] arr, Node target) throws Exception {
+
+            if (compact) {
+                appendTokens(target, arr.length, new TokenFormatter() {
+                    @Override
+                    public void append(StringBuilder sb, int i) {
+                        sb.append(arr[i]);
+                    }
+                });
+                return target;
+            }
 
             for (int i = 0; i < arr.length; ++i) {
-                final Node node = doc.createElement("_" + Integer.toString(i));
+                final Node node = documentOf(target).createElement("_" + Integer.toString(i));
                 elemPickler.pickle(arr[i], node);
                 target.appendChild(node);
             }
@@ -488,12 +829,21 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
         @Override
         public double[] unpickle(Node source) throws Exception {
 
-            final NodeList nodes = source.getChildNodes();
-            final int l = nodes.getLength();
+            if (firstChildElement(source) == null) {
+                final TextTokens tokens = new TextTokens(source.getTextContent());
+                final double[] result = new double[tokens.count()];
+                for (int i = 0; i < result.length; ++i) {
+                    result[i] = Double.parseDouble(tokens.next());
+                }
+                return result;
+            }
+
+            final int l = countChildElements(source);
             final double[] result = new double[l];
 
-            for (int i = 0; i < l; ++i) {
-                result[i] = elemPickler.unpickle(nodes.item(i));
+            int i = 0;
+            for (Element node = firstChildElement(source); node != null; node = nextSiblingElement(node)) {
+                result[i++] = elemPickler.unpickle(node);
             }
 
             return result;
@@ -511,7 +861,11 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
 
                 @Override
                 public <T> void field(String name, T value, Pickler<T, Node> pickler) throws Exception {
-                    final Element node = doc.createElement(name);
+                    if (compact && value != null && isAttributeField(name, pickler)) {
+                        elem.setAttribute(name, ((ScalarPickler<T>)pickler).toText(value));
+                        return;
+                    }
+                    final Element node = documentOf(target).createElement(name);
                     if (pickler.pickle(value, node) != null) {
                         target.appendChild(node);
                     }
@@ -531,9 +885,35 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
 
                 private final Element elem = (Element)source;
 
+                // The element expected to hold the next field.
+                // Fields are normally read in the order they were pickled,
+                // so the search starts here, and wraps around to the first child if need be.
+                private Element next = firstChildElement(elem);
+
                 @Override
                 public <T> T field(String name, Pickler<T, Node> pickler) throws Exception {
-                    return pickler.unpickle(getChildElement(elem, name));
+                    if (isAttributeField(name, pickler) && elem.hasAttribute(name)) {
+                        return ((ScalarPickler<T>)pickler).fromText(elem.getAttribute(name));
+                    }
+                    final Element node = findChildElement(name);
+                    if (node != null) {
+                        next = nextSiblingElement(node);
+                    }
+                    return pickler.unpickle(node);
+                }
+
+                private Element findChildElement(String name) {
+                    for (Element child = next; child != null; child = nextSiblingElement(child)) {
+                        if (name.equals(child.getNodeName())) {
+                            return child;
+                        }
+                    }
+                    for (Element child = firstChildElement(elem); child != next; child = nextSiblingElement(child)) {
+                        if (name.equals(child.getNodeName())) {
+                            return child;
+                        }
+                    }
+                    return null;
                 }
             };
         }
@@ -638,7 +1018,7 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
 
             @Override
             public Node pickle(T t, Node target) throws Exception {
-                return target.appendChild(doc.createTextNode(t.name()));
+                return target.appendChild(documentOf(target).createTextNode(t.name()));
             }
 
             @Override
@@ -660,7 +1040,7 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
             public Node pickle(T[] arr, Node target) throws Exception {
 
                 for (int i = 0; i < arr.length; ++i) {
-                    final Node node = doc.createElement("_" + Integer.toString(i));
+                    final Node node = documentOf(target).createElement("_" + Integer.toString(i));
                     elemPickler.pickle(arr[i], node);
                     target.appendChild(node);
                 }
@@ -671,12 +1051,12 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
             @Override
             public T[] unpickle(Node source) throws Exception {
 
-                final NodeList nodes = source.getChildNodes();
-                final int l = nodes.getLength();
+                final int l = countChildElements(source);
                 final T[] result = (T[]) Array.newInstance(elemClass, l);
 
-                for (int i = 0; i < l; ++i) {
-                    result[i] = elemPickler.unpickle(nodes.item(i));
+                int i = 0;
+                for (Element node = firstChildElement(source); node != null; node = nextSiblingElement(node)) {
+                    result[i++] = elemPickler.unpickle(node);
                 }
 
                 return result;
@@ -696,7 +1076,7 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
 
                 int i = 0;
                 for (T elem : list) {
-                    final Node node = doc.createElement("_" + Integer.toString(i));
+                    final Node node = documentOf(target).createElement("_" + Integer.toString(i));
                     elemPickler.pickle(elem, node);
                     target.appendChild(node);
                     ++i;
@@ -708,12 +1088,10 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
             @Override
             public List<T> unpickle(Node source) throws Exception {
 
-                final NodeList nodes = source.getChildNodes();
-                final int l = nodes.getLength();
                 final List<T> result = newInstance(listClass);
 
-                for (int i = 0; i < l; ++i) {
-                    result.add(elemPickler.unpickle(nodes.item(i)));
+                for (Element node = firstChildElement(source); node != null; node = nextSiblingElement(node)) {
+                    result.add(elemPickler.unpickle(node));
                 }
 
                 return result;
@@ -732,7 +1110,7 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
             public Node pickle(Map<String, T> map, Node target) throws Exception {
 
                 for (Map.Entry<String, T> entry : map.entrySet()) {
-                    final Node node = doc.createElement(entry.getKey());
+                    final Node node = documentOf(target).createElement(entry.getKey());
                     valuePickler.pickle(entry.getValue(), node);
                     target.appendChild(node);
                 }
@@ -743,13 +1121,10 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
             @Override
             public Map<String, T> unpickle(Node source) throws Exception {
 
-                final NodeList nodes = source.getChildNodes();
-                final int l = nodes.getLength();
                 final Map<String, T> result = newInstance(mapClass);
 
-                for (int i = 0; i < l; ++i) {
-                    final Node node = nodes.item(i);
-                    result.put(node.getNodeName(), valuePickler.unpickle(nodes.item(i)));
+                for (Element node = firstChildElement(source); node != null; node = nextSiblingElement(node)) {
+                    result.put(node.getNodeName(), valuePickler.unpickle(node));
                 }
 
                 return result;
@@ -773,13 +1148,13 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
 
                 int i = 0;
                 for (Map.Entry<K, V> entry : map.entrySet()) {
-                    final Node node = doc.createElement("_" + Integer.toString(i));
+                    final Node node = documentOf(target).createElement("_" + Integer.toString(i));
 
-                    final Node keyNode = doc.createElement(keyF);
+                    final Node keyNode = documentOf(target).createElement(keyF);
                     keyPickler.pickle(entry.getKey(), keyNode);
                     node.appendChild(keyNode);
 
-                    final Node valueNode = doc.createElement(valueF);
+                    final Node valueNode = documentOf(target).createElement(valueF);
                     valuePickler.pickle(entry.getValue(), valueNode);
                     node.appendChild(valueNode);
 
@@ -793,9 +1168,6 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
             @Override
             public Map<K, V> unpickle(Node source) throws Exception {
 
-                final NodeList nodes = source.getChildNodes();
-                final int l = nodes.getLength();
-
                 final Map<K, V> result;
                 try {
                     result = mapClass.newInstance();
@@ -805,10 +1177,11 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
                     throw new PicklerException("Can not create map class", ex);
                 }
 
-                for (int i = 0; i < l; ++i) {
-                    final Element node = (Element)nodes.item(i);
-                    final K key = keyPickler.unpickle(getChildElement(node, keyF));
-                    final V value = valuePickler.unpickle(getChildElement(node, valueF));
+                for (Element node = firstChildElement(source); node != null; node = nextSiblingElement(node)) {
+                    final Element keyNode = firstChildElement(node);
+                    final Element valueNode = keyNode == null ? null : nextSiblingElement(keyNode);
+                    final K key = keyPickler.unpickle(keyF.equals(nodeName(keyNode)) ? keyNode : getChildElement(node, keyF));
+                    final V value = valuePickler.unpickle(valueF.equals(nodeName(valueNode)) ? valueNode : getChildElement(node, valueF));
                     result.put(key, value);
                 }
 
@@ -829,7 +1202,7 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
 
                 int i = 0;
                 for (T elem : set) {
-                    final Node node = doc.createElement("_" + Integer.toString(i));
+                    final Node node = documentOf(target).createElement("_" + Integer.toString(i));
                     elemPickler.pickle(elem, node);
                     target.appendChild(node);
                     ++i;
@@ -841,12 +1214,10 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
             @Override
             public Set<T> unpickle(Node source) throws Exception {
 
-                final NodeList nodes = source.getChildNodes();
-                final int l = nodes.getLength();
                 final Set<T> result = newInstance(setClass);
 
-                for (int i = 0; i < l; ++i) {
-                    result.add(elemPickler.unpickle(nodes.item(i)));
+                for (Element node = firstChildElement(source); node != null; node = nextSiblingElement(node)) {
+                    result.add(elemPickler.unpickle(node));
                 }
 
                 return result;
@@ -860,7 +1231,7 @@ public class XmlNodePicklerCore extends PicklerCoreBase<Node> {
     }
 
     @Override
-    public <T, S extends T> Pickler<S, Node> d_object_p(Class<T> clazz) {
+    protected <T, S extends T> Pickler<S, Node> createDynamicPickler(Class<T> clazz) {
         return new DynamicObjectXmlNodePickler<S>(this, clazz);
     }
 
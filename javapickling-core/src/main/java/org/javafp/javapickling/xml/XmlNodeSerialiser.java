@@ -0,0 +1,347 @@
+package org.javafp.javapickling.xml;
+
+import org.javafp.javapickling.core.PicklerException;
+import org.w3c.dom.*;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Serialises DOM nodes to UTF-8 XML, and parses them back again.
+ * DocumentBuilders, which are not thread-safe, are pooled per thread.
+ * <p>
+ * Only the subset of DOM produced by XmlNodePicklerCore is supported -
+ * elements, attributes, text and CDATA sections. Comments and processing instructions are skipped.
+ * The output is written through a per-thread buffer straight to the destination,
+ * without going through a Transformer or building the document as a String.
+ */
+public final class XmlNodeSerialiser {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int INDENT = 4;
+
+    private static final byte[] DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>".getBytes(UTF8);
+
+    // Escape sequences for ASCII characters in text content and attribute values, null where none is required.
+    private static final byte[][] textEscapes = new byte[128][];
+    private static final byte[][] attrEscapes = new byte[128][];
+
+    static {
+        for (int c = 0; c < 0x20; ++c) {
+            textEscapes[c] = attrEscapes[c] = ("&#" + c + ";").getBytes(UTF8);
+        }
+        textEscapes['\t'] = null;
+        textEscapes['\n'] = null;
+        textEscapes['\r'] = "&#13;".getBytes(UTF8);
+
+        textEscapes['&'] = attrEscapes['&'] = "&amp;".getBytes(UTF8);
+        textEscapes['<'] = attrEscapes['<'] = "&lt;".getBytes(UTF8);
+        textEscapes['>'] = attrEscapes['>'] = "&gt;".getBytes(UTF8);
+        attrEscapes['"'] = "&quot;".getBytes(UTF8);
+    }
+
+    private static final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    private static final DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
+
+    private static final ThreadLocal<DocumentBuilder> docBuilders = new ThreadLocal<DocumentBuilder>() {
+        @Override
+        protected DocumentBuilder initialValue() {
+            try {
+                synchronized (docBuilderFactory) {
+                    return docBuilderFactory.newDocumentBuilder();
+                }
+            } catch (ParserConfigurationException ex) {
+                throw new PicklerException("Failed to construct DocumentBuilder", ex);
+            }
+        }
+    };
+
+    private XmlNodeSerialiser() {
+    }
+
+    /**
+     * Write a node as UTF-8 encoded XML to an OutputStream.
+     * An XML declaration is written if the node is a Document.
+     * @param node the node to write.
+     * @param os the destination.
+     * @param pretty if true then child elements are indented.
+     * @throws IOException
+     */
+    public static void write(Node node, OutputStream os, boolean pretty) throws IOException {
+        final Output out = new StreamOutput(os, buffers.get());
+        out.node(node, pretty);
+        out.flush();
+    }
+
+    /**
+     * Write a node as UTF-8 encoded XML to a WritableByteChannel.
+     * An XML declaration is written if the node is a Document.
+     * @param node the node to write.
+     * @param channel the destination.
+     * @param pretty if true then child elements are indented.
+     * @throws IOException
+     */
+    public static void write(Node node, WritableByteChannel channel, boolean pretty) throws IOException {
+        final Output out = new ChannelOutput(channel, buffers.get());
+        out.node(node, pretty);
+        out.flush();
+    }
+
+    /**
+     * @param node the node to write.
+     * @param pretty if true then child elements are indented.
+     * @return the node as an XML string.
+     */
+    public static String toString(Node node, boolean pretty) {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            write(node, baos, pretty);
+        } catch (IOException ex) {
+            throw new PicklerException("Failed to serialise XML", ex);
+        }
+        return new String(baos.toByteArray(), UTF8);
+    }
+
+    /**
+     * Create an empty document using a DocumentBuilder cached for the current thread.
+     * @return the document.
+     */
+    public static Document newDocument() {
+        return docBuilders.get().newDocument();
+    }
+
+    /**
+     * Parse an XML document using a DocumentBuilder cached for the current thread.
+     * @param is the source.
+     * @return the document.
+     * @throws IOException
+     * @throws SAXException
+     */
+    public static Document parse(InputStream is) throws IOException, SAXException {
+        final DocumentBuilder docBuilder = docBuilders.get();
+        try {
+            return docBuilder.parse(is);
+        } finally {
+            docBuilder.reset();
+        }
+    }
+
+    /**
+     * Parse an XML document using a DocumentBuilder cached for the current thread.
+     * @param channel the source.
+     * @return the document.
+     * @throws IOException
+     * @throws SAXException
+     */
+    public static Document parse(ReadableByteChannel channel) throws IOException, SAXException {
+        return parse(Channels.newInputStream(channel));
+    }
+
+    private static abstract class Output {
+
+        private final byte[] buf;
+        private int pos;
+
+        Output(byte[] buf) {
+            this.buf = buf;
+        }
+
+        protected abstract void drain(byte[] buf, int len) throws IOException;
+
+        void flush() throws IOException {
+            if (pos > 0) {
+                drain(buf, pos);
+                pos = 0;
+            }
+        }
+
+        void node(Node node, boolean pretty) throws IOException {
+            if (node instanceof Document) {
+                bytes(DECLARATION);
+                if (pretty) {
+                    write('\n');
+                }
+                for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    if (child instanceof Element) {
+                        element((Element)child, pretty, 0);
+                    }
+                }
+            } else if (node instanceof Element) {
+                element((Element)node, pretty, 0);
+            } else if (node instanceof Text) {
+                escaped(((Text)node).getData(), textEscapes);
+            } else {
+                throw new PicklerException("Can not serialise a node of type " + node.getNodeType());
+            }
+        }
+
+        private void element(Element elem, boolean pretty, int depth) throws IOException {
+
+            final String name = elem.getTagName();
+
+            write('<');
+            raw(name);
+
+            final NamedNodeMap attrs = elem.getAttributes();
+            for (int i = 0, n = attrs.getLength(); i < n; ++i) {
+                final Node attr = attrs.item(i);
+                write(' ');
+                raw(attr.getNodeName());
+                write('=');
+                write('"');
+                escaped(attr.getNodeValue(), attrEscapes);
+                write('"');
+            }
+
+            final Node first = elem.getFirstChild();
+            if (first == null) {
+                write('/');
+                write('>');
+            } else {
+                write('>');
+
+                // Only indent elements whose content is entirely elements, to preserve text content.
+                final boolean indent = pretty && onlyElements(elem);
+
+                for (Node child = first; child != null; child = child.getNextSibling()) {
+                    if (child instanceof Element) {
+                        if (indent) {
+                            newLine(depth + 1);
+                        }
+                        element((Element)child, pretty, depth + 1);
+                    } else if (child instanceof Text) {
+                        escaped(((Text)child).getData(), textEscapes);
+                    }
+                }
+
+                if (indent) {
+                    newLine(depth);
+                }
+
+                write('<');
+                write('/');
+                raw(name);
+                write('>');
+            }
+
+            if (pretty && depth == 0) {
+                write('\n');
+            }
+        }
+
+        private static boolean onlyElements(Element elem) {
+            for (Node child = elem.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child instanceof Text) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void newLine(int depth) throws IOException {
+            write('\n');
+            for (int i = depth * INDENT; i > 0; --i) {
+                write(' ');
+            }
+        }
+
+        private void write(int b) throws IOException {
+            if (pos == buf.length) {
+                flush();
+            }
+            buf[pos++] = (byte)b;
+        }
+
+        private void bytes(byte[] bytes) throws IOException {
+            for (byte b : bytes) {
+                write(b);
+            }
+        }
+
+        // Write a string which requires no escaping, e.g. an element name, as UTF-8.
+        private void raw(String s) throws IOException {
+            escaped(s, null);
+        }
+
+        private void escaped(String s, byte[][] escapes) throws IOException {
+            final int n = s.length();
+            for (int i = 0; i < n; ++i) {
+                final char c = s.charAt(i);
+                if (c < 0x80) {
+                    final byte[] esc = escapes == null ? null : escapes[c];
+                    if (esc == null) {
+                        write(c);
+                    } else {
+                        bytes(esc);
+                    }
+                } else if (c < 0x800) {
+                    write(0xC0 | (c >> 6));
+                    write(0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    final int cp = Character.toCodePoint(c, s.charAt(++i));
+                    write(0xF0 | (cp >> 18));
+                    write(0x80 | ((cp >> 12) & 0x3F));
+                    write(0x80 | ((cp >> 6) & 0x3F));
+                    write(0x80 | (cp & 0x3F));
+                } else {
+                    write(0xE0 | (c >> 12));
+                    write(0x80 | ((c >> 6) & 0x3F));
+                    write(0x80 | (c & 0x3F));
+                }
+            }
+        }
+    }
+
+    private static final class StreamOutput extends Output {
+
+        private final OutputStream os;
+
+        StreamOutput(OutputStream os, byte[] buf) {
+            super(buf);
+            this.os = os;
+        }
+
+        @Override
+        protected void drain(byte[] buf, int len) throws IOException {
+            os.write(buf, 0, len);
+        }
+    }
+
+    private static final class ChannelOutput extends Output {
+
+        private final WritableByteChannel channel;
+
+        ChannelOutput(WritableByteChannel channel, byte[] buf) {
+            super(buf);
+            this.channel = channel;
+        }
+
+        @Override
+        protected void drain(byte[] buf, int len) throws IOException {
+            final ByteBuffer bb = ByteBuffer.wrap(buf, 0, len);
+            while (bb.hasRemaining()) {
+                channel.write(bb);
+            }
+        }
+    }
+}
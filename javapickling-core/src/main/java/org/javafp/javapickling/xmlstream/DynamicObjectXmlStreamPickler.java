@@ -0,0 +1,55 @@
+package org.javafp.javapickling.xmlstream;
+
+import org.javafp.javapickling.core.MetaType;
+import org.javafp.javapickling.core.PicklerBase;
+import org.javafp.javapickling.core.PicklerCore;
+import org.javafp.javapickling.core.PicklerException;
+
+public class DynamicObjectXmlStreamPickler<T> extends PicklerBase<T, XmlStreamIO> {
+
+    private static final String typeName = "type";
+    private static final String className = "class";
+
+    public DynamicObjectXmlStreamPickler(PicklerCore<XmlStreamIO> core, Class<? super T> clazz) {
+        super(core, clazz);
+    }
+
+    @Override
+    public XmlStreamIO pickle(T obj, XmlStreamIO target) throws Exception {
+
+        final MetaType metaType = MetaType.ofObject(obj);
+
+        target.attribute(typeName, metaType.name());
+
+        if (metaType.typeKind == MetaType.TypeKind.ENUM || metaType.typeKind == MetaType.TypeKind.OBJECT) {
+            target.attribute(className, core.classToName(metaType.clazz));
+        }
+
+        if (metaType.typeKind != MetaType.TypeKind.NULL) {
+            metaType.pickler(core).pickle(obj, target);
+        }
+
+        return target;
+    }
+
+    @Override
+    public T unpickle(XmlStreamIO source) throws Exception {
+
+        MetaType metaType = MetaType.ofName(source.attribute(typeName));
+
+        if (metaType.typeKind == MetaType.TypeKind.ENUM || metaType.typeKind == MetaType.TypeKind.OBJECT) {
+            try {
+                final Class<?> clazz = core.nameToClass(source.attribute(className));
+                metaType = new MetaType(metaType.typeKind, clazz, metaType.arrayDepth);
+            } catch (ClassNotFoundException ex) {
+                throw new PicklerException("Can not construct class", ex);
+            }
+        }
+
+        if (metaType.typeKind != MetaType.TypeKind.NULL) {
+            return (T)metaType.pickler(core).unpickle(source);
+        } else {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.javafp.javapickling.xmlstream;
+
+import com.google.common.base.Optional;
+import org.javafp.javapickling.core.Pickler;
+import org.javafp.javapickling.core.PicklerBase;
+import org.javafp.javapickling.core.PicklerCore;
+
+public class OptionalPickler<T> extends PicklerBase<Optional<T>, XmlStreamIO> {
+
+    private final Pickler<T, XmlStreamIO> valuePickler;
+
+    public OptionalPickler(PicklerCore<XmlStreamIO> core, Pickler<T, XmlStreamIO> valuePickler) {
+        super(core, Optional.class);
+        this.valuePickler = valuePickler;
+    }
+
+    @Override
+    public XmlStreamIO pickle(Optional<T> optional, XmlStreamIO target) throws Exception {
+        if (optional.isPresent()) {
+            return valuePickler.pickle(optional.get(), target);
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public Optional<T> unpickle(XmlStreamIO source) throws Exception {
+        if (source != null) {
+            return Optional.of(valuePickler.unpickle(source));
+        } else {
+            return Optional.absent();
+        }
+    }
+}
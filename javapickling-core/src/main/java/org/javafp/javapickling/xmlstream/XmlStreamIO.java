@@ -0,0 +1,227 @@
+package org.javafp.javapickling.xmlstream;
+
+import org.javafp.javapickling.core.Pickler;
+
+import javax.xml.stream.*;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+/**
+ * XmlStreamIO wraps either an XMLStreamReader or an XMLStreamWriter.
+ * <p>
+ * When pickling, the element for a value is opened by the caller before the value is pickled,
+ * but its start tag is held back until some content or an attribute is written.
+ * This allows an element to be abandoned if the value turns out to be absent.
+ * <p>
+ * When unpickling, the reader is positioned on the START_ELEMENT of the value to be unpickled.
+ * A pickler may leave the reader anywhere within the element it reads -
+ * read() takes care of moving the reader to the element's END_ELEMENT.
+ */
+public class XmlStreamIO {
+
+    private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+    private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+    public final XMLStreamReader reader;
+    public final XMLStreamWriter writer;
+
+    // The name of the element whose start tag has yet to be written.
+    private String pendingElement;
+
+    // The number of elements the reader is within, including the current START_ELEMENT.
+    private int depth;
+
+    public XmlStreamIO(XMLStreamReader reader) throws XMLStreamException {
+        this.reader = reader;
+        this.writer = null;
+
+        if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+            reader.nextTag();
+        }
+        depth = 1;
+    }
+
+    public XmlStreamIO(XMLStreamWriter writer) {
+        this.reader = null;
+        this.writer = writer;
+    }
+
+    public static XMLInputFactory inputFactory() {
+        return inputFactory;
+    }
+
+    public static XMLOutputFactory outputFactory() {
+        return outputFactory;
+    }
+
+    /**
+     * Open an element. The start tag is written once the element has some content.
+     * @param name the element name.
+     * @throws XMLStreamException
+     */
+    public void startElement(String name) throws XMLStreamException {
+        flushPending();
+        pendingElement = name;
+    }
+
+    /**
+     * Close the current element.
+     * @throws XMLStreamException
+     */
+    public void endElement() throws XMLStreamException {
+        if (pendingElement != null) {
+            writer.writeEmptyElement(pendingElement);
+            pendingElement = null;
+        } else {
+            writer.writeEndElement();
+        }
+    }
+
+    /**
+     * Abandon the current element, if nothing has been written to it yet, otherwise close it.
+     * @throws XMLStreamException
+     */
+    public void abandonElement() throws XMLStreamException {
+        if (pendingElement != null) {
+            pendingElement = null;
+        } else {
+            writer.writeEndElement();
+        }
+    }
+
+    public void attribute(String name, String value) throws XMLStreamException {
+        if (pendingElement != null) {
+            writer.writeStartElement(pendingElement);
+            pendingElement = null;
+        }
+        writer.writeAttribute(name, value);
+    }
+
+    public void text(String text) throws XMLStreamException {
+        flushPending();
+        writer.writeCharacters(text);
+    }
+
+    private void flushPending() throws XMLStreamException {
+        if (pendingElement != null) {
+            writer.writeStartElement(pendingElement);
+            pendingElement = null;
+        }
+    }
+
+    public String localName() {
+        return reader.getLocalName();
+    }
+
+    /**
+     * @param name the attribute name.
+     * @return the value of the attribute on the current element, or null if it isn't present.
+     */
+    public String attribute(String name) {
+        return reader.getAttributeValue(null, name);
+    }
+
+    /**
+     * Read the text content of the current element, leaving the reader on its END_ELEMENT.
+     * @return the text.
+     * @throws XMLStreamException
+     */
+    public String readText() throws XMLStreamException {
+        final String text = reader.getElementText();
+        --depth;
+        return text;
+    }
+
+    /**
+     * Advance to the next child element of the current element.
+     * @return true if positioned on the child's START_ELEMENT,
+     *      or false if positioned on the END_ELEMENT of the current element.
+     * @throws XMLStreamException
+     */
+    public boolean nextChild() throws XMLStreamException {
+        while (true) {
+            switch (next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    return true;
+                case XMLStreamConstants.END_ELEMENT:
+                    return false;
+                case XMLStreamConstants.END_DOCUMENT:
+                    throw new XMLStreamException("Unexpected end of document");
+            }
+        }
+    }
+
+    /**
+     * Unpickle the current element, and leave the reader on its END_ELEMENT.
+     * @param pickler the pickler for the value.
+     * @param <T> the value type.
+     * @return the value.
+     * @throws Exception
+     */
+    public <T> T read(Pickler<T, XmlStreamIO> pickler) throws Exception {
+        final int endDepth = depth - 1;
+
+        final T value = pickler.unpickle(this);
+
+        while (!(reader.getEventType() == XMLStreamConstants.END_ELEMENT && depth == endDepth)) {
+            if (next() == XMLStreamConstants.END_DOCUMENT) {
+                throw new XMLStreamException("Unexpected end of document");
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Copy the current element into a buffer, leaving the reader on its END_ELEMENT.
+     * @return an XmlStreamIO which reads from the buffered copy.
+     * @throws XMLStreamException
+     */
+    public XmlStreamIO buffer() throws XMLStreamException {
+        final StringWriter sw = new StringWriter();
+        final XMLStreamWriter copier = outputFactory.createXMLStreamWriter(sw);
+
+        final int endDepth = depth - 1;
+        int event = reader.getEventType();
+        while (true) {
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    copier.writeStartElement(reader.getLocalName());
+                    for (int i = 0; i < reader.getAttributeCount(); ++i) {
+                        copier.writeAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    copier.writeCharacters(reader.getText());
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    copier.writeEndElement();
+                    break;
+                case XMLStreamConstants.END_DOCUMENT:
+                    throw new XMLStreamException("Unexpected end of document");
+            }
+
+            if (event == XMLStreamConstants.END_ELEMENT && depth == endDepth) {
+                break;
+            }
+
+            event = next();
+        }
+
+        copier.close();
+
+        return new XmlStreamIO(inputFactory.createXMLStreamReader(new StringReader(sw.toString())));
+    }
+
+    private int next() throws XMLStreamException {
+        final int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+            ++depth;
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+            --depth;
+        }
+        return event;
+    }
+}
@@ -0,0 +1,936 @@
+package org.javafp.javapickling.xmlstream;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import org.javafp.javapickling.core.*;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.util.*;
+
+/**
+ * PicklerCore implementation which pickles objects directly to an XMLStreamWriter,
+ * and unpickles them directly from an XMLStreamReader, without building a DOM.
+ * <p>
+ * The XML layout is the same as that produced and consumed by XmlNodePicklerCore.
+ * Object fields are expected in the order they are pickled,
+ * though fields which arrive out of order are buffered so they can still be unpickled.
+ */
+public class XmlStreamPicklerCore extends PicklerCoreBase<XmlStreamIO> {
+
+    private static final int INITIAL_ARRAY_SIZE = 16;
+
+    private static final String[] elemNames = new String[256];
+
+    static {
+        for (int i = 0; i < elemNames.length; ++i) {
+            elemNames[i] = "_" + Integer.toString(i);
+        }
+    }
+
+    /**
+     * @param i the element index.
+     * @return the element name used for the i'th element of a collection.
+     */
+    protected static String elemName(int i) {
+        return i < elemNames.length ? elemNames[i] : "_" + Integer.toString(i);
+    }
+
+    public static XmlStreamPicklerCore create() {
+        final XmlStreamPicklerCore core = new XmlStreamPicklerCore();
+        core.initialise();
+        return core;
+    }
+
+    /**
+     * Create a new core which shares this core's registrations and picklers.
+     * Registrations made on the fork are not visible to this core.
+     * The fork creates its own picklers once it diverges from this core,
+     * i.e. on its first registration or change of setting.
+     * @return the forked core.
+     */
+    public XmlStreamPicklerCore fork() {
+        return new XmlStreamPicklerCore(this);
+    }
+
+    /**
+     * Utility function to pickle a value as an XML document to an OutputStream, encoded as UTF-8.
+     * @param pickler
+     * @param value
+     * @param rootName name of the document element.
+     * @param os
+     * @param <T>
+     * @throws Exception
+     */
+    public static <T> void pickle(Pickler<T, XmlStreamIO> pickler, T value, String rootName, OutputStream os) throws Exception {
+        final XMLStreamWriter writer = XmlStreamIO.outputFactory().createXMLStreamWriter(os, "UTF-8");
+        try {
+            final XmlStreamIO target = new XmlStreamIO(writer);
+            writer.writeStartDocument("UTF-8", "1.0");
+            target.startElement(rootName);
+            pickler.pickle(value, target);
+            target.endElement();
+            writer.writeEndDocument();
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Utility function to unpickle a value from the document element of an XML document read from an InputStream.
+     * @param pickler
+     * @param is
+     * @param <T>
+     * @return
+     * @throws Exception
+     */
+    public static <T> T unpickle(Pickler<T, XmlStreamIO> pickler, InputStream is) throws Exception {
+        final XMLStreamReader reader = XmlStreamIO.inputFactory().createXMLStreamReader(is);
+        try {
+            return new XmlStreamIO(reader).read(pickler);
+        } finally {
+            reader.close();
+        }
+    }
+
+    protected void initialise() {
+        super.initialise();
+        registerGeneric(Optional.class, OptionalPickler.class);
+    }
+
+    protected final Pickler<Object, XmlStreamIO> nullP = new Pickler<Object, XmlStreamIO>() {
+
+        @Override
+        public XmlStreamIO pickle(Object obj, XmlStreamIO target) throws Exception {
+            target.text("");
+            return target;
+        }
+
+        @Override
+        public Object unpickle(XmlStreamIO source) throws Exception {
+            return null;
+        }
+    };
+
+    protected final Pickler<Boolean, XmlStreamIO> booleanP = new Pickler<Boolean, XmlStreamIO>() {
+
+        @Override
+        public XmlStreamIO pickle(Boolean b, XmlStreamIO target) throws Exception {
+            target.text(b.toString());
+            return target;
+        }
+
+        @Override
+        public Boolean unpickle(XmlStreamIO source) throws Exception {
+            return Boolean.parseBoolean(source.readText());
+        }
+    };
+
+    protected final Pickler<Byte, XmlStreamIO> byteP = new Pickler<Byte, XmlStreamIO>() {
+
+        @Override
+        public XmlStreamIO pickle(Byte b, XmlStreamIO target) throws Exception {
+            target.text(b.toString());
+            return target;
+        }
+
+        @Override
+        public Byte unpickle(XmlStreamIO source) throws Exception {
+            return Byte.valueOf(source.readText());
+        }
+    };
+
+    protected final Pickler<Character, XmlStreamIO> charP = new Pickler<Character, XmlStreamIO>() {
+
+        @Override
+        public XmlStreamIO pickle(Character c, XmlStreamIO target) throws Exception {
+            target.text(c.toString());
+            return target;
+        }
+
+        @Override
+        public Character unpickle(XmlStreamIO source) throws Exception {
+            return source.readText().charAt(0);
+        }
+    };
+
+    protected final Pickler<String, XmlStreamIO> stringP = new Pickler<String, XmlStreamIO>() {
+
+        @Override
+        public XmlStreamIO pickle(String s, XmlStreamIO target) throws Exception {
+            target.text(s);
+            return target;
+        }
+
+        @Override
+        public String unpickle(XmlStreamIO source) throws Exception {
+            return source.readText();
+        }
+    };
+
+    protected final Pickler<Integer, XmlStreamIO> integerP = new Pickler<Integer, XmlStreamIO>() {
+
+        @Override
+        public XmlStreamIO pickle(Integer i, XmlStreamIO target) throws Exception {
+            target.text(i.toString());
+            return target;
+        }
+
+        @Override
+        public Integer unpickle(XmlStreamIO source) throws Exception {
+            return Integer.valueOf(source.readText());
+        }
+    };
+
+    protected final Pickler<Short, XmlStreamIO> shortP = new Pickler<Short, XmlStreamIO>() {
+
+        @Override
+        public XmlStreamIO pickle(Short s, XmlStreamIO target) throws Exception {
+            target.text(s.toString());
+            return target;
+        }
+
+        @Override
+        public Short unpickle(XmlStreamIO source) throws Exception {
+            return Short.valueOf(source.readText());
+        }
+    };
+
+    protected final Pickler<Long, XmlStreamIO> longP = new Pickler<Long, XmlStreamIO>() {
+
+        @Override
+        public XmlStreamIO pickle(Long l, XmlStreamIO target) throws Exception {
+            target.text(l.toString());
+            return target;
+        }
+
+        @Override
+        public Long unpickle(XmlStreamIO source) throws Exception {
+            return Long.valueOf(source.readText());
+        }
+    };
+
+    protected final Pickler<Float, XmlStreamIO> floatP = new Pickler<Float, XmlStreamIO>() {
+
+        @Override
+        public XmlStreamIO pickle(Float f, XmlStreamIO target) throws Exception {
+            target.text(f.toString());
+            return target;
+        }
+
+        @Override
+        public Float unpickle(XmlStreamIO source) throws Exception {
+            return Float.valueOf(source.readText());
+        }
+    };
+
+    protected final Pickler<Double, XmlStreamIO> doubleP = new Pickler<Double, XmlStreamIO>() {
+
+        @Override
+        public XmlStreamIO pickle(Double d, XmlStreamIO target) throws Exception {
+            target.text(d.toString());
+            return target;
+        }
+
+        @Override
+        public Double unpickle(XmlStreamIO source) throws Exception {
+            return Double.valueOf(source.readText());
+        }
+    };
+
+    protected final Pickler<boolean[], XmlStreamIO> booleanArrayP = new Pickler<boolean[], XmlStreamIO>() {
+
+        final Pickler<Boolean, XmlStreamIO> elemPickler = boolean_p();
+
+        @Override
+        public XmlStreamIO pickle(boolean[] arr, XmlStreamIO target) throws Exception {
+
+            for (int i = 0; i < arr.length; ++i) {
+                target.startElement(elemName(i));
+                elemPickler.pickle(arr[i], target);
+                target.endElement();
+            }
+
+            return target;
+        }
+
+        @Override
+        public boolean[] unpickle(XmlStreamIO source) throws Exception {
+
+            boolean[] result = new boolean[INITIAL_ARRAY_SIZE];
+            int size = 0;
+
+            while (source.nextChild()) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, size * 2);
+                }
+                result[size] = source.read(elemPickler);
+                ++size;
+            }
+
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        }
+    };
+
+    protected final Pickler<byte[], XmlStreamIO> byteArrayP = new Pickler<byte[], XmlStreamIO>() {
+
+        final Pickler<Byte, XmlStreamIO> elemPickler = byte_p();
+
+        @Override
+        public XmlStreamIO pickle(byte[] arr, XmlStreamIO target) throws Exception {
+
+            for (int i = 0; i < arr.length; ++i) {
+                target.startElement(elemName(i));
+                elemPickler.pickle(arr[i], target);
+                target.endElement();
+            }
+
+            return target;
+        }
+
+        @Override
+        public byte[] unpickle(XmlStreamIO source) throws Exception {
+
+            byte[] result = new byte[INITIAL_ARRAY_SIZE];
+            int size = 0;
+
+            while (source.nextChild()) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, size * 2);
+                }
+                result[size] = source.read(elemPickler);
+                ++size;
+            }
+
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        }
+    };
+
+    protected final Pickler<char[], XmlStreamIO> charArrayP = new Pickler<char[], XmlStreamIO>() {
+
+        final Pickler<Character, XmlStreamIO> elemPickler = char_p();
+
+        @Override
+        public XmlStreamIO pickle(char[] arr, XmlStreamIO target) throws Exception {
+
+            for (int i = 0; i < arr.length; ++i) {
+                target.startElement(elemName(i));
+                elemPickler.pickle(arr[i], target);
+                target.endElement();
+            }
+
+            return target;
+        }
+
+        @Override
+        public char[] unpickle(XmlStreamIO source) throws Exception {
+
+            char[] result = new char[INITIAL_ARRAY_SIZE];
+            int size = 0;
+
+            while (source.nextChild()) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, size * 2);
+                }
+                result[size] = source.read(elemPickler);
+                ++size;
+            }
+
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        }
+    };
+
+    protected final Pickler<int[], XmlStreamIO> intArrayP = new Pickler<int[], XmlStreamIO>() {
+
+        final Pickler<Integer, XmlStreamIO> elemPickler = integer_p();
+
+        @Override
+        public XmlStreamIO pickle(int[] arr, XmlStreamIO target) throws Exception {
+
+            for (int i = 0; i < arr.length; ++i) {
+                target.startElement(elemName(i));
+                elemPickler.pickle(arr[i], target);
+                target.endElement();
+            }
+
+            return target;
+        }
+
+        @Override
+        public int[] unpickle(XmlStreamIO source) throws Exception {
+
+            int[] result = new int[INITIAL_ARRAY_SIZE];
+            int size = 0;
+
+            while (source.nextChild()) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, size * 2);
+                }
+                result[size] = source.read(elemPickler);
+                ++size;
+            }
+
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        }
+    };
+
+    protected final Pickler<short[], XmlStreamIO> shortArrayP = new Pickler<short[], XmlStreamIO>() {
+
+        final Pickler<Short, XmlStreamIO> elemPickler = short_p();
+
+        @Override
+        public XmlStreamIO pickle(short[] arr, XmlStreamIO target) throws Exception {
+
+            for (int i = 0; i < arr.length; ++i) {
+                target.startElement(elemName(i));
+                elemPickler.pickle(arr[i], target);
+                target.endElement();
+            }
+
+            return target;
+        }
+
+        @Override
+        public short[] unpickle(XmlStreamIO source) throws Exception {
+
+            short[] result = new short[INITIAL_ARRAY_SIZE];
+            int size = 0;
+
+            while (source.nextChild()) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, size * 2);
+                }
+                result[size] = source.read(elemPickler);
+                ++size;
+            }
+
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        }
+    };
+
+    protected final Pickler<long[], XmlStreamIO> longArrayP = new Pickler<long[], XmlStreamIO>() {
+
+        final Pickler<Long, XmlStreamIO> elemPickler = long_p();
+
+        @Override
+        public XmlStreamIO pickle(long[] arr, XmlStreamIO target) throws Exception {
+
+            for (int i = 0; i < arr.length; ++i) {
+                target.startElement(elemName(i));
+                elemPickler.pickle(arr[i], target);
+                target.endElement();
+            }
+
+            return target;
+        }
+
+        @Override
+        public long[] unpickle(XmlStreamIO source) throws Exception {
+
+            long[] result = new long[INITIAL_ARRAY_SIZE];
+            int size = 0;
+
+            while (source.nextChild()) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, size * 2);
+                }
+                result[size] = source.read(elemPickler);
+                ++size;
+            }
+
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        }
+    };
+
+    protected final Pickler<float[], XmlStreamIO> floatArrayP = new Pickler<float[], XmlStreamIO>() {
+
+        final Pickler<Float, XmlStreamIO> elemPickler = float_p();
+
+        @Override
+        public XmlStreamIO pickle(float[] arr, XmlStreamIO target) throws Exception {
+
+            for (int i = 0; i < arr.length; ++i) {
+                target.startElement(elemName(i));
+                elemPickler.pickle(arr[i], target);
+                target.endElement();
+            }
+
+            return target;
+        }
+
+        @Override
+        public float[] unpickle(XmlStreamIO source) throws Exception {
+
+            float[] result = new float[INITIAL_ARRAY_SIZE];
+            int size = 0;
+
+            while (source.nextChild()) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, size * 2);
+                }
+                result[size] = source.read(elemPickler);
+                ++size;
+            }
+
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        }
+    };
+
+    protected final Pickler<double[], XmlStreamIO> doubleArrayP = new Pickler<double[], XmlStreamIO>() {
+
+        final Pickler<Double, XmlStreamIO> elemPickler = double_p();
+
+        @Override
+        public XmlStreamIO pickle(double[] arr, XmlStreamIO target) throws Exception {
+
+            for (int i = 0; i < arr.length; ++i) {
+                target.startElement(elemName(i));
+                elemPickler.pickle(arr[i], target);
+                target.endElement();
+            }
+
+            return target;
+        }
+
+        @Override
+        public double[] unpickle(XmlStreamIO source) throws Exception {
+
+            double[] result = new double[INITIAL_ARRAY_SIZE];
+            int size = 0;
+
+            while (source.nextChild()) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, size * 2);
+                }
+                result[size] = source.read(elemPickler);
+                ++size;
+            }
+
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        }
+    };
+
+    protected final ObjectPickler<XmlStreamIO> objectMapP = new ObjectPickler<XmlStreamIO>() {
+
+        @Override
+        public FieldPickler<XmlStreamIO> pickler(final XmlStreamIO target) {
+
+            return new AbstractFieldPickler(target) {
+
+                @Override
+                public <T> void field(String name, T value, Pickler<T, XmlStreamIO> pickler) throws Exception {
+                    target.startElement(name);
+                    if (pickler.pickle(value, target) != null) {
+                        target.endElement();
+                    } else {
+                        target.abandonElement();
+                    }
+                }
+
+                @Override
+                public XmlStreamIO pickle(XmlStreamIO source) {
+                    return target;
+                }
+            };
+        }
+
+        @Override
+        public FieldUnpickler<XmlStreamIO> unpickler(final XmlStreamIO source) {
+
+            return new AbstractFieldUnpickler(source) {
+
+                // Fields which were encountered before they were asked for.
+                private Map<String, XmlStreamIO> stash;
+
+                private boolean ended = false;
+
+                @Override
+                public <T> T field(String name, Pickler<T, XmlStreamIO> pickler) throws Exception {
+
+                    if (stash != null) {
+                        final XmlStreamIO stashed = stash.remove(name);
+                        if (stashed != null) {
+                            return stashed.read(pickler);
+                        }
+                    }
+
+                    while (!ended) {
+                        if (!source.nextChild()) {
+                            ended = true;
+                        } else {
+                            final String fieldName = source.localName();
+                            if (fieldName.equals(name)) {
+                                return source.read(pickler);
+                            } else {
+                                if (stash == null) {
+                                    stash = Maps.newHashMap();
+                                }
+                                stash.put(fieldName, source.buffer());
+                            }
+                        }
+                    }
+
+                    // The field is absent.
+                    return pickler.unpickle(null);
+                }
+            };
+        }
+    };
+
+    protected final Pickler<Object, XmlStreamIO> dynObjectP = new DynamicObjectXmlStreamPickler<Object>(this, Object.class);
+
+    private XmlStreamPicklerCore() {
+    }
+
+    private XmlStreamPicklerCore(XmlStreamPicklerCore base) {
+        super(base);
+    }
+
+    @Override
+    public Pickler<Object, XmlStreamIO> null_p() {
+        return nullP;
+    }
+
+    @Override
+    public Pickler<Boolean, XmlStreamIO> boolean_p() {
+        return booleanP;
+    }
+
+    @Override
+    public Pickler<Byte, XmlStreamIO> byte_p() {
+        return byteP;
+    }
+
+    @Override
+    public Pickler<Character, XmlStreamIO> char_p() {
+        return charP;
+    }
+
+    @Override
+    public Pickler<String, XmlStreamIO> string_p() {
+        return stringP;
+    }
+
+    @Override
+    public Pickler<Integer, XmlStreamIO> integer_p() {
+        return integerP;
+    }
+
+    @Override
+    public Pickler<Short, XmlStreamIO> short_p() {
+        return shortP;
+    }
+
+    @Override
+    public Pickler<Long, XmlStreamIO> long_p() {
+        return longP;
+    }
+
+    @Override
+    public Pickler<Float, XmlStreamIO> float_p() {
+        return floatP;
+    }
+
+    @Override
+    public Pickler<Double, XmlStreamIO> double_p() {
+        return doubleP;
+    }
+
+    @Override
+    public Pickler<boolean[], XmlStreamIO> boolean_array_p() {
+        return booleanArrayP;
+    }
+
+    @Override
+    public Pickler<byte[], XmlStreamIO> byte_array_p() {
+        return byteArrayP;
+    }
+
+    @Override
+    public Pickler<char[], XmlStreamIO> char_array_p() {
+        return charArrayP;
+    }
+
+    @Override
+    public Pickler<int[], XmlStreamIO> integer_array_p() {
+        return intArrayP;
+    }
+
+    @Override
+    public Pickler<short[], XmlStreamIO> short_array_p() {
+        return shortArrayP;
+    }
+
+    @Override
+    public Pickler<long[], XmlStreamIO> long_array_p() {
+        return longArrayP;
+    }
+
+    @Override
+    public Pickler<float[], XmlStreamIO> float_array_p() {
+        return floatArrayP;
+    }
+
+    @Override
+    public Pickler<double[], XmlStreamIO> double_array_p() {
+        return doubleArrayP;
+    }
+
+    @Override
+    public <T extends Enum<T>> Pickler<T, XmlStreamIO> enum_p(final Class<T> enumClass) {
+
+        return new Pickler<T, XmlStreamIO>() {
+
+            @Override
+            public XmlStreamIO pickle(T t, XmlStreamIO target) throws Exception {
+                target.text(t.name());
+                return target;
+            }
+
+            @Override
+            public T unpickle(XmlStreamIO source) throws Exception {
+                return T.valueOf(enumClass, source.readText());
+            }
+        };
+    }
+
+    @Override
+    public <T> Pickler<T[], XmlStreamIO> array_p(
+            final Pickler<T, XmlStreamIO> elemPickler,
+            final Class<T> elemClass) {
+
+        return new Pickler<T[], XmlStreamIO>() {
+
+            @Override
+            public XmlStreamIO pickle(T[] arr, XmlStreamIO target) throws Exception {
+
+                for (int i = 0; i < arr.length; ++i) {
+                    target.startElement(elemName(i));
+                    elemPickler.pickle(arr[i], target);
+                    target.endElement();
+                }
+
+                return target;
+            }
+
+            @Override
+            public T[] unpickle(XmlStreamIO source) throws Exception {
+
+                final List<T> elems = new ArrayList<T>();
+
+                while (source.nextChild()) {
+                    elems.add(source.read(elemPickler));
+                }
+
+                return elems.toArray((T[])Array.newInstance(elemClass, elems.size()));
+            }
+        };
+    }
+
+    @Override
+    public <T> Pickler<List<T>, XmlStreamIO> list_p(
+            final Pickler<T, XmlStreamIO> elemPickler,
+            final Class<? extends List> listClass) {
+
+        return new Pickler<List<T>, XmlStreamIO>() {
+
+            @Override
+            public XmlStreamIO pickle(List<T> list, XmlStreamIO target) throws Exception {
+
+                int i = 0;
+                for (T elem : list) {
+                    target.startElement(elemName(i));
+                    elemPickler.pickle(elem, target);
+                    target.endElement();
+                    ++i;
+                }
+
+                return target;
+            }
+
+            @Override
+            public List<T> unpickle(XmlStreamIO source) throws Exception {
+
+                final List<T> result = newInstance(listClass);
+
+                while (source.nextChild()) {
+                    result.add(source.read(elemPickler));
+                }
+
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public <T> Pickler<Map<String, T>, XmlStreamIO> map_p(
+            final Pickler<T, XmlStreamIO> valuePickler,
+            final Class<? extends Map> mapClass) {
+
+        return new Pickler<Map<String, T>, XmlStreamIO>() {
+
+            @Override
+            public XmlStreamIO pickle(Map<String, T> map, XmlStreamIO target) throws Exception {
+
+                for (Map.Entry<String, T> entry : map.entrySet()) {
+                    target.startElement(entry.getKey());
+                    valuePickler.pickle(entry.getValue(), target);
+                    target.endElement();
+                }
+
+                return target;
+            }
+
+            @Override
+            public Map<String, T> unpickle(XmlStreamIO source) throws Exception {
+
+                final Map<String, T> result = newInstance(mapClass);
+
+                while (source.nextChild()) {
+                    final String key = source.localName();
+                    result.put(key, source.read(valuePickler));
+                }
+
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public <K, V> Pickler<Map<K, V>, XmlStreamIO> map_p(
+            final Pickler<K, XmlStreamIO> keyPickler,
+            final Pickler<V, XmlStreamIO> valuePickler,
+            final Class<?  extends Map> mapClass) {
+
+        final Field<K, XmlStreamIO> keyField = field("key", keyPickler);
+        final Field<V, XmlStreamIO> valueField = field("value", valuePickler);
+
+        // Each entry is pickled as an element with key and value children.
+        final Pickler<Map.Entry<K, V>, XmlStreamIO> entryPickler = new Pickler<Map.Entry<K, V>, XmlStreamIO>() {
+
+            @Override
+            public XmlStreamIO pickle(Map.Entry<K, V> entry, XmlStreamIO target) throws Exception {
+                final FieldPickler<XmlStreamIO> fp = object_map().pickler(target);
+                fp.field(keyField, entry.getKey());
+                fp.field(valueField, entry.getValue());
+                return fp.pickle(target);
+            }
+
+            @Override
+            public Map.Entry<K, V> unpickle(XmlStreamIO source) throws Exception {
+                final FieldUnpickler<XmlStreamIO> fu = object_map().unpickler(source);
+                final K key = fu.field(keyField);
+                final V value = fu.field(valueField);
+                return new AbstractMap.SimpleImmutableEntry<K, V>(key, value);
+            }
+        };
+
+        return new Pickler<Map<K, V>, XmlStreamIO>() {
+
+            @Override
+            public XmlStreamIO pickle(Map<K, V> map, XmlStreamIO target) throws Exception {
+
+                int i = 0;
+                for (Map.Entry<K, V> entry : map.entrySet()) {
+                    target.startElement(elemName(i));
+                    entryPickler.pickle(entry, target);
+                    target.endElement();
+                    ++i;
+                }
+
+                return target;
+            }
+
+            @Override
+            public Map<K, V> unpickle(XmlStreamIO source) throws Exception {
+
+                final Map<K, V> result = newInstance(mapClass);
+
+                while (source.nextChild()) {
+                    final Map.Entry<K, V> entry = source.read(entryPickler);
+                    result.put(entry.getKey(), entry.getValue());
+                }
+
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public <T> Pickler<Set<T>, XmlStreamIO> set_p(
+            final Pickler<T, XmlStreamIO> elemPickler,
+            final Class<? extends Set> setClass) {
+
+        return new Pickler<Set<T>, XmlStreamIO>() {
+
+            @Override
+            public XmlStreamIO pickle(Set<T> set, XmlStreamIO target) throws Exception {
+
+                int i = 0;
+                for (T elem : set) {
+                    target.startElement(elemName(i));
+                    elemPickler.pickle(elem, target);
+                    target.endElement();
+                    ++i;
+                }
+
+                return target;
+            }
+
+            @Override
+            public Set<T> unpickle(XmlStreamIO source) throws Exception {
+
+                final Set<T> result = newInstance(setClass);
+
+                while (source.nextChild()) {
+                    result.add(source.read(elemPickler));
+                }
+
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public Pickler<Object, XmlStreamIO> d_object_p() {
+        return dynObjectP;
+    }
+
+    @Override
+    protected <T, S extends T> Pickler<S, XmlStreamIO> createDynamicPickler(Class<T> clazz) {
+        return new DynamicObjectXmlStreamPickler<S>(this, clazz);
+    }
+
+    @Override
+    public ObjectPickler<XmlStreamIO> object_map() {
+        return objectMapP;
+    }
+
+    @Override
+    public <T> Pickler<T, XmlStreamIO> nullable(final Pickler<T, XmlStreamIO> pickler) {
+        return new Pickler<T, XmlStreamIO>() {
+
+            @Override
+            public XmlStreamIO pickle(T t, XmlStreamIO target) throws Exception {
+                if (t == null) {
+                    return null;
+                } else {
+                    return pickler.pickle(t, target);
+                }
+            }
+
+            @Override
+            public T unpickle(XmlStreamIO source) throws Exception {
+                if (source == null) {
+                    return null;
+                } else {
+                    return pickler.unpickle(source);
+                }
+            }
+        };
+    }
+}
@@ -1,14 +1,27 @@
 package org.javafp.javapickling.byteio;
 
+import com.google.common.base.Strings;
 import org.javafp.javapickling.common.*;
-import org.javafp.javapickling.core.Pickler;
+import org.javafp.javapickling.core.*;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class ByteIOPicklerTest {
 
@@ -34,6 +47,441 @@ public class ByteIOPicklerTest {
         System.out.println(javaSerTimeMs);
     }
 
+    @Test
+    public void testFork() throws Exception {
+
+        // A fork shares the base's picklers until it diverges from the base.
+        final ByteIOPicklerCore shared = picklerCore.fork();
+        Assert.assertTrue(shared.isSharingPicklers());
+        Assert.assertSame(picklerCore.object_p(ComplexClass.class), shared.object_p(ComplexClass.class));
+        Assert.assertSame(picklerCore.integer_p(), shared.object_p(Integer.class));
+
+        shared.setTabled(false);
+        Assert.assertTrue(shared.isSharingPicklers());
+        shared.setTabled(true);
+        Assert.assertFalse(shared.isSharingPicklers());
+        Assert.assertNotSame(picklerCore.object_p(ComplexClass.class), shared.object_p(ComplexClass.class));
+        Assert.assertSame(shared.integer_p(), shared.object_p(Integer.class));
+
+        final ByteIOPicklerCore fork = picklerCore.fork();
+        fork.registerClassShortName(RoundTrip.class, "RT");
+
+        Assert.assertEquals("RT", fork.classToName(RoundTrip.class));
+        Assert.assertEquals(RoundTrip.class.getName(), picklerCore.classToName(RoundTrip.class));
+        Assert.assertEquals("ComplexClass", fork.classToName(ComplexClass.class));
+        Assert.assertFalse(fork.isSharingPicklers());
+        Assert.assertNotSame(picklerCore.object_p(ComplexClass.class), fork.object_p(ComplexClass.class));
+
+        final ComplexClass complex = ComplexClass.createInstance(true);
+        Assert.assertEquals(complex, roundTrip(fork.object_p(ComplexClass.class), complex));
+
+        // The fork's registrations apply to dynamic fields, even when the base has already built the picklers.
+        final ByteIOPicklerCore base = ByteIOPicklerCore.create();
+        final byte[] baseBytes = pickle(base.object_p(ComplexClass.class), complex);
+
+        final ByteIOPicklerCore fork2 = base.fork();
+        fork2.registerClassShortName(Colour.class, "Hue");
+        final byte[] forkBytes = pickle(fork2.object_p(ComplexClass.class), complex);
+
+        Assert.assertTrue(forkBytes.length < baseBytes.length);
+        Assert.assertEquals(complex, fork2.object_p(ComplexClass.class).unpickle(
+                new ByteIO(new DataInputStream(new ByteArrayInputStream(forkBytes)))));
+        try {
+            base.object_p(ComplexClass.class).unpickle(
+                    new ByteIO(new DataInputStream(new ByteArrayInputStream(forkBytes))));
+            Assert.fail("The base core should not know the fork's short name");
+        } catch (Exception ex) {
+        }
+    }
+
+    @Test
+    public void testWarmUpAndRegistrySnapshot() throws Exception {
+
+        final ByteIOPicklerCore core = ByteIOPicklerCore.create();
+        core.registerClassShortName(IdWrapper.class);
+        core.warmUp(ComplexClass.class);
+
+        final StringWriter writer = new StringWriter();
+        core.saveRegistry(writer);
+
+        final String registry = writer.toString();
+        Assert.assertTrue(registry.contains(ComplexClass.class.getName()));
+        Assert.assertTrue(registry.contains(Generic.class.getName()));
+        Assert.assertTrue(registry.contains(IdWrapper.class.getName()));
+
+        final ByteIOPicklerCore core2 = ByteIOPicklerCore.create();
+        core2.loadRegistry(new StringReader(registry));
+        Assert.assertEquals("IdWrapper", core2.classToName(IdWrapper.class));
+
+        final ComplexClass complex = ComplexClass.createInstance(true);
+        Assert.assertEquals(complex, roundTrip(core2.object_p(ComplexClass.class), complex));
+    }
+
+    public static class Tick {
+        public final long time;
+        public final double price;
+        public final int size;
+        public final char side;
+
+        public Tick(long time, double price, int size, char side) {
+            this.time = time;
+            this.price = price;
+            this.size = size;
+            this.side = side;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Tick)) {
+                return false;
+            }
+            final Tick rhs = (Tick)obj;
+            return time == rhs.time && price == rhs.price && size == rhs.size && side == rhs.side;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int)time;
+        }
+    }
+
+    public static class TickPickler<PF> extends PicklerBase<Tick, PF> {
+
+        private final Field<Long, PF> time = field("time");
+        private final Field<Double, PF> price = field("price");
+        private final Field<Integer, PF> size = field("size");
+        private final Field<Character, PF> side = field("side");
+
+        public TickPickler(PicklerCore<PF> core) {
+            super(core, Tick.class);
+        }
+
+        @Override
+        public PF pickle(Tick tick, PF target) throws Exception {
+            final FieldPickler<PF> fp = object_map().pickler(target);
+            fp.field(time, tick.time);
+            fp.field(price, tick.price);
+            fp.field(size, tick.size);
+            fp.field(side, tick.side);
+            return fp.pickle(target);
+        }
+
+        @Override
+        public Tick unpickle(PF source) throws Exception {
+            final FieldUnpickler<PF> fu = object_map().unpickler(source);
+            return new Tick(fu.field(time), fu.field(price), fu.field(size), fu.field(side));
+        }
+    }
+
+    // Pickles time and price, which have the same width, in the opposite order to the one they were created in.
+    public static class SwappedTickPickler<PF> extends PicklerBase<Tick, PF> {
+
+        private final Field<Long, PF> time = field("time");
+        private final Field<Double, PF> price = field("price");
+        private final Field<Integer, PF> size = field("size");
+        private final Field<Character, PF> side = field("side");
+
+        public SwappedTickPickler(PicklerCore<PF> core) {
+            super(core, Tick.class);
+        }
+
+        @Override
+        public PF pickle(Tick tick, PF target) throws Exception {
+            final FieldPickler<PF> fp = object_map().pickler(target);
+            fp.field(price, tick.price);
+            fp.field(time, tick.time);
+            fp.field(size, tick.size);
+            fp.field(side, tick.side);
+            return fp.pickle(target);
+        }
+
+        @Override
+        public Tick unpickle(PF source) throws Exception {
+            final FieldUnpickler<PF> fu = object_map().unpickler(source);
+            final double priceValue = fu.field(price);
+            return new Tick(fu.field(time), priceValue, fu.field(size), fu.field(side));
+        }
+    }
+
+    @Test
+    public void testByteBufferData() throws Exception {
+
+        final ByteBufferData data = new ByteBufferData(ByteBuffer.wrap("ab\r\ncd\ne".getBytes("US-ASCII")));
+        Assert.assertEquals("ab", data.readLine());
+        Assert.assertEquals("cd", data.readLine());
+        Assert.assertEquals("e", data.readLine());
+        Assert.assertNull(data.readLine());
+
+        // Running out of data is an EOFException, as for any other DataInput.
+        final byte[] bytes = pickle(picklerCore.long_p(), 123L);
+        for (int len = 0; len < bytes.length; ++len) {
+            try {
+                picklerCore.long_p().unpickle(new ByteIO((DataInput)new ByteBufferData(ByteBuffer.wrap(bytes, 0, len))));
+                Assert.fail("Expected an EOFException");
+            } catch (EOFException ex) {
+            }
+        }
+
+        final ByteIO source = new ByteIO((DataInput)new ByteBufferData(ByteBuffer.wrap(bytes)));
+        try {
+            source.skipFully(bytes.length + 1);
+            Assert.fail("Expected an EOFException");
+        } catch (EOFException ex) {
+        }
+    }
+
+    @Test
+    public void testFixedRecordArray() throws Exception {
+
+        final FixedLayout<Tick> layout = FixedLayout.of(picklerCore, new TickPickler<ByteIO>(picklerCore));
+        Assert.assertEquals(22, layout.stride());
+        Assert.assertEquals(8, layout.offset("price"));
+
+        final List<Tick> ticks = new ArrayList<Tick>();
+        for (int i = 0; i < 1000; ++i) {
+            ticks.add(new Tick(1000000L + i, 100.0 + i / 4.0, i * 10, i % 2 == 0 ? 'B' : 'S'));
+        }
+
+        final File file = File.createTempFile("ticks", ".bin");
+        file.deleteOnExit();
+
+        FixedRecordArray.write(file.toPath(), layout, ticks);
+        Assert.assertEquals(ticks.size() * layout.stride(), file.length());
+
+        final FixedRecordArray<Tick> array = FixedRecordArray.open(file.toPath(), layout);
+        try {
+            Assert.assertEquals(ticks.size(), array.size());
+
+            final int priceOffset = layout.offset("price");
+            final int sideOffset = layout.offset("side");
+            for (int i = 0; i < ticks.size(); ++i) {
+                Assert.assertEquals(ticks.get(i), array.get(i));
+                Assert.assertEquals(ticks.get(i).price, array.getDouble(i, priceOffset), 0.0);
+                Assert.assertEquals(ticks.get(i).side, array.getChar(i, sideOffset));
+            }
+        } finally {
+            array.close();
+        }
+
+        try {
+            FixedLayout.of(picklerCore, new ComplexClassPickler<ByteIO>(picklerCore));
+            Assert.fail("ComplexClass does not have a fixed layout");
+        } catch (PicklerException ex) {
+        }
+
+        // The stride matches, but the first record shows the fields at the wrong offsets.
+        final FixedLayout<Tick> swapped = FixedLayout.of(picklerCore, new SwappedTickPickler<ByteIO>(picklerCore));
+        Assert.assertEquals(layout.stride(), swapped.stride());
+        try {
+            FixedRecordArray.write(file.toPath(), swapped, ticks);
+            Assert.fail("SwappedTickPickler does not pickle its fields at the layout's offsets");
+        } catch (PicklerException ex) {
+            Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("price"));
+        }
+    }
+
+    @Test
+    public void testTabledViews() throws Exception {
+
+        final ByteIOPicklerCore core = ByteIOPicklerCore.create();
+        core.setTabled(true);
+
+        final ComplexClass complex = ComplexClass.createInstance(true);
+        final Pickler<ComplexClass, ByteIO> pickler = core.object_p(ComplexClass.class);
+        Assert.assertEquals(complex, roundTrip(pickler, complex));
+
+        // Read a couple of fields without unpickling the rest.
+        final byte[] bytes = pickle(pickler, complex);
+        final ObjectView view = ObjectView.of(bytes);
+        Assert.assertEquals(24, view.fieldCount());
+        Assert.assertEquals(Integer.valueOf(complex.intF), view.get(6, core.integer_p()));
+        Assert.assertEquals(complex.stringF, view.get(10, core.string_p()));
+
+        // A view can be passed on without being decoded.
+        Assert.assertArrayEquals(bytes, pickle(core.view_p(), view));
+
+        final TickPickler<ByteIO> tickPickler = new TickPickler<ByteIO>(core);
+        final List<Tick> ticks = new ArrayList<Tick>();
+        for (int i = 0; i < 100; ++i) {
+            ticks.add(new Tick(1000000L + i, 100.0 + i / 4.0, i * 10, 'B'));
+        }
+
+        final byte[] listBytes = pickle(core.list_p(tickPickler), ticks);
+
+        final ListView fromBuffer = core.list_view_p().unpickle(
+                new ByteIO((DataInput)new ByteBufferData(ByteBuffer.wrap(listBytes))));
+        final ListView fromStream = core.list_view_p().unpickle(
+                new ByteIO(new DataInputStream(new ByteArrayInputStream(listBytes))));
+
+        for (ListView listView : new ListView[]{fromBuffer, fromStream}) {
+            Assert.assertEquals(ticks.size(), listView.size());
+            Assert.assertEquals(Double.valueOf(ticks.get(42).price), listView.get(42).get(2, core.double_p()));
+            Assert.assertEquals(ticks.get(7), listView.get(7, tickPickler));
+            Assert.assertArrayEquals(listBytes, pickle(core.list_view_p(), listView));
+        }
+    }
+
+    @Test
+    public void testIndexedList() throws Exception {
+
+        final List<String> strings = new ArrayList<String>();
+        for (int i = 0; i < 1000; ++i) {
+            strings.add(Strings.repeat("x", i % 17) + i);
+        }
+
+        final Pickler<List<String>, ByteIO> pickler = picklerCore.indexed_list_p(picklerCore.string_p());
+        Assert.assertEquals(strings, roundTrip(pickler, strings));
+        Assert.assertEquals(new ArrayList<String>(), roundTrip(pickler, new ArrayList<String>()));
+
+        final IndexedListView<String> view = IndexedListView.of(pickle(pickler, strings), picklerCore.string_p());
+        Assert.assertEquals(strings.size(), view.size());
+        Assert.assertEquals(strings.get(0), view.get(0));
+        Assert.assertEquals(strings.get(63), view.get(63));
+        Assert.assertEquals(strings.get(64), view.get(64));
+        Assert.assertEquals(strings.get(999), view.get(999));
+        Assert.assertEquals(strings, view);
+
+        // Unpickle the list in parallel chunks.
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<List<String>>> chunks = new ArrayList<Future<List<String>>>();
+            for (int from = 0; from < view.size(); from += 300) {
+                final int start = from;
+                final int end = Math.min(from + 300, view.size());
+                chunks.add(executor.submit(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() throws Exception {
+                        return view.range(start, end);
+                    }
+                }));
+            }
+
+            final List<String> result = new ArrayList<String>();
+            for (Future<List<String>> chunk : chunks) {
+                result.addAll(chunk.get());
+            }
+            Assert.assertEquals(strings, result);
+        } finally {
+            executor.shutdown();
+        }
+
+        // Arrays use the same encoding.
+        final String[] array = strings.toArray(new String[strings.size()]);
+        final Pickler<String[], ByteIO> arrayPickler = picklerCore.indexed_array_p(picklerCore.string_p(), String.class);
+        final byte[] arrayBytes = pickle(arrayPickler, array);
+        Assert.assertArrayEquals(pickle(pickler, strings), arrayBytes);
+        Assert.assertArrayEquals(array, roundTrip(arrayPickler, array));
+        Assert.assertEquals(strings, IndexedListView.of(arrayBytes, picklerCore.string_p()));
+    }
+
+    @Test
+    public void testColumnarList() throws Exception {
+
+        final List<ComplexClass> complexes = new ArrayList<ComplexClass>();
+        for (int i = 0; i < 10; ++i) {
+            complexes.add(ComplexClass.createInstance(i % 3 == 0));
+        }
+
+        final ComplexClassPickler<ByteIO> complexPickler = new ComplexClassPickler<ByteIO>(picklerCore);
+        final Pickler<List<ComplexClass>, ByteIO> pickler = picklerCore.columnar_list_p(complexPickler);
+        Assert.assertEquals(complexes, roundTrip(pickler, complexes));
+        Assert.assertEquals(new ArrayList<ComplexClass>(), roundTrip(pickler, new ArrayList<ComplexClass>()));
+
+        final TickPickler<ByteIO> tickPickler = new TickPickler<ByteIO>(picklerCore);
+        final List<Tick> ticks = new ArrayList<Tick>();
+        for (int i = 0; i < 100; ++i) {
+            ticks.add(new Tick(1000000L + i, 100.0 + i / 4.0, i * 10, i % 2 == 0 ? 'B' : 'S'));
+        }
+
+        final byte[] tickBytes = pickle(picklerCore.columnar_list_p(tickPickler), ticks);
+        Assert.assertEquals(ticks, picklerCore.columnar_list_p(tickPickler).unpickle(
+                new ByteIO((DataInput)new ByteBufferData(ByteBuffer.wrap(tickBytes)))));
+
+        // Read one column without unpickling the others.
+        final Field<Double, ByteIO> priceF = (Field<Double, ByteIO>)tickPickler.fields().get(1);
+        final List<Double> prices = picklerCore.unpickleColumn(
+                tickPickler, priceF, new ByteIO(new DataInputStream(new ByteArrayInputStream(tickBytes))));
+        Assert.assertEquals(ticks.size(), prices.size());
+        for (int i = 0; i < ticks.size(); ++i) {
+            Assert.assertEquals(ticks.get(i).price, prices.get(i), 0.0);
+        }
+
+        final Field<String, ByteIO> stringF = (Field<String, ByteIO>)complexPickler.fields().get(9);
+        final ByteBuffer complexBuffer = ByteBuffer.wrap(pickle(pickler, complexes));
+        final List<String> strings = picklerCore.unpickleColumn(
+                complexPickler, stringF, new ByteIO((DataInput)new ByteBufferData(complexBuffer)));
+        for (int i = 0; i < complexes.size(); ++i) {
+            Assert.assertEquals(complexes.get(i).stringF, strings.get(i));
+        }
+
+        // The rows are handled by their own object map, in place of the tabled one.
+        final ByteIOPicklerCore tabledCore = ByteIOPicklerCore.create();
+        tabledCore.setTabled(true);
+        Assert.assertEquals(ticks, roundTrip(tabledCore.columnar_list_p(new TickPickler<ByteIO>(tabledCore)), ticks));
+
+        // A pickler which bypasses object_map() can't be stored in columns.
+        final PicklerBase<Tick, ByteIO> rawPickler = new PicklerBase<Tick, ByteIO>(picklerCore, Tick.class) {
+
+            @Override
+            public ByteIO pickle(Tick tick, ByteIO target) throws Exception {
+                target.output.writeLong(tick.time);
+                return target;
+            }
+
+            @Override
+            public Tick unpickle(ByteIO source) throws Exception {
+                return new Tick(source.input.readLong(), 0.0, 0, 'B');
+            }
+        };
+        try {
+            pickle(picklerCore.columnar_list_p(rawPickler), ticks);
+            Assert.fail("Expected a PicklerException for a pickler which writes to the output");
+        } catch (PicklerException ex) {
+            Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("object_map()"));
+        }
+    }
+
+    @Test
+    public void testExtract() throws Exception {
+
+        final ComplexClass complex = ComplexClass.createInstance(true);
+
+        for (boolean tabled : new boolean[]{false, true}) {
+            final ByteIOPicklerCore core = ByteIOPicklerCore.create();
+            core.setTabled(tabled);
+
+            final Pickler<ComplexClass, ByteIO> pickler = core.object_p(ComplexClass.class);
+            final byte[] bytes = pickle(pickler, complex);
+
+            Assert.assertEquals(Integer.valueOf(complex.intF), ByteIOPicklerCore.extract(bytes, pickler, "intF"));
+            Assert.assertEquals("first", ByteIOPicklerCore.extract(bytes, pickler, "stringF"));
+            Assert.assertEquals(34.56, ByteIOPicklerCore.<Double>extract(bytes, pickler, "strDblMapF.Bcd"), 0.0);
+            Assert.assertEquals(Colour.BLUE, ByteIOPicklerCore.extract(bytes, pickler, "intEnumMapF.45"));
+            Assert.assertEquals("Aristotle", ByteIOPicklerCore.extract(bytes, pickler, "strArrF[2]"));
+            Assert.assertEquals(new IdWrapper("Dan"), ByteIOPicklerCore.extract(bytes, pickler, "genericF.value"));
+            Assert.assertNull(ByteIOPicklerCore.extract(bytes, pickler, "strListF[5]"));
+            Assert.assertNull(ByteIOPicklerCore.extract(bytes, pickler, "noSuchF"));
+
+            final ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
+            Assert.assertEquals("Aristotle", ByteIOPicklerCore.extract(bais, pickler, "strArrF[2]"));
+        }
+    }
+
+    private static <T> byte[] pickle(Pickler<T, ByteIO> pickler, T value) throws Exception {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        pickler.pickle(value, new ByteIO(new DataOutputStream(baos)));
+        return baos.toByteArray();
+    }
+
+    private static <T> T roundTrip(Pickler<T, ByteIO> pickler, T value) throws Exception {
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        pickler.pickle(value, new ByteIO(new DataOutputStream(baos)));
+
+        final ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
+        return pickler.unpickle(new ByteIO(new DataInputStream(bais)));
+    }
+
     private static RoundTrip roundTripViaByteIO(ComplexClass complex) throws Exception {
 
         final Pickler<ComplexClass, ByteIO> pickler = picklerCore.object_p(ComplexClass.class);
@@ -1,6 +1,13 @@
 package org.javafp.javapickling.common;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
 import java.io.*;
+import java.util.List;
+import java.util.Map;
 
 public class Utils {
     public static <T> RoundTrip roundTripViaJavaSer(T value) throws IOException, ClassNotFoundException {
@@ -24,4 +31,27 @@ public class Utils {
 
         return new RoundTrip("JavaSer", endTime1 - startTime1, endTime2 - startTime2, size);
     }
+
+    /**
+     * @return a list of values of every kind handled by the dynamic object picklers.
+     */
+    public static List<Object> createDynamicValues() {
+        final Map<String, Object> strMap = Maps.newTreeMap();
+        strMap.put("a", 1);
+        strMap.put("b", Lists.<Object>newArrayList("x", 2.5));
+
+        final Map<String, Object> typeKeyMap = Maps.newHashMap();
+        typeKeyMap.put("@type", "not a tag");
+
+        return Lists.<Object>newArrayList(
+                null, true, "str",
+                42, 12L, 1L << 40, (short)7, (byte)-3, 1.5f, 'c',
+                3.25, Double.NaN, Double.POSITIVE_INFINITY,
+                Lists.<Object>newArrayList(1, "two"),
+                strMap, typeKeyMap,
+                Maps.newHashMap(ImmutableMap.of(1, "one", 2, "two")),
+                Sets.newHashSet("s1", "s2"),
+                Colour.GREEN
+        );
+    }
 }
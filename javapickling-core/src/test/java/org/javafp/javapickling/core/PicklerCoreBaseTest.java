@@ -0,0 +1,317 @@
+package org.javafp.javapickling.core;
+
+import com.google.common.collect.Lists;
+import org.javafp.javapickling.byteio.ByteIO;
+import org.javafp.javapickling.byteio.ByteIOPicklerCore;
+import org.javafp.javapickling.common.Generic;
+import org.javafp.javapickling.common.IdWrapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class PicklerCoreBaseTest {
+
+    @Test
+    public void testClassNameCaches() throws Exception {
+
+        final ByteIOPicklerCore core = ByteIOPicklerCore.create();
+        Assert.assertEquals(IdWrapper.class.getName(), core.classToName(IdWrapper.class));
+
+        // Registering a short name replaces the cached name.
+        core.registerClassShortName(IdWrapper.class);
+        Assert.assertEquals("IdWrapper", core.classToName(IdWrapper.class));
+        Assert.assertSame(IdWrapper.class, core.nameToClass("IdWrapper"));
+
+        // Names are resolved through a new class loader once it is set, and then cached.
+        final List<String> loaded = new ArrayList<String>();
+        core.setClassLoader(new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                loaded.add(name);
+                return super.loadClass(name, resolve);
+            }
+        });
+
+        Assert.assertSame(IdWrapper.class, core.nameToClass("IdWrapper"));
+        Assert.assertEquals(1, loaded.size());
+        Assert.assertEquals(IdWrapper.class.getName(), loaded.get(0));
+        Assert.assertSame(IdWrapper.class, core.nameToClass("IdWrapper"));
+        Assert.assertEquals(1, loaded.size());
+
+        // A name resolved concurrently with a registration must not be left in the cache.
+        for (int i = 0; i < 50; ++i) {
+            final ByteIOPicklerCore core2 = ByteIOPicklerCore.create();
+            final Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; ++j) {
+                        core2.classToName(IdWrapper.class);
+                    }
+                }
+            });
+
+            reader.start();
+            core2.registerClassShortName(IdWrapper.class);
+            reader.join();
+
+            Assert.assertEquals("IdWrapper", core2.classToName(IdWrapper.class));
+        }
+    }
+
+    public static class Box<T> {
+        public final T value;
+
+        public Box(T value) {
+            this.value = value;
+        }
+    }
+
+    public static class BoxPickler<PF, T> extends PicklerBase<Box<T>, PF> {
+
+        private final Field<T, PF> value;
+
+        public BoxPickler(PicklerCore<PF> core, Pickler<T, PF> valuePickler) {
+            super(core, Box.class);
+            value = field("value", valuePickler);
+        }
+
+        @Override
+        public PF pickle(Box<T> box, PF target) throws Exception {
+            final FieldPickler<PF> fp = object_map().pickler(target);
+            fp.field(value, box.value);
+            return fp.pickle(target);
+        }
+
+        @Override
+        public Box<T> unpickle(PF source) throws Exception {
+            return new Box<T>(object_map().unpickler(source).field(value));
+        }
+    }
+
+    public static class OtherBoxPickler<PF, T> extends BoxPickler<PF, T> {
+
+        public OtherBoxPickler(PicklerCore<PF> core, Pickler<T, PF> valuePickler) {
+            super(core, valuePickler);
+        }
+    }
+
+    public static class TestError extends Error {
+    }
+
+    public static class ErrorPickler<PF, T> extends PicklerBase<Box<T>, PF> {
+
+        public ErrorPickler(PicklerCore<PF> core, Pickler<T, PF> valuePickler) {
+            super(core, Box.class);
+            throw new TestError();
+        }
+
+        @Override
+        public PF pickle(Box<T> box, PF target) throws Exception {
+            return target;
+        }
+
+        @Override
+        public Box<T> unpickle(PF source) throws Exception {
+            return null;
+        }
+    }
+
+    @Test
+    public void testGenericPicklers() throws Exception {
+
+        final ByteIOPicklerCore core = ByteIOPicklerCore.create();
+
+        // Generic picklers are constructed through their bound constructors, and memoised by argument picklers.
+        final Pickler<IdWrapper, ByteIO> idPickler = core.object_p(IdWrapper.class);
+        final Pickler<Generic<IdWrapper>, ByteIO> pickler = core.generic_p(Generic.class, idPickler);
+        Assert.assertSame(pickler, core.generic_p(Generic.class, idPickler));
+
+        final Generic<IdWrapper> generic = new Generic<IdWrapper>(new IdWrapper("Dan"));
+        Assert.assertEquals(generic, roundTrip(pickler, generic));
+
+        // Dynamic picklers are reused, so generic picklers taking them as arguments are memoised too.
+        Assert.assertSame(core.d_object_p(IdWrapper.class), core.d_object_p(IdWrapper.class));
+        final Pickler<Generic<IdWrapper>, ByteIO> dynPickler =
+                core.generic_p(Generic.class, core.d_object_p(IdWrapper.class));
+        Assert.assertNotSame(pickler, dynPickler);
+        Assert.assertSame(dynPickler, core.generic_p(Generic.class, core.d_object_p(IdWrapper.class)));
+        Assert.assertEquals(generic, roundTrip(dynPickler, generic));
+
+        // Re-registering a generic pickler class replaces the memoised picklers.
+        core.register((Class)Box.class, (Class)BoxPickler.class);
+        final Pickler<Box<String>, ByteIO> boxPickler = core.generic_p(Box.class, core.string_p());
+        Assert.assertSame(boxPickler, core.generic_p(Box.class, core.string_p()));
+        Assert.assertEquals(BoxPickler.class, boxPickler.getClass());
+
+        core.register((Class)Box.class, (Class)OtherBoxPickler.class);
+        final Pickler<Box<String>, ByteIO> otherBoxPickler = core.generic_p(Box.class, core.string_p());
+        Assert.assertEquals(OtherBoxPickler.class, otherBoxPickler.getClass());
+        Assert.assertEquals("x", roundTrip(otherBoxPickler, new Box<String>("x")).value);
+
+        // Errors thrown by a pickler constructor are not wrapped.
+        try {
+            core.register((Class)Box.class, (Class)ErrorPickler.class);
+            Assert.fail("Expected a TestError");
+        } catch (TestError ex) {
+        }
+    }
+
+    public static class Named {
+        public final String name;
+
+        public Named(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj != null && obj.getClass() == getClass() && name.equals(((Named)obj).name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+    }
+
+    public static final class Label extends Named {
+        public Label(String name) {
+            super(name);
+        }
+    }
+
+    public static class NamedPickler<PF> extends PicklerBase<Named, PF> {
+
+        private final Field<String, PF> name = field("name", string_p());
+
+        public NamedPickler(PicklerCore<PF> core) {
+            super(core, Named.class);
+        }
+
+        @Override
+        public PF pickle(Named named, PF target) throws Exception {
+            final FieldPickler<PF> fp = object_map().pickler(target);
+            fp.field(name, named.name);
+            return fp.pickle(target);
+        }
+
+        @Override
+        public Named unpickle(PF source) throws Exception {
+            return new Named(object_map().unpickler(source).field(name));
+        }
+    }
+
+    public static class LabelPickler<PF> extends PicklerBase<Label, PF> {
+
+        private final Field<String, PF> name = field("name", string_p());
+
+        public LabelPickler(PicklerCore<PF> core) {
+            super(core, Label.class);
+        }
+
+        @Override
+        public PF pickle(Label label, PF target) throws Exception {
+            final FieldPickler<PF> fp = object_map().pickler(target);
+            fp.field(name, label.name);
+            return fp.pickle(target);
+        }
+
+        @Override
+        public Label unpickle(PF source) throws Exception {
+            return new Label(object_map().unpickler(source).field(name));
+        }
+    }
+
+    public static class InferenceHolder {
+        public Label label;
+        public Map<String, Double> map1;
+        public Map<String, Double> map2;
+        public List<String>[] lists1;
+        public List<String>[] lists2;
+    }
+
+    @Test
+    public void testFieldInference() throws Exception {
+
+        final ByteIOPicklerCore core = ByteIOPicklerCore.create();
+
+        // Identical generic types share an inferred pickler.
+        Assert.assertSame(
+                core.field(InferenceHolder.class, "map1").resolve(),
+                core.field(InferenceHolder.class, "map2").resolve());
+
+        final Pickler<List<String>[], ByteIO> listsPickler =
+                core.<List<String>[]>field(InferenceHolder.class, "lists1").resolve();
+        Assert.assertSame(listsPickler, core.field(InferenceHolder.class, "lists2").resolve());
+
+        final List<String>[] lists = new List[]{Lists.newArrayList("a", "b"), Lists.newArrayList("c")};
+        Assert.assertArrayEquals(lists, roundTrip(listsPickler, lists));
+
+        // A registration made after a field has been inferred is seen by later inferences.
+        core.register(Named.class, NamedPickler.class);
+        Assert.assertTrue(core.field(InferenceHolder.class, "label").resolve() instanceof NamedPickler);
+
+        core.register(Label.class, LabelPickler.class);
+        final Pickler<Label, ByteIO> labelPickler = core.<Label>field(InferenceHolder.class, "label").resolve();
+        Assert.assertTrue(labelPickler instanceof LabelPickler);
+        Assert.assertEquals(new Label("x"), roundTrip(labelPickler, new Label("x")));
+
+        // Picklers created lazily on first use, e.g. for a @DefaultPickler, leave the inferred picklers in place.
+        final Pickler<Map<String, Double>, ByteIO> mapPickler =
+                core.<Map<String, Double>>field(InferenceHolder.class, "map1").resolve();
+        core.object_p(Generic.class);
+        Assert.assertSame(mapPickler, core.field(InferenceHolder.class, "map2").resolve());
+    }
+
+    public static final class Unpicklable {
+    }
+
+    public static class DeferredHolder {
+        public Unpicklable unpicklable;
+        public Generic<IdWrapper> generic;
+    }
+
+    @Test
+    public void testDeferredFields() throws Exception {
+
+        final ByteIOPicklerCore core = ByteIOPicklerCore.create();
+
+        // Inference is deferred until the field is used.
+        final Field<Unpicklable, ByteIO> unpicklableF = core.field(DeferredHolder.class, "unpicklable");
+        try {
+            unpicklableF.resolve();
+            Assert.fail("Unpicklable has no pickler");
+        } catch (PicklerException ex) {
+        }
+
+        final Field<Generic<IdWrapper>, ByteIO> genericF = core.field(DeferredHolder.class, "generic");
+        final Pickler<Generic<IdWrapper>, ByteIO> genericPickler = genericF.resolve();
+        Assert.assertSame(genericPickler, genericF.resolve());
+
+        final Generic<IdWrapper> generic = new Generic<IdWrapper>(new IdWrapper("Dan"));
+        Assert.assertEquals(generic, roundTrip(genericF.pickler, generic));
+
+        // A generic @DefaultPickler is registered on first use, and its dynamic instance is then reused.
+        final ByteIOPicklerCore core2 = ByteIOPicklerCore.create();
+        final Pickler<Generic, ByteIO> objectPickler = core2.object_p(Generic.class);
+        Assert.assertNotNull(objectPickler);
+        Assert.assertSame(objectPickler, core2.object_p(Generic.class));
+        Assert.assertEquals(generic, roundTrip(objectPickler, generic));
+    }
+
+    private static <T> T roundTrip(Pickler<T, ByteIO> pickler, T value) throws Exception {
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        pickler.pickle(value, new ByteIO(new DataOutputStream(baos)));
+
+        final ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
+        return pickler.unpickle(new ByteIO(new DataInputStream(bais)));
+    }
+}
@@ -0,0 +1,70 @@
+package org.javafp.javapickling.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RegistryMapTest {
+
+    @Test
+    public void testFreeze() throws Exception {
+
+        final RegistryMap<String, Integer> map = new RegistryMap<String, Integer>();
+        map.put("a", 1);
+        final RegistryMap<String, Integer> overlay = map.overlay();
+
+        map.freeze();
+        Assert.assertTrue(map.isFrozen());
+        Assert.assertEquals(Integer.valueOf(1), map.get("a"));
+
+        // Registrations after freezing don't affect snapshots already taken.
+        final Map<String, Integer> before = map.asMap();
+        for (int i = 0; i < 1000; ++i) {
+            map.put("k" + i, i);
+        }
+        for (int i = 0; i < 1000; ++i) {
+            Assert.assertEquals(Integer.valueOf(i), map.get("k" + i));
+        }
+        Assert.assertEquals(1, before.size());
+
+        map.put("a", 2);
+        Assert.assertEquals(Integer.valueOf(2), map.get("a"));
+        Assert.assertEquals(1001, map.asMap().size());
+
+        overlay.put("b", 3);
+        Assert.assertNull(map.get("b"));
+        Assert.assertEquals(Integer.valueOf(2), overlay.get("a"));
+        Assert.assertEquals(1002, overlay.asMap().size());
+
+        // Entries remain visible to concurrent readers whilst later registrations are folded in.
+        final RegistryMap<String, Integer> map2 = new RegistryMap<String, Integer>();
+        map2.freeze();
+        final AtomicInteger published = new AtomicInteger();
+        final AtomicBoolean missed = new AtomicBoolean();
+        final Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (published.get() < 10000) {
+                    final int n = published.get();
+                    for (int i = Math.max(0, n - 100); i < n; ++i) {
+                        if (map2.get("k" + i) == null) {
+                            missed.set(true);
+                        }
+                    }
+                }
+            }
+        });
+
+        reader.start();
+        for (int i = 0; i < 10000; ++i) {
+            map2.put("k" + i, i);
+            published.set(i + 1);
+        }
+        reader.join();
+
+        Assert.assertFalse(missed.get());
+    }
+}
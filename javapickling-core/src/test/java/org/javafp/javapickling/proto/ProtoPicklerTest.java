@@ -0,0 +1,233 @@
+package org.javafp.javapickling.proto;
+
+import org.javafp.javapickling.common.*;
+import org.javafp.javapickling.core.Field;
+import org.javafp.javapickling.core.FieldPickler;
+import org.javafp.javapickling.core.FieldUnpickler;
+import org.javafp.javapickling.core.Pickler;
+import org.javafp.javapickling.core.PicklerBase;
+import org.javafp.javapickling.core.PicklerCore;
+import org.javafp.javapickling.core.PicklerException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class ProtoPicklerTest {
+
+    private static final ProtoPicklerCore picklerCore = ProtoPicklerCore.create();
+
+    static {
+        picklerCore.registerClassShortName(Colour.class);
+        picklerCore.registerClassShortName(ComplexClass.class);
+        picklerCore.registerClassShortName(Generic.class);
+        picklerCore.registerClassShortName(IdWrapper.class);
+    }
+
+    @Test
+    public void testPickle() throws Exception {
+
+        final ComplexClass simple = ComplexClass.createInstance(true);
+
+        final RoundTrip protoTimeMs = roundTripViaProto(simple);
+        System.out.println(protoTimeMs);
+
+        Utils.roundTripViaJavaSer(simple);
+        final RoundTrip javaSerTimeMs = Utils.roundTripViaJavaSer(simple);
+        System.out.println(javaSerTimeMs);
+    }
+
+    @Test
+    public void testEncoding() throws Exception {
+
+        // 150 zig-zag encodes to 300.
+        Assert.assertEquals("08ac02", hex(ProtoPicklerCore.pickle(picklerCore.integer_p(), 150)));
+        Assert.assertEquals("0a0774657374696e67", hex(ProtoPicklerCore.pickle(picklerCore.string_p(), "testing")));
+        Assert.assertEquals("0a03020406", hex(ProtoPicklerCore.pickle(picklerCore.integer_array_p(), new int[]{1, 2, 3})));
+        Assert.assertEquals("", hex(ProtoPicklerCore.pickle(picklerCore.nullable(picklerCore.string_p()), null)));
+
+        final Pickler<List<Integer>, ProtoIO> listPickler = picklerCore.list_p(picklerCore.integer_p());
+        final List<Integer> list = Arrays.asList(1, -1, 1000);
+        Assert.assertEquals(list, ProtoPicklerCore.unpickle(listPickler, ProtoPicklerCore.pickle(listPickler, list)));
+    }
+
+    @Test
+    public void testDynamicValues() throws Exception {
+
+        final List<Object> values = Utils.createDynamicValues();
+
+        final Pickler<List<Object>, ProtoIO> pickler = picklerCore.list_p(picklerCore.d_object_p());
+
+        Assert.assertEquals(values, ProtoPicklerCore.unpickle(pickler, ProtoPicklerCore.pickle(pickler, values)));
+    }
+
+    @Test
+    public void testFieldSkipping() throws Exception {
+
+        final ComplexClass complex = ComplexClass.createInstance(true);
+        final byte[] bytes = ProtoPicklerCore.pickle(picklerCore.object_p(ComplexClass.class), complex);
+
+        // stringF is the tenth field of ComplexClassPickler - the fields before it are skipped.
+        final Field<String, ProtoIO> stringF = new Field<String, ProtoIO>("stringF", 10, picklerCore.string_p());
+
+        final Pickler<String, ProtoIO> projection = new Pickler<String, ProtoIO>() {
+
+            @Override
+            public ProtoIO pickle(String s, ProtoIO target) throws Exception {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public String unpickle(ProtoIO source) throws Exception {
+                final FieldUnpickler<ProtoIO> fu = picklerCore.object_map().unpickler(source);
+                return fu.field(stringF);
+            }
+        };
+
+        Assert.assertEquals(complex.stringF, ProtoPicklerCore.unpickle(projection, bytes));
+    }
+
+    public static final class Point {
+
+        public final String name;
+        public final int x;
+        public final String label;
+
+        public Point(String name, int x, String label) {
+            this.name = name;
+            this.x = x;
+            this.label = label;
+        }
+    }
+
+    public static class PointPickler extends PicklerBase<Point, ProtoIO> {
+
+        private final Field<String, ProtoIO> name = field("name", 1);
+        private final Field<Integer, ProtoIO> x = field("x", 2);
+
+        public PointPickler(PicklerCore<ProtoIO> core) {
+            super(core, Point.class);
+        }
+
+        @Override
+        public ProtoIO pickle(Point point, ProtoIO target) throws Exception {
+            final FieldPickler<ProtoIO> fp = object_map().pickler(target);
+            fp.field(name, point.name);
+            fp.field(x, point.x);
+            return fp.pickle(target);
+        }
+
+        @Override
+        public Point unpickle(ProtoIO source) throws Exception {
+            final FieldUnpickler<ProtoIO> fu = object_map().unpickler(source);
+            return new Point(fu.field(name), fu.field(x), null);
+        }
+    }
+
+    // A later version of PointPickler, which adds a field ahead of the existing ones.
+    public static class PointPickler2 extends PicklerBase<Point, ProtoIO> {
+
+        private final Field<String, ProtoIO> label = null_field("label", 3, string_p());
+        private final Field<String, ProtoIO> name = field("name", 1);
+        private final Field<Integer, ProtoIO> x = field("x", 2);
+
+        public PointPickler2(PicklerCore<ProtoIO> core) {
+            super(core, Point.class);
+        }
+
+        @Override
+        public ProtoIO pickle(Point point, ProtoIO target) throws Exception {
+            final FieldPickler<ProtoIO> fp = object_map().pickler(target);
+            fp.field(name, point.name);
+            fp.field(x, point.x);
+            fp.field(label, point.label);
+            return fp.pickle(target);
+        }
+
+        @Override
+        public Point unpickle(ProtoIO source) throws Exception {
+            final FieldUnpickler<ProtoIO> fu = object_map().unpickler(source);
+
+            // Read the fields in the order they're declared, rather than in order of number.
+            final String labelValue = fu.field(label);
+            return new Point(fu.field(name), fu.field(x), labelValue);
+        }
+    }
+
+    @Test
+    public void testExplicitFieldNumbers() throws Exception {
+
+        final PointPickler pickler = new PointPickler(picklerCore);
+        final PointPickler2 pickler2 = new PointPickler2(picklerCore);
+
+        Assert.assertEquals(3, pickler2.fields().get(0).number);
+        Assert.assertEquals(1, pickler2.fields().get(1).number);
+
+        // Creating a field again, e.g. lazily, keeps its number rather than adding another field.
+        Assert.assertEquals(2, pickler2.field("x").number);
+        Assert.assertEquals(3, pickler2.fields().size());
+
+        // Data written by either version can be read by the other.
+        final Point old = ProtoPicklerCore.unpickle(pickler2, ProtoPicklerCore.pickle(pickler, new Point("a", 7, null)));
+        Assert.assertEquals("a", old.name);
+        Assert.assertEquals(7, old.x);
+        Assert.assertNull(old.label);
+
+        final Point current = ProtoPicklerCore.unpickle(pickler, ProtoPicklerCore.pickle(pickler2, new Point("b", -3, "c")));
+        Assert.assertEquals("b", current.name);
+        Assert.assertEquals(-3, current.x);
+
+        final Point current2 = ProtoPicklerCore.unpickle(pickler2, ProtoPicklerCore.pickle(pickler2, new Point("b", -3, "c")));
+        Assert.assertEquals("b", current2.name);
+        Assert.assertEquals(-3, current2.x);
+        Assert.assertEquals("c", current2.label);
+
+        try {
+            new PicklerBase<Point, ProtoIO>(picklerCore, Point.class) {
+                private final Field<String, ProtoIO> name = field("name", 1);
+                private final Field<Integer, ProtoIO> x = field("x", 1);
+
+                @Override
+                public ProtoIO pickle(Point point, ProtoIO target) throws Exception {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public Point unpickle(ProtoIO source) throws Exception {
+                    throw new UnsupportedOperationException();
+                }
+            };
+            Assert.fail("Expected a PicklerException for a duplicate field number");
+        } catch (PicklerException ex) {
+            // Expected.
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        final StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b & 0xFF));
+        }
+        return sb.toString();
+    }
+
+    private static RoundTrip roundTripViaProto(ComplexClass complex) throws Exception {
+
+        final Pickler<ComplexClass, ProtoIO> pickler = picklerCore.object_p(ComplexClass.class);
+
+        final long startTime1 = System.nanoTime();
+        final byte[] ba = ProtoPicklerCore.pickle(pickler, complex);
+        final long endTime1 = System.nanoTime();
+
+        final int size = ba.length;
+
+        final long startTime2 = System.nanoTime();
+        final ComplexClass complex2 = ProtoPicklerCore.unpickle(pickler, ba);
+        final long endTime2 = System.nanoTime();
+
+        Assert.assertEquals(complex, complex2);
+
+        return new RoundTrip("ProtoPickler", endTime1 - startTime1, endTime2 - startTime2, size);
+    }
+}
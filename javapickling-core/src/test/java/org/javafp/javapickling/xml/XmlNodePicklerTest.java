@@ -1,12 +1,24 @@
 package org.javafp.javapickling.xml;
 
+import com.google.common.collect.Lists;
 import org.javafp.javapickling.common.*;
 import org.javafp.javapickling.core.Pickler;
 import org.junit.Assert;
 import org.junit.Test;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 public class XmlNodePicklerTest {
 
     private static final XmlNodePicklerCore picklerCore = XmlNodePicklerCore.create();
@@ -31,6 +43,131 @@ public class XmlNodePicklerTest {
         System.out.println(javaSerTimeMs);
     }
 
+    @Test
+    public void testIndentedAndReorderedFields() throws Exception {
+
+        final ComplexClass complex = ComplexClass.createInstance(true);
+
+        final Pickler<ComplexClass, Node> pickler = picklerCore.object_p(ComplexClass.class);
+
+        // Pretty-printing introduces whitespace text nodes between the elements.
+        final String xml = XmlNodePicklerCore.nodeToString(XmlNodePicklerCore.pickle(pickler, complex, "complex"), true);
+        final Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+        final Element root = doc.getDocumentElement();
+
+        Assert.assertEquals(complex, pickler.unpickle(root));
+
+        // Moving the first field to the end forces the field lookup to wrap around.
+        root.appendChild(root.removeChild(XmlNodePicklerCore.firstChildElement(root)));
+
+        Assert.assertEquals(complex, pickler.unpickle(root));
+    }
+
+    @Test
+    public void testSerialiser() throws Exception {
+
+        final ComplexClass complex = ComplexClass.createInstance(true);
+
+        final Pickler<ComplexClass, Node> pickler = picklerCore.object_p(ComplexClass.class);
+
+        final Document doc = XmlNodePicklerCore.pickle(pickler, complex, "complex");
+        final Element rootNode = doc.getDocumentElement();
+        rootNode.setAttribute("note", "<\"quoted\" & \u00e9\u4e2d\ud83d\ude00>");
+
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        XmlNodePicklerCore.writeNode(doc, os, false);
+
+        final ByteArrayOutputStream cos = new ByteArrayOutputStream();
+        XmlNodeSerialiser.write(doc, Channels.newChannel(cos), false);
+        Assert.assertArrayEquals(os.toByteArray(), cos.toByteArray());
+
+        final Element root = XmlNodePicklerCore.readNode(new ByteArrayInputStream(os.toByteArray())).getDocumentElement();
+        Assert.assertEquals(rootNode.getAttribute("note"), root.getAttribute("note"));
+        Assert.assertEquals(complex, pickler.unpickle(root));
+    }
+
+    @Test
+    public void testCompactDialect() throws Exception {
+
+        final ComplexClass complex = ComplexClass.createInstance(true);
+
+        final XmlNodePicklerCore core = XmlNodePicklerCore.create();
+        core.setCompact(true);
+        final Pickler<ComplexClass, Node> pickler = core.object_p(ComplexClass.class);
+
+        final Document doc = XmlNodePicklerCore.pickle(pickler, complex, "complex");
+
+        // Scalars are written as attributes, primitive arrays as whitespace-separated text.
+        final Element elem = doc.getDocumentElement();
+        Assert.assertEquals("true", elem.getAttribute("booleanF"));
+        Assert.assertEquals("456789", elem.getAttribute("intF"));
+        Assert.assertEquals(String.valueOf(Math.PI), elem.getAttribute("doubleF"));
+        Assert.assertEquals("first", elem.getAttribute("stringF"));
+        Assert.assertNull(childElement(elem, "intF"));
+
+        final Element row0 = childElement(childElement(elem, "dblArrF"), "_0");
+        Assert.assertEquals(0, row0.getElementsByTagName("*").getLength());
+        Assert.assertEquals("-1.1 -1.0 -0.1 0.0 0.1 1.0 1.1", row0.getTextContent());
+
+        final String xml = XmlNodePicklerCore.nodeToString(doc, true);
+        final Element root = XmlNodePicklerCore.readNode(new ByteArrayInputStream(xml.getBytes("UTF-8"))).getDocumentElement();
+        Assert.assertEquals(complex, pickler.unpickle(root));
+
+        // The compact core still reads the default dialect.
+        final Document defaultDoc = XmlNodePicklerCore.pickle(XmlNodePicklerCore.create().object_p(ComplexClass.class), complex, "complex");
+        Assert.assertEquals(complex, pickler.unpickle(defaultDoc.getDocumentElement()));
+    }
+
+    @Test
+    public void testConcurrentPickling() throws Exception {
+
+        final Pickler<ComplexClass, Node> pickler = picklerCore.object_p(ComplexClass.class);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Boolean>> results = Lists.newArrayList();
+            for (int i = 0; i < 16; ++i) {
+                final boolean flag = i % 2 == 0;
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        final ComplexClass complex = ComplexClass.createInstance(flag);
+                        final Document doc = XmlNodePicklerCore.pickle(pickler, complex, "complex");
+                        return complex.equals(pickler.unpickle(doc.getDocumentElement()));
+                    }
+                }));
+            }
+
+            for (Future<Boolean> result : results) {
+                Assert.assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testExtract() throws Exception {
+
+        final ComplexClass complex = ComplexClass.createInstance(true);
+
+        for (boolean compact : new boolean[]{false, true}) {
+            final XmlNodePicklerCore core = XmlNodePicklerCore.create();
+            core.setCompact(compact);
+
+            final Document doc = XmlNodePicklerCore.pickle(core.object_p(ComplexClass.class), complex, "complex");
+
+            Assert.assertEquals(Integer.valueOf(complex.intF), XmlNodePicklerCore.extract(doc, core.integer_p(), "intF"));
+            Assert.assertEquals("first", XmlNodePicklerCore.extract(doc, core.string_p(), "stringF"));
+            Assert.assertEquals(34.56, XmlNodePicklerCore.extract(doc, core.double_p(), "strDblMapF.Bcd"), 0.0);
+            Assert.assertEquals(Colour.BLUE, XmlNodePicklerCore.extract(doc, core.enum_p(Colour.class), "intEnumMapF.45"));
+            Assert.assertEquals("Aristotle", XmlNodePicklerCore.extract(doc, core.string_p(), "strArrF[2]"));
+            Assert.assertEquals("Dan", XmlNodePicklerCore.extract(doc, core.string_p(), "genericF.value"));
+            Assert.assertNull(XmlNodePicklerCore.extract(doc, core.string_p(), "strListF[5]"));
+        }
+    }
+
     private static RoundTrip roundTripViaJson(ComplexClass complex) throws Exception {
 
         final Pickler<ComplexClass, Node> pickler = picklerCore.object_p(ComplexClass.class);
@@ -55,4 +192,13 @@ public class XmlNodePicklerTest {
 
         return new RoundTrip("XmlNodePickler", endTime1 - startTime1, endTime2 - startTime2, size);
     }
+
+    private static Element childElement(Element parent, String name) {
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element && name.equals(child.getNodeName())) {
+                return (Element)child;
+            }
+        }
+        return null;
+    }
 }
@@ -0,0 +1,111 @@
+package org.javafp.javapickling.xmlstream;
+
+import com.google.common.collect.Lists;
+import org.javafp.javapickling.common.*;
+import org.javafp.javapickling.core.Pickler;
+import org.javafp.javapickling.xml.XmlNodePicklerCore;
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+public class XmlStreamPicklerTest {
+
+    private static final XmlStreamPicklerCore picklerCore = XmlStreamPicklerCore.create();
+    private static final XmlNodePicklerCore nodePicklerCore = XmlNodePicklerCore.create();
+
+    static {
+        picklerCore.registerClassShortName(Colour.class);
+        picklerCore.registerClassShortName(ComplexClass.class);
+        picklerCore.registerClassShortName(Generic.class);
+        picklerCore.registerClassShortName(IdWrapper.class);
+
+        nodePicklerCore.registerClassShortName(Colour.class);
+        nodePicklerCore.registerClassShortName(ComplexClass.class);
+        nodePicklerCore.registerClassShortName(Generic.class);
+        nodePicklerCore.registerClassShortName(IdWrapper.class);
+    }
+
+    @Test
+    public void testPickle() throws Exception {
+
+        final ComplexClass simple = ComplexClass.createInstance(true);
+
+        final RoundTrip xmlTimeMs = roundTripViaXmlStream(simple);
+        System.out.println(xmlTimeMs);
+    }
+
+    @Test
+    public void testWireCompatibility() throws Exception {
+
+        final ComplexClass complex = ComplexClass.createInstance(true);
+
+        final Pickler<ComplexClass, XmlStreamIO> pickler = picklerCore.object_p(ComplexClass.class);
+        final Pickler<ComplexClass, Node> nodePickler = nodePicklerCore.object_p(ComplexClass.class);
+
+        // Stream to DOM.
+        final byte[] xml = pickle(pickler, complex);
+        final Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+        Assert.assertEquals(complex, nodePickler.unpickle(doc.getDocumentElement()));
+
+        // DOM to stream.
+        final Document doc2 = XmlNodePicklerCore.pickle(nodePickler, complex, "complex");
+
+        final String xml2 = XmlNodePicklerCore.nodeToString(doc2, false);
+        Assert.assertEquals(complex, XmlStreamPicklerCore.unpickle(pickler, new ByteArrayInputStream(xml2.getBytes("UTF-8"))));
+    }
+
+    @Test
+    public void testOutOfOrderFields() throws Exception {
+
+        final ComplexClass complex = ComplexClass.createInstance(true);
+
+        final Pickler<ComplexClass, XmlStreamIO> pickler = picklerCore.object_p(ComplexClass.class);
+
+        final Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(pickle(pickler, complex)));
+        final Element root = doc.getDocumentElement();
+
+        // Reverse the order of the fields.
+        final List<Node> children = Lists.newArrayList();
+        while (root.getFirstChild() != null) {
+            children.add(root.removeChild(root.getFirstChild()));
+        }
+        for (Node child : Lists.reverse(children)) {
+            root.appendChild(child);
+        }
+
+        final String xml = XmlNodePicklerCore.nodeToString(doc, false);
+        Assert.assertEquals(complex, XmlStreamPicklerCore.unpickle(pickler, new ByteArrayInputStream(xml.getBytes("UTF-8"))));
+    }
+
+    private static <T> byte[] pickle(Pickler<T, XmlStreamIO> pickler, T value) throws Exception {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        XmlStreamPicklerCore.pickle(pickler, value, "complex", baos);
+        return baos.toByteArray();
+    }
+
+    private static RoundTrip roundTripViaXmlStream(ComplexClass complex) throws Exception {
+
+        final Pickler<ComplexClass, XmlStreamIO> pickler = picklerCore.object_p(ComplexClass.class);
+
+        final long startTime1 = System.nanoTime();
+        final byte[] xml = pickle(pickler, complex);
+        final long endTime1 = System.nanoTime();
+
+        final int size = xml.length;
+
+        final long startTime2 = System.nanoTime();
+        final ComplexClass complex2 = XmlStreamPicklerCore.unpickle(pickler, new ByteArrayInputStream(xml));
+        final long endTime2 = System.nanoTime();
+
+        Assert.assertEquals(complex, complex2);
+
+        return new RoundTrip("XmlStreamPickler", endTime1 - startTime1, endTime2 - startTime2, size);
+    }
+}
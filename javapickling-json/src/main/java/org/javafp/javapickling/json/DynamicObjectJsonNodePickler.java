@@ -7,7 +7,19 @@ import org.javafp.javapickling.core.MetaType;
 import org.javafp.javapickling.core.PicklerCore;
 
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Dynamic object pickler which uses plain JSON values wherever the type can be recovered from the value:
+ * <ul>
+ *     <li>null, booleans and strings;</li>
+ *     <li>ints, and longs outside the range of an int, as integral numbers;</li>
+ *     <li>finite doubles as floating-point numbers;</li>
+ *     <li>lists as arrays;</li>
+ *     <li>maps with string keys as objects, provided no key is "@type".</li>
+ * </ul>
+ * Other values, including arrays and sets, are tagged with their type.
+ */
 public class DynamicObjectJsonNodePickler<T> extends DynamicObjectPickler<T, JsonNode> {
 
     public DynamicObjectJsonNodePickler(PicklerCore<JsonNode> core, Class<? super T> clazz) {
@@ -16,6 +28,10 @@ public class DynamicObjectJsonNodePickler<T> extends DynamicObjectPickler<T, Jso
 
     @Override
     protected OptimalResult<JsonNode> optimalPickle(MetaType metaType, T obj, JsonNode target) throws Exception {
+        if (metaType.arrayDepth > 0) {
+            return OptimalResult.failure();
+        }
+
         switch(metaType.typeKind) {
             case NULL:
                 return OptimalResult.success(null_p().pickle(obj, target));
@@ -23,10 +39,31 @@ public class DynamicObjectJsonNodePickler<T> extends DynamicObjectPickler<T, Jso
                 return OptimalResult.success(boolean_p().pickle((Boolean)obj, target));
             case STRING:
                 return OptimalResult.success(string_p().pickle((String)obj, target));
-            case DOUBLE:
-                return OptimalResult.success(double_p().pickle((Double)obj, target));
+            case INT:
+                return OptimalResult.success(integer_p().pickle((Integer)obj, target));
+            case LONG: {
+                final long l = (Long)obj;
+                if (l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE) {
+                    return OptimalResult.failure();
+                }
+                return OptimalResult.success(long_p().pickle(l, target));
+            }
+            case DOUBLE: {
+                final double d = (Double)obj;
+                if (Double.isNaN(d) || Double.isInfinite(d)) {
+                    return OptimalResult.failure();
+                }
+                return OptimalResult.success(double_p().pickle(d, target));
+            }
             case LIST:
                 return OptimalResult.success(list_p(d_object_p()).pickle((List)obj, target));
+            case MAP: {
+                final Map<?, ?> map = (Map<?, ?>)obj;
+                if (!isPlainStringMap(map)) {
+                    return OptimalResult.failure();
+                }
+                return OptimalResult.success(map_p(d_object_p()).pickle((Map)map, target));
+            }
             default:
                 return OptimalResult.failure();
         }
@@ -40,10 +77,16 @@ public class DynamicObjectJsonNodePickler<T> extends DynamicObjectPickler<T, Jso
             return OptimalResult.success(boolean_p().unpickle(source));
         } else if (source instanceof TextNode) {
             return OptimalResult.success(string_p().unpickle(source));
-        } else if (NumericNode.class.isAssignableFrom(source.getClass())) {
+        } else if (source.isInt()) {
+            return OptimalResult.success(integer_p().unpickle(source));
+        } else if (source.isLong()) {
+            return OptimalResult.success(long_p().unpickle(source));
+        } else if (source instanceof NumericNode) {
             return OptimalResult.success(double_p().unpickle(source));
         } else if (source instanceof ArrayNode) {
             return OptimalResult.success(list_p(d_object_p()).unpickle(source));
+        } else if (source instanceof ObjectNode && !source.has(TYPE_NAME)) {
+            return OptimalResult.success(map_p(d_object_p()).unpickle(source));
         } else {
             return OptimalResult.failure();
         }
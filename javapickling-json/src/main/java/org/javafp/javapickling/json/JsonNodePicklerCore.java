@@ -1,30 +1,44 @@
 package org.javafp.javapickling.json;
 
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.base.Optional;
 import org.javafp.javapickling.core.*;
+import org.javafp.javapickling.jsonstream.JsonStreamIO;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Array;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.nio.*;
+import java.util.*;
 
 /**
  * PicklerCore implementation which pickles objects to JsonNodes.
  */
 public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
 
-    private static final ObjectMapper mapper = new ObjectMapper();
-    private static final JsonFactory factory = mapper.getFactory();
+    static final ObjectMapper mapper = new ObjectMapper();
+    static final JsonFactory factory = mapper.getFactory();
+
+    static {
+        // The byte I/O utilities leave closing streams to the caller.
+        factory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        factory.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+    }
+
+    private static final ObjectWriter writer = mapper.writer();
+    private static final ObjectWriter prettyWriter = mapper.writerWithDefaultPrettyPrinter();
+    static final ObjectReader reader = mapper.reader(JsonNode.class);
 
     public static JsonNodePicklerCore create() {
         final JsonNodePicklerCore core = new JsonNodePicklerCore();
@@ -32,6 +46,17 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
         return core;
     }
 
+    /**
+     * Create a new core which shares this core's registrations and picklers.
+     * Registrations made on the fork are not visible to this core.
+     * The fork creates its own picklers once it diverges from this core,
+     * i.e. on its first registration or change of setting.
+     * @return the forked core.
+     */
+    public JsonNodePicklerCore fork() {
+        return new JsonNodePicklerCore(this);
+    }
+
     /**
      * Utility function to simplify converting a JsonNode into a String.
      * @param node
@@ -40,13 +65,7 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
      * @throws JsonProcessingException
      */
     public static String nodeToString(JsonNode node, boolean pretty) throws JsonProcessingException {
-        final ObjectMapper om = new ObjectMapper();
-        final ObjectWriter writer =
-                pretty ?
-                    om.writerWithDefaultPrettyPrinter() :
-                    om.writer();
-
-        return writer.writeValueAsString(node);
+        return (pretty ? prettyWriter : writer).writeValueAsString(node);
     }
 
     /**
@@ -56,8 +75,181 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
      * @throws Exception
      */
     public static JsonNode stringToNode(String json) throws Exception {
-        final JsonParser parser = factory.createParser(json);
-        return mapper.readTree(parser);
+        return reader.readValue(json);
+    }
+
+    /**
+     * Utility function to pickle a value as JSON to an OutputStream, encoded as UTF-8.
+     * The stream is not closed.
+     * @param pickler
+     * @param value
+     * @param os
+     * @param <T>
+     * @throws Exception
+     */
+    public static <T> void pickleTo(Pickler<T, JsonNode> pickler, T value, OutputStream os) throws Exception {
+        writer.writeValue(os, pickler.pickle(value, null));
+    }
+
+    /**
+     * Utility function to pickle a value as JSON into a ByteBuffer, encoded as UTF-8.
+     * The JSON is written from the buffer's position, which is advanced past it.
+     * @param pickler
+     * @param value
+     * @param buffer
+     * @param <T>
+     * @throws Exception
+     * @throws java.nio.BufferOverflowException if the buffer is too small.
+     */
+    public static <T> void pickleTo(Pickler<T, JsonNode> pickler, T value, final ByteBuffer buffer) throws Exception {
+        pickleTo(pickler, value, new OutputStream() {
+
+            @Override
+            public void write(int b) {
+                buffer.put((byte)b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                buffer.put(b, off, len);
+            }
+        });
+    }
+
+    /**
+     * Utility function to unpickle a value from JSON read from an InputStream.
+     * The stream is not closed.
+     * @param pickler
+     * @param is
+     * @param <T>
+     * @return
+     * @throws Exception
+     */
+    public static <T> T unpickleFrom(Pickler<T, JsonNode> pickler, InputStream is) throws Exception {
+        return pickler.unpickle(reader.<JsonNode>readValue(is));
+    }
+
+    /**
+     * Utility function to unpickle a value from UTF-8 encoded JSON.
+     * @param pickler
+     * @param bytes
+     * @param <T>
+     * @return
+     * @throws Exception
+     */
+    public static <T> T unpickleFrom(Pickler<T, JsonNode> pickler, byte[] bytes) throws Exception {
+        return pickler.unpickle(reader.<JsonNode>readValue(bytes));
+    }
+
+    /**
+     * Utility function to unpickle a value from the UTF-8 encoded JSON between the buffer's position and limit.
+     * The buffer's position is advanced to its limit.
+     * @param pickler
+     * @param buffer
+     * @param <T>
+     * @return
+     * @throws Exception
+     */
+    public static <T> T unpickleFrom(Pickler<T, JsonNode> pickler, final ByteBuffer buffer) throws Exception {
+        final JsonNode node;
+        if (buffer.hasArray()) {
+            node = reader.readValue(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+        } else {
+            node = reader.readValue(new InputStream() {
+
+                @Override
+                public int read() {
+                    return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (!buffer.hasRemaining()) {
+                        return -1;
+                    }
+                    final int n = Math.min(len, buffer.remaining());
+                    buffer.get(b, off, n);
+                    return n;
+                }
+            });
+        }
+        return pickler.unpickle(node);
+    }
+
+    /**
+     * Extract a value nested within a pickled object, such as "members.DEVELOPER[0].name",
+     * by navigating the tree, without unpickling anything else.
+     * A name selects an object field or a map entry by its key, and an index selects an array element.
+     * @param source the pickled object.
+     * @param pickler the pickler for the value.
+     * @param path the path to the value.
+     * @param <T> the value type.
+     * @return the value, or null if the path does not exist.
+     * @throws Exception
+     */
+    public static <T> T extract(JsonNode source, Pickler<T, JsonNode> pickler, String path) throws Exception {
+
+        final FieldPath fieldPath = FieldPath.parse(path);
+
+        JsonNode node = source;
+        for (int i = 0; i < fieldPath.size() && node != null; ++i) {
+            if (fieldPath.isIndex(i)) {
+                node = node.isArray() ? node.get(fieldPath.index(i)) : null;
+            } else if (node.isObject()) {
+                node = node.get(fieldPath.name(i));
+            } else if (node.isArray()) {
+                node = mapValue(node, fieldPath.name(i));
+            } else {
+                node = null;
+            }
+        }
+
+        return node == null ? null : pickler.unpickle(node);
+    }
+
+    /**
+     * Utility function to extract a value nested within UTF-8 encoded JSON.
+     * Only the value itself is read into a tree - everything else is skipped over by the parser.
+     * @param bytes
+     * @param pickler the pickler for the value.
+     * @param path the path to the value.
+     * @param <T>
+     * @return the value, or null if the path does not exist.
+     * @throws Exception
+     */
+    public static <T> T extract(byte[] bytes, Pickler<T, JsonNode> pickler, String path) throws Exception {
+        final JsonParser parser = factory.createParser(bytes);
+        try {
+            final JsonStreamIO source = new JsonStreamIO(parser);
+            if (!source.seek(FieldPath.parse(path))) {
+                return null;
+            }
+            return pickler.unpickle(mapper.<JsonNode>readTree(parser));
+        } finally {
+            parser.close();
+        }
+    }
+
+    // Find the value of the entry with the given key, in a map with non-string keys.
+    private static JsonNode mapValue(JsonNode map, String key) {
+        if (map.size() > 0 && map.get(0).has("@key")) {
+            for (JsonNode entry : map) {
+                final JsonNode keyNode = entry.get("@key");
+                if (keyNode != null && keyNode.isValueNode() && key.equals(keyNode.asText())) {
+                    return entry.get("@value");
+                }
+            }
+        } else {
+            // The compact form - alternating keys and values.
+            for (int i = 0; i + 1 < map.size(); i += 2) {
+                final JsonNode keyNode = map.get(i);
+                if (keyNode.isValueNode() && key.equals(keyNode.asText())) {
+                    return map.get(i + 1);
+                }
+            }
+        }
+        return null;
     }
 
     protected void initialise() {
@@ -95,6 +287,9 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
 
         @Override
         public JsonNode pickle(Byte b, JsonNode target) throws Exception {
+            if (reuseTarget && target != null && target.isInt() && target.intValue() == b) {
+                return target;
+            }
             return nodeFactory.numberNode(b);
         }
 
@@ -108,6 +303,10 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
 
         @Override
         public JsonNode pickle(Character c, JsonNode target) throws Exception {
+            if (reuseTarget && target != null && target.isTextual()
+                    && target.textValue().length() == 1 && target.textValue().charAt(0) == c) {
+                return target;
+            }
             return nodeFactory.textNode(String.valueOf(c));
         }
 
@@ -121,6 +320,9 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
 
         @Override
         public JsonNode pickle(String s, JsonNode target) throws Exception {
+            if (reuseTarget && target != null && target.isTextual() && target.textValue().equals(s)) {
+                return target;
+            }
             return nodeFactory.textNode(s);
         }
 
@@ -134,6 +336,9 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
 
         @Override
         public JsonNode pickle(Integer i, JsonNode target) throws Exception {
+            if (reuseTarget && target != null && target.isInt() && target.intValue() == i) {
+                return target;
+            }
             return nodeFactory.numberNode(i);
         }
 
@@ -147,6 +352,9 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
 
         @Override
         public JsonNode pickle(Short s, JsonNode target) throws Exception {
+            if (reuseTarget && target != null && target.isShort() && target.shortValue() == s) {
+                return target;
+            }
             return nodeFactory.numberNode(s);
         }
 
@@ -160,6 +368,9 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
 
         @Override
         public JsonNode pickle(Long l, JsonNode target) throws Exception {
+            if (reuseTarget && target != null && target.isLong() && target.longValue() == l) {
+                return target;
+            }
             return nodeFactory.numberNode(l);
         }
 
@@ -173,6 +384,10 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
 
         @Override
         public JsonNode pickle(Float f, JsonNode target) throws Exception {
+            if (reuseTarget && target != null && target.isFloat()
+                    && Float.floatToIntBits(target.floatValue()) == Float.floatToIntBits(f)) {
+                return target;
+            }
             return nodeFactory.numberNode(f);
         }
 
@@ -186,6 +401,10 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
 
         @Override
         public JsonNode pickle(Double d, JsonNode target) throws Exception {
+            if (reuseTarget && target != null && target.isDouble()
+                    && Double.doubleToLongBits(target.doubleValue()) == Double.doubleToLongBits(d)) {
+                return target;
+            }
             return nodeFactory.numberNode(d);
         }
 
@@ -202,11 +421,12 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
         @Override
         public JsonNode pickle(boolean[] arr, JsonNode target) throws Exception {
 
-            final ArrayNode result = nodeFactory.arrayNode();
+            final ArrayNode result = arrayTarget(target);
 
-            for (boolean elem : arr) {
-                result.add(elemPickler.pickle(elem, result));
+            for (int i = 0; i < arr.length; ++i) {
+                setChild(result, i, elemPickler.pickle(arr[i], child(result, i)));
             }
+            truncate(result, arr.length);
 
             return result;
         }
@@ -239,11 +459,16 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
             @Override
             public JsonNode pickle(byte[] arr, JsonNode target) throws Exception {
 
-                final ArrayNode result = nodeFactory.arrayNode();
+                if (compact) {
+                    return nodeFactory.binaryNode(arr);
+                }
+
+                final ArrayNode result = arrayTarget(target);
 
-                for (byte elem : arr) {
-                    result.add(elemPickler.pickle(elem, result));
+                for (int i = 0; i < arr.length; ++i) {
+                    setChild(result, i, elemPickler.pickle(arr[i], child(result, i)));
                 }
+                truncate(result, arr.length);
 
                 return result;
             }
@@ -251,6 +476,10 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
             @Override
             public byte[] unpickle(JsonNode source) throws Exception {
 
+                if (isBlob(source)) {
+                    return source.binaryValue();
+                }
+
                 if (!source.isArray())
                     throw new PicklerException("Can not unpickle a " + source.getNodeType() + " into an array");
 
@@ -276,11 +505,12 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
         @Override
         public JsonNode pickle(char[] arr, JsonNode target) throws Exception {
 
-            final ArrayNode result = nodeFactory.arrayNode();
+            final ArrayNode result = arrayTarget(target);
 
-            for (char elem : arr) {
-                result.add(elemPickler.pickle(elem, result));
+            for (int i = 0; i < arr.length; ++i) {
+                setChild(result, i, elemPickler.pickle(arr[i], child(result, i)));
             }
+            truncate(result, arr.length);
 
             return result;
         }
@@ -313,11 +543,18 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
         @Override
         public JsonNode pickle(int[] arr, JsonNode target) throws Exception {
 
-            final ArrayNode result = nodeFactory.arrayNode();
+            if (useBlob(arr.length)) {
+                final ByteBuffer bb = newBlob(arr.length * 4);
+                bb.asIntBuffer().put(arr);
+                return nodeFactory.binaryNode(bb.array());
+            }
 
-            for (int elem : arr) {
-                result.add(elemPickler.pickle(elem, result));
+            final ArrayNode result = arrayTarget(target);
+
+            for (int i = 0; i < arr.length; ++i) {
+                setChild(result, i, elemPickler.pickle(arr[i], child(result, i)));
             }
+            truncate(result, arr.length);
 
             return result;
         }
@@ -325,6 +562,13 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
         @Override
         public int[] unpickle(JsonNode source) throws Exception {
 
+            if (isBlob(source)) {
+                final IntBuffer blob = readBlob(source).asIntBuffer();
+                final int[] result = new int[blob.remaining()];
+                blob.get(result);
+                return result;
+            }
+
             if (!source.isArray())
                 throw new PicklerException("Can not unpickle a " + source.getNodeType() + " into an array");
 
@@ -350,11 +594,18 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
         @Override
         public JsonNode pickle(short[] arr, JsonNode target) throws Exception {
 
-            final ArrayNode result = nodeFactory.arrayNode();
+            if (useBlob(arr.length)) {
+                final ByteBuffer bb = newBlob(arr.length * 2);
+                bb.asShortBuffer().put(arr);
+                return nodeFactory.binaryNode(bb.array());
+            }
+
+            final ArrayNode result = arrayTarget(target);
 
-            for (short elem : arr) {
-                result.add(elemPickler.pickle(elem, result));
+            for (int i = 0; i < arr.length; ++i) {
+                setChild(result, i, elemPickler.pickle(arr[i], child(result, i)));
             }
+            truncate(result, arr.length);
 
             return result;
         }
@@ -362,6 +613,13 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
         @Override
         public short[] unpickle(JsonNode source) throws Exception {
 
+            if (isBlob(source)) {
+                final ShortBuffer blob = readBlob(source).asShortBuffer();
+                final short[] result = new short[blob.remaining()];
+                blob.get(result);
+                return result;
+            }
+
             if (!source.isArray())
                 throw new PicklerException("Can not unpickle a " + source.getNodeType() + " into an array");
 
@@ -386,11 +644,18 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
         @Override
         public JsonNode pickle(long[] arr, JsonNode target) throws Exception {
 
-            final ArrayNode result = nodeFactory.arrayNode();
+            if (useBlob(arr.length)) {
+                final ByteBuffer bb = newBlob(arr.length * 8);
+                bb.asLongBuffer().put(arr);
+                return nodeFactory.binaryNode(bb.array());
+            }
+
+            final ArrayNode result = arrayTarget(target);
 
-            for (long elem : arr) {
-                result.add(elemPickler.pickle(elem, result));
+            for (int i = 0; i < arr.length; ++i) {
+                setChild(result, i, elemPickler.pickle(arr[i], child(result, i)));
             }
+            truncate(result, arr.length);
 
             return result;
         }
@@ -398,6 +663,13 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
         @Override
         public long[] unpickle(JsonNode source) throws Exception {
 
+            if (isBlob(source)) {
+                final LongBuffer blob = readBlob(source).asLongBuffer();
+                final long[] result = new long[blob.remaining()];
+                blob.get(result);
+                return result;
+            }
+
             if (!source.isArray())
                 throw new PicklerException("Can not unpickle a " + source.getNodeType() + " into an array");
 
@@ -422,11 +694,18 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
         @Override
         public JsonNode pickle(float[] arr, JsonNode target) throws Exception {
 
-            final ArrayNode result = nodeFactory.arrayNode();
+            if (useBlob(arr.length)) {
+                final ByteBuffer bb = newBlob(arr.length * 4);
+                bb.asFloatBuffer().put(arr);
+                return nodeFactory.binaryNode(bb.array());
+            }
+
+            final ArrayNode result = arrayTarget(target);
 
-            for (float elem : arr) {
-                result.add(elemPickler.pickle(elem, result));
+            for (int i = 0; i < arr.length; ++i) {
+                setChild(result, i, elemPickler.pickle(arr[i], child(result, i)));
             }
+            truncate(result, arr.length);
 
             return result;
         }
@@ -434,6 +713,13 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
         @Override
         public float[] unpickle(JsonNode source) throws Exception {
 
+            if (isBlob(source)) {
+                final FloatBuffer blob = readBlob(source).asFloatBuffer();
+                final float[] result = new float[blob.remaining()];
+                blob.get(result);
+                return result;
+            }
+
             if (!source.isArray())
                 throw new PicklerException("Can not unpickle a " + source.getNodeType() + " into an array");
 
@@ -458,11 +744,18 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
         @Override
         public JsonNode pickle(double[] arr, JsonNode target) throws Exception {
 
-            final ArrayNode result = nodeFactory.arrayNode();
+            if (useBlob(arr.length)) {
+                final ByteBuffer bb = newBlob(arr.length * 8);
+                bb.asDoubleBuffer().put(arr);
+                return nodeFactory.binaryNode(bb.array());
+            }
+
+            final ArrayNode result = arrayTarget(target);
 
-            for (double elem : arr) {
-                result.add(elemPickler.pickle(elem, result));
+            for (int i = 0; i < arr.length; ++i) {
+                setChild(result, i, elemPickler.pickle(arr[i], child(result, i)));
             }
+            truncate(result, arr.length);
 
             return result;
         }
@@ -470,6 +763,13 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
         @Override
         public double[] unpickle(JsonNode source) throws Exception {
 
+            if (isBlob(source)) {
+                final DoubleBuffer blob = readBlob(source).asDoubleBuffer();
+                final double[] result = new double[blob.remaining()];
+                blob.get(result);
+                return result;
+            }
+
             if (!source.isArray())
                 throw new PicklerException("Can not unpickle a " + source.getNodeType() + " into an array");
 
@@ -494,15 +794,50 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
 
             return new AbstractFieldPickler(target) {
 
-                private ObjectNode objectNode = nodeFactory.objectNode();
+                private final ObjectNode objectNode = objectTarget(target);
+
+                // When reusing a target, the existing field names are tracked so stale fields can be removed.
+                // While the fields arrive in the existing order, only a count is needed.
+                private final Iterator<String> existing = objectNode.size() == 0 ? null : objectNode.fieldNames();
+                private int inOrder = 0;
+                private Set<String> written;
 
                 @Override
                 public <T> void field(String name, T value, Pickler<T, JsonNode> pickler) throws Exception {
-                    objectNode.put(name, pickler.pickle(value, target));
+                    if (existing != null) {
+                        track(name);
+                    }
+                    objectNode.put(name, pickler.pickle(value, objectNode.get(name)));
+                }
+
+                private void track(String name) {
+                    if (written != null) {
+                        written.add(name);
+                    } else if (existing.hasNext() && existing.next().equals(name)) {
+                        ++inOrder;
+                    } else {
+                        written = new HashSet<String>();
+                        final Iterator<String> iter = objectNode.fieldNames();
+                        for (int i = 0; i < inOrder; ++i) {
+                            written.add(iter.next());
+                        }
+                        written.add(name);
+                    }
                 }
 
                 @Override
                 public JsonNode pickle(JsonNode source) {
+                    if (existing != null) {
+                        if (written != null) {
+                            objectNode.retain(written);
+                        } else if (existing.hasNext()) {
+                            final List<String> stale = new ArrayList<String>();
+                            while (existing.hasNext()) {
+                                stale.add(existing.next());
+                            }
+                            objectNode.remove(stale);
+                        }
+                    }
                     return objectNode;
                 }
             };
@@ -523,6 +858,110 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
 
     protected final JsonNodeFactory nodeFactory;
 
+    private boolean compact = false;
+
+    private int blobThreshold = Integer.MAX_VALUE;
+
+    private boolean reuseTarget = false;
+
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * Select the compact JSON encoding for pickling,
+     * in which maps with non-string keys are flat arrays of alternating keys and values,
+     * and byte arrays are Base64 strings.
+     * Both encodings are always accepted when unpickling.
+     * <p>
+     * A fork stops sharing this core's picklers when this is changed,
+     * so it may select a different encoding to this core.
+     * @param compact true to select the compact encoding.
+     */
+    public void setCompact(boolean compact) {
+        if (compact != this.compact) {
+            unsharePicklers();
+            this.compact = compact;
+        }
+    }
+
+    /**
+     * In compact mode, pickle numeric arrays with at least this many elements
+     * as Base64 strings of their little-endian binary representation.
+     * @param minLength the minimum length, or Integer.MAX_VALUE to disable.
+     */
+    public void setBlobThreshold(int minLength) {
+        if (minLength != this.blobThreshold) {
+            unsharePicklers();
+            this.blobThreshold = minLength;
+        }
+    }
+
+    public boolean isReuseTarget() {
+        return reuseTarget;
+    }
+
+    /**
+     * Select update-in-place pickling, in which the container nodes of a previously pickled tree,
+     * passed as the target, are reused.
+     * Object fields and array elements are overwritten, arrays are trimmed or extended,
+     * and scalar nodes which already hold the value are kept,
+     * so repeatedly pickling values of a stable shape allocates very few nodes.
+     * <p>
+     * The target is modified, so it must not be shared with another thread.
+     * @param reuseTarget true to reuse the target.
+     */
+    public void setReuseTarget(boolean reuseTarget) {
+        if (reuseTarget != this.reuseTarget) {
+            unsharePicklers();
+            this.reuseTarget = reuseTarget;
+        }
+    }
+
+    private ArrayNode arrayTarget(JsonNode target) {
+        return reuseTarget && target instanceof ArrayNode ? (ArrayNode)target : nodeFactory.arrayNode();
+    }
+
+    private ObjectNode objectTarget(JsonNode target) {
+        return reuseTarget && target instanceof ObjectNode ? (ObjectNode)target : nodeFactory.objectNode();
+    }
+
+    private static JsonNode child(ArrayNode arrayNode, int i) {
+        return i < arrayNode.size() ? arrayNode.get(i) : null;
+    }
+
+    private static void setChild(ArrayNode arrayNode, int i, JsonNode node) {
+        if (i < arrayNode.size()) {
+            if (arrayNode.get(i) != node) {
+                arrayNode.set(i, node);
+            }
+        } else {
+            arrayNode.add(node);
+        }
+    }
+
+    private static void truncate(ArrayNode arrayNode, int size) {
+        for (int i = arrayNode.size() - 1; i >= size; --i) {
+            arrayNode.remove(i);
+        }
+    }
+
+    private boolean useBlob(int length) {
+        return compact && length >= blobThreshold;
+    }
+
+    private static ByteBuffer newBlob(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static boolean isBlob(JsonNode source) {
+        return source.isTextual() || source.isBinary();
+    }
+
+    private static ByteBuffer readBlob(JsonNode source) throws IOException {
+        return ByteBuffer.wrap(source.binaryValue()).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
     private JsonNodePicklerCore() {
         this(JsonNodeFactory.instance);
     }
@@ -531,6 +970,14 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
         this.nodeFactory = nodeFactory;
     }
 
+    private JsonNodePicklerCore(JsonNodePicklerCore base) {
+        super(base);
+        this.nodeFactory = base.nodeFactory;
+        this.compact = base.compact;
+        this.blobThreshold = base.blobThreshold;
+        this.reuseTarget = base.reuseTarget;
+    }
+
     @Override
     public Pickler<Object, JsonNode> null_p() {
         return nullP;
@@ -628,6 +1075,9 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
 
             @Override
             public JsonNode pickle(T t, JsonNode target) throws Exception {
+                if (reuseTarget && target != null && target.isTextual() && target.textValue().equals(t.name())) {
+                    return target;
+                }
                 return nodeFactory.textNode(t.name());
             }
 
@@ -648,11 +1098,12 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
             @Override
             public JsonNode pickle(T[] arr, JsonNode target) throws Exception {
 
-                final ArrayNode result = nodeFactory.arrayNode();
+                final ArrayNode result = arrayTarget(target);
 
-                for (T elem : arr) {
-                    result.add(elemPickler.pickle(elem, result));
+                for (int i = 0; i < arr.length; ++i) {
+                    setChild(result, i, elemPickler.pickle(arr[i], child(result, i)));
                 }
+                truncate(result, arr.length);
 
                 return result;
             }
@@ -688,11 +1139,14 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
             @Override
             public JsonNode pickle(List<T> list, JsonNode target) throws Exception {
 
-                final ArrayNode result = nodeFactory.arrayNode();
+                final ArrayNode result = arrayTarget(target);
 
+                int i = 0;
                 for (T elem : list) {
-                    result.add(elemPickler.pickle(elem, result));
+                    setChild(result, i, elemPickler.pickle(elem, child(result, i)));
+                    ++i;
                 }
+                truncate(result, i);
 
                 return result;
             }
@@ -726,10 +1180,15 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
             @Override
             public JsonNode pickle(Map<String, T> map, JsonNode target) throws Exception {
 
-                final ObjectNode result = nodeFactory.objectNode();
+                final ObjectNode result = objectTarget(target);
+
+                if (result.size() != 0) {
+                    result.retain(map.keySet());
+                }
 
                 for (Map.Entry<String, T> entry : map.entrySet()) {
-                    result.put(entry.getKey(), valuePickler.pickle(entry.getValue(), result));
+                    final String key = entry.getKey();
+                    result.put(key, valuePickler.pickle(entry.getValue(), result.get(key)));
                 }
 
                 return result;
@@ -769,14 +1228,29 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
             @Override
             public JsonNode pickle(Map<K, V> map, JsonNode target) throws Exception {
 
-                final ArrayNode result = nodeFactory.arrayNode();
+                final ArrayNode result = arrayTarget(target);
+
+                int i = 0;
+
+                if (compact) {
+                    for (Map.Entry<K, V> entry : map.entrySet()) {
+                        setChild(result, i, keyPickler.pickle(entry.getKey(), child(result, i)));
+                        ++i;
+                        setChild(result, i, valuePickler.pickle(entry.getValue(), child(result, i)));
+                        ++i;
+                    }
+                    truncate(result, i);
+                    return result;
+                }
 
                 for (Map.Entry<K, V> entry : map.entrySet()) {
-                    final ObjectNode elem = nodeFactory.objectNode();
-                    elem.put(keyF, keyPickler.pickle(entry.getKey(), result));
-                    elem.put(valueF, valuePickler.pickle(entry.getValue(), result));
-                    result.add(elem);
+                    final ObjectNode elem = objectTarget(child(result, i));
+                    elem.put(keyF, keyPickler.pickle(entry.getKey(), elem.get(keyF)));
+                    elem.put(valueF, valuePickler.pickle(entry.getValue(), elem.get(valueF)));
+                    setChild(result, i, elem);
+                    ++i;
                 }
+                truncate(result, i);
 
                 return result;
             }
@@ -798,6 +1272,20 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
                     throw new PicklerException("Can not create map class", ex);
                 }
 
+                // The compact form is a flat array of alternating keys and values.
+                if (arrayNode.size() > 0 && !arrayNode.get(0).has(keyF)) {
+                    if (arrayNode.size() % 2 != 0)
+                        throw new PicklerException("Can not unpickle an array of odd length into a Map");
+
+                    for (int i = 0; i < arrayNode.size(); i += 2) {
+                        final K key = keyPickler.unpickle(arrayNode.get(i));
+                        final V value = valuePickler.unpickle(arrayNode.get(i + 1));
+                        result.put(key, value);
+                    }
+
+                    return result;
+                }
+
                 for (JsonNode child : arrayNode) {
                     final ObjectNode objectNode = (ObjectNode)child;
                     final K key = keyPickler.unpickle(objectNode.get(keyF));
@@ -820,11 +1308,14 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
             @Override
             public JsonNode pickle(Set<T> set, JsonNode target) throws Exception {
 
-                final ArrayNode result = nodeFactory.arrayNode();
+                final ArrayNode result = arrayTarget(target);
 
+                int i = 0;
                 for (T elem : set) {
-                    result.add(elemPickler.pickle(elem, result));
+                    setChild(result, i, elemPickler.pickle(elem, child(result, i)));
+                    ++i;
                 }
+                truncate(result, i);
 
                 return result;
             }
@@ -854,7 +1345,7 @@ public class JsonNodePicklerCore extends PicklerCoreBase<JsonNode> {
     }
 
     @Override
-    public <T, S extends T> Pickler<S, JsonNode> d_object_p(Class<T> clazz) {
+    protected <T, S extends T> Pickler<S, JsonNode> createDynamicPickler(Class<T> clazz) {
         return new DynamicObjectJsonNodePickler<S>(this, clazz);
     }
 
@@ -0,0 +1,286 @@
+package org.javafp.javapickling.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.javafp.javapickling.core.Pickler;
+import org.javafp.javapickling.core.PicklerException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads newline-delimited JSON records, as written by NdJsonWriter, as a Stream of unpickled values.
+ * <p>
+ * Files are memory-mapped and split at line boundaries,
+ * so a parallel stream parses and unpickles the records on the ForkJoinPool
+ * from which the terminal operation is invoked (the common pool by default).
+ * The streams are ordered - call unordered() on the result if record order doesn't matter,
+ * which lets operations such as findAny() and limit() avoid buffering.
+ * Blank lines are skipped.
+ */
+public final class NdJsonReader {
+
+    // Regions smaller than this are not split further.
+    private static final long MIN_SPLIT = 1 << 20;
+
+    // The size of the region of the file mapped at a time.
+    private static final int WINDOW = 1 << 26;
+
+    private NdJsonReader() {
+    }
+
+    /**
+     * Stream the records in a file. The file is closed when the stream is closed.
+     * @param pickler the record pickler.
+     * @param path the file.
+     * @param parallel true for a parallel stream.
+     * @param <T> the record type.
+     * @return the stream of records.
+     * @throws IOException
+     */
+    public static <T> Stream<T> stream(Pickler<T, JsonNode> pickler, Path path, boolean parallel) throws IOException {
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return stream(pickler, channel, parallel).onClose(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        channel.close();
+                    } catch (IOException ex) {
+                        throw new PicklerException("Failed to close " + path, ex);
+                    }
+                }
+            });
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        } catch (RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Stream the records in a file channel, from its start to its current size.
+     * The channel is not closed.
+     * @param pickler the record pickler.
+     * @param channel the file channel.
+     * @param parallel true for a parallel stream.
+     * @param <T> the record type.
+     * @return the stream of records.
+     * @throws IOException
+     */
+    public static <T> Stream<T> stream(Pickler<T, JsonNode> pickler, FileChannel channel, boolean parallel) throws IOException {
+        return StreamSupport.stream(new LineSpliterator<T>(pickler, channel, 0, channel.size()), parallel);
+    }
+
+    /**
+     * Stream the records read sequentially from an InputStream.
+     * The stream is not closed.
+     * @param pickler the record pickler.
+     * @param is the source.
+     * @param <T> the record type.
+     * @return the stream of records.
+     * @throws IOException
+     */
+    public static <T> Stream<T> stream(final Pickler<T, JsonNode> pickler, InputStream is) throws IOException {
+
+        final Iterator<JsonNode> nodes = JsonNodePicklerCore.reader.readValues(is);
+
+        final Iterator<T> records = new Iterator<T>() {
+
+            @Override
+            public boolean hasNext() {
+                return nodes.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return unpickle(pickler, nodes.next());
+            }
+        };
+
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(records, Spliterator.ORDERED | Spliterator.NONNULL),
+                false);
+    }
+
+    private static <T> T unpickle(Pickler<T, JsonNode> pickler, JsonNode node) {
+        try {
+            return pickler.unpickle(node);
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new PicklerException("Failed to unpickle NDJSON record", ex);
+        }
+    }
+
+    /**
+     * Spliterator over the lines within a region of a file.
+     * The region always starts at the beginning of a line.
+     */
+    private static final class LineSpliterator<T> implements Spliterator<T> {
+
+        private final Pickler<T, JsonNode> pickler;
+        private final FileChannel channel;
+        private long pos;
+        private final long end;
+
+        // The currently mapped part of the region.
+        private MappedByteBuffer window;
+        // A duplicate of the window, positioned for bulk copies without disturbing the window.
+        private ByteBuffer windowData;
+        private long windowStart;
+
+        // The bytes of the current line.
+        private byte[] line = new byte[256];
+        private int lineLength;
+
+        LineSpliterator(Pickler<T, JsonNode> pickler, FileChannel channel, long start, long end) {
+            this.pickler = pickler;
+            this.channel = channel;
+            this.pos = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            final long lineStart = pos;
+            try {
+                while (pos < end) {
+                    if (readLine()) {
+                        action.accept(pickler.unpickle(JsonNodePicklerCore.reader.<JsonNode>readValue(line, 0, lineLength)));
+                        return true;
+                    }
+                }
+                return false;
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new PicklerException("Failed to read NDJSON record at offset " + lineStart, ex);
+            }
+        }
+
+        // Read the line at pos into the line buffer and advance pos past it.
+        // Returns false if the line is blank.
+        private boolean readLine() throws IOException {
+
+            int windowSize = WINDOW;
+
+            while (true) {
+                if (window == null || pos < windowStart || pos >= windowStart + window.limit()) {
+                    map(windowSize);
+                }
+
+                final int from = (int)(pos - windowStart);
+                final int limit = window.limit();
+
+                int i = from;
+                while (i < limit && window.get(i) != '\n') {
+                    ++i;
+                }
+
+                if (i < limit || windowStart + limit == end) {
+                    copyLine(from, i);
+                    pos = windowStart + Math.min(i + 1, limit);
+                    return !isBlank();
+                }
+
+                // The line runs past the end of the window, so remap a larger window starting at the line.
+                windowSize = (int)Math.min(Integer.MAX_VALUE, 2L * windowSize);
+                map(windowSize);
+            }
+        }
+
+        private void map(int size) throws IOException {
+            windowStart = pos;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(size, end - pos));
+            windowData = window.duplicate();
+        }
+
+        private void copyLine(int from, int to) {
+            if (to > from && window.get(to - 1) == '\r') {
+                --to;
+            }
+            lineLength = to - from;
+            if (line.length < lineLength) {
+                line = new byte[Math.max(lineLength, 2 * line.length)];
+            }
+            windowData.position(from);
+            windowData.get(line, 0, lineLength);
+        }
+
+        private boolean isBlank() {
+            for (int i = 0; i < lineLength; ++i) {
+                if (line[i] != ' ' && line[i] != '\t') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+
+            final long remaining = end - pos;
+            if (remaining < MIN_SPLIT) {
+                return null;
+            }
+
+            final long split;
+            try {
+                split = nextLineStart(pos + remaining / 2);
+            } catch (IOException ex) {
+                throw new PicklerException("Failed to split NDJSON file", ex);
+            }
+
+            if (split >= end) {
+                return null;
+            }
+
+            final LineSpliterator<T> prefix = new LineSpliterator<T>(pickler, channel, pos, split);
+            pos = split;
+            return prefix;
+        }
+
+        // Find the start of the first line which begins after the given offset.
+        private long nextLineStart(long from) throws IOException {
+            final ByteBuffer buf = ByteBuffer.allocate(4096);
+            long offset = from;
+            while (offset < end) {
+                buf.clear();
+                final int n = channel.read(buf, offset);
+                if (n <= 0) {
+                    break;
+                }
+                for (int i = 0; i < n; ++i) {
+                    if (buf.get(i) == '\n') {
+                        return offset + i + 1;
+                    }
+                }
+                offset += n;
+            }
+            return end;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - pos;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE;
+        }
+    }
+}
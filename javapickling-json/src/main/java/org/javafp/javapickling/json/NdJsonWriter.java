@@ -0,0 +1,65 @@
+package org.javafp.javapickling.json;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.javafp.javapickling.core.Pickler;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes pickled records as newline-delimited JSON, one record per line, encoded as UTF-8.
+ * Records are written through a single generator as they arrive, so the output is never held in memory.
+ * <p>
+ * Closing the writer closes the underlying stream.
+ * @param <T> the record type.
+ */
+public class NdJsonWriter<T> implements Closeable, Flushable {
+
+    // The mapper flushes after each value by default, which would mean a write to the stream for every record.
+    private static final ObjectWriter writer =
+            JsonNodePicklerCore.mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    private final Pickler<T, JsonNode> pickler;
+    private final OutputStream os;
+    private final JsonGenerator generator;
+
+    public NdJsonWriter(Pickler<T, JsonNode> pickler, OutputStream os) throws IOException {
+        this.pickler = pickler;
+        this.os = os;
+        this.generator = JsonNodePicklerCore.factory.createGenerator(os, JsonEncoding.UTF8);
+
+        // Records are separated by the newline written after each one, rather than Jackson's default space.
+        generator.setPrettyPrinter(new MinimalPrettyPrinter(""));
+    }
+
+    /**
+     * Pickle a record and write it as a single line.
+     * @param record the record.
+     * @throws Exception
+     */
+    public void write(T record) throws Exception {
+        writer.writeValue(generator, pickler.pickle(record, null));
+        generator.writeRaw('\n');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        generator.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            generator.close();
+        } finally {
+            os.close();
+        }
+    }
+}
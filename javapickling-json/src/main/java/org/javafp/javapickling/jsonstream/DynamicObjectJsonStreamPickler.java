@@ -0,0 +1,125 @@
+package org.javafp.javapickling.jsonstream;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserSequence;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.javafp.javapickling.core.DynamicObjectPickler;
+import org.javafp.javapickling.core.MetaType;
+import org.javafp.javapickling.core.PicklerCore;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dynamic object pickler which uses the same plain JSON values as DynamicObjectJsonNodePickler.
+ * <p>
+ * A JSON object is unpickled as a tagged value if its first field is "@type",
+ * and as a string-keyed map otherwise.
+ */
+public class DynamicObjectJsonStreamPickler<T> extends DynamicObjectPickler<T, JsonStreamIO> {
+
+    public DynamicObjectJsonStreamPickler(PicklerCore<JsonStreamIO> core, Class<? super T> clazz) {
+        super(core, clazz);
+    }
+
+    @Override
+    protected OptimalResult<JsonStreamIO> optimalPickle(MetaType metaType, T obj, JsonStreamIO target) throws Exception {
+        if (metaType.arrayDepth > 0) {
+            return OptimalResult.failure();
+        }
+
+        switch(metaType.typeKind) {
+            case NULL:
+                return OptimalResult.success(null_p().pickle(obj, target));
+            case BOOLEAN:
+                return OptimalResult.success(boolean_p().pickle((Boolean)obj, target));
+            case STRING:
+                return OptimalResult.success(string_p().pickle((String)obj, target));
+            case INT:
+                return OptimalResult.success(integer_p().pickle((Integer)obj, target));
+            case LONG: {
+                final long l = (Long)obj;
+                if (l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE) {
+                    return OptimalResult.failure();
+                }
+                return OptimalResult.success(long_p().pickle(l, target));
+            }
+            case DOUBLE: {
+                final double d = (Double)obj;
+                if (Double.isNaN(d) || Double.isInfinite(d)) {
+                    return OptimalResult.failure();
+                }
+                return OptimalResult.success(double_p().pickle(d, target));
+            }
+            case LIST:
+                return OptimalResult.success(list_p(d_object_p()).pickle((List)obj, target));
+            case MAP: {
+                final Map<?, ?> map = (Map<?, ?>)obj;
+                if (!isPlainStringMap(map)) {
+                    return OptimalResult.failure();
+                }
+                return OptimalResult.success(map_p(d_object_p()).pickle((Map)map, target));
+            }
+            default:
+                return OptimalResult.failure();
+        }
+    }
+
+    @Override
+    protected OptimalResult<T> optimalUnpickle(JsonStreamIO source) throws Exception {
+        final JsonToken token = source.token();
+        if (token == JsonToken.VALUE_NULL) {
+            return OptimalResult.success(null_p().unpickle(source));
+        } else if (token == JsonToken.VALUE_TRUE || token == JsonToken.VALUE_FALSE) {
+            return OptimalResult.success(boolean_p().unpickle(source));
+        } else if (token == JsonToken.VALUE_STRING) {
+            return OptimalResult.success(string_p().unpickle(source));
+        } else if (token == JsonToken.VALUE_NUMBER_INT) {
+            switch (source.parser.getNumberType()) {
+                case INT:
+                    return OptimalResult.success(integer_p().unpickle(source));
+                case LONG:
+                    return OptimalResult.success(long_p().unpickle(source));
+                default:
+                    return OptimalResult.success(double_p().unpickle(source));
+            }
+        } else if (token == JsonToken.VALUE_NUMBER_FLOAT) {
+            return OptimalResult.success(double_p().unpickle(source));
+        } else if (token == JsonToken.START_ARRAY) {
+            return OptimalResult.success(list_p(d_object_p()).unpickle(source));
+        } else if (token == JsonToken.START_OBJECT) {
+            return OptimalResult.success(unpickleObject(source));
+        } else {
+            return OptimalResult.failure();
+        }
+    }
+
+    private T unpickleObject(JsonStreamIO source) throws Exception {
+
+        // Peek at the first field name, then replay the tokens consumed so far ahead of the rest of the object.
+        final JsonParser parser = source.parser;
+        final TokenBuffer prefix = new TokenBuffer(parser.getCodec());
+        prefix.writeStartObject();
+
+        final String firstName;
+        if (parser.nextToken() == JsonToken.FIELD_NAME) {
+            firstName = parser.getCurrentName();
+            prefix.writeFieldName(firstName);
+        } else {
+            firstName = null;
+            prefix.writeEndObject();
+        }
+
+        final JsonStreamIO replay =
+                firstName == null ?
+                    new JsonStreamIO(prefix.asParser()) :
+                    new JsonStreamIO(JsonParserSequence.createFlattened(prefix.asParser(), parser));
+
+        if (TYPE_NAME.equals(firstName)) {
+            return unpickleTagged(replay);
+        } else {
+            return (T)map_p(d_object_p()).unpickle(replay);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package org.javafp.javapickling.jsonstream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.javafp.javapickling.core.FieldPath;
+import org.javafp.javapickling.core.Pickler;
+
+import java.io.IOException;
+
+/**
+ * JsonStreamIO wraps either a JsonParser or a JsonGenerator.
+ * <p>
+ * When unpickling, the parser's current token is the first token of the value to be unpickled.
+ * A pickler may leave the parser anywhere within the value it reads -
+ * read() takes care of moving the parser to the last token of the value.
+ */
+public class JsonStreamIO {
+    public final JsonParser parser;
+    public final JsonGenerator generator;
+
+    public JsonStreamIO(JsonParser parser) throws IOException {
+        this.parser = parser;
+        this.generator = null;
+
+        if (parser.getCurrentToken() == null) {
+            parser.nextToken();
+        }
+    }
+
+    public JsonStreamIO(JsonGenerator generator) {
+        this.parser = null;
+        this.generator = generator;
+    }
+
+    /**
+     * @return a JsonStreamIO positioned on a null value, used for absent fields.
+     * @throws IOException
+     */
+    public static JsonStreamIO nullValue() throws IOException {
+        return new JsonStreamIO(NullNode.getInstance().traverse());
+    }
+
+    public JsonToken token() {
+        return parser.getCurrentToken();
+    }
+
+    /**
+     * Unpickle the current value, and leave the parser on its last token.
+     * @param pickler the pickler for the value.
+     * @param <T> the value type.
+     * @return the value.
+     * @throws Exception
+     */
+    public <T> T read(Pickler<T, JsonStreamIO> pickler) throws Exception {
+        final JsonToken startToken = parser.getCurrentToken();
+        if (startToken != JsonToken.START_OBJECT && startToken != JsonToken.START_ARRAY) {
+            return pickler.unpickle(this);
+        }
+
+        // The context enclosing this value, which becomes current again once the value has ended.
+        final JsonStreamContext parentCtx = parser.getParsingContext().getParent();
+
+        final T value = pickler.unpickle(this);
+
+        while (!(parser.getParsingContext() == parentCtx && isEnd(parser.getCurrentToken()))) {
+            if (parser.nextToken() == null) {
+                throw new IOException("Unexpected end of input");
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Copy the current value into a buffer, leaving the parser on its last token.
+     * @return a JsonStreamIO which reads from the buffered copy.
+     * @throws IOException
+     */
+    public JsonStreamIO buffer() throws IOException {
+        final TokenBuffer buffer = new TokenBuffer(parser.getCodec());
+        buffer.copyCurrentStructure(parser);
+        return new JsonStreamIO(buffer.asParser());
+    }
+
+    /**
+     * Move the parser to a value nested within the current value, skipping over everything else.
+     * A name selects an object field or a map entry by its key, and an index selects an array element.
+     * @param path the path to the value.
+     * @return true if the parser is now on the value, or false if the path does not exist.
+     * @throws IOException
+     */
+    public boolean seek(FieldPath path) throws IOException {
+        for (int i = 0; i < path.size(); ++i) {
+            final JsonToken token = parser.getCurrentToken();
+            final boolean found;
+            if (path.isIndex(i)) {
+                found = token == JsonToken.START_ARRAY && seekElement(path.index(i));
+            } else if (token == JsonToken.START_OBJECT) {
+                found = seekField(path.name(i));
+            } else if (token == JsonToken.START_ARRAY) {
+                found = seekEntry(path.name(i));
+            } else {
+                found = false;
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean seekField(String name) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String fieldName = parser.getCurrentName();
+            parser.nextToken();
+            if (fieldName.equals(name)) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    private boolean seekElement(int index) throws IOException {
+        for (int i = 0; ; ++i) {
+            final JsonToken token = parser.nextToken();
+            if (token == null || token == JsonToken.END_ARRAY) {
+                return false;
+            } else if (i == index) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+    }
+
+    // Find the value of the entry with the given key, in a map with non-string keys.
+    private boolean seekEntry(String key) throws IOException {
+        for (JsonToken token = parser.nextToken(); token != null && token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+            if (token == JsonToken.START_OBJECT) {
+                // An entry object, with the key and value as fields.
+                boolean hasKey = false;
+                boolean matched = false;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String fieldName = parser.getCurrentName();
+                    parser.nextToken();
+                    if (fieldName.equals("@key")) {
+                        hasKey = true;
+                        matched = parser.getCurrentToken().isScalarValue() && key.equals(parser.getText());
+                    } else if (matched && fieldName.equals("@value")) {
+                        return true;
+                    }
+                    parser.skipChildren();
+                }
+                if (hasKey) {
+                    continue;
+                }
+                // Otherwise the object was a key in the compact form, so skip its value.
+                parser.nextToken();
+                parser.skipChildren();
+            } else {
+                // The compact form - alternating keys and values.
+                final boolean matched = token.isScalarValue() && key.equals(parser.getText());
+                parser.skipChildren();
+                parser.nextToken();
+                if (matched) {
+                    return true;
+                }
+                parser.skipChildren();
+            }
+        }
+        return false;
+    }
+
+    private static boolean isEnd(JsonToken token) {
+        return token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY;
+    }
+}
@@ -0,0 +1,1080 @@
+package org.javafp.javapickling.jsonstream;
+
+import com.fasterxml.jackson.core.*;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import org.javafp.javapickling.core.*;
+
+import java.io.*;
+import java.lang.reflect.Array;
+import java.util.*;
+
+/**
+ * PicklerCore implementation which pickles objects directly to a JsonGenerator,
+ * and unpickles them directly from a JsonParser, without building a JsonNode tree.
+ * <p>
+ * The format is the same as that produced and consumed by JsonNodePicklerCore.
+ * Object fields are expected in the order they are pickled,
+ * though fields which arrive out of order are buffered so they can still be unpickled.
+ */
+public class JsonStreamPicklerCore extends PicklerCoreBase<JsonStreamIO> {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final JsonFactory factory = mapper.getFactory();
+
+    private static final int INITIAL_ARRAY_SIZE = 16;
+
+    private static final String keyF = "@key";
+    private static final String valueF = "@value";
+
+    public static JsonStreamPicklerCore create() {
+        final JsonStreamPicklerCore core = new JsonStreamPicklerCore();
+        core.initialise();
+        return core;
+    }
+
+    /**
+     * Create a new core which shares this core's registrations and picklers.
+     * Registrations made on the fork are not visible to this core.
+     * The fork creates its own picklers once it diverges from this core,
+     * i.e. on its first registration or change of setting.
+     * @return the forked core.
+     */
+    public JsonStreamPicklerCore fork() {
+        return new JsonStreamPicklerCore(this);
+    }
+
+    /**
+     * Utility function to pickle a value as JSON to an OutputStream, encoded as UTF-8.
+     * @param pickler
+     * @param value
+     * @param os
+     * @param <T>
+     * @throws Exception
+     */
+    public static <T> void pickle(Pickler<T, JsonStreamIO> pickler, T value, OutputStream os) throws Exception {
+        final JsonGenerator generator = factory.createGenerator(os, JsonEncoding.UTF8);
+        try {
+            pickler.pickle(value, new JsonStreamIO(generator));
+        } finally {
+            generator.close();
+        }
+    }
+
+    /**
+     * Utility function to pickle a value as JSON to a Writer.
+     * @param pickler
+     * @param value
+     * @param writer
+     * @param pretty
+     * @param <T>
+     * @throws Exception
+     */
+    public static <T> void pickle(Pickler<T, JsonStreamIO> pickler, T value, Writer writer, boolean pretty) throws Exception {
+        final JsonGenerator generator = factory.createGenerator(writer);
+        if (pretty) {
+            generator.useDefaultPrettyPrinter();
+        }
+        try {
+            pickler.pickle(value, new JsonStreamIO(generator));
+        } finally {
+            generator.close();
+        }
+    }
+
+    /**
+     * Utility function to unpickle a value from JSON read from an InputStream.
+     * @param pickler
+     * @param is
+     * @param <T>
+     * @return
+     * @throws Exception
+     */
+    public static <T> T unpickle(Pickler<T, JsonStreamIO> pickler, InputStream is) throws Exception {
+        final JsonParser parser = factory.createParser(is);
+        try {
+            return new JsonStreamIO(parser).read(pickler);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Utility function to unpickle a value from JSON read from a Reader.
+     * @param pickler
+     * @param reader
+     * @param <T>
+     * @return
+     * @throws Exception
+     */
+    public static <T> T unpickle(Pickler<T, JsonStreamIO> pickler, Reader reader) throws Exception {
+        final JsonParser parser = factory.createParser(reader);
+        try {
+            return new JsonStreamIO(parser).read(pickler);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Utility function to extract a value nested within the JSON read from an InputStream,
+     * such as "members.DEVELOPER[0].name".
+     * Everything outside the path is skipped over by the parser without being unpickled.
+     * The stream is not closed.
+     * @param is
+     * @param pickler the pickler for the value.
+     * @param path the path to the value - see JsonStreamIO.seek().
+     * @param <T>
+     * @return the value, or null if the path does not exist.
+     * @throws Exception
+     */
+    public static <T> T extract(InputStream is, Pickler<T, JsonStreamIO> pickler, String path) throws Exception {
+        return extract(factory.createParser(is), pickler, path);
+    }
+
+    /**
+     * Utility function to extract a value nested within UTF-8 encoded JSON.
+     * @param bytes
+     * @param pickler the pickler for the value.
+     * @param path the path to the value - see JsonStreamIO.seek().
+     * @param <T>
+     * @return the value, or null if the path does not exist.
+     * @throws Exception
+     */
+    public static <T> T extract(byte[] bytes, Pickler<T, JsonStreamIO> pickler, String path) throws Exception {
+        return extract(factory.createParser(bytes), pickler, path);
+    }
+
+    private static <T> T extract(JsonParser parser, Pickler<T, JsonStreamIO> pickler, String path) throws Exception {
+        try {
+            final JsonStreamIO source = new JsonStreamIO(parser);
+            return source.seek(FieldPath.parse(path)) ? source.read(pickler) : null;
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static void checkToken(JsonStreamIO source, JsonToken expected, String desc) {
+        final JsonToken token = source.token();
+        if (token != expected) {
+            throw new PicklerException("Can not unpickle a " + token + " into " + desc);
+        }
+    }
+
+    protected void initialise() {
+        super.initialise();
+        registerGeneric(Optional.class, OptionalPickler.class);
+    }
+
+    /**
+     * A cache of pre-encoded field names.
+     */
+    private final Map<String, SerializableString> fieldNames = Maps.newConcurrentMap();
+
+    protected SerializableString fieldName(String name) {
+        SerializableString fieldName = fieldNames.get(name);
+        if (fieldName == null) {
+            fieldName = new SerializedString(name);
+            fieldNames.put(name, fieldName);
+        }
+        return fieldName;
+    }
+
+    protected final Pickler<Object, JsonStreamIO> nullP = new Pickler<Object, JsonStreamIO>() {
+
+        @Override
+        public JsonStreamIO pickle(Object obj, JsonStreamIO target) throws Exception {
+            target.generator.writeNull();
+            return target;
+        }
+
+        @Override
+        public Object unpickle(JsonStreamIO source) throws Exception {
+            return null;
+        }
+    };
+
+    protected final Pickler<Boolean, JsonStreamIO> booleanP = new Pickler<Boolean, JsonStreamIO>() {
+
+        @Override
+        public JsonStreamIO pickle(Boolean b, JsonStreamIO target) throws Exception {
+            target.generator.writeBoolean(b);
+            return target;
+        }
+
+        @Override
+        public Boolean unpickle(JsonStreamIO source) throws Exception {
+            return source.parser.getBooleanValue();
+        }
+    };
+
+    protected final Pickler<Byte, JsonStreamIO> byteP = new Pickler<Byte, JsonStreamIO>() {
+
+        @Override
+        public JsonStreamIO pickle(Byte b, JsonStreamIO target) throws Exception {
+            target.generator.writeNumber(b);
+            return target;
+        }
+
+        @Override
+        public Byte unpickle(JsonStreamIO source) throws Exception {
+            return (byte)source.parser.getIntValue();
+        }
+    };
+
+    protected final Pickler<Character, JsonStreamIO> charP = new Pickler<Character, JsonStreamIO>() {
+
+        @Override
+        public JsonStreamIO pickle(Character c, JsonStreamIO target) throws Exception {
+            target.generator.writeString(String.valueOf(c));
+            return target;
+        }
+
+        @Override
+        public Character unpickle(JsonStreamIO source) throws Exception {
+            return source.parser.getText().charAt(0);
+        }
+    };
+
+    protected final Pickler<String, JsonStreamIO> stringP = new Pickler<String, JsonStreamIO>() {
+
+        @Override
+        public JsonStreamIO pickle(String s, JsonStreamIO target) throws Exception {
+            target.generator.writeString(s);
+            return target;
+        }
+
+        @Override
+        public String unpickle(JsonStreamIO source) throws Exception {
+            return source.parser.getText();
+        }
+    };
+
+    protected final Pickler<Integer, JsonStreamIO> integerP = new Pickler<Integer, JsonStreamIO>() {
+
+        @Override
+        public JsonStreamIO pickle(Integer i, JsonStreamIO target) throws Exception {
+            target.generator.writeNumber(i);
+            return target;
+        }
+
+        @Override
+        public Integer unpickle(JsonStreamIO source) throws Exception {
+            return source.parser.getIntValue();
+        }
+    };
+
+    protected final Pickler<Short, JsonStreamIO> shortP = new Pickler<Short, JsonStreamIO>() {
+
+        @Override
+        public JsonStreamIO pickle(Short s, JsonStreamIO target) throws Exception {
+            target.generator.writeNumber(s);
+            return target;
+        }
+
+        @Override
+        public Short unpickle(JsonStreamIO source) throws Exception {
+            return source.parser.getShortValue();
+        }
+    };
+
+    protected final Pickler<Long, JsonStreamIO> longP = new Pickler<Long, JsonStreamIO>() {
+
+        @Override
+        public JsonStreamIO pickle(Long l, JsonStreamIO target) throws Exception {
+            target.generator.writeNumber(l);
+            return target;
+        }
+
+        @Override
+        public Long unpickle(JsonStreamIO source) throws Exception {
+            return source.parser.getLongValue();
+        }
+    };
+
+    protected final Pickler<Float, JsonStreamIO> floatP = new Pickler<Float, JsonStreamIO>() {
+
+        @Override
+        public JsonStreamIO pickle(Float f, JsonStreamIO target) throws Exception {
+            target.generator.writeNumber(f);
+            return target;
+        }
+
+        @Override
+        public Float unpickle(JsonStreamIO source) throws Exception {
+            // Non-finite values are written as strings.
+            if (source.token() == JsonToken.VALUE_STRING) {
+                return Float.valueOf(source.parser.getText());
+            }
+            return source.parser.getFloatValue();
+        }
+    };
+
+    protected final Pickler<Double, JsonStreamIO> doubleP = new Pickler<Double, JsonStreamIO>() {
+
+        @Override
+        public JsonStreamIO pickle(Double d, JsonStreamIO target) throws Exception {
+            target.generator.writeNumber(d);
+            return target;
+        }
+
+        @Override
+        public Double unpickle(JsonStreamIO source) throws Exception {
+            // Non-finite values are written as strings.
+            if (source.token() == JsonToken.VALUE_STRING) {
+                return Double.valueOf(source.parser.getText());
+            }
+            return source.parser.getDoubleValue();
+        }
+    };
+
+    protected final Pickler<boolean[], JsonStreamIO> booleanArrayP = new Pickler<boolean[], JsonStreamIO>() {
+
+        final Pickler<Boolean, JsonStreamIO> elemPickler = boolean_p();
+
+        @Override
+        public JsonStreamIO pickle(boolean[] arr, JsonStreamIO target) throws Exception {
+
+            target.generator.writeStartArray();
+
+            for (boolean elem : arr) {
+                elemPickler.pickle(elem, target);
+            }
+
+            target.generator.writeEndArray();
+
+            return target;
+        }
+
+        @Override
+        public boolean[] unpickle(JsonStreamIO source) throws Exception {
+
+            checkToken(source, JsonToken.START_ARRAY, "an array");
+
+            boolean[] result = new boolean[INITIAL_ARRAY_SIZE];
+            int size = 0;
+
+            while (source.parser.nextToken() != JsonToken.END_ARRAY) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, size * 2);
+                }
+                result[size] = elemPickler.unpickle(source);
+                ++size;
+            }
+
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        }
+    };
+
+    protected final Pickler<byte[], JsonStreamIO> byteArrayP = new Pickler<byte[], JsonStreamIO>() {
+
+        final Pickler<Byte, JsonStreamIO> elemPickler = byte_p();
+
+        @Override
+        public JsonStreamIO pickle(byte[] arr, JsonStreamIO target) throws Exception {
+
+            target.generator.writeStartArray();
+
+            for (byte elem : arr) {
+                elemPickler.pickle(elem, target);
+            }
+
+            target.generator.writeEndArray();
+
+            return target;
+        }
+
+        @Override
+        public byte[] unpickle(JsonStreamIO source) throws Exception {
+
+            checkToken(source, JsonToken.START_ARRAY, "an array");
+
+            byte[] result = new byte[INITIAL_ARRAY_SIZE];
+            int size = 0;
+
+            while (source.parser.nextToken() != JsonToken.END_ARRAY) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, size * 2);
+                }
+                result[size] = elemPickler.unpickle(source);
+                ++size;
+            }
+
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        }
+    };
+
+    protected final Pickler<char[], JsonStreamIO> charArrayP = new Pickler<char[], JsonStreamIO>() {
+
+        final Pickler<Character, JsonStreamIO> elemPickler = char_p();
+
+        @Override
+        public JsonStreamIO pickle(char[] arr, JsonStreamIO target) throws Exception {
+
+            target.generator.writeStartArray();
+
+            for (char elem : arr) {
+                elemPickler.pickle(elem, target);
+            }
+
+            target.generator.writeEndArray();
+
+            return target;
+        }
+
+        @Override
+        public char[] unpickle(JsonStreamIO source) throws Exception {
+
+            checkToken(source, JsonToken.START_ARRAY, "an array");
+
+            char[] result = new char[INITIAL_ARRAY_SIZE];
+            int size = 0;
+
+            while (source.parser.nextToken() != JsonToken.END_ARRAY) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, size * 2);
+                }
+                result[size] = elemPickler.unpickle(source);
+                ++size;
+            }
+
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        }
+    };
+
+    protected final Pickler<int[], JsonStreamIO> integerArrayP = new Pickler<int[], JsonStreamIO>() {
+
+        final Pickler<Integer, JsonStreamIO> elemPickler = integer_p();
+
+        @Override
+        public JsonStreamIO pickle(int[] arr, JsonStreamIO target) throws Exception {
+
+            target.generator.writeStartArray();
+
+            for (int elem : arr) {
+                elemPickler.pickle(elem, target);
+            }
+
+            target.generator.writeEndArray();
+
+            return target;
+        }
+
+        @Override
+        public int[] unpickle(JsonStreamIO source) throws Exception {
+
+            checkToken(source, JsonToken.START_ARRAY, "an array");
+
+            int[] result = new int[INITIAL_ARRAY_SIZE];
+            int size = 0;
+
+            while (source.parser.nextToken() != JsonToken.END_ARRAY) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, size * 2);
+                }
+                result[size] = elemPickler.unpickle(source);
+                ++size;
+            }
+
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        }
+    };
+
+    protected final Pickler<short[], JsonStreamIO> shortArrayP = new Pickler<short[], JsonStreamIO>() {
+
+        final Pickler<Short, JsonStreamIO> elemPickler = short_p();
+
+        @Override
+        public JsonStreamIO pickle(short[] arr, JsonStreamIO target) throws Exception {
+
+            target.generator.writeStartArray();
+
+            for (short elem : arr) {
+                elemPickler.pickle(elem, target);
+            }
+
+            target.generator.writeEndArray();
+
+            return target;
+        }
+
+        @Override
+        public short[] unpickle(JsonStreamIO source) throws Exception {
+
+            checkToken(source, JsonToken.START_ARRAY, "an array");
+
+            short[] result = new short[INITIAL_ARRAY_SIZE];
+            int size = 0;
+
+            while (source.parser.nextToken() != JsonToken.END_ARRAY) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, size * 2);
+                }
+                result[size] = elemPickler.unpickle(source);
+                ++size;
+            }
+
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        }
+    };
+
+    protected final Pickler<long[], JsonStreamIO> longArrayP = new Pickler<long[], JsonStreamIO>() {
+
+        final Pickler<Long, JsonStreamIO> elemPickler = long_p();
+
+        @Override
+        public JsonStreamIO pickle(long[] arr, JsonStreamIO target) throws Exception {
+
+            target.generator.writeStartArray();
+
+            for (long elem : arr) {
+                elemPickler.pickle(elem, target);
+            }
+
+            target.generator.writeEndArray();
+
+            return target;
+        }
+
+        @Override
+        public long[] unpickle(JsonStreamIO source) throws Exception {
+
+            checkToken(source, JsonToken.START_ARRAY, "an array");
+
+            long[] result = new long[INITIAL_ARRAY_SIZE];
+            int size = 0;
+
+            while (source.parser.nextToken() != JsonToken.END_ARRAY) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, size * 2);
+                }
+                result[size] = elemPickler.unpickle(source);
+                ++size;
+            }
+
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        }
+    };
+
+    protected final Pickler<float[], JsonStreamIO> floatArrayP = new Pickler<float[], JsonStreamIO>() {
+
+        final Pickler<Float, JsonStreamIO> elemPickler = float_p();
+
+        @Override
+        public JsonStreamIO pickle(float[] arr, JsonStreamIO target) throws Exception {
+
+            target.generator.writeStartArray();
+
+            for (float elem : arr) {
+                elemPickler.pickle(elem, target);
+            }
+
+            target.generator.writeEndArray();
+
+            return target;
+        }
+
+        @Override
+        public float[] unpickle(JsonStreamIO source) throws Exception {
+
+            checkToken(source, JsonToken.START_ARRAY, "an array");
+
+            float[] result = new float[INITIAL_ARRAY_SIZE];
+            int size = 0;
+
+            while (source.parser.nextToken() != JsonToken.END_ARRAY) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, size * 2);
+                }
+                result[size] = elemPickler.unpickle(source);
+                ++size;
+            }
+
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        }
+    };
+
+    protected final Pickler<double[], JsonStreamIO> doubleArrayP = new Pickler<double[], JsonStreamIO>() {
+
+        final Pickler<Double, JsonStreamIO> elemPickler = double_p();
+
+        @Override
+        public JsonStreamIO pickle(double[] arr, JsonStreamIO target) throws Exception {
+
+            target.generator.writeStartArray();
+
+            for (double elem : arr) {
+                elemPickler.pickle(elem, target);
+            }
+
+            target.generator.writeEndArray();
+
+            return target;
+        }
+
+        @Override
+        public double[] unpickle(JsonStreamIO source) throws Exception {
+
+            checkToken(source, JsonToken.START_ARRAY, "an array");
+
+            double[] result = new double[INITIAL_ARRAY_SIZE];
+            int size = 0;
+
+            while (source.parser.nextToken() != JsonToken.END_ARRAY) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, size * 2);
+                }
+                result[size] = elemPickler.unpickle(source);
+                ++size;
+            }
+
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        }
+    };
+
+    protected final ObjectPickler<JsonStreamIO> objectMapP = new ObjectPickler<JsonStreamIO>() {
+
+        @Override
+        public FieldPickler<JsonStreamIO> pickler(final JsonStreamIO target) {
+
+            try {
+                target.generator.writeStartObject();
+            } catch (IOException ex) {
+                throw new PicklerException("Failed to start JSON object", ex);
+            }
+
+            return new AbstractFieldPickler(target) {
+
+                @Override
+                public <T> void field(String name, T value, Pickler<T, JsonStreamIO> pickler) throws Exception {
+                    target.generator.writeFieldName(fieldName(name));
+                    pickler.pickle(value, target);
+                }
+
+                @Override
+                public JsonStreamIO pickle(JsonStreamIO target) throws Exception {
+                    target.generator.writeEndObject();
+                    return target;
+                }
+            };
+        }
+
+        @Override
+        public FieldUnpickler<JsonStreamIO> unpickler(final JsonStreamIO source) {
+
+            checkToken(source, JsonToken.START_OBJECT, "an object");
+
+            return new AbstractFieldUnpickler(source) {
+
+                // Fields which were encountered before they were asked for.
+                private Map<String, JsonStreamIO> stash;
+
+                private boolean ended = false;
+
+                @Override
+                public <T> T field(String name, Pickler<T, JsonStreamIO> pickler) throws Exception {
+
+                    if (stash != null) {
+                        final JsonStreamIO stashed = stash.remove(name);
+                        if (stashed != null) {
+                            return stashed.read(pickler);
+                        }
+                    }
+
+                    while (!ended) {
+                        final JsonToken token = source.parser.nextToken();
+                        if (token == JsonToken.END_OBJECT) {
+                            ended = true;
+                        } else if (token != JsonToken.FIELD_NAME) {
+                            throw new PicklerException("Expected a field name but got a " + token);
+                        } else {
+                            final String fieldName = source.parser.getCurrentName();
+                            source.parser.nextToken();
+                            if (fieldName.equals(name)) {
+                                return source.read(pickler);
+                            } else {
+                                if (stash == null) {
+                                    stash = Maps.newHashMap();
+                                }
+                                stash.put(fieldName, source.buffer());
+                            }
+                        }
+                    }
+
+                    // The field is absent.
+                    return pickler.unpickle(JsonStreamIO.nullValue());
+                }
+            };
+        }
+    };
+
+    private JsonStreamPicklerCore() {
+    }
+
+    private JsonStreamPicklerCore(JsonStreamPicklerCore base) {
+        super(base);
+    }
+
+    @Override
+    public Pickler<Object, JsonStreamIO> null_p() {
+        return nullP;
+    }
+
+    @Override
+    public Pickler<Boolean, JsonStreamIO> boolean_p() {
+        return booleanP;
+    }
+
+    @Override
+    public Pickler<Byte, JsonStreamIO> byte_p() {
+        return byteP;
+    }
+
+    @Override
+    public Pickler<Character, JsonStreamIO> char_p() {
+        return charP;
+    }
+
+    @Override
+    public Pickler<String, JsonStreamIO> string_p() {
+        return stringP;
+    }
+
+    @Override
+    public Pickler<Integer, JsonStreamIO> integer_p() {
+        return integerP;
+    }
+
+    @Override
+    public Pickler<Short, JsonStreamIO> short_p() {
+        return shortP;
+    }
+
+    @Override
+    public Pickler<Long, JsonStreamIO> long_p() {
+        return longP;
+    }
+
+    @Override
+    public Pickler<Float, JsonStreamIO> float_p() {
+        return floatP;
+    }
+
+    @Override
+    public Pickler<Double, JsonStreamIO> double_p() {
+        return doubleP;
+    }
+
+    @Override
+    public Pickler<boolean[], JsonStreamIO> boolean_array_p() {
+        return booleanArrayP;
+    }
+
+    @Override
+    public Pickler<byte[], JsonStreamIO> byte_array_p() {
+        return byteArrayP;
+    }
+
+    @Override
+    public Pickler<char[], JsonStreamIO> char_array_p() {
+        return charArrayP;
+    }
+
+    @Override
+    public Pickler<int[], JsonStreamIO> integer_array_p() {
+        return integerArrayP;
+    }
+
+    @Override
+    public Pickler<short[], JsonStreamIO> short_array_p() {
+        return shortArrayP;
+    }
+
+    @Override
+    public Pickler<long[], JsonStreamIO> long_array_p() {
+        return longArrayP;
+    }
+
+    @Override
+    public Pickler<float[], JsonStreamIO> float_array_p() {
+        return floatArrayP;
+    }
+
+    @Override
+    public Pickler<double[], JsonStreamIO> double_array_p() {
+        return doubleArrayP;
+    }
+
+    @Override
+    public <T extends Enum<T>> Pickler<T, JsonStreamIO> enum_p(final Class<T> enumClass) {
+
+        return new Pickler<T, JsonStreamIO>() {
+
+            @Override
+            public JsonStreamIO pickle(T t, JsonStreamIO target) throws Exception {
+                target.generator.writeString(t.name());
+                return target;
+            }
+
+            @Override
+            public T unpickle(JsonStreamIO source) throws Exception {
+                return T.valueOf(enumClass, source.parser.getText());
+            }
+        };
+    }
+
+    @Override
+    public <T> Pickler<T[], JsonStreamIO> array_p(
+            final Pickler<T, JsonStreamIO> elemPickler,
+            final Class<T> elemClass) {
+
+        return new Pickler<T[], JsonStreamIO>() {
+
+            @Override
+            public JsonStreamIO pickle(T[] arr, JsonStreamIO target) throws Exception {
+
+                target.generator.writeStartArray();
+
+                for (T elem : arr) {
+                    elemPickler.pickle(elem, target);
+                }
+
+                target.generator.writeEndArray();
+
+                return target;
+            }
+
+            @Override
+            public T[] unpickle(JsonStreamIO source) throws Exception {
+
+                checkToken(source, JsonToken.START_ARRAY, "an array");
+
+                final List<T> elems = new ArrayList<T>();
+
+                while (source.parser.nextToken() != JsonToken.END_ARRAY) {
+                    elems.add(source.read(elemPickler));
+                }
+
+                return elems.toArray((T[])Array.newInstance(elemClass, elems.size()));
+            }
+        };
+    }
+
+    @Override
+    public <T> Pickler<List<T>, JsonStreamIO> list_p(
+            final Pickler<T, JsonStreamIO> elemPickler,
+            final Class<? extends List> listClass) {
+
+        return new Pickler<List<T>, JsonStreamIO>() {
+
+            @Override
+            public JsonStreamIO pickle(List<T> list, JsonStreamIO target) throws Exception {
+
+                target.generator.writeStartArray();
+
+                for (T elem : list) {
+                    elemPickler.pickle(elem, target);
+                }
+
+                target.generator.writeEndArray();
+
+                return target;
+            }
+
+            @Override
+            public List<T> unpickle(JsonStreamIO source) throws Exception {
+
+                checkToken(source, JsonToken.START_ARRAY, "a List");
+
+                final List<T> result = newInstance(listClass);
+
+                while (source.parser.nextToken() != JsonToken.END_ARRAY) {
+                    result.add(source.read(elemPickler));
+                }
+
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public <T> Pickler<Map<String, T>, JsonStreamIO> map_p(
+            final Pickler<T, JsonStreamIO> valuePickler,
+            final Class<? extends Map> mapClass) {
+
+        return new Pickler<Map<String, T>, JsonStreamIO>() {
+
+            @Override
+            public JsonStreamIO pickle(Map<String, T> map, JsonStreamIO target) throws Exception {
+
+                target.generator.writeStartObject();
+
+                for (Map.Entry<String, T> entry : map.entrySet()) {
+                    target.generator.writeFieldName(entry.getKey());
+                    valuePickler.pickle(entry.getValue(), target);
+                }
+
+                target.generator.writeEndObject();
+
+                return target;
+            }
+
+            @Override
+            public Map<String, T> unpickle(JsonStreamIO source) throws Exception {
+
+                checkToken(source, JsonToken.START_OBJECT, "a Map");
+
+                final Map<String, T> result = newInstance(mapClass);
+
+                while (source.parser.nextToken() != JsonToken.END_OBJECT) {
+                    final String key = source.parser.getCurrentName();
+                    source.parser.nextToken();
+                    result.put(key, source.read(valuePickler));
+                }
+
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public <K, V> Pickler<Map<K, V>, JsonStreamIO> map_p(
+            final Pickler<K, JsonStreamIO> keyPickler,
+            final Pickler<V, JsonStreamIO> valuePickler,
+            final Class<?  extends Map> mapClass) {
+
+        final Field<K, JsonStreamIO> keyField = field(keyF, keyPickler);
+        final Field<V, JsonStreamIO> valueField = field(valueF, valuePickler);
+
+        // Each entry is pickled as an object with @key and @value fields.
+        final Pickler<Map.Entry<K, V>, JsonStreamIO> entryPickler = new Pickler<Map.Entry<K, V>, JsonStreamIO>() {
+
+            @Override
+            public JsonStreamIO pickle(Map.Entry<K, V> entry, JsonStreamIO target) throws Exception {
+                final FieldPickler<JsonStreamIO> fp = object_map().pickler(target);
+                fp.field(keyField, entry.getKey());
+                fp.field(valueField, entry.getValue());
+                return fp.pickle(target);
+            }
+
+            @Override
+            public Map.Entry<K, V> unpickle(JsonStreamIO source) throws Exception {
+                final FieldUnpickler<JsonStreamIO> fu = object_map().unpickler(source);
+                final K key = fu.field(keyField);
+                final V value = fu.field(valueField);
+                return new AbstractMap.SimpleImmutableEntry<K, V>(key, value);
+            }
+        };
+
+        return new Pickler<Map<K, V>, JsonStreamIO>() {
+
+            @Override
+            public JsonStreamIO pickle(Map<K, V> map, JsonStreamIO target) throws Exception {
+
+                target.generator.writeStartArray();
+
+                for (Map.Entry<K, V> entry : map.entrySet()) {
+                    entryPickler.pickle(entry, target);
+                }
+
+                target.generator.writeEndArray();
+
+                return target;
+            }
+
+            @Override
+            public Map<K, V> unpickle(JsonStreamIO source) throws Exception {
+
+                checkToken(source, JsonToken.START_ARRAY, "a Map");
+
+                final Map<K, V> result = newInstance(mapClass);
+
+                while (source.parser.nextToken() != JsonToken.END_ARRAY) {
+                    final Map.Entry<K, V> entry = source.read(entryPickler);
+                    result.put(entry.getKey(), entry.getValue());
+                }
+
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public <T> Pickler<Set<T>, JsonStreamIO> set_p(
+            final Pickler<T, JsonStreamIO> elemPickler,
+            final Class<? extends Set> setClass) {
+
+        return new Pickler<Set<T>, JsonStreamIO>() {
+
+            @Override
+            public JsonStreamIO pickle(Set<T> set, JsonStreamIO target) throws Exception {
+
+                target.generator.writeStartArray();
+
+                for (T elem : set) {
+                    elemPickler.pickle(elem, target);
+                }
+
+                target.generator.writeEndArray();
+
+                return target;
+            }
+
+            @Override
+            public Set<T> unpickle(JsonStreamIO source) throws Exception {
+
+                checkToken(source, JsonToken.START_ARRAY, "a Set");
+
+                final Set<T> result = newInstance(setClass);
+
+                while (source.parser.nextToken() != JsonToken.END_ARRAY) {
+                    result.add(source.read(elemPickler));
+                }
+
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public Pickler<Object, JsonStreamIO> d_object_p() {
+        return new DynamicObjectJsonStreamPickler<Object>(this, Object.class);
+    }
+
+    @Override
+    protected <T, S extends T> Pickler<S, JsonStreamIO> createDynamicPickler(Class<T> clazz) {
+        return new DynamicObjectJsonStreamPickler<S>(this, clazz);
+    }
+
+    @Override
+    public ObjectPickler<JsonStreamIO> object_map() {
+        return objectMapP;
+    }
+
+    @Override
+    public <T> Pickler<T, JsonStreamIO> nullable(final Pickler<T, JsonStreamIO> pickler) {
+        return new Pickler<T, JsonStreamIO>() {
+
+            @Override
+            public JsonStreamIO pickle(T t, JsonStreamIO target) throws Exception {
+                if (t == null) {
+                    target.generator.writeNull();
+                    return target;
+                } else {
+                    return pickler.pickle(t, target);
+                }
+            }
+
+            @Override
+            public T unpickle(JsonStreamIO source) throws Exception {
+                if (source.token() == JsonToken.VALUE_NULL) {
+                    return null;
+                } else {
+                    return pickler.unpickle(source);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,36 @@
+package org.javafp.javapickling.jsonstream;
+
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.base.Optional;
+import org.javafp.javapickling.core.Pickler;
+import org.javafp.javapickling.core.PicklerBase;
+import org.javafp.javapickling.core.PicklerCore;
+
+public class OptionalPickler<T> extends PicklerBase<Optional<T>, JsonStreamIO> {
+
+    private final Pickler<T, JsonStreamIO> valuePickler;
+
+    public OptionalPickler(PicklerCore<JsonStreamIO> core, Pickler<T, JsonStreamIO> valuePickler) {
+        super(core, Optional.class);
+        this.valuePickler = valuePickler;
+    }
+
+    @Override
+    public JsonStreamIO pickle(Optional<T> optional, JsonStreamIO target) throws Exception {
+        if (optional.isPresent()) {
+            return valuePickler.pickle(optional.get(), target);
+        } else {
+            target.generator.writeNull();
+            return target;
+        }
+    }
+
+    @Override
+    public Optional<T> unpickle(JsonStreamIO source) throws Exception {
+        if (source.token() != JsonToken.VALUE_NULL) {
+            return Optional.of(valuePickler.unpickle(source));
+        } else {
+            return Optional.absent();
+        }
+    }
+}
@@ -7,6 +7,13 @@ import org.javafp.javapickling.json.JsonNodePicklerCore;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
 public class JsonNodePicklerTest {
 
     private static final JsonNodePicklerCore picklerCore = JsonNodePicklerCore.create();
@@ -31,6 +38,211 @@ public class JsonNodePicklerTest {
         System.out.println(javaSerTimeMs);
     }
 
+    @Test
+    public void testByteIO() throws Exception {
+
+        final ComplexClass complex = ComplexClass.createInstance(true);
+
+        final Pickler<ComplexClass, JsonNode> pickler = picklerCore.object_p(ComplexClass.class);
+
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        JsonNodePicklerCore.pickleTo(pickler, complex, os);
+        final byte[] bytes = os.toByteArray();
+
+        Assert.assertEquals(JsonNodePicklerCore.nodeToString(pickler.pickle(complex, null), false), new String(bytes, "UTF-8"));
+
+        Assert.assertEquals(complex, JsonNodePicklerCore.unpickleFrom(pickler, bytes));
+        Assert.assertEquals(complex, JsonNodePicklerCore.unpickleFrom(pickler, new ByteArrayInputStream(bytes)));
+
+        final ByteBuffer heap = ByteBuffer.allocate(bytes.length + 16);
+        JsonNodePicklerCore.pickleTo(pickler, complex, heap);
+        heap.flip();
+        Assert.assertEquals(complex, JsonNodePicklerCore.unpickleFrom(pickler, heap));
+        Assert.assertFalse(heap.hasRemaining());
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        JsonNodePicklerCore.pickleTo(pickler, complex, direct);
+        direct.flip();
+        Assert.assertEquals(complex, JsonNodePicklerCore.unpickleFrom(pickler, direct));
+    }
+
+    @Test
+    public void testDynamicValues() throws Exception {
+
+        final List<Object> values = Utils.createDynamicValues();
+
+        final Pickler<List<Object>, JsonNode> pickler = picklerCore.list_p(picklerCore.d_object_p());
+
+        final JsonNode node = pickler.pickle(values, null);
+        Assert.assertTrue(node.get(3).isInt());
+        Assert.assertTrue(node.get(5).isLong());
+        Assert.assertTrue(node.get(14).isObject() && !node.get(14).has("@type"));
+
+        final String json = JsonNodePicklerCore.nodeToString(node, false);
+        Assert.assertEquals(values, pickler.unpickle(JsonNodePicklerCore.stringToNode(json)));
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+
+        final ComplexClass complex = ComplexClass.createInstance(true);
+
+        final JsonNodePicklerCore core = JsonNodePicklerCore.create();
+        core.setCompact(true);
+        core.setBlobThreshold(2);
+
+        final Pickler<ComplexClass, JsonNode> pickler = core.object_p(ComplexClass.class);
+
+        final JsonNode node = pickler.pickle(complex, null);
+        Assert.assertFalse(node.get("intEnumMapF").get(0).isObject());
+
+        final String json = JsonNodePicklerCore.nodeToString(node, false);
+        Assert.assertEquals(complex, pickler.unpickle(JsonNodePicklerCore.stringToNode(json)));
+
+        // The compact core still reads the default encoding.
+        Assert.assertEquals(complex, pickler.unpickle(JsonNodePicklerCore.create().object_p(ComplexClass.class).pickle(complex, null)));
+
+        final byte[] bytes = {1, 2, -3};
+        final JsonNode bytesNode = JsonNodePicklerCore.stringToNode(JsonNodePicklerCore.nodeToString(core.byte_array_p().pickle(bytes, null), false));
+        Assert.assertTrue(bytesNode.isTextual());
+        Assert.assertArrayEquals(bytes, core.byte_array_p().unpickle(bytesNode));
+
+        final long[] longs = {1L, -2L, Long.MAX_VALUE};
+        final JsonNode longsNode = JsonNodePicklerCore.stringToNode(JsonNodePicklerCore.nodeToString(core.long_array_p().pickle(longs, null), false));
+        Assert.assertTrue(longsNode.isTextual());
+        Assert.assertArrayEquals(longs, core.long_array_p().unpickle(longsNode));
+    }
+
+    @Test
+    public void testReuseTarget() throws Exception {
+
+        final JsonNodePicklerCore core = JsonNodePicklerCore.create();
+        core.setReuseTarget(true);
+
+        final Pickler<ComplexClass, JsonNode> pickler = core.object_p(ComplexClass.class);
+
+        final ComplexClass complex = ComplexClass.createInstance(true);
+        final JsonNode node = pickler.pickle(complex, null);
+        final JsonNode fieldNode = node.get("stringF");
+
+        Assert.assertSame(node, pickler.pickle(complex, node));
+        Assert.assertSame(fieldNode, node.get("stringF"));
+        Assert.assertEquals(complex, pickler.unpickle(node));
+
+        final ComplexClass other = ComplexClass.createInstance(false);
+        Assert.assertSame(node, pickler.pickle(other, node));
+        Assert.assertEquals(JsonNodePicklerCore.create().object_p(ComplexClass.class).pickle(other, null), node);
+        Assert.assertEquals(other, pickler.unpickle(node));
+
+        // Shrinking a list and removing map entries updates the target in place.
+        final Pickler<Map<String, List<Integer>>, JsonNode> mapPickler = core.map_p(core.list_p(core.integer_p()));
+
+        final Map<String, List<Integer>> map = new TreeMap<String, List<Integer>>();
+        map.put("a", Arrays.asList(1, 2, 3));
+        map.put("b", Arrays.asList(4));
+        final JsonNode mapNode = mapPickler.pickle(map, null);
+        final JsonNode listNode = mapNode.get("a");
+
+        map.remove("b");
+        map.put("a", Arrays.asList(1, 5));
+        Assert.assertSame(mapNode, mapPickler.pickle(map, mapNode));
+        Assert.assertSame(listNode, mapNode.get("a"));
+        Assert.assertEquals("{\"a\":[1,5]}", JsonNodePicklerCore.nodeToString(mapNode, false));
+        Assert.assertEquals(map, mapPickler.unpickle(mapNode));
+    }
+
+    @Test
+    public void testNdJson() throws Exception {
+
+        final Pickler<ComplexClass, JsonNode> pickler = picklerCore.object_p(ComplexClass.class);
+
+        final List<ComplexClass> records = new ArrayList<ComplexClass>();
+        for (int i = 0; i < 5000; ++i) {
+            records.add(ComplexClass.createInstance(i % 2 == 0));
+        }
+
+        final File file = File.createTempFile("records", ".ndjson");
+        file.deleteOnExit();
+
+        // Count the flushes, as the writer should only flush when asked to.
+        final AtomicInteger flushes = new AtomicInteger();
+        final OutputStream os = new FilterOutputStream(new FileOutputStream(file)) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                flushes.incrementAndGet();
+                super.flush();
+            }
+        };
+
+        final NdJsonWriter<ComplexClass> writer = new NdJsonWriter<ComplexClass>(pickler, os);
+        try {
+            for (ComplexClass record : records) {
+                writer.write(record);
+            }
+            Assert.assertEquals(0, flushes.get());
+        } finally {
+            writer.close();
+        }
+
+        // The file is large enough to be split across several threads.
+        Assert.assertTrue(file.length() > 2 * 1024 * 1024);
+
+        for (boolean parallel : new boolean[]{false, true}) {
+            final Stream<ComplexClass> stream = NdJsonReader.stream(pickler, file.toPath(), parallel);
+            try {
+                Assert.assertEquals(records, stream.collect(Collectors.toList()));
+            } finally {
+                stream.close();
+            }
+        }
+
+        final InputStream is = new FileInputStream(file);
+        try {
+            Assert.assertEquals(records, NdJsonReader.stream(pickler, is).collect(Collectors.toList()));
+        } finally {
+            is.close();
+        }
+    }
+
+    @Test
+    public void testExtract() throws Exception {
+
+        final ComplexClass complex = ComplexClass.createInstance(true);
+
+        for (boolean compact : new boolean[]{false, true}) {
+            final JsonNodePicklerCore core = picklerCore.fork();
+            core.setCompact(compact);
+
+            final JsonNode node = core.object_p(ComplexClass.class).pickle(complex, null);
+            final byte[] bytes = JsonNodePicklerCore.nodeToString(node, false).getBytes("UTF-8");
+
+            Assert.assertEquals("first", JsonNodePicklerCore.extract(node, core.string_p(), "stringF"));
+            Assert.assertEquals("first", JsonNodePicklerCore.extract(bytes, core.string_p(), "stringF"));
+
+            Assert.assertEquals(34.56, JsonNodePicklerCore.extract(node, core.double_p(), "strDblMapF.Bcd"), 0.0);
+            Assert.assertEquals(34.56, JsonNodePicklerCore.extract(bytes, core.double_p(), "strDblMapF.Bcd"), 0.0);
+
+            final Pickler<Colour, JsonNode> colourPickler = core.enum_p(Colour.class);
+            Assert.assertEquals(Colour.BLUE, JsonNodePicklerCore.extract(node, colourPickler, "intEnumMapF.45"));
+            Assert.assertEquals(Colour.BLUE, JsonNodePicklerCore.extract(bytes, colourPickler, "intEnumMapF.45"));
+
+            Assert.assertEquals("Aristotle", JsonNodePicklerCore.extract(node, core.string_p(), "strArrF[2]"));
+            Assert.assertEquals("Aristotle", JsonNodePicklerCore.extract(bytes, core.string_p(), "strArrF[2]"));
+
+            Assert.assertEquals("Dan", JsonNodePicklerCore.extract(node, core.string_p(), "genericF.value"));
+            Assert.assertEquals("Dan", JsonNodePicklerCore.extract(bytes, core.string_p(), "genericF.value"));
+
+            Assert.assertNull(JsonNodePicklerCore.extract(node, core.string_p(), "strListF[5]"));
+            Assert.assertNull(JsonNodePicklerCore.extract(bytes, core.string_p(), "strListF[5]"));
+            Assert.assertNull(JsonNodePicklerCore.extract(bytes, core.string_p(), "noSuchF.name"));
+        }
+    }
+
     private static RoundTrip roundTripViaJson(ComplexClass complex) throws Exception {
 
         final Pickler<ComplexClass, JsonNode> pickler = picklerCore.object_p(ComplexClass.class);
@@ -0,0 +1,142 @@
+package org.javafp.javapickling.jsonstream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Lists;
+import org.javafp.javapickling.common.*;
+import org.javafp.javapickling.core.Pickler;
+import org.javafp.javapickling.json.JsonNodePicklerCore;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+public class JsonStreamPicklerTest {
+
+    private static final JsonStreamPicklerCore picklerCore = JsonStreamPicklerCore.create();
+    private static final JsonNodePicklerCore nodePicklerCore = JsonNodePicklerCore.create();
+
+    static {
+        picklerCore.registerClassShortName(Colour.class);
+        picklerCore.registerClassShortName(ComplexClass.class);
+        picklerCore.registerClassShortName(Generic.class);
+        picklerCore.registerClassShortName(IdWrapper.class);
+
+        nodePicklerCore.registerClassShortName(Colour.class);
+        nodePicklerCore.registerClassShortName(ComplexClass.class);
+        nodePicklerCore.registerClassShortName(Generic.class);
+        nodePicklerCore.registerClassShortName(IdWrapper.class);
+    }
+
+    @Test
+    public void testPickle() throws Exception {
+
+        final ComplexClass simple = ComplexClass.createInstance(true);
+
+        final RoundTrip jsonTimeMs = roundTripViaJsonStream(simple);
+        System.out.println(jsonTimeMs);
+    }
+
+    @Test
+    public void testWireCompatibility() throws Exception {
+
+        final ComplexClass complex = ComplexClass.createInstance(true);
+
+        final Pickler<ComplexClass, JsonStreamIO> pickler = picklerCore.object_p(ComplexClass.class);
+        final Pickler<ComplexClass, JsonNode> nodePickler = nodePicklerCore.object_p(ComplexClass.class);
+
+        final String json = pickleToString(pickler, complex);
+        final JsonNode node = nodePickler.pickle(complex, null);
+
+        final String nodeJson = JsonNodePicklerCore.nodeToString(node, false);
+        Assert.assertEquals(nodeJson, json);
+
+        Assert.assertEquals(complex, nodePickler.unpickle(JsonNodePicklerCore.stringToNode(json)));
+        Assert.assertEquals(complex, JsonStreamPicklerCore.unpickle(pickler, new StringReader(nodeJson)));
+    }
+
+    @Test
+    public void testDynamicValues() throws Exception {
+
+        final List<Object> values = Utils.createDynamicValues();
+
+        final Pickler<List<Object>, JsonStreamIO> pickler = picklerCore.list_p(picklerCore.d_object_p());
+        final Pickler<List<Object>, JsonNode> nodePickler = nodePicklerCore.list_p(nodePicklerCore.d_object_p());
+
+        final StringWriter sw = new StringWriter();
+        JsonStreamPicklerCore.pickle(pickler, values, sw, false);
+        final String json = sw.toString();
+
+        Assert.assertEquals(JsonNodePicklerCore.nodeToString(nodePickler.pickle(values, null), false), json);
+        Assert.assertEquals(values, JsonStreamPicklerCore.unpickle(pickler, new StringReader(json)));
+    }
+
+    @Test
+    public void testOutOfOrderFields() throws Exception {
+
+        final ComplexClass complex = ComplexClass.createInstance(true);
+
+        final Pickler<ComplexClass, JsonStreamIO> pickler = picklerCore.object_p(ComplexClass.class);
+
+        final ObjectNode node = (ObjectNode)JsonNodePicklerCore.stringToNode(pickleToString(pickler, complex));
+
+        final List<Map.Entry<String, JsonNode>> fields = Lists.newArrayList();
+        for (Iterator<Map.Entry<String, JsonNode>> iter = node.fields(); iter.hasNext();) {
+            fields.add(iter.next());
+        }
+
+        final ObjectNode reversed = JsonNodeFactory.instance.objectNode();
+        for (Map.Entry<String, JsonNode> field : Lists.reverse(fields)) {
+            reversed.put(field.getKey(), field.getValue());
+        }
+
+        final String json = JsonNodePicklerCore.nodeToString(reversed, false);
+        Assert.assertEquals(complex, JsonStreamPicklerCore.unpickle(pickler, new StringReader(json)));
+    }
+
+    @Test
+    public void testExtract() throws Exception {
+
+        final ComplexClass complex = ComplexClass.createInstance(true);
+        final byte[] bytes = pickleToString(picklerCore.object_p(ComplexClass.class), complex).getBytes("UTF-8");
+
+        Assert.assertEquals("first", JsonStreamPicklerCore.extract(bytes, picklerCore.string_p(), "stringF"));
+        Assert.assertEquals(34.56, JsonStreamPicklerCore.extract(bytes, picklerCore.double_p(), "strDblMapF.Bcd"), 0.0);
+        Assert.assertEquals(Colour.BLUE, JsonStreamPicklerCore.extract(bytes, picklerCore.enum_p(Colour.class), "intEnumMapF.45"));
+        Assert.assertEquals("Aristotle", JsonStreamPicklerCore.extract(bytes, picklerCore.string_p(), "strArrF[2]"));
+        Assert.assertEquals(
+                new IdWrapper("Constantine"),
+                JsonStreamPicklerCore.extract(bytes, picklerCore.object_p(IdWrapper.class), "idWrapArrF[0]"));
+        Assert.assertNull(JsonStreamPicklerCore.extract(bytes, picklerCore.string_p(), "strListF[5]"));
+    }
+
+    private static <T> String pickleToString(Pickler<T, JsonStreamIO> pickler, T value) throws Exception {
+        final StringWriter writer = new StringWriter();
+        JsonStreamPicklerCore.pickle(pickler, value, writer, false);
+        return writer.toString();
+    }
+
+    private static RoundTrip roundTripViaJsonStream(ComplexClass complex) throws Exception {
+
+        final Pickler<ComplexClass, JsonStreamIO> pickler = picklerCore.object_p(ComplexClass.class);
+
+        final long startTime1 = System.nanoTime();
+        final String json = pickleToString(pickler, complex);
+        final long endTime1 = System.nanoTime();
+
+        final int size = json.length();
+
+        final long startTime2 = System.nanoTime();
+        final ComplexClass complex2 = JsonStreamPicklerCore.unpickle(pickler, new StringReader(json));
+        final long endTime2 = System.nanoTime();
+
+        Assert.assertEquals(complex, complex2);
+
+        return new RoundTrip("JsonStreamPickler", endTime1 - startTime1, endTime2 - startTime2, size);
+    }
+}
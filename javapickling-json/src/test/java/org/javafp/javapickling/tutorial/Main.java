@@ -10,7 +10,7 @@ import org.javafp.javapickling.tutorial.model.Person;
 import org.javafp.javapickling.tutorial.model.Team;
 import org.javafp.javapickling.tutorial.picklers.DatePickler;
 import org.javafp.javapickling.xml.XmlNodePicklerCore;
-import org.w3c.dom.Element;
+import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
 import java.util.Date;
@@ -63,15 +63,12 @@ public abstract class Main {
         final XmlNodePicklerCore xmlPickleCore = XmlNodePicklerCore.create();
         xmlPickleCore.register(Date.class, DatePickler.class);
 
-        final Element rootNode = xmlPickleCore.doc.createElement("team");
-        xmlPickleCore.doc.appendChild(rootNode);
-
         final Pickler<Team, Node> pickler = xmlPickleCore.object_p(Team.class);
-        final Node node = pickler.pickle(team, rootNode);
+        final Document doc = XmlNodePicklerCore.pickle(pickler, team, "team");
 
-        final Team teamB = pickler.unpickle(node);
+        final Team teamB = pickler.unpickle(doc.getDocumentElement());
 
-        return XmlNodePicklerCore.nodeToString(xmlPickleCore.doc, true);
+        return XmlNodePicklerCore.nodeToString(doc, true);
     }
 
     public static void main(String[] args) {